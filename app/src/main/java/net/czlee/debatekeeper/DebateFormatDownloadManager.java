@@ -20,11 +20,13 @@ import android.content.Context;
 import android.content.SharedPreferences;
 import android.os.Handler;
 import android.os.Looper;
+import android.os.SystemClock;
 import android.util.JsonReader;
 import android.util.Log;
 import android.util.MalformedJsonException;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.core.os.HandlerCompat;
 import androidx.preference.PreferenceManager;
 
@@ -33,20 +35,30 @@ import net.czlee.debatekeeper.debateformat.LanguageChooser;
 
 import org.xml.sax.SAXException;
 
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLConnection;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Future;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -57,7 +69,11 @@ import java.util.regex.Pattern;
  *     <li>contacts the server to download a list of all format XML files available</li>
  *     <li>provides a class representing a downloadable format for {@link DownloadableFormatRecyclerAdapter}</li>
  *     <li>downloads requested format XML files and saves them to the user's device</li>
+ *     <li>updates all formats that have updates available in one go</li>
  * </ul>
+ * <p>
+ * Format files are downloaded using a {@link FormatDownloadScheduler}, so several can be
+ * downloaded at once, and temporary failures are retried.
  *
  * @author Chuan-Zheng Lee
  * @since 2021-09-28
@@ -65,18 +81,73 @@ import java.util.regex.Pattern;
 public class DebateFormatDownloadManager {
 
     private final String TAG = "DebateFormatDownload";
+    private static final String HTTP_CACHE_DIRECTORY_NAME = "formats-http";
+    private static final int LIST_BATCH_SIZE = 20;
+    private static final int VERSION_CHECK_THREADS = 2;
+    private static final int HTTP_RANGE_NOT_SATISFIABLE = 416;
 
     private final Context mContext;
     private final ArrayList<DownloadableFormatEntry> mEntries;
-    private final DownloadFormatsFragment.DownloadBinder mBinder;
+    private final DownloadListener mListener;
     private ExecutorService mExecutorService;
+    private ExecutorService mVersionCheckExecutor;
+    private FormatDownloadScheduler mDownloadScheduler;
     private Handler mMainThreadHandler;
+    private volatile boolean mShutDown = false;
     private final FormatXmlFilesManager mFilesManager;
+    private final FormatsHttpCache mHttpCache;
+
+    // The most recently parsed list, so that it needn't be parsed again if it hasn't changed
+    private static String sParsedListKey = null;
+    private static List<DownloadableFormatEntry> sParsedList = null;
+
+    // These are only accessed from the main thread
+    private final HashMap<String, FormatDownloadScheduler.Task> mActiveDownloads = new HashMap<>();
+    private final HashMap<String, Long> mDownloadStartTimes = new HashMap<>();
+    private UpdateAllBatch mUpdateAllBatch = null;
 
     //******************************************************************************************
-    // Public class
+    // Public classes
     //******************************************************************************************
 
+    /**
+     * Interface for whatever shows the list and the progress of downloads, normally
+     * {@link DownloadFormatsFragment.DownloadBinder}.  All methods are called on the main thread.
+     */
+    public interface DownloadListener {
+        /**
+         * Called when the whole list has been replaced, for example, because it's been downloaded
+         * or refreshed.
+         */
+        void notifyAdapterItemsReplaced();
+
+        /**
+         * Called when entries are inserted or removed while the list is still being downloaded.
+         */
+        void notifyEntriesChanged();
+
+        void notifyListDownloadError(String detailMessage);
+
+        void notifyJsonParseError(String detailMessage);
+
+        /**
+         * Called if the list from last time is being shown, but it couldn't be checked against
+         * the server.
+         */
+        void notifyCachedListNotRefreshed(String detailMessage);
+
+        void showSnackbarError(String filename, String detailMessage);
+
+        /**
+         * Called when the download state of an entry has changed.
+         */
+        void notifyEntryChanged(DownloadableFormatEntry entry);
+
+        void notifyUpdateAllProgress(int finished, int total);
+
+        void notifyUpdateAllFinished(int succeeded, int total, boolean cancelled);
+    }
+
     public static class DownloadableFormatEntry implements Comparable<DownloadableFormatEntry> {
 
         public enum DownloadState {
@@ -103,10 +174,33 @@ public class DebateFormatDownloadManager {
         public String[] levels = new String[0];
         @NonNull
         public String description = "";
+        @Nullable
+        public String sha256 = null;  // of the file, in lowercase hexadecimal, if the list gives it
+        public long size = -1;        // of the file in bytes, if the list gives it
         @NonNull
         public DownloadState state = DownloadState.NOT_DOWNLOADED;
         public boolean expanded = false;
 
+        DownloadableFormatEntry() {}
+
+        /**
+         * Copy constructor. Copies everything that came from the server, but not the download
+         * state or whether the entry is expanded.
+         * @param other the entry to copy
+         */
+        DownloadableFormatEntry(DownloadableFormatEntry other) {
+            this.version = other.version;
+            this.filename = other.filename;
+            this.url = other.url;
+            this.name = other.name;
+            this.regions = other.regions;
+            this.usedAts = other.usedAts;
+            this.levels = other.levels;
+            this.description = other.description;
+            this.sha256 = other.sha256;
+            this.size = other.size;
+        }
+
         /**
          * Given a format XML files manager and version extractor, checks the version number in the
          * existing file in the files manager (if any) and updates the <code>state</code> field
@@ -125,13 +219,19 @@ public class DebateFormatDownloadManager {
                 return;
             }
 
-            try {
-                in = filesManager.open(this.filename);
-                versionStr = versionExtractor.getFieldValue(in);
-            } catch (IOException | SAXException e) {
-                Log.e(TAG, "Couldn't get version from " + this.filename);
-                this.state = DownloadState.NOT_DOWNLOADED;
-                return;
+            // The version is recorded once the file has been parsed, so that it only needs to be
+            // parsed again if the file changes
+            versionStr = filesManager.getCachedVersion(this.filename);
+            if (versionStr == null) {
+                try {
+                    in = filesManager.open(this.filename);
+                    versionStr = versionExtractor.getFieldValue(in);
+                } catch (IOException | SAXException e) {
+                    Log.e(TAG, "Couldn't get version from " + this.filename);
+                    this.state = DownloadState.NOT_DOWNLOADED;
+                    return;
+                }
+                if (versionStr != null) filesManager.putCachedVersion(this.filename, versionStr);
             }
 
             if (versionStr == null) {
@@ -155,6 +255,33 @@ public class DebateFormatDownloadManager {
                 this.state = DownloadState.DOWNLOADED;
         }
 
+        /**
+         * @param other another entry
+         * @return <code>true</code> if the other entry is for the same format file, even if its
+         * details or state are different
+         */
+        boolean isSameEntryAs(@NonNull DownloadableFormatEntry other) {
+            return this.filename.equals(other.filename);
+        }
+
+        /**
+         * @param other another entry
+         * @return <code>true</code> if the other entry would be displayed exactly the same way as
+         * this one, including its download state and whether it's expanded
+         */
+        boolean hasSameContentAs(@NonNull DownloadableFormatEntry other) {
+            return this.version == other.version
+                    && this.filename.equals(other.filename)
+                    && this.url.equals(other.url)
+                    && this.name.equals(other.name)
+                    && Arrays.equals(this.regions, other.regions)
+                    && Arrays.equals(this.usedAts, other.usedAts)
+                    && Arrays.equals(this.levels, other.levels)
+                    && this.description.equals(other.description)
+                    && this.state == other.state
+                    && this.expanded == other.expanded;
+        }
+
         @Override
         public int compareTo(DownloadableFormatEntry o) {
             // when sorting, sort by name
@@ -167,10 +294,33 @@ public class DebateFormatDownloadManager {
     // Private class
     //******************************************************************************************
 
+    /**
+     * Keeps track of an "update all" operation, so that progress can be reported for the batch
+     * as a whole.
+     */
+    private static class UpdateAllBatch {
+        final HashSet<String> remaining = new HashSet<>();
+        final int total;
+        final long startTime = SystemClock.elapsedRealtime();
+        final ArrayList<Long> latencies = new ArrayList<>();  // of finished downloads, in ms
+        int succeeded = 0;
+        int failed = 0;
+        boolean cancelled = false;
+
+        UpdateAllBatch(List<DownloadableFormatEntry> entries) {
+            for (DownloadableFormatEntry entry : entries)
+                remaining.add(entry.filename);
+            total = remaining.size();
+        }
+
+        int finished() {
+            return succeeded + failed;
+        }
+    }
+
     /**
      * Helper class that builds a {@link DownloadableFormatEntry} using a {@link JsonReader}. This
-     * class mostly just helps to group these functions together, but it does maintain state in a
-     * {@link LanguageChooser}.
+     * class mostly just helps to group these functions together.
      */
     private static class DownloadableFormatListBuilder {
 
@@ -188,9 +338,29 @@ public class DebateFormatDownloadManager {
         }
 
         private final LanguageChooser mLangChooser;
+        @Nullable private final BatchListener mBatchListener;
+        private ArrayList<DownloadableFormatEntry> mBatch = new ArrayList<>(LIST_BATCH_SIZE);
+
+        /**
+         * Interface for objects that want entries as soon as they're parsed, rather than waiting
+         * for the whole list.
+         */
+        interface BatchListener {
+            /**
+             * Called on the parsing thread with each batch of entries, in the order they appear
+             * in the file.
+             * @param batch a list of entries, which the listener may keep
+             */
+            void onBatchParsed(List<DownloadableFormatEntry> batch);
+        }
 
         DownloadableFormatListBuilder() {
-            mLangChooser = new LanguageChooser();
+            this(null);
+        }
+
+        DownloadableFormatListBuilder(@Nullable BatchListener batchListener) {
+            mLangChooser = LanguageChooser.getInstance();
+            mBatchListener = batchListener;
         }
 
         /**
@@ -218,6 +388,7 @@ public class DebateFormatDownloadManager {
             }
             reader.endObject();
 
+            flushBatch();
             return entries;
         }
 
@@ -231,10 +402,23 @@ public class DebateFormatDownloadManager {
                 DownloadableFormatEntry entry = buildEntryFromJson(reader);
                 // Log.d(TAG, "added: " + entry.styleName + " (" + entry.filename + ")");
                 entries.add(entry);
+                if (mBatchListener != null) {
+                    mBatch.add(entry);
+                    if (mBatch.size() >= LIST_BATCH_SIZE) flushBatch();
+                }
             }
             reader.endArray();
         }
 
+        /**
+         * Passes the entries parsed since the last batch to the batch listener, if there are any.
+         */
+        private void flushBatch() {
+            if (mBatchListener == null || mBatch.isEmpty()) return;
+            mBatchListener.onBatchParsed(mBatch);
+            mBatch = new ArrayList<>(LIST_BATCH_SIZE);
+        }
+
 
         /**
          * Builds a {@link DownloadableFormatEntry} from a {@link JsonReader}. Expects to find an
@@ -266,6 +450,12 @@ public class DebateFormatDownloadManager {
                     case "url":
                         entry.url = reader.nextString();
                         break;
+                    case "sha256":
+                        entry.sha256 = reader.nextString().toLowerCase(Locale.ROOT);
+                        break;
+                    case "size":
+                        entry.size = reader.nextLong();
+                        break;
                     default:
                         reader.skipValue();
                 }
@@ -340,11 +530,12 @@ public class DebateFormatDownloadManager {
     // Public constructor
     //******************************************************************************************
 
-    DebateFormatDownloadManager(Context context, DownloadFormatsFragment.DownloadBinder binder) {
+    DebateFormatDownloadManager(Context context, DownloadListener listener) {
         mContext = context;
-        mBinder = binder;
+        mListener = listener;
         mEntries = new ArrayList<>();
-        mFilesManager = new FormatXmlFilesManager(context);
+        mFilesManager = FormatXmlFilesManager.getInstance(context);
+        mHttpCache = new FormatsHttpCache(new File(context.getCacheDir(), HTTP_CACHE_DIRECTORY_NAME));
     }
 
     //******************************************************************************************
@@ -356,15 +547,29 @@ public class DebateFormatDownloadManager {
     }
 
     /**
-     * Starts downloading the list of downloadable entries from the server, and notifies the binder
+     * Starts downloading the list of downloadable entries from the server, and notifies the listener
      * on the main thread when done. This should be safe to call from any thread.
      */
     public void startDownloadList() {
+        if (mShutDown) return;
         initialiseThreads();
         mExecutorService.execute(() -> {
+            // Show the list from last time straight away, if there is one, then check it's current
+            List<DownloadableFormatEntry> cachedEntries = null;
+            try {
+                cachedEntries = synchronousLoadCachedList();
+            } catch (IOException | IllegalStateException | NumberFormatException e) {
+                Log.e(TAG, "Couldn't load cached list", e);
+            }
+            final boolean showingCachedList = cachedEntries != null;
+            if (showingCachedList) {
+                final List<DownloadableFormatEntry> finalCachedEntries = cachedEntries;
+                postToMainThread(() -> replaceEntriesAndNotify(finalCachedEntries));
+            }
+
             try {
-                List<DownloadableFormatEntry> newEntries = synchronousDownloadList();
-                mMainThreadHandler.post(() -> replaceEntriesAndNotify(newEntries));
+                if (!synchronousDownloadList(showingCachedList))
+                    Log.i(TAG, "List not modified since last time");
             } catch (MalformedJsonException e) {
                 e.printStackTrace();
                 String originalMessage = e.getMessage();
@@ -379,52 +584,138 @@ public class DebateFormatDownloadManager {
                 }
 
                 final String finalMessage = message;
-                mMainThreadHandler.post(() -> mBinder.notifyJsonParseError(finalMessage));
+                postListError(showingCachedList, finalMessage, () -> mListener.notifyJsonParseError(finalMessage));
             } catch (IOException e) {
                 e.printStackTrace();
                 String message = (e instanceof FileNotFoundException)
                         ? mContext.getString(R.string.formatDownloader_notFoundError, e.getLocalizedMessage())
                         : e.getLocalizedMessage();
-                mMainThreadHandler.post(() -> mBinder.notifyListDownloadError(message));
+                postListError(showingCachedList, message, () -> mListener.notifyListDownloadError(message));
             } catch (IllegalStateException | NumberFormatException e) {
                 e.printStackTrace();
-                mMainThreadHandler.post(() -> mBinder.notifyJsonParseError(e.getLocalizedMessage()));
+                String message = e.getLocalizedMessage();
+                postListError(showingCachedList, message, () -> mListener.notifyJsonParseError(message));
+            } catch (RejectedExecutionException e) {
+                // The version check threads were shut down while the list was being parsed
+                if (!mShutDown) throw e;
             }
         });
     }
 
     /**
      * Starts downloading the format file represented by the given {@link DownloadableFormatEntry},
-     * calling <code>holder.updateDownloadProgress()</code> on the main thread as it starts and
-     * completes. This must be called from the main thread.
+     * notifying the listener on the main thread as it starts and completes. This must be called from
+     * the main thread. Does nothing if the file is already being downloaded.
      *
-     * @param entry  a {@link DownloadableFormatEntry}
-     * @param holder a {@link DownloadableFormatRecyclerAdapter.ViewHolder}
+     * @param entry a {@link DownloadableFormatEntry}
      */
-    public void startDownloadFile(DownloadableFormatEntry entry, DownloadableFormatRecyclerAdapter.ViewHolder holder) {
+    public void startDownloadFile(DownloadableFormatEntry entry) {
+        if (mShutDown) return;
         initialiseThreads();
+        if (mActiveDownloads.containsKey(entry.filename)) return;
+
         final DownloadableFormatEntry.DownloadState originalState = entry.state;
         entry.state = DownloadableFormatEntry.DownloadState.DOWNLOAD_IN_PROGRESS;
-        holder.updateDownloadProgress();
-        mExecutorService.execute(() -> {
-            try {
-                synchronousDownloadFile(entry);
-                mMainThreadHandler.post(() -> {
+        mListener.notifyEntryChanged(entry);
+
+        String host;
+        try {
+            host = new URL(entry.url).getHost();
+        } catch (MalformedURLException e) {
+            host = "";  // synchronousDownloadFile() will report the error
+        }
+
+        FormatDownloadScheduler.Task task = mDownloadScheduler.submit(host,
+                () -> synchronousDownloadFile(entry), new FormatDownloadScheduler.Callback() {
+            @Override
+            public void onSucceeded() {
+                postToMainThread(() -> {
                     entry.state = DownloadableFormatEntry.DownloadState.DOWNLOADED;
-                    holder.updateDownloadProgress();
+                    onDownloadFinished(entry, true);
                 });
-            } catch (IOException e) {
+            }
+
+            @Override
+            public void onFailed(@NonNull IOException e) {
                 e.printStackTrace();
                 String message = (e instanceof FileNotFoundException)
                         ? mContext.getString(R.string.formatDownloader_notFoundError, e.getLocalizedMessage())
                         : e.getLocalizedMessage();
-                mMainThreadHandler.post(() -> {
+                postToMainThread(() -> {
                     entry.state = originalState;
-                    holder.updateDownloadProgress();
-                    mBinder.showSnackbarError(entry.filename, message);
+                    // Errors in a batch are summarised when the batch finishes
+                    if (!isInUpdateAllBatch(entry)) mListener.showSnackbarError(entry.filename, message);
+                    onDownloadFinished(entry, false);
+                });
+            }
+
+            @Override
+            public void onCancelled() {
+                postToMainThread(() -> {
+                    entry.state = originalState;
+                    onDownloadFinished(entry, false);
                 });
             }
         });
+        mActiveDownloads.put(entry.filename, task);
+        mDownloadStartTimes.put(entry.filename, SystemClock.elapsedRealtime());
+    }
+
+    /**
+     * Starts downloading every format that has an update available, and notifies the listener on
+     * the main thread as the batch progresses. This must be called from the main thread. Does
+     * nothing if a batch is already running.
+     */
+    public void startUpdateAll() {
+        if (mShutDown || mUpdateAllBatch != null) return;
+
+        ArrayList<DownloadableFormatEntry> toUpdate = new ArrayList<>();
+        for (DownloadableFormatEntry entry : mEntries)
+            if (entry.state == DownloadableFormatEntry.DownloadState.UPDATE_AVAILABLE)
+                toUpdate.add(entry);
+
+        UpdateAllBatch batch = new UpdateAllBatch(toUpdate);
+        if (batch.total == 0) {
+            mListener.notifyUpdateAllFinished(0, 0, false);
+            return;
+        }
+
+        mUpdateAllBatch = batch;
+        mListener.notifyUpdateAllProgress(0, batch.total);
+        for (DownloadableFormatEntry entry : toUpdate)
+            startDownloadFile(entry);
+    }
+
+    /**
+     * Cancels the "update all" batch, if there is one. Downloads that finish before they can be
+     * stopped are kept. This must be called from the main thread.
+     */
+    public void cancelUpdateAll() {
+        if (mUpdateAllBatch == null) return;
+        mUpdateAllBatch.cancelled = true;
+        for (String filename : new ArrayList<>(mUpdateAllBatch.remaining)) {
+            FormatDownloadScheduler.Task task = mActiveDownloads.get(filename);
+            if (task != null) task.cancel();
+        }
+    }
+
+    /**
+     * Cancels all downloads and releases all background threads.  Nothing is passed to the listener
+     * after this, and the manager can't be used again.  This must be called from the main thread.
+     */
+    public void shutdown() {
+        mShutDown = true;
+        mUpdateAllBatch = null;
+        if (mDownloadScheduler != null) mDownloadScheduler.shutdown();
+        if (mExecutorService != null) mExecutorService.shutdownNow();
+        if (mVersionCheckExecutor != null) mVersionCheckExecutor.shutdownNow();
+    }
+
+    /**
+     * @return <code>true</code> if an "update all" batch is running
+     */
+    public boolean isUpdatingAll() {
+        return mUpdateAllBatch != null;
     }
 
     //******************************************************************************************
@@ -438,32 +729,171 @@ public class DebateFormatDownloadManager {
     private void initialiseThreads() {
         if (mExecutorService == null)
             mExecutorService = Executors.newSingleThreadExecutor();
+        if (mDownloadScheduler == null)
+            mDownloadScheduler = new FormatDownloadScheduler();
+        if (mVersionCheckExecutor == null)
+            mVersionCheckExecutor = Executors.newFixedThreadPool(VERSION_CHECK_THREADS);
         if (mMainThreadHandler == null)
             mMainThreadHandler = HandlerCompat.createAsync(Looper.getMainLooper());
     }
 
     /**
-     * Replaces <code>mEntries</code> with <code>newEntries</code>, and notifies the binder that the
+     * Runs something on the main thread, unless the manager has been shut down by then.
+     */
+    private void postToMainThread(Runnable runnable) {
+        mMainThreadHandler.post(() -> {
+            if (!mShutDown) runnable.run();
+        });
+    }
+
+    /**
+     * Tidies up after a download has finished, successfully or otherwise, and updates the batch if
+     * the download was part of one. Must be run on the main thread.
+     */
+    private void onDownloadFinished(DownloadableFormatEntry entry, boolean succeeded) {
+        mActiveDownloads.remove(entry.filename);
+        Long startTime = mDownloadStartTimes.remove(entry.filename);
+
+        // The list might have been refreshed while the file was downloading, in which case the
+        // entry being shown isn't the one the download started with
+        DownloadableFormatEntry current = findEntry(entry.filename);
+        if (current != null && current != entry) current.state = entry.state;
+        mListener.notifyEntryChanged((current != null) ? current : entry);
+
+        UpdateAllBatch batch = mUpdateAllBatch;
+        if (batch == null || !batch.remaining.remove(entry.filename)) return;
+        if (succeeded) batch.succeeded++;
+        else batch.failed++;
+        if (startTime != null) batch.latencies.add(SystemClock.elapsedRealtime() - startTime);
+
+        if (batch.remaining.isEmpty()) {
+            mUpdateAllBatch = null;
+            logBatchTimings(batch);
+            mListener.notifyUpdateAllFinished(batch.succeeded, batch.total, batch.cancelled);
+        } else {
+            mListener.notifyUpdateAllProgress(batch.finished(), batch.total);
+        }
+    }
+
+    /**
+     * Reports an error getting the list. If the list from last time is already being shown, it's
+     * left there, and the user is just told that it might be out of date.
+     *
+     * @param showingCachedList whether the list from last time is being shown
+     * @param message           a message describing the error
+     * @param notifier          what to do if the list from last time isn't being shown
+     */
+    private void postListError(boolean showingCachedList, String message, Runnable notifier) {
+        if (showingCachedList)
+            postToMainThread(() -> mListener.notifyCachedListNotRefreshed(message));
+        else
+            postToMainThread(notifier);
+    }
+
+    /**
+     * Logs how long an "update all" batch took, including the median and tail latencies of its
+     * downloads (from when each was requested, so including time spent waiting for a turn), so
+     * that changes to the download pipeline can be measured.
+     */
+    private void logBatchTimings(UpdateAllBatch batch) {
+        long elapsed = SystemClock.elapsedRealtime() - batch.startTime;
+        ArrayList<Long> latencies = new ArrayList<>(batch.latencies);
+        if (latencies.isEmpty()) return;
+        Collections.sort(latencies);
+        Log.i(TAG, String.format(Locale.ROOT,
+                "Update all: %d of %d succeeded in %d ms (%.1f files/s); latency p50 %d ms, p95 %d ms, p99 %d ms, max %d ms",
+                batch.succeeded, batch.total, elapsed, batch.finished() * 1000.0 / Math.max(elapsed, 1),
+                getPercentile(latencies, 50), getPercentile(latencies, 95), getPercentile(latencies, 99),
+                latencies.get(latencies.size() - 1)));
+    }
+
+    /**
+     * @param sorted a non-empty, sorted list
+     * @param percentile between 0 and 100
+     * @return the given percentile of the list, using the nearest-rank method
+     */
+    private static long getPercentile(List<Long> sorted, int percentile) {
+        int rank = (int) Math.ceil(percentile / 100.0 * sorted.size());
+        return sorted.get(Math.max(rank, 1) - 1);
+    }
+
+    private boolean isInUpdateAllBatch(DownloadableFormatEntry entry) {
+        return mUpdateAllBatch != null && mUpdateAllBatch.remaining.contains(entry.filename);
+    }
+
+    @Nullable
+    private DownloadableFormatEntry findEntry(String filename) {
+        for (DownloadableFormatEntry entry : mEntries)
+            if (entry.filename.equals(filename)) return entry;
+        return null;
+    }
+
+    /**
+     * Empties <code>mEntries</code>, ready for entries to be inserted as they're downloaded, and
+     * notifies the listener. Must be run on the main thread.
+     */
+    private void clearEntriesAndNotify() {
+        if (mEntries.isEmpty()) return;
+        mEntries.clear();
+        mListener.notifyEntriesChanged();
+    }
+
+    /**
+     * Inserts entries into <code>mEntries</code>, keeping it sorted, and notifies the listener.
+     * Must be run on the main thread.
+     *
+     * @param entries the new entries
+     */
+    private void insertEntriesSorted(List<DownloadableFormatEntry> entries) {
+        for (DownloadableFormatEntry entry : entries) {
+            int index = Collections.binarySearch(mEntries, entry);
+            if (index < 0) index = -index - 1;
+            mEntries.add(index, entry);
+        }
+        mListener.notifyEntriesChanged();
+    }
+
+    /**
+     * Replaces <code>mEntries</code> with <code>newEntries</code>, and notifies the listener that the
      * data has changed. Must be run on the main thread.
      *
+     * <p>Entries that were already in the list stay expanded or collapsed as they were, and stay
+     * in progress if they're being downloaded, so that if nothing has changed on the server,
+     * nothing changes on the screen.</p>
+     *
      * @param newEntries the new entries
      */
     private void replaceEntriesAndNotify(List<DownloadableFormatEntry> newEntries) {
-        int originalSize = mEntries.size();
+        HashMap<String, DownloadableFormatEntry> oldEntries = new HashMap<>();
+        for (DownloadableFormatEntry entry : mEntries)
+            oldEntries.put(entry.filename, entry);
+
         mEntries.clear();
-        mEntries.addAll(newEntries);
-        mBinder.notifyAdapterItemsReplaced(originalSize, newEntries.size());
+        for (DownloadableFormatEntry entry : newEntries) {
+            DownloadableFormatEntry oldEntry = oldEntries.get(entry.filename);
+            if (oldEntry != null) entry.expanded = oldEntry.expanded;
+            if (mActiveDownloads.containsKey(entry.filename))
+                entry.state = DownloadableFormatEntry.DownloadState.DOWNLOAD_IN_PROGRESS;
+            mEntries.add(entry);
+        }
+        mListener.notifyAdapterItemsReplaced();
     }
 
     /**
      * Downloads the file represented by a {@link DownloadableFormatEntry}. This accesses the
      * network, so it must be run on a background thread. It also checks that the URL host matches
-     * that of where the format came from.
+     * that of where the format came from; this is checked again every time the download is tried.
+     *
+     * <p>If the list gives the size or SHA-256 hash of the file, the download is checked against
+     * them before it replaces the existing file, and thrown away if it doesn't match. If the list
+     * gives the hash, an interrupted download is resumed from where it left off; the hash is what
+     * makes this safe, since it catches the case where the file changed on the server in between.</p>
      *
      * @param entry a {@link DownloadableFormatEntry}
      */
     private void synchronousDownloadFile(DownloadableFormatEntry entry) throws IOException {
         Log.i(TAG, "Downloading file from server: " + entry.filename);
+        long startTime = SystemClock.elapsedRealtime();
 
         URL url = new URL(entry.url);
         Log.d(TAG, "url: " + url);
@@ -472,40 +902,230 @@ public class DebateFormatDownloadManager {
             throw new MalformedURLException(message);
         }
 
-        URLConnection connection = url.openConnection();
-        InputStream in = connection.getInputStream();
+        // Only ask the server whether the file has changed if the file we have is the one it sent
+        // last time; if the user has changed or deleted it, we need the whole file again
+        FormatsHttpCache.Entry cached = mHttpCache.lookup(url);
+        if (cached != null && (cached.sha256 == null || !cached.sha256.equals(mFilesManager.getSha256(entry.filename))))
+            cached = null;
+
+        long resumeFrom = 0;
+        if (entry.sha256 != null) resumeFrom = mFilesManager.getPartialLength(entry.filename);
+        else mFilesManager.discardPartial(entry.filename);
 
-        mFilesManager.copy(in, entry.filename);
+        URLConnection connection = mHttpCache.openConditional(url, cached);
+        if (resumeFrom > 0) {
+            connection.setRequestProperty("Range", "bytes=" + resumeFrom + "-");
+            // Ranges count bytes as sent, so the response mustn't be compressed
+            connection.setRequestProperty("Accept-Encoding", "identity");
+        }
+        if (FormatsHttpCache.isNotModified(connection)) {
+            Log.i(TAG, entry.filename + " not modified since last download");
+            mFilesManager.discardPartial(entry.filename);
+            return;
+        }
+
+        boolean append = false;
+        if (resumeFrom > 0 && connection instanceof HttpURLConnection) {
+            int responseCode = ((HttpURLConnection) connection).getResponseCode();
+            if (responseCode == HttpURLConnection.HTTP_PARTIAL) {
+                String contentRange = connection.getHeaderField("Content-Range");
+                if (contentRange == null || !contentRange.startsWith("bytes " + resumeFrom + "-")) {
+                    mFilesManager.discardPartial(entry.filename);
+                    throw new IOException("Unexpected Content-Range: " + contentRange);
+                }
+                append = true;
+            } else if (responseCode == HTTP_RANGE_NOT_SATISFIABLE) {
+                // What we have is probably from a different version; try again from the start
+                mFilesManager.discardPartial(entry.filename);
+                throw new IOException("Couldn't resume " + entry.filename);
+            }
+            Log.i(TAG, (append) ? "Resuming " + entry.filename + " from byte " + resumeFrom
+                    : "Server can't resume " + entry.filename + ", starting again");
+        }
+
+        FormatXmlFilesManager.StagedFile staged;
+        try (InputStream in = connection.getInputStream()) {
+            staged = mFilesManager.stagePartial(in, entry.filename, append);
+        }
+
+        if ((entry.size >= 0 && staged.byteCount != entry.size)
+                || (entry.sha256 != null && !entry.sha256.equals(staged.sha256))) {
+            Log.e(TAG, String.format("%s doesn't match the list: got %d bytes, hash %s", entry.filename,
+                    staged.byteCount, staged.sha256));
+            mFilesManager.discard(staged);
+            throw new IOException(mContext.getString(R.string.formatDownloader_integrityError, entry.filename));
+        }
+
+        mFilesManager.commit(staged, entry.filename);
+        mHttpCache.putValidators(url, connection, staged.sha256);
+
+        long elapsed = SystemClock.elapsedRealtime() - startTime;
+        long received = staged.byteCount - ((append) ? resumeFrom : 0);
+        Log.i(TAG, String.format(Locale.ROOT, "Downloaded %s: %d bytes in %d ms (%.1f kB/s)", entry.filename,
+                received, elapsed, received / (double) Math.max(elapsed, 1)));
     }
 
     /**
-     * Downloads the list of formats from the server. This accesses the network, so it must be run
-     * on a background thread. The list it returns is unmodifiable, to try to protect against
-     * accidental threading errors.
+     * Loads the list of formats saved the last time it was downloaded, without accessing the
+     * network. This does file I/O, so it must be run on a background thread.
+     *
+     * @return the list, or <code>null</code> if there isn't a saved list
      */
-    private List<DownloadableFormatEntry> synchronousDownloadList()
+    @Nullable
+    private List<DownloadableFormatEntry> synchronousLoadCachedList()
+            throws IOException, IllegalStateException, NumberFormatException {
+        FormatsHttpCache.Entry cached = mHttpCache.lookup(getListUrl());
+        if (cached == null || cached.body == null) return null;
+        Log.i(TAG, "Loading list saved from last time");
+
+        List<DownloadableFormatEntry> parsed = recallParsedList(cached.body);
+        if (parsed == null) {
+            try (InputStream in = new FileInputStream(cached.body)) {
+                parsed = parseList(in, false);
+            }
+            rememberParsedList(cached.body, parsed);
+        }
+        return Collections.unmodifiableList(prepareEntries(parsed));
+    }
+
+    /**
+     * Downloads the list of formats from the server, and posts it to the main thread to replace
+     * the current list. This accesses the network, so it must be run on a background thread.
+     *
+     * <p>If the list from last time isn't being shown, entries are shown as they're downloaded,
+     * rather than waiting for the whole list. Otherwise, the list from last time stays up until
+     * the new list is ready.</p>
+     *
+     * @param haveCachedList <code>true</code> if the list from last time is being shown, in which
+     *                       case the server is only asked whether it has changed
+     * @return <code>false</code> if the list hasn't changed since last time, <code>true</code>
+     * otherwise
+     */
+    private boolean synchronousDownloadList(boolean haveCachedList)
             throws IOException, IllegalStateException, NumberFormatException {
         Log.i(TAG, "Downloading list from server");
+        long startTime = SystemClock.elapsedRealtime();
 
         URL url = getListUrl();
-        URLConnection connection = url.openConnection();
-        InputStream in = connection.getInputStream();
-        InputStreamReader isr = new InputStreamReader(in);
+        FormatsHttpCache.Entry cached = (haveCachedList) ? mHttpCache.lookup(url) : null;
+        URLConnection connection = mHttpCache.openConditional(url, cached);
+        if (FormatsHttpCache.isNotModified(connection)) return false;
+
+        boolean stream = !haveCachedList;
+        if (stream) postToMainThread(this::clearEntriesAndNotify);
+
+        List<DownloadableFormatEntry> parsed;
+        try (FormatsHttpCache.Recorder recorder = mHttpCache.record(url, connection)) {
+            parsed = parseList(recorder, stream);
+            File body = recorder.commit();
+            rememberParsedList(body, parsed);
+        }
+
+        if (stream) {
+            postToMainThread(mListener::notifyAdapterItemsReplaced);
+        } else {
+            List<DownloadableFormatEntry> entries = Collections.unmodifiableList(prepareEntries(parsed));
+            postToMainThread(() -> replaceEntriesAndNotify(entries));
+        }
+        Log.i(TAG, String.format(Locale.ROOT, "Downloaded list of %d formats in %d ms", parsed.size(),
+                SystemClock.elapsedRealtime() - startTime));
+        return true;
+    }
+
+    /**
+     * Parses a list of formats. The stream is read, but not closed.
+     *
+     * <p>If <code>stream</code> is <code>true</code>, entries are passed on in batches as they're
+     * parsed: each batch has its local versions checked on {@link #mVersionCheckExecutor}, while
+     * parsing continues, and is then posted to the main thread to be inserted into the list. This
+     * method doesn't return until every batch has been posted.</p>
+     *
+     * @param in     the list
+     * @param stream whether to insert entries into the list as they're parsed
+     * @return all of the entries in the list, sorted but not checked for updates, for use as a
+     * template for {@link #prepareEntries(List)}
+     */
+    @NonNull
+    private List<DownloadableFormatEntry> parseList(InputStream in, boolean stream)
+            throws IOException, IllegalStateException, NumberFormatException {
+        ArrayList<Future<?>> batchChecks = new ArrayList<>();
+        DownloadableFormatListBuilder.BatchListener batchListener = null;
+        if (stream) {
+            batchListener = (batch) -> batchChecks.add(mVersionCheckExecutor.submit(() -> {
+                List<DownloadableFormatEntry> entries = prepareEntries(batch);
+                postToMainThread(() -> insertEntriesSorted(entries));
+            }));
+        }
+
+        DownloadableFormatListBuilder listBuilder = new DownloadableFormatListBuilder(batchListener);
+        List<DownloadableFormatEntry> parsed;
 
-        DownloadableFormatListBuilder listBuilder = new DownloadableFormatListBuilder();
-        List<DownloadableFormatEntry> entries;
+        LanguageChooser langChooser = LanguageChooser.getInstance();
+        int hitsBefore = langChooser.getCacheHits();
+        int missesBefore = langChooser.getCacheMisses();
 
-        try (JsonReader reader = new JsonReader(isr)) {
-            entries = listBuilder.buildListFromJson(reader);
+        // The reader isn't closed, since that would close the stream
+        JsonReader reader = new JsonReader(new InputStreamReader(in));
+        parsed = listBuilder.buildListFromJson(reader);
+
+        Log.d(TAG, "Language chooser: " + (langChooser.getCacheHits() - hitsBefore) + " hits, "
+                + (langChooser.getCacheMisses() - missesBefore) + " misses for " + parsed.size() + " entries");
+
+        for (Future<?> batchCheck : batchChecks) {
+            try {
+                batchCheck.get();
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+                throw new IOException(cause);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while checking for updates");
+            }
         }
 
-        // Check for available updates
+        Collections.sort(parsed);
+        return parsed;
+    }
+
+    /**
+     * Copies entries from a parsed list, and checks each one for available updates. The parsed
+     * list is left alone, so that it can be used again.
+     *
+     * @param template entries from {@link #parseList(InputStream, boolean)}
+     * @return a new, sorted list of entries
+     */
+    @NonNull
+    private List<DownloadableFormatEntry> prepareEntries(List<DownloadableFormatEntry> template) {
+        ArrayList<DownloadableFormatEntry> entries = new ArrayList<>(template.size());
+        for (DownloadableFormatEntry entry : template)
+            entries.add(new DownloadableFormatEntry(entry));
+
+        // Check for available updates. Extractors aren't thread-safe, so each call gets its own.
         DebateFormatFieldExtractor versionExtractor = new DebateFormatFieldExtractor(mContext, R.string.xml2elemName_version);
         for (DownloadableFormatEntry entry : entries)
             entry.checkForExistingFile(mFilesManager, versionExtractor);
 
         Collections.sort(entries);
-        return Collections.unmodifiableList(entries);
+        return entries;
+    }
+
+    @Nullable
+    private static List<DownloadableFormatEntry> recallParsedList(File body) {
+        synchronized (DebateFormatDownloadManager.class) {
+            return (getParsedListKey(body).equals(sParsedListKey)) ? sParsedList : null;
+        }
+    }
+
+    private static void rememberParsedList(File body, List<DownloadableFormatEntry> parsed) {
+        synchronized (DebateFormatDownloadManager.class) {
+            sParsedListKey = getParsedListKey(body);
+            sParsedList = parsed;
+        }
+    }
+
+    private static String getParsedListKey(File body) {
+        return body.getPath() + ":" + body.length() + ":" + body.lastModified();
     }
 
     private boolean verifyHostMatch(URL url) throws MalformedURLException {
@@ -0,0 +1,276 @@
+/*
+ * Copyright (C) 2026 Chuan-Zheng Lee
+ *
+ * This file is part of the Debatekeeper app, which is licensed under the GNU
+ * General Public Licence version 3 (GPLv3).  You can redistribute and/or modify
+ * it under the terms of the GPLv3, and you must not use this file except in
+ * compliance with the GPLv3.
+ *
+ * This app is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE.  See the GNU General Public Licence for more details.
+ *
+ * You should have received a copy of the GNU General Public Licence along with
+ * this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.czlee.debatekeeper;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.core.os.HandlerCompat;
+
+import net.czlee.debatekeeper.debateformat.DebateFormat;
+import net.czlee.debatekeeper.debateformat.DebateFormatBuilderFromXml;
+import net.czlee.debatekeeper.debateformat.DebateFormatBuilderRegistry;
+import net.czlee.debatekeeper.debateformat.DebateFormatFootprint;
+
+import org.xml.sax.SAXException;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Loads debate formats from XML files on a background thread, so that file I/O and XML parsing
+ * don't hold up the main thread.  Only one load is active at a time: starting a new load cancels
+ * the previous one, and the listener for a superseded load is never called.
+ *
+ * @author Chuan-Zheng Lee
+ * @since 2026-10-19
+ */
+class DebateFormatLoader {
+
+    private static final String TAG = "DebateFormatLoader";
+
+    private final Context mContext;
+    private final DebateFormatBuilderRegistry mBuilderRegistry;
+    private ExecutorService mExecutorService;
+    private Handler mMainThreadHandler;
+    private Future<?> mCurrentLoad = null;
+    private int mGeneration = 0;  // accessed only on the main thread
+
+    //******************************************************************************************
+    // Public classes
+    //******************************************************************************************
+
+    interface LoadListener {
+        /**
+         * Called on the main thread when a load finishes, unless it was cancelled or superseded.
+         * @param result the {@link LoadResult}
+         */
+        void onLoadFinished(@NonNull LoadResult result);
+    }
+
+    /**
+     * Passive data class holding the outcome of a load.  If there was a fatal error, the debate
+     * format is <code>null</code> and the error message is human-readable (possibly containing
+     * HTML) and can be displayed to the user.
+     */
+    static class LoadResult {
+        @NonNull final String filename;
+        @Nullable DebateFormat debateFormat = null;
+        @Nullable String errorMessage = null;
+        @Nullable List<String> errorLog = null;
+        @Nullable String schemaVersion = null;
+        @Nullable String supportedSchemaVersion = null;
+        @Nullable String contentHash = null;
+        boolean schemaTooNew = false;
+
+        LoadResult(@NonNull String filename) {
+            this.filename = filename;
+        }
+
+        boolean isSuccessful() {
+            return debateFormat != null;
+        }
+    }
+
+    //******************************************************************************************
+    // Constructor
+    //******************************************************************************************
+
+    DebateFormatLoader(Context context) {
+        mContext = context.getApplicationContext();
+        mBuilderRegistry = new DebateFormatBuilderRegistry(mContext);
+    }
+
+    //******************************************************************************************
+    // Public methods
+    //******************************************************************************************
+
+    /**
+     * @return the {@link DebateFormatBuilderRegistry} used to choose builders, so that other
+     * builders can be registered
+     */
+    @NonNull
+    DebateFormatBuilderRegistry getBuilderRegistry() {
+        return mBuilderRegistry;
+    }
+
+    /**
+     * Starts loading the given file on a background thread, cancelling any load already in
+     * progress.  This must be called from the main thread.
+     *
+     * @param filename the name of the debate format XML file
+     * @param listener a {@link LoadListener}, called on the main thread when the load finishes
+     */
+    void load(@NonNull String filename, @NonNull LoadListener listener) {
+        initialiseThreads();
+        cancel();
+        final int generation = mGeneration;
+        Log.d(TAG, "loading " + filename);
+        mCurrentLoad = mExecutorService.submit(() -> {
+            LoadResult result = synchronousLoad(filename);
+            if (Thread.currentThread().isInterrupted()) return;
+            mMainThreadHandler.post(() -> {
+                if (generation != mGeneration) {
+                    Log.d(TAG, "discarding superseded load of " + filename);
+                    return;
+                }
+                mCurrentLoad = null;
+                listener.onLoadFinished(result);
+            });
+        });
+    }
+
+    /**
+     * Cancels the load in progress, if there is one.  Its listener will not be called.  This must
+     * be called from the main thread.
+     */
+    void cancel() {
+        mGeneration++;
+        if (mCurrentLoad != null) {
+            mCurrentLoad.cancel(true);
+            mCurrentLoad = null;
+        }
+    }
+
+    /**
+     * @return <code>true</code> if a load is in progress, <code>false</code> otherwise
+     */
+    boolean isLoading() {
+        return mCurrentLoad != null;
+    }
+
+    /**
+     * Cancels any load in progress and releases the background thread.
+     */
+    void shutdown() {
+        cancel();
+        if (mExecutorService != null) {
+            mExecutorService.shutdownNow();
+            mExecutorService = null;
+        }
+    }
+
+    //******************************************************************************************
+    // Private methods
+    //******************************************************************************************
+
+    private void initialiseThreads() {
+        if (mExecutorService == null)
+            mExecutorService = Executors.newSingleThreadExecutor();
+        if (mMainThreadHandler == null)
+            mMainThreadHandler = HandlerCompat.createAsync(Looper.getMainLooper());
+    }
+
+    /**
+     * Builds the debate format from the given file.  This does file I/O and XML parsing, so it
+     * must be run on a background thread.
+     *
+     * @param filename the name of the debate format XML file
+     * @return a {@link LoadResult}; if there was a fatal error, the error message will be set and
+     * the debate format will be <code>null</code>. A fatal error might be:
+     * <ul>
+     * <li>That the file could not be found</li>
+     * <li>That the schema version is outdated</li>
+     * <li>A problem parsing the XML file</li>
+     * <li>That there were no speeches in this debate format</li>
+     * </ul>
+     */
+    @NonNull
+    private LoadResult synchronousLoad(@NonNull String filename) {
+        LoadResult result = new LoadResult(filename);
+        FormatXmlFilesManager filesManager = FormatXmlFilesManager.getInstance(mContext);
+        DebateFormatBuilderFromXml dfbfx;
+        DebateFormat df;
+
+        InputStream is;
+        try {
+            is = new BufferedInputStream(filesManager.open(filename));
+        } catch (IOException e) {
+            result.errorMessage = mContext.getString(R.string.debateLoadError_cannotFind);
+            return result;
+        }
+
+        try {
+            // Check the schema version before building anything, so that outdated files can be
+            // rejected cheaply.  If it can't be found this way, the builder will find out anyway.
+            String sniffedVersion = mBuilderRegistry.sniffSchemaVersion(is);
+            if (mBuilderRegistry.isSchemaOutdated(sniffedVersion)) {
+                Log.i(TAG, "schema " + sniffedVersion + " outdated, not building " + filename);
+                result.schemaVersion = sniffedVersion;
+                result.errorMessage = mContext.getString(R.string.debateLoadError_schemaOutdated);
+                return result;
+            }
+
+            dfbfx = mBuilderRegistry.createBuilder(sniffedVersion);
+            df = dfbfx.buildDebateFromXml(is);
+        } catch (IOException e) {
+            result.errorMessage = mContext.getString(R.string.debateLoadError_cannotRead);
+            return result;
+        } catch (SAXException e) {
+            Log.e(TAG, "bad xml");
+            result.errorMessage = mContext.getString(R.string.debateLoadError_badXml, e.getLocalizedMessage());
+            return result;
+        } finally {
+            try {
+                is.close();
+            } catch (IOException e) {
+                Log.e(TAG, "error closing " + filename);
+            }
+        }
+
+        result.schemaVersion = dfbfx.getSchemaVersion();
+        result.supportedSchemaVersion = dfbfx.getSupportedSchemaVersion();
+        result.schemaTooNew = dfbfx.isSchemaTooNew();
+        result.errorLog = dfbfx.getErrorLog();
+
+        if (dfbfx.isSchemaOutdated()) {
+            result.errorMessage = mContext.getString(R.string.debateLoadError_schemaOutdated);
+            return result;
+        }
+
+        if (df.numberOfSpeeches() == 0) {
+            result.errorMessage = mContext.getString(R.string.debateLoadError_noSpeeches);
+            return result;
+        }
+
+        if (dfbfx.hasErrors()) {
+            StringBuilder errorLogItems = new StringBuilder();
+            for (String error : result.errorLog) {
+                errorLogItems.append("• ");
+                errorLogItems.append(error);
+                errorLogItems.append("<br />");
+            }
+            result.errorMessage = mContext.getString(R.string.debateLoadError_generalErrors, errorLogItems.toString());
+            return result;
+        }
+
+        Log.d(TAG, "loaded " + filename + ": " + DebateFormatFootprint.measure(df));
+        result.debateFormat = df;
+        result.contentHash = filesManager.getSha256(filename);
+        return result;
+    }
+
+}
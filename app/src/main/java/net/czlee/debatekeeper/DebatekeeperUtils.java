@@ -22,9 +22,12 @@ import android.net.Uri;
 import android.provider.MediaStore;
 import android.util.Log;
 
+import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
 import java.io.File;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 
 /**
  * Utility functions that are used by more than one other class.
@@ -136,4 +139,33 @@ public class DebatekeeperUtils {
 
         return filename;
     }
+
+    /**
+     * Returns a new SHA-256 {@link MessageDigest}.  Every Android device has SHA-256, so this
+     * doesn't make callers deal with {@link NoSuchAlgorithmException}.
+     *
+     * @return a new SHA-256 {@link MessageDigest}
+     */
+    @NonNull
+    public static MessageDigest newSha256Digest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * Converts bytes (usually a hash) to a lowercase hexadecimal String, two digits per byte.
+     *
+     * @param bytes the bytes to convert
+     * @return the String
+     */
+    @NonNull
+    public static String toHexString(byte[] bytes) {
+        StringBuilder builder = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes)
+            builder.append(String.format("%02x", b));
+        return builder.toString();
+    }
 }
@@ -24,6 +24,7 @@ import android.app.Activity;
 import android.app.AlertDialog;
 import android.app.Dialog;
 import android.content.BroadcastReceiver;
+import android.content.ClipData;
 import android.content.ComponentName;
 import android.content.Context;
 import android.content.DialogInterface;
@@ -68,6 +69,7 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.appcompat.widget.Toolbar;
 import androidx.core.content.ContextCompat;
+import androidx.core.content.FileProvider;
 import androidx.fragment.app.DialogFragment;
 import androidx.fragment.app.Fragment;
 import androidx.fragment.app.FragmentActivity;
@@ -87,14 +89,12 @@ import net.czlee.debatekeeper.databinding.DebateTimerDisplayBinding;
 import net.czlee.debatekeeper.databinding.DialogWithDontShowBinding;
 import net.czlee.debatekeeper.databinding.FragmentDebateBinding;
 import net.czlee.debatekeeper.debateformat.BellInfo;
-import net.czlee.debatekeeper.debateformat.DebateFormat;
-import net.czlee.debatekeeper.debateformat.DebateFormatBuilderFromXml;
-import net.czlee.debatekeeper.debateformat.DebateFormatBuilderFromXmlForSchema2;
 import net.czlee.debatekeeper.debateformat.DebateFormatFieldExtractor;
 import net.czlee.debatekeeper.debateformat.DebatePhaseFormat;
 import net.czlee.debatekeeper.debateformat.PeriodInfo;
 import net.czlee.debatekeeper.debateformat.PrepTimeFormat;
 import net.czlee.debatekeeper.debateformat.SpeechFormat;
+import net.czlee.debatekeeper.debatemanager.DebateHistoryExporter;
 import net.czlee.debatekeeper.debatemanager.DebateManager;
 
 import org.xml.sax.SAXException;
@@ -132,6 +132,8 @@ public class DebatingTimerFragment extends Fragment {
 
     private DebateManager    mDebateManager;
     private Spanned          mDebateLoadError = null;
+    private DebateFormatLoader mDebateFormatLoader;
+    private HistoryExportRunner mHistoryExportRunner;
     private Bundle           mLastStateBundle;
     private boolean          mIsEditingTime = false;
     private boolean          mIsOpeningFormatChooser = false;
@@ -726,6 +728,10 @@ public class DebatingTimerFragment extends Fragment {
                 if (success) applyPreferences(); // this will update mBellsEnabled
                 return true;
 
+            } else if (itemId == R.id.timer_menuItem_exportHistory) {
+                showExportHistoryDialog();
+                return true;
+
             }
             else return false;
         }
@@ -827,19 +833,6 @@ public class DebatingTimerFragment extends Fragment {
         }
     }
 
-    private static class FatalXmlError extends Exception {
-
-        private static final long serialVersionUID = -1774973645180296278L;
-
-        FatalXmlError(String detailMessage) {
-            super(detailMessage);
-        }
-
-        FatalXmlError(String detailMessage, Throwable throwable) {
-            super(detailMessage, throwable);
-        }
-    }
-
     private class FormatChooserFragmentResultListener implements FragmentResultListener {
 
         @Override
@@ -855,6 +848,7 @@ public class DebatingTimerFragment extends Fragment {
             } else {
                 Log.e(TAG, "File name returned was null");
                 setXmlFileName(null);
+                mDebateFormatLoader.cancel();
                 if (mServiceBinder != null) mServiceBinder.releaseDebateManager();
                 mDebateManager = null;
                 updateGui();
@@ -868,7 +862,7 @@ public class DebatingTimerFragment extends Fragment {
 
         @Override
         public Uri[] createBeamUris(NfcEvent event) {
-            FormatXmlFilesManager filesManager = new FormatXmlFilesManager(requireActivity());
+            FormatXmlFilesManager filesManager = FormatXmlFilesManager.getInstance(requireActivity());
             if (!filesManager.exists(mFormatXmlFileName)) {
                 Log.e(TAG, "createBeamUris: Tried to share non-existent file");
                 showSnackbar(Snackbar.LENGTH_LONG, R.string.timer_snackbar_beam_error_existence);
@@ -928,6 +922,9 @@ public class DebatingTimerFragment extends Fragment {
         SharedPreferences prefs = activity.getPreferences(MODE_PRIVATE);
         mFormatXmlFileName = prefs.getString(PREFERENCE_XML_FILE_NAME, null);
 
+        mDebateFormatLoader = new DebateFormatLoader(activity);
+        mHistoryExportRunner = new HistoryExportRunner(activity);
+
         // Bind to the timer service
         Intent serviceIntent = new Intent(activity, DebatingTimerService.class);
         activity.bindService(serviceIntent, mServiceConnection, Context.BIND_AUTO_CREATE);
@@ -980,6 +977,9 @@ public class DebatingTimerFragment extends Fragment {
     public void onDestroy() {
         super.onDestroy();
 
+        mDebateFormatLoader.shutdown();
+        mHistoryExportRunner.shutdown();
+
         Context context = requireContext();
         context.unbindService(mServiceConnection);
     }
@@ -1170,81 +1170,13 @@ public class DebatingTimerFragment extends Fragment {
         mDebateManager.setPrepTimeBellsManager(ptbm);
     }
 
-    /**
-     * Builds a <code>DebateFormat</code> from a specified XML file. Shows a <code>Dialog</code> if
-     * the debate format builder logged non-fatal errors.
-     * @param filename the file name of the XML file
-     * @return the built <code>DebateFormat</code>
-     * @throws FatalXmlError if there was any problem, which could include:
-     * <ul><li>A problem opening or reading the file</li>
-     * <li>A problem parsing the XML file</li>
-     * <li>That there were no speeches in this debate format</li>
-     * </ul>
-     * The message of the exception will be human-readable and can be displayed in a dialogue box.
-     */
-    private DebateFormat buildDebateFromXml(String filename, boolean showDialogs) throws FatalXmlError {
-
-        DebateFormatBuilderFromXml dfbfx;
-        Context context = requireContext();
-
-        InputStream is;
-        DebateFormat df;
-        FormatXmlFilesManager filesManager = new FormatXmlFilesManager(context);
-
-        try {
-            is = filesManager.open(filename);
-        } catch (IOException e) {
-            throw new FatalXmlError(getString(R.string.debateLoadError_cannotFind), e);
-        }
-
-        dfbfx = new DebateFormatBuilderFromXmlForSchema2(context);
-
-        try {
-            df = dfbfx.buildDebateFromXml(is);
-        } catch (IOException e) {
-            throw new FatalXmlError(getString(R.string.debateLoadError_cannotRead), e);
-        } catch (SAXException e) {
-            Log.e(TAG, "bad xml");
-            throw new FatalXmlError(getString(
-                    R.string.debateLoadError_badXml, e.getLocalizedMessage()), e);
-        }
-
-        if (dfbfx.isSchemaOutdated())
-            throw new FatalXmlError(getString(R.string.debateLoadError_schemaOutdated));
-
-        if (showDialogs && dfbfx.isSchemaTooNew()) {
-            QueueableDialogFragment fragment = DialogSchemaTooNewFragment.newInstance(dfbfx.getSchemaVersion(), dfbfx.getSupportedSchemaVersion(), filename);
-            queueDialog(fragment, DIALOG_TAG_SCHEMA_TOO_NEW + filename);
-        }
-
-        if (df.numberOfSpeeches() == 0)
-            throw new FatalXmlError(getString(
-                    R.string.debateLoadError_noSpeeches));
-
-        if (dfbfx.hasErrors()) {
-
-            StringBuilder errorLogItems = new StringBuilder();
-            List<String> errorLog = dfbfx.getErrorLog();
-            if (errorLog != null) {
-                for (String error : errorLog) {
-                    errorLogItems.append("• ");
-                    errorLogItems.append(error);
-                    errorLogItems.append("<br />");
-                }
-            }
-            throw new FatalXmlError(getString(R.string.debateLoadError_generalErrors, errorLogItems.toString()));
-        }
-
-        return df;
-    }
-
     private void clearDebateLoadError() {
         mDebateLoadError = null;
         updateGui();
     }
 
     private void copyAssetsIfEmpty() {
-        FormatXmlFilesManager manager = new FormatXmlFilesManager(requireContext());
+        FormatXmlFilesManager manager = FormatXmlFilesManager.getInstance(requireContext());
         try {
             if (manager.isEmpty()) manager.copyAssets();
         } catch (IOException e) {
@@ -1441,7 +1373,8 @@ public class DebatingTimerFragment extends Fragment {
     }
 
     /**
-     * Imports a file that was passed in the intent that opened this activity.
+     * Imports a file that was passed in the intent that opened this activity.  If there's already
+     * a file with the same content under another name, that file is loaded instead.
      * @param filename the file name to be saved
      */
     private void importIncomingFile(String filename) {
@@ -1449,10 +1382,11 @@ public class DebatingTimerFragment extends Fragment {
         if (incoming == null) return;
         InputStream is = incoming.second;
 
-        FormatXmlFilesManager filesManager = new FormatXmlFilesManager(requireContext());
+        FormatXmlFilesManager filesManager = FormatXmlFilesManager.getInstance(requireContext());
 
+        FormatXmlFilesManager.CopyResult result;
         try {
-            filesManager.copy(is, filename);
+            result = filesManager.copyUnlessDuplicate(is, filename);
         } catch (IOException e) {
             e.printStackTrace();
             showSnackbar(Snackbar.LENGTH_LONG, R.string.importDebateFormat_snackbar_error_generic);
@@ -1460,11 +1394,15 @@ public class DebatingTimerFragment extends Fragment {
             return;
         }
 
-        showSnackbar(Snackbar.LENGTH_SHORT, R.string.importDebateFormat_snackbar_success, filename);
+        // If the user already has this file under another name, load that one instead
+        if (result.isDuplicateOf(filename))
+            showSnackbar(Snackbar.LENGTH_SHORT, R.string.importDebateFormat_snackbar_duplicate, result.filename);
+        else
+            showSnackbar(Snackbar.LENGTH_SHORT, R.string.importDebateFormat_snackbar_success, filename);
 
         // Now, load the debate
         mImportIntentHandled = true;
-        setXmlFileName(filename);
+        setXmlFileName(result.filename);
         resetDebate(true);
     }
 
@@ -1488,32 +1426,72 @@ public class DebatingTimerFragment extends Fragment {
         mDebateManager = mServiceBinder.getDebateManager();
 
         if (mDebateManager == null) {
-            Log.d(TAG, "initialiseDebate: creating debate manager");
+            Log.d(TAG, "initialiseDebate: loading debate format");
 
-            DebateFormat df;
-            try {
-                df = buildDebateFromXml(mFormatXmlFileName, showDialogs);
-            } catch (FatalXmlError e) {
-                String message = e.getLocalizedMessage();
-                setDebateLoadError(message);
-                notifyViewPagerDataSetChanged();
-                return;
-            }
+            // This cancels any load already in progress, e.g. if the user chose another format
+            // before the last one finished loading.
+            mDebateFormatLoader.load(mFormatXmlFileName, (result) -> onDebateFormatLoaded(result, showDialogs));
+            updateGui();
+            return;
+        }
+
+        Log.d(TAG, "initialiseDebate: debate manager already existed");
+        finishInitialiseDebate();
+    }
+
+    /**
+     * Called on the main thread when the debate format has been loaded by
+     * {@link #initialiseDebate(boolean)}. Creates the {@link DebateManager} (or shows the error)
+     * and finishes initialising the debate.
+     *
+     * @param result the {@link DebateFormatLoader.LoadResult}
+     * @param showDialogs whether dialogs should be shown
+     */
+    private void onDebateFormatLoaded(@NonNull DebateFormatLoader.LoadResult result, boolean showDialogs) {
+        if (!isAdded() || mServiceBinder == null || !result.filename.equals(mFormatXmlFileName)) {
+            Log.w(TAG, "onDebateFormatLoaded: no longer relevant, ignoring " + result.filename);
+            return;
+        }
+
+        if (showDialogs && result.schemaTooNew) {
+            QueueableDialogFragment fragment = DialogSchemaTooNewFragment.newInstance(
+                    result.schemaVersion, result.supportedSchemaVersion, result.filename);
+            queueDialog(fragment, DIALOG_TAG_SCHEMA_TOO_NEW + result.filename);
+        }
 
-            mDebateManager = mServiceBinder.createDebateManager(df);
+        if (!result.isSuccessful()) {
+            setDebateLoadError(result.errorMessage);
+            notifyViewPagerDataSetChanged();
+            return;
+        }
+
+        // Another debate manager might have been created while we were loading, so check again
+        mDebateManager = mServiceBinder.getDebateManager();
+        if (mDebateManager == null) {
+            mDebateManager = mServiceBinder.createDebateManager(result.debateFormat, result.filename,
+                    result.contentHash);
 
             // We only restore the state if there wasn't an existing debate, i.e. if the service
-            // wasn't already running, and if the debate format stored in the saved instance state
-            // matches the debate format we're using now.
-            if (mLastStateBundle != null) {
+            // wasn't already running.  If the process was killed mid-debate, the journal is the
+            // most recent record of the debate, so try that first.  Otherwise, restore from the
+            // saved instance state if the debate format stored in it matches the debate format
+            // we're using now.
+            if (mDebateManager.restoreFromJournal()) {
+                Log.i(TAG, "onDebateFormatLoaded: restored debate from journal");
+            } else if (mLastStateBundle != null) {
                 String xmlFileName = mLastStateBundle.getString(BUNDLE_KEY_XML_FILE_NAME);
                 if (xmlFileName != null && xmlFileName.equals(mFormatXmlFileName))
                     mDebateManager.restoreState(BUNDLE_KEY_DEBATE_MANAGER, mLastStateBundle);
             }
-        } else {
-            Log.d(TAG, "initialiseDebate: debate manager already existed");
         }
 
+        finishInitialiseDebate();
+    }
+
+    /**
+     * Finishes initialising the debate, once <code>mDebateManager</code> exists.
+     */
+    private void finishInitialiseDebate() {
         // The bundle should only ever be relevant once per activity cycle
         mLastStateBundle = null;
 
@@ -1736,6 +1714,34 @@ public class DebatingTimerFragment extends Fragment {
         editor.apply();
     }
 
+    /**
+     * Shares a file written by {@link HistoryExportRunner}, using whatever app the user chooses.
+     * @param file   the exported file
+     * @param format the {@link DebateHistoryExporter.Format} it was written in
+     */
+    private void shareExportedHistory(@NonNull File file, @NonNull DebateHistoryExporter.Format format) {
+        Uri fileUri;
+        try {
+            fileUri = FileProvider.getUriForFile(requireContext(), FormatChooserFragment.FILES_AUTHORITY, file);
+        } catch (IllegalArgumentException e) {
+            Log.e(TAG, "shareExportedHistory: tried to get file from outside allowable paths");
+            Log.e(TAG, "path was: " + file.getAbsolutePath());
+            showSnackbar(Snackbar.LENGTH_LONG, R.string.exportHistory_snackbar_error);
+            return;
+        }
+
+        Intent shareIntent = new Intent();
+        shareIntent.setAction(Intent.ACTION_SEND);
+        shareIntent.setType(format.mimeType);
+        shareIntent.putExtra(Intent.EXTRA_STREAM, fileUri);
+        shareIntent.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
+        ClipData clipData = new ClipData(file.getName(), new String[]{format.mimeType}, new ClipData.Item(fileUri));
+        shareIntent.setClipData(clipData);
+
+        Intent chooserIntent = Intent.createChooser(shareIntent, getString(R.string.exportHistory_chooserTitle));
+        startActivity(chooserIntent);
+    }
+
     private void showChangelogDialog() {
         SharedPreferences prefs = requireActivity().getPreferences(MODE_PRIVATE);
         Resources res = getResources();
@@ -1763,7 +1769,7 @@ public class DebatingTimerFragment extends Fragment {
         Context context = requireContext();
 
         DebateFormatFieldExtractor nameExtractor = new DebateFormatFieldExtractor(context, R.string.xml2elemName_name);
-        FormatXmlFilesManager filesManager = new FormatXmlFilesManager(context);
+        FormatXmlFilesManager filesManager = FormatXmlFilesManager.getInstance(context);
         boolean exists = filesManager.exists(incomingFilename);
 
         String incomingStyleName = null, existingStyleName = null;
@@ -1832,6 +1838,40 @@ public class DebatingTimerFragment extends Fragment {
         queueDialog(fragment, DIALOG_TAG_IMPORT_CONFIRM);
     }
 
+    /**
+     * Asks the user which format to export the timing history in, then exports it in the
+     * background and shares it.  The export can be cancelled from the snackbar shown while it runs.
+     */
+    private void showExportHistoryDialog() {
+        final DebateHistoryExporter.Format[] formats = {
+                DebateHistoryExporter.Format.CSV,
+                DebateHistoryExporter.Format.JSON_LINES
+        };
+        String[] labels = {
+                getString(R.string.exportHistory_format_csv),
+                getString(R.string.exportHistory_format_jsonLines)
+        };
+
+        new AlertDialog.Builder(requireContext())
+                .setTitle(R.string.exportHistory_dialog_title)
+                .setItems(labels, (dialog, which) -> {
+                    final DebateHistoryExporter.Format format = formats[which];
+                    final Snackbar progress = showSnackbar(Snackbar.LENGTH_INDEFINITE, R.string.exportHistory_snackbar_exporting);
+                    progress.setAction(R.string.exportHistory_snackbar_cancel, (v) -> mHistoryExportRunner.cancel());
+                    mHistoryExportRunner.export(format, (file, rows) -> {
+                        progress.dismiss();
+                        if (!isAdded() || getView() == null) return;
+                        if (file == null)
+                            showSnackbar(Snackbar.LENGTH_LONG, R.string.exportHistory_snackbar_error);
+                        else if (rows == 0)
+                            showSnackbar(Snackbar.LENGTH_LONG, R.string.exportHistory_snackbar_empty);
+                        else
+                            shareExportedHistory(file, format);
+                    });
+                })
+                .show();
+    }
+
     /**
      * Shows the next queued dialog if there is one, otherwise notes that there are no dialogs
      * blocking.
@@ -1871,8 +1911,9 @@ public class DebatingTimerFragment extends Fragment {
      *                    CharSequence, int)}
      * @param stringResId a resource ID for a string
      * @param formatArgs  arguments to format the string with
+     * @return the {@link Snackbar}, which has already been shown
      */
-    private void showSnackbar(int duration, int stringResId, Object... formatArgs) {
+    private Snackbar showSnackbar(int duration, int stringResId, Object... formatArgs) {
         String string = getString(stringResId, formatArgs);
         View coordinator = mViewBinding.timerCoordinator;
         Snackbar snackbar = Snackbar.make(coordinator, string, duration);
@@ -1883,6 +1924,7 @@ public class DebatingTimerFragment extends Fragment {
         TextView textView = snackbarText.findViewById(com.google.android.material.R.id.snackbar_text);
         if (textView != null) textView.setMaxLines(5);
         snackbar.show();
+        return snackbar;
     }
 
     /**
@@ -1994,11 +2036,19 @@ public class DebatingTimerFragment extends Fragment {
      */
     private void updateMainDisplay() {
 
-        if (mDebateManager == null && mDebateLoadError != null) {
+        if (mDebateManager == null && mDebateFormatLoader.isLoading()) {
+            Log.d(TAG, "no debate manager yet, setting loading view");
+            mViewPager.setVisibility(View.GONE);
+            mViewBinding.timerNoDebateLoaded.getRoot().setVisibility(View.GONE);
+            mViewBinding.timerDebateLoadError.getRoot().setVisibility(View.GONE);
+            mViewBinding.timerLoadingDebate.setVisibility(View.VISIBLE);
+
+        } else if (mDebateManager == null && mDebateLoadError != null) {
             Log.w(TAG, "no debate manager, setting error view");
             mViewPager.setVisibility(View.GONE);
             mViewBinding.timerNoDebateLoaded.getRoot().setVisibility(View.GONE);
             mViewBinding.timerDebateLoadError.getRoot().setVisibility(View.VISIBLE);
+            mViewBinding.timerLoadingDebate.setVisibility(View.GONE);
             updateDebateLoadErrorDisplay();
 
         } else if (mDebateManager == null) {
@@ -2006,11 +2056,13 @@ public class DebatingTimerFragment extends Fragment {
             mViewPager.setVisibility(View.GONE);
             mViewBinding.timerNoDebateLoaded.getRoot().setVisibility(View.VISIBLE);
             mViewBinding.timerDebateLoadError.getRoot().setVisibility(View.GONE);
+            mViewBinding.timerLoadingDebate.setVisibility(View.GONE);
 
         } else {
             mViewPager.setVisibility(View.VISIBLE);
             mViewBinding.timerNoDebateLoaded.getRoot().setVisibility(View.GONE);
             mViewBinding.timerDebateLoadError.getRoot().setVisibility(View.GONE);
+            mViewBinding.timerLoadingDebate.setVisibility(View.GONE);
 
             if (mTimerDisplay != null) {
                 updateDebateTimerDisplay(mTimerDisplay,
@@ -77,9 +77,11 @@ public class DebatingTimerService extends Service  {
         }
 
         @NonNull
-        public DebateManager createDebateManager(DebateFormat df) {
+        public DebateManager createDebateManager(DebateFormat df, @NonNull String formatFileName,
+                                                 @Nullable String formatContentHash) {
             releaseDebateManager();
-            mDebateManager = new DebateManager(DebatingTimerService.this, df, mAlertManager);
+            mDebateManager = new DebateManager(DebatingTimerService.this, df, formatFileName,
+                    formatContentHash, mAlertManager);
             mDebateManager.setBroadcastSender(new GuiUpdateBroadcastSender());
             return mDebateManager;
         }
@@ -35,6 +35,7 @@ import android.widget.TextView;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.annotation.RequiresApi;
+import androidx.appcompat.widget.SearchView;
 import androidx.appcompat.widget.Toolbar;
 import androidx.fragment.app.Fragment;
 import androidx.navigation.NavDirections;
@@ -48,6 +49,11 @@ import com.google.android.material.snackbar.Snackbar;
 
 import net.czlee.debatekeeper.databinding.FragmentDownloadFormatsBinding;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+
 /**
  * Fragment that downloads the online debate formats list and allows the user to download formats.
  */
@@ -56,6 +62,17 @@ public class DownloadFormatsFragment extends Fragment {
     FragmentDownloadFormatsBinding mViewBinding;
     DebateFormatDownloadManager mDownloadManager;
     DownloadableFormatRecyclerAdapter mRecyclerAdapter;
+    private boolean mIncomingFilenameShown = false;
+
+    // The index is built when it's first needed, and thrown away when the list changes.  Each
+    // entry's words are kept, so while the list is streaming in, rebuilding the index only has to
+    // work out the words of the new entries.
+    private final FormatSearchFilters mSearchFilters = new FormatSearchFilters();
+    private FormatSearchIndex<DebateFormatDownloadManager.DownloadableFormatEntry> mSearchIndex = null;
+    private IdentityHashMap<DebateFormatDownloadManager.DownloadableFormatEntry,
+            FormatSearchIndex.Entry<DebateFormatDownloadManager.DownloadableFormatEntry>> mSearchEntries =
+            new IdentityHashMap<>();
+    private String mSearchQuery = "";
 
     public static final String PREFERENCE_DOWNLOAD_LIST_URL = "download-list-url";
 
@@ -63,49 +80,72 @@ public class DownloadFormatsFragment extends Fragment {
     // Public classes
     //******************************************************************************************
 
-    public class DownloadBinder {
+    public class DownloadBinder implements DebateFormatDownloadManager.DownloadListener {
         /**
-         * Convenience function, runs the notifications to replace the entire dataset.
-         * @param oldCount the original number of entries
-         * @param newCount the new number of entries
+         * Called when the list has been replaced, for example, because it's been downloaded or
+         * refreshed. Only rows that actually changed are updated.
          */
-        public void notifyAdapterItemsReplaced(int oldCount, int newCount) {
-
-            // If a file name was given at the input,
-            String incomingFilename = DownloadFormatsFragmentArgs.fromBundle(getArguments()).getXmlFileName();
-            int incomingIndex = -1;
-            if (incomingFilename != null) {
-                int i = 0;
-                for (DebateFormatDownloadManager.DownloadableFormatEntry entry : mDownloadManager.getEntries()) {
-                    boolean found = entry.filename.equals(incomingFilename);
-                    entry.expanded = found;
-                    if (found) incomingIndex = i;
-                    i++;
+        @Override
+        public void notifyAdapterItemsReplaced() {
+            if (mRecyclerAdapter == null) return;
+
+            // If a file name was given at the input, expand that entry (only) the first time
+            // the list is shown, and scroll to it once it's there.  If the list was streamed in,
+            // the adapter already has these same entries, so it can't tell that they've changed
+            // just by comparing them; rows whose entries changed are refreshed after the rest.
+            String incomingFilename = null;
+            DebateFormatDownloadManager.DownloadableFormatEntry incomingEntry = null;
+            final ArrayList<DebateFormatDownloadManager.DownloadableFormatEntry> expandedChanged = new ArrayList<>();
+            if (!mIncomingFilenameShown) {
+                incomingFilename = DownloadFormatsFragmentArgs.fromBundle(getArguments()).getXmlFileName();
+                if (incomingFilename != null) {
+                    for (DebateFormatDownloadManager.DownloadableFormatEntry entry : mDownloadManager.getEntries()) {
+                        boolean found = entry.filename.equals(incomingFilename);
+                        if (entry.expanded != found) {
+                            entry.expanded = found;
+                            expandedChanged.add(entry);
+                        }
+                        if (found) incomingEntry = entry;
+                    }
+                    if (incomingEntry != null) mIncomingFilenameShown = true;
                 }
             }
 
-            if (oldCount == newCount) {
-                mRecyclerAdapter.notifyItemRangeChanged(0, newCount);
-            } else if (oldCount < newCount) {
-                mRecyclerAdapter.notifyItemRangeChanged(0, oldCount);
-                mRecyclerAdapter.notifyItemRangeInserted(oldCount, newCount - oldCount);
-            } else {
-                mRecyclerAdapter.notifyItemRangeChanged(0, newCount);
-                mRecyclerAdapter.notifyItemRangeRemoved(newCount, oldCount - newCount);
-            }
+            mSearchIndex = null;
+            final int newCount = mDownloadManager.getEntries().size();
+            final boolean showIncoming = incomingFilename != null;
+            final DebateFormatDownloadManager.DownloadableFormatEntry finalIncomingEntry = incomingEntry;
+            mRecyclerAdapter.submitEntries(getVisibleEntries(), () -> {
+                if (mViewBinding == null) return;
+                for (DebateFormatDownloadManager.DownloadableFormatEntry entry : expandedChanged) {
+                    int index = mRecyclerAdapter.indexOf(entry);
+                    if (index >= 0) mRecyclerAdapter.notifyItemChanged(index);
+                }
+                if (newCount > 0) {
+                    setViewToList();
+                } else {
+                    mViewBinding.loadingText.setText(R.string.formatDownloader_emptyList);
+                    setViewToError();
+                    return;
+                }
 
-            if (newCount > 0) {
-                setViewToList();
-            } else {
-                mViewBinding.loadingText.setText(R.string.formatDownloader_emptyList);
-                setViewToError();
-                return;
-            }
+                if (showIncoming) {
+                    int incomingIndex = mRecyclerAdapter.indexOf(finalIncomingEntry);
+                    if (incomingIndex >= 0) mViewBinding.list.scrollToPosition(incomingIndex);
+                    setExpandCollapseButton(true);
+                }
+            });
+        }
 
-            if (incomingFilename != null) {
-                if (incomingIndex >= 0) mViewBinding.list.scrollToPosition(incomingIndex);
-                setExpandCollapseButton(true);
-            }
+        /**
+         * Called when entries are inserted or removed while the list is still being downloaded.
+         */
+        @Override
+        public void notifyEntriesChanged() {
+            if (mRecyclerAdapter == null) return;
+            mSearchIndex = null;
+            mRecyclerAdapter.submitEntries(getVisibleEntries(), null);
+            if (!mDownloadManager.getEntries().isEmpty()) setViewToList();
         }
 
         @RequiresApi(api = Build.VERSION_CODES.M)
@@ -119,6 +159,7 @@ public class DownloadFormatsFragment extends Fragment {
             return caps.hasCapability(NetworkCapabilities.NET_CAPABILITY_VALIDATED);
         }
 
+        @Override
         public void notifyListDownloadError(String detailMessage) {
 
             // Check if there's no internet in general (only works at API level 23 and higher)
@@ -136,22 +177,66 @@ public class DownloadFormatsFragment extends Fragment {
             setViewToError();
         }
 
+        @Override
         public void notifyJsonParseError(String detailMessage) {
             mViewBinding.loadingText.setText(R.string.formatDownloader_jsonError);
             mViewBinding.errorDetailText.setText(detailMessage);
             setViewToError();
         }
 
+        /**
+         * Called if the list from last time is being shown, but it couldn't be checked against
+         * the server, for example, because there's no internet connection.
+         * @param detailMessage a message describing the error
+         */
+        @Override
+        public void notifyCachedListNotRefreshed(String detailMessage) {
+            if (mViewBinding == null) return;
+            showSnackbar(getString(R.string.formatDownloader_cachedListError, detailMessage));
+        }
+
+        @Override
         public void showSnackbarError(String filename, String detailMessage) {
-            String message = getString(R.string.formatDownloader_fileError, filename, detailMessage);
-            Snackbar snackbar = Snackbar.make(mViewBinding.getRoot(), message, BaseTransientBottomBar.LENGTH_LONG);
-            Resources res = getResources();
-            snackbar.setBackgroundTint(res.getColor(R.color.snackbar_background));
-            snackbar.setTextColor(res.getColor(R.color.snackbar_text));
-            View snackbarText = snackbar.getView();
-            TextView textView = snackbarText.findViewById(com.google.android.material.R.id.snackbar_text);
-            if (textView != null) textView.setMaxLines(5);
-            snackbar.show();
+            if (mViewBinding == null) return;
+            showSnackbar(getString(R.string.formatDownloader_fileError, filename, detailMessage));
+        }
+
+        /**
+         * Refreshes the row showing the given entry, for example, because its download state
+         * has changed.
+         * @param entry the entry that changed
+         */
+        @Override
+        public void notifyEntryChanged(DebateFormatDownloadManager.DownloadableFormatEntry entry) {
+            if (mRecyclerAdapter == null) return;
+            int index = mRecyclerAdapter.indexOf(entry);
+            if (index >= 0) mRecyclerAdapter.notifyItemChanged(index);
+        }
+
+        @Override
+        public void notifyUpdateAllProgress(int finished, int total) {
+            if (mViewBinding == null) return;
+            mViewBinding.toolbarDownloadFormats.setSubtitle(
+                    getString(R.string.formatDownloader_updateAll_progress, finished, total));
+            setUpdateAllButton(false);
+        }
+
+        @Override
+        public void notifyUpdateAllFinished(int succeeded, int total, boolean cancelled) {
+            if (mViewBinding == null) return;
+            mViewBinding.toolbarDownloadFormats.setSubtitle(null);
+            setUpdateAllButton(true);
+
+            String message;
+            if (total == 0)
+                message = getString(R.string.formatDownloader_updateAll_nothingToUpdate);
+            else if (cancelled)
+                message = getString(R.string.formatDownloader_updateAll_cancelled, succeeded, total);
+            else if (succeeded == total)
+                message = getString(R.string.formatDownloader_updateAll_success, total);
+            else
+                message = getString(R.string.formatDownloader_updateAll_someFailed, succeeded, total);
+            showSnackbar(message);
         }
     }
 
@@ -166,19 +251,32 @@ public class DownloadFormatsFragment extends Fragment {
             final int itemId = item.getItemId();
 
             if (itemId == R.id.formatDownloader_actionBar_expand) {
-                for (DebateFormatDownloadManager.DownloadableFormatEntry entry : mDownloadManager.getEntries()) {
-                    entry.expanded = true;
-                }
-                mRecyclerAdapter.notifyItemRangeChanged(0, mDownloadManager.getEntries().size());
+                setAllExpanded(true);
                 setExpandCollapseButton(false);
                 return true;
             } else if (itemId == R.id.formatDownloader_actionBar_collapse) {
-                for (DebateFormatDownloadManager.DownloadableFormatEntry entry : mDownloadManager.getEntries()) {
-                    entry.expanded = false;
-                }
-                mRecyclerAdapter.notifyItemRangeChanged(0, mDownloadManager.getEntries().size());
+                setAllExpanded(false);
                 setExpandCollapseButton(true);
                 return true;
+            } else if (itemId == R.id.formatDownloader_actionBar_updateAll) {
+                mDownloadManager.startUpdateAll();
+                return true;
+            } else if (itemId == R.id.formatDownloader_actionBar_cancelUpdateAll) {
+                mDownloadManager.cancelUpdateAll();
+                return true;
+            } else if (itemId == R.id.formatDownloader_actionBar_filterRegion) {
+                showFilterDialog(FormatSearchIndex.Facet.REGION);
+                return true;
+            } else if (itemId == R.id.formatDownloader_actionBar_filterLevel) {
+                showFilterDialog(FormatSearchIndex.Facet.LEVEL);
+                return true;
+            } else if (itemId == R.id.formatDownloader_actionBar_filterUsedAt) {
+                showFilterDialog(FormatSearchIndex.Facet.USED_AT);
+                return true;
+            } else if (itemId == R.id.formatDownloader_actionBar_clearFilters) {
+                mSearchFilters.clear();
+                refreshSearch();
+                return true;
             } else if (itemId == R.id.formatDownloader_actionBar_learnMore) {
                 Uri uri = Uri.parse(getString(R.string.formats_learnMoreUrl));
                 Intent intent = new Intent(Intent.ACTION_VIEW, uri);
@@ -192,6 +290,21 @@ public class DownloadFormatsFragment extends Fragment {
         }
     }
 
+    private class SearchQueryTextListener implements SearchView.OnQueryTextListener {
+
+        @Override
+        public boolean onQueryTextSubmit(String query) {
+            return false;
+        }
+
+        @Override
+        public boolean onQueryTextChange(String newText) {
+            mSearchQuery = newText;
+            refreshSearch();
+            return true;
+        }
+    }
+
     //******************************************************************************************
     // Public methods
     //******************************************************************************************
@@ -213,6 +326,11 @@ public class DownloadFormatsFragment extends Fragment {
         mViewBinding.toolbarDownloadFormats.setOnMenuItemClickListener(new DownloadFormatsMenuItemClickListener());
         mViewBinding.toolbarDownloadFormats.setNavigationOnClickListener(
                 (v) -> NavHostFragment.findNavController(this).navigateUp());
+        MenuItem searchItem = mViewBinding.toolbarDownloadFormats.getMenu().findItem(R.id.formatDownloader_actionBar_search);
+        if (searchItem != null) {
+            SearchView searchView = (SearchView) searchItem.getActionView();
+            searchView.setOnQueryTextListener(new SearchQueryTextListener());
+        }
 
         // Configure retry button
         mViewBinding.retryButton.setOnClickListener((v) -> {
@@ -236,10 +354,82 @@ public class DownloadFormatsFragment extends Fragment {
         return mViewBinding.getRoot();
     }
 
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        mDownloadManager.shutdown();
+    }
+
     //******************************************************************************************
     // Private methods
     //******************************************************************************************
 
+    /**
+     * @return the entries that match the current search and filters, or all of them if there
+     * isn't a search
+     */
+    @NonNull
+    private List<DebateFormatDownloadManager.DownloadableFormatEntry> getVisibleEntries() {
+        if (mSearchQuery.isEmpty() && !mSearchFilters.isActive()) return mDownloadManager.getEntries();
+        return searchEntries().matches;
+    }
+
+    /**
+     * Runs the current search, first building the index if the list has changed since it was
+     * last built.
+     */
+    @NonNull
+    private FormatSearchIndex.Result<DebateFormatDownloadManager.DownloadableFormatEntry> searchEntries() {
+        if (mSearchIndex == null) {
+            FormatSearchIndex.Builder<DebateFormatDownloadManager.DownloadableFormatEntry> builder =
+                    new FormatSearchIndex.Builder<>();
+            IdentityHashMap<DebateFormatDownloadManager.DownloadableFormatEntry,
+                    FormatSearchIndex.Entry<DebateFormatDownloadManager.DownloadableFormatEntry>> searchEntries =
+                    new IdentityHashMap<>();
+            for (DebateFormatDownloadManager.DownloadableFormatEntry entry : mDownloadManager.getEntries()) {
+                FormatSearchIndex.Entry<DebateFormatDownloadManager.DownloadableFormatEntry> searchEntry =
+                        mSearchEntries.get(entry);
+                if (searchEntry == null)
+                    searchEntry = new FormatSearchIndex.Entry<>(entry, entry.name, entry.description,
+                            Arrays.asList(entry.regions), Arrays.asList(entry.levels), Arrays.asList(entry.usedAts));
+                searchEntries.put(entry, searchEntry);
+                builder.add(searchEntry);
+            }
+            mSearchEntries = searchEntries;  // forget entries no longer in the list
+            mSearchIndex = builder.build();
+        }
+        return mSearchIndex.query(mSearchQuery, mSearchFilters.getSelected());
+    }
+
+    /**
+     * Shows the entries that match the current search and filters.
+     */
+    private void refreshSearch() {
+        if (mRecyclerAdapter == null) return;
+        mRecyclerAdapter.submitEntries(getVisibleEntries(), null);
+
+        Menu menu = mViewBinding.toolbarDownloadFormats.getMenu();
+        MenuItem clearItem = (menu != null) ? menu.findItem(R.id.formatDownloader_actionBar_clearFilters) : null;
+        if (clearItem != null) clearItem.setVisible(mSearchFilters.isActive());
+    }
+
+    private void showFilterDialog(FormatSearchIndex.Facet facet) {
+        mSearchFilters.showDialog(requireContext(), facet, searchEntries().getFacetCounts(facet),
+                this::refreshSearch);
+    }
+
+    /**
+     * Expands or collapses every entry, refreshing only the rows that weren't already that way.
+     */
+    private void setAllExpanded(boolean expanded) {
+        for (DebateFormatDownloadManager.DownloadableFormatEntry entry : mDownloadManager.getEntries()) {
+            if (entry.expanded == expanded) continue;
+            entry.expanded = expanded;
+            int index = mRecyclerAdapter.indexOf(entry);
+            if (index >= 0) mRecyclerAdapter.notifyItemChanged(index);
+        }
+    }
+
     private void setExpandCollapseButton(boolean expand) {
         Menu menu = mViewBinding.toolbarDownloadFormats.getMenu();
         if (menu == null) return;
@@ -249,6 +439,26 @@ public class DownloadFormatsFragment extends Fragment {
         if (collapseItem != null) collapseItem.setVisible(!expand);
     }
 
+    private void setUpdateAllButton(boolean update) {
+        Menu menu = mViewBinding.toolbarDownloadFormats.getMenu();
+        if (menu == null) return;
+        MenuItem updateItem = menu.findItem(R.id.formatDownloader_actionBar_updateAll);
+        if (updateItem != null) updateItem.setVisible(update);
+        MenuItem cancelItem = menu.findItem(R.id.formatDownloader_actionBar_cancelUpdateAll);
+        if (cancelItem != null) cancelItem.setVisible(!update);
+    }
+
+    private void showSnackbar(String message) {
+        Snackbar snackbar = Snackbar.make(mViewBinding.getRoot(), message, BaseTransientBottomBar.LENGTH_LONG);
+        Resources res = getResources();
+        snackbar.setBackgroundTint(res.getColor(R.color.snackbar_background));
+        snackbar.setTextColor(res.getColor(R.color.snackbar_text));
+        View snackbarText = snackbar.getView();
+        TextView textView = snackbarText.findViewById(com.google.android.material.R.id.snackbar_text);
+        if (textView != null) textView.setMaxLines(5);
+        snackbar.show();
+    }
+
     private void setViewToLoading() {
         if (mViewBinding == null) return;
         mViewBinding.list.setVisibility(View.GONE);
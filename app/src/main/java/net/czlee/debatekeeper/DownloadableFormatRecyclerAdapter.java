@@ -22,20 +22,45 @@ import android.view.View;
 import android.view.ViewGroup;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.recyclerview.widget.AsyncListDiffer;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.RecyclerView;
 
 import net.czlee.debatekeeper.DebateFormatDownloadManager.DownloadableFormatEntry;
 import net.czlee.debatekeeper.databinding.ViewFormatDownloadBinding;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * {@link RecyclerView.Adapter} that can display a {@link DownloadableFormatEntry}.
  *
+ * <p>The adapter shows a snapshot of the entries, passed in using {@link #submitEntries}. When a
+ * new snapshot is submitted, the differences from the last one are worked out on a background
+ * thread, and only the rows that were inserted, removed, moved or changed are updated. Entries
+ * are matched up by file name.</p>
+ *
  * @author Chuan-Zheng Lee
  * @since 2021-09-29
  */
 public class DownloadableFormatRecyclerAdapter extends RecyclerView.Adapter<DownloadableFormatRecyclerAdapter.ViewHolder> {
 
+    private static final DiffUtil.ItemCallback<DownloadableFormatEntry> DIFF_CALLBACK =
+            new DiffUtil.ItemCallback<DownloadableFormatEntry>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull DownloadableFormatEntry oldItem, @NonNull DownloadableFormatEntry newItem) {
+            return oldItem.isSameEntryAs(newItem);
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull DownloadableFormatEntry oldItem, @NonNull DownloadableFormatEntry newItem) {
+            return oldItem.hasSameContentAs(newItem);
+        }
+    };
+
     private final DebateFormatDownloadManager mDownloadManager;
+    private final AsyncListDiffer<DownloadableFormatEntry> mDiffer = new AsyncListDiffer<>(this, DIFF_CALLBACK);
 
     //******************************************************************************************
     // Public classes
@@ -84,7 +109,7 @@ public class DownloadableFormatRecyclerAdapter extends RecyclerView.Adapter<Down
                     if (entry.expanded) updateTextVisibility = View.VISIBLE;
                 case NOT_DOWNLOADED:
                     binding.viewFormatDownloadButton.setOnClickListener(
-                            (v) -> mDownloadManager.startDownloadFile(entry, this));
+                            (v) -> mDownloadManager.startDownloadFile(entry));
                     if (entry.expanded) buttonVisibility = View.VISIBLE;
                     break;
                 case DOWNLOAD_IN_PROGRESS:
@@ -135,13 +160,37 @@ public class DownloadableFormatRecyclerAdapter extends RecyclerView.Adapter<Down
 
     @Override
     public void onBindViewHolder(final ViewHolder holder, int position) {
-        DownloadableFormatEntry entry = mDownloadManager.getEntries().get(position);
+        DownloadableFormatEntry entry = mDiffer.getCurrentList().get(position);
         holder.bind(entry);
     }
 
     @Override
     public int getItemCount() {
-        return mDownloadManager.getEntries().size();
+        return mDiffer.getCurrentList().size();
+    }
+
+    /**
+     * Shows a new snapshot of the entries.  The list is copied, so it can be changed afterwards,
+     * but the entries themselves aren't; if an entry is changed in place, use
+     * {@link #indexOf(DownloadableFormatEntry)} to find the row to refresh.
+     *
+     * @param entries     the entries to show
+     * @param onCommitted something to run once the rows have been updated, or <code>null</code>
+     */
+    public void submitEntries(@NonNull List<DownloadableFormatEntry> entries, @Nullable Runnable onCommitted) {
+        mDiffer.submitList(new ArrayList<>(entries), onCommitted);
+    }
+
+    /**
+     * @param entry an entry
+     * @return the position of that exact entry (not just one for the same file) in the rows
+     * currently shown, or -1 if it isn't shown
+     */
+    public int indexOf(DownloadableFormatEntry entry) {
+        List<DownloadableFormatEntry> current = mDiffer.getCurrentList();
+        for (int i = 0; i < current.size(); i++)
+            if (current.get(i) == entry) return i;
+        return -1;
     }
 
 }
\ No newline at end of file
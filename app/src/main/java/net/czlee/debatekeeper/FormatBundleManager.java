@@ -0,0 +1,345 @@
+/*
+ * Copyright (C) 2026 Chuan-Zheng Lee
+ *
+ * This file is part of the Debatekeeper app, which is licensed under the GNU
+ * General Public Licence version 3 (GPLv3).  You can redistribute and/or modify
+ * it under the terms of the GPLv3, and you must not use this file except in
+ * compliance with the GPLv3.
+ *
+ * This app is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE.  See the GNU General Public Licence for more details.
+ *
+ * You should have received a copy of the GNU General Public Licence along with
+ * this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.czlee.debatekeeper;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.core.os.HandlerCompat;
+
+import net.czlee.debatekeeper.FormatXmlFilesManager.StagedFile;
+import net.czlee.debatekeeper.debateformat.FormatXmlValidator;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * FormatBundleManager exports all of the user's debate format files to a single ZIP file, and
+ * imports them from one, so that a whole library of formats can be moved between devices at once.
+ *
+ * <p>Both directions stream, so memory use doesn't depend on the number of files in the bundle.
+ * When importing, each file is written to a temporary file as it's extracted, and validated on a
+ * pool of worker threads while the next one is being extracted.  Nothing is imported unless every
+ * file in the bundle is valid and can be written; if anything goes wrong, the user's files are left
+ * as they were.</p>
+ *
+ * <p>Files in a bundle overwrite files of the same name.  A file that isn't here yet, but whose
+ * content is already here under another name, is skipped.  Only files ending in ".xml" are
+ * imported; any directories in entry names are ignored.</p>
+ *
+ * @author Chuan-Zheng Lee
+ * @since 2026-10-19
+ */
+class FormatBundleManager {
+
+    private static final String TAG = "FormatBundleManager";
+    private static final String FORMAT_FILE_EXTENSION = ".xml";
+    private static final int EXPORT_BUFFER_SIZE = 64 * 1024;
+
+    private final Context mContext;
+    private final FormatXmlFilesManager mFilesManager;
+    private final FormatXmlValidator mValidator;
+
+    private static ExecutorService sExecutor = null;
+    private static Handler sMainThreadHandler = null;
+
+    //******************************************************************************************
+    // Public classes
+    //******************************************************************************************
+
+    public interface BundleListener {
+        /**
+         * Called on the main thread when an export has finished.
+         * @param fileCount the number of files exported
+         * @param error the error that stopped the export, or <code>null</code> if it succeeded
+         */
+        void onExportFinished(int fileCount, @Nullable IOException error);
+
+        /**
+         * Called on the main thread when an import has finished.
+         * @param result an {@link ImportResult}
+         */
+        void onImportFinished(@NonNull ImportResult result);
+    }
+
+    /**
+     * Passive data class describing the outcome of an import.  The import succeeded (and all files
+     * were written, except for duplicates) if and only if {@link #isSuccess()} returns
+     * <code>true</code>.  Duplicates are files whose content the user already had under another
+     * name, which are skipped.
+     */
+    public static class ImportResult {
+        public final int fileCount;
+        public final int duplicateCount;
+        @NonNull public final List<String> invalidFilenames;
+        @Nullable public final IOException error;
+
+        ImportResult(int fileCount, int duplicateCount, @NonNull List<String> invalidFilenames,
+                     @Nullable IOException error) {
+            this.fileCount = fileCount;
+            this.duplicateCount = duplicateCount;
+            this.invalidFilenames = invalidFilenames;
+            this.error = error;
+        }
+
+        public boolean isSuccess() {
+            return error == null && invalidFilenames.isEmpty();
+        }
+    }
+
+    //******************************************************************************************
+    // Constructor
+    //******************************************************************************************
+
+    FormatBundleManager(@NonNull Context context) {
+        mContext = context.getApplicationContext();
+        mFilesManager = FormatXmlFilesManager.getInstance(context);
+        mValidator = new FormatXmlValidator(context);
+    }
+
+    //******************************************************************************************
+    // Public methods
+    //******************************************************************************************
+
+    /**
+     * Exports all format files to a ZIP file at the given location, on a background thread.
+     *
+     * @param uri      where to write the ZIP file, typically from the storage access framework
+     * @param listener a {@link BundleListener} to call when done
+     */
+    public void startExport(@NonNull Uri uri, @NonNull BundleListener listener) {
+        initialiseThreads();
+        sExecutor.execute(() -> {
+            int count = 0;
+            IOException error = null;
+            try (OutputStream out = mContext.getContentResolver().openOutputStream(uri)) {
+                if (out == null) throw new FileNotFoundException(uri.toString());
+                count = exportTo(out);
+            } catch (IOException e) {
+                Log.e(TAG, "Couldn't export bundle", e);
+                error = e;
+            }
+            final int finalCount = count;
+            final IOException finalError = error;
+            sMainThreadHandler.post(() -> listener.onExportFinished(finalCount, finalError));
+        });
+    }
+
+    /**
+     * Imports all format files from a ZIP file at the given location, on a background thread.
+     *
+     * @param uri      the ZIP file, typically from the storage access framework
+     * @param listener a {@link BundleListener} to call when done
+     */
+    public void startImport(@NonNull Uri uri, @NonNull BundleListener listener) {
+        initialiseThreads();
+        sExecutor.execute(() -> {
+            ImportResult result;
+            try (InputStream in = mContext.getContentResolver().openInputStream(uri)) {
+                if (in == null) throw new FileNotFoundException(uri.toString());
+                result = importFrom(in);
+            } catch (IOException e) {
+                Log.e(TAG, "Couldn't import bundle", e);
+                result = new ImportResult(0, 0, Collections.emptyList(), e);
+            }
+            final ImportResult finalResult = result;
+            sMainThreadHandler.post(() -> listener.onImportFinished(finalResult));
+        });
+    }
+
+    /**
+     * Writes all format files to a ZIP file.  This does file I/O, so it must be run on a background
+     * thread.
+     *
+     * @param out where to write the ZIP file; this is finished but not closed
+     * @return the number of files written
+     * @throws IOException if there was an error reading the files or writing the bundle
+     */
+    int exportTo(@NonNull OutputStream out) throws IOException {
+        int count = 0;
+        byte[] buffer = new byte[EXPORT_BUFFER_SIZE];
+        ZipOutputStream zipOut = new ZipOutputStream(new BufferedOutputStream(out, EXPORT_BUFFER_SIZE));
+
+        for (String filename : mFilesManager.list()) {
+            if (!filename.endsWith(FORMAT_FILE_EXTENSION)) continue;
+            zipOut.putNextEntry(new ZipEntry(filename));
+            try (InputStream in = mFilesManager.open(filename)) {
+                int n;
+                while ((n = in.read(buffer)) > 0)
+                    zipOut.write(buffer, 0, n);
+            }
+            zipOut.closeEntry();
+            count++;
+        }
+
+        zipOut.finish();
+        zipOut.flush();
+        Log.i(TAG, "Exported " + count + " files");
+        return count;
+    }
+
+    /**
+     * Imports all format files from a ZIP file, all or nothing.  This does file I/O, so it must be
+     * run on a background thread.
+     *
+     * @param in the ZIP file; this is read but not closed
+     * @return an {@link ImportResult}.  If the bundle couldn't be read, or any file in it is
+     * invalid, nothing is imported.
+     */
+    @NonNull
+    ImportResult importFrom(@NonNull InputStream in) {
+        int poolSize = Math.max(2, Runtime.getRuntime().availableProcessors());
+        ExecutorService validators = Executors.newFixedThreadPool(poolSize);
+
+        // Limits how far extraction can get ahead of validation, so that the validators' queue
+        // doesn't grow without bound if validation is slower.  This doesn't limit temporary
+        // files: every staged file stays on disk until the bundle is committed or discarded.
+        Semaphore inFlight = new Semaphore(poolSize * 2);
+
+        // If a name appears twice in a bundle, the later one wins, as if they'd been copied in order
+        LinkedHashMap<String, StagedFile> stagedFiles = new LinkedHashMap<>();
+        LinkedHashMap<String, Future<Boolean>> validations = new LinkedHashMap<>();
+        ArrayList<String> invalidFilenames = new ArrayList<>();
+        int duplicateCount = 0;
+        IOException error = null;
+        long startTime = System.currentTimeMillis();
+
+        try {
+            ZipInputStream zipIn = new ZipInputStream(new BufferedInputStream(in));
+            ZipEntry entry;
+            while ((entry = zipIn.getNextEntry()) != null) {
+                if (entry.isDirectory()) continue;
+                String filename = getBaseName(entry.getName());
+                if (!filename.endsWith(FORMAT_FILE_EXTENSION) || filename.startsWith(".")) continue;
+
+                StagedFile staged = mFilesManager.stage(zipIn);
+                StagedFile previous = stagedFiles.remove(filename);
+                if (previous != null) {
+                    validations.remove(filename);  // its result no longer matters
+                    mFilesManager.discard(previous);
+                }
+                stagedFiles.put(filename, staged);
+
+                inFlight.acquire();
+                validations.put(filename, validators.submit(() -> {
+                    try {
+                        return isValid(staged);
+                    } finally {
+                        inFlight.release();
+                    }
+                }));
+            }
+
+            for (String filename : validations.keySet()) {
+                try {
+                    if (!validations.get(filename).get()) invalidFilenames.add(filename);
+                } catch (ExecutionException e) {
+                    Log.e(TAG, "Error validating " + filename, e.getCause());
+                    invalidFilenames.add(filename);
+                }
+            }
+
+            if (invalidFilenames.isEmpty()) {
+                ArrayList<StagedFile> toCommit = new ArrayList<>();
+                ArrayList<String> destinationNames = new ArrayList<>();
+                for (String filename : stagedFiles.keySet()) {
+                    StagedFile staged = stagedFiles.get(filename);
+                    if (mFilesManager.findDuplicate(staged, filename) != null) {
+                        duplicateCount++;
+                        continue;  // discarded below
+                    }
+                    toCommit.add(staged);
+                    destinationNames.add(filename);
+                }
+                mFilesManager.commitAll(toCommit, destinationNames);
+            }
+
+        } catch (IOException e) {
+            Log.e(TAG, "Couldn't import bundle", e);
+            error = e;
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            error = new InterruptedIOException("Import was interrupted");
+
+        } finally {
+            validators.shutdownNow();
+            for (StagedFile staged : stagedFiles.values())
+                mFilesManager.discard(staged);  // does nothing if it was committed
+        }
+
+        int fileCount = stagedFiles.size() - duplicateCount;
+        Log.i(TAG, String.format("Imported %d files (%d duplicates, %d invalid) in %d ms", fileCount,
+                duplicateCount, invalidFilenames.size(), System.currentTimeMillis() - startTime));
+        return new ImportResult(fileCount, duplicateCount, invalidFilenames, error);
+    }
+
+    //******************************************************************************************
+    // Private methods
+    //******************************************************************************************
+
+    /**
+     * @return the part of a ZIP entry name after the last slash, so that entries can't be written
+     * outside the user files directory
+     */
+    @NonNull
+    private static String getBaseName(@NonNull String entryName) {
+        int slash = Math.max(entryName.lastIndexOf('/'), entryName.lastIndexOf('\\'));
+        return entryName.substring(slash + 1);
+    }
+
+    /**
+     * Initialises thread management if it hasn't already been initialised.  There's only one
+     * thread for bundles, shared by all instances, so that only one import or export runs at once.
+     */
+    private static synchronized void initialiseThreads() {
+        if (sExecutor == null)
+            sExecutor = Executors.newSingleThreadExecutor();
+        if (sMainThreadHandler == null)
+            sMainThreadHandler = HandlerCompat.createAsync(Looper.getMainLooper());
+    }
+
+    private boolean isValid(StagedFile staged) throws IOException {
+        try (InputStream is = new FileInputStream(staged.temp)) {
+            return !mValidator.validate(is, staged.sha256).hasErrors();
+        }
+    }
+
+}
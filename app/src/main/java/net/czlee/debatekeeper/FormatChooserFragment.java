@@ -27,8 +27,12 @@ import android.content.SharedPreferences;
 import android.content.res.Resources;
 import android.net.Uri;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.text.TextUtils;
 import android.util.Log;
 import android.view.LayoutInflater;
+import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
 import android.view.View.OnClickListener;
@@ -44,8 +48,10 @@ import androidx.activity.result.ActivityResultLauncher;
 import androidx.activity.result.contract.ActivityResultContracts;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.appcompat.widget.SearchView;
 import androidx.appcompat.widget.Toolbar;
 import androidx.core.content.FileProvider;
+import androidx.core.os.HandlerCompat;
 import androidx.fragment.app.DialogFragment;
 import androidx.fragment.app.Fragment;
 import androidx.navigation.NavDirections;
@@ -55,12 +61,14 @@ import androidx.preference.PreferenceManager;
 import com.google.android.material.snackbar.BaseTransientBottomBar;
 import com.google.android.material.snackbar.Snackbar;
 
+import net.czlee.debatekeeper.FormatXmlFilesManager.FilesChangedListener;
 import net.czlee.debatekeeper.databinding.FragmentFormatChooserBinding;
 import net.czlee.debatekeeper.databinding.ViewFormatFullBinding;
 import net.czlee.debatekeeper.databinding.ViewFormatShortBinding;
 import net.czlee.debatekeeper.debateformat.DebateFormatFieldExtractor;
 import net.czlee.debatekeeper.debateformat.DebateFormatInfo;
-import net.czlee.debatekeeper.debateformat.DebateFormatInfoForSchema2;
+import net.czlee.debatekeeper.debateformat.DebateFormatInfoFromHeaderForSchema2;
+import net.czlee.debatekeeper.debateformat.FormatXmlValidator;
 import net.czlee.debatekeeper.debateformat.XmlUtilities;
 import net.czlee.debatekeeper.debateformat.XmlUtilities.IllegalSchemaVersionException;
 
@@ -71,9 +79,13 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * This Activity displays a list of formats for the user to choose from. It
@@ -91,16 +103,37 @@ public class FormatChooserFragment extends Fragment {
     private FormatXmlFilesManager mFilesManager;
     private ListView mStylesListView;
     private ActivityResultLauncher<String[]> mImportFileLauncher;
+    private ActivityResultLauncher<String[]> mImportBundleLauncher;
+    private ActivityResultLauncher<String> mExportBundleLauncher;
+    private FormatBundleManager mBundleManager;
+    private FormatXmlValidator mValidator = null;
+    private final FilesChangedListener mFilesChangedListener = new FormatFilesChangedListener();
 
     private DebateFormatEntryArrayAdapter mStylesArrayAdapter;
-    private final ArrayList<DebateFormatListEntry> mStylesList = new ArrayList<>();
+    private final ArrayList<DebateFormatListEntry> mAllStylesList = new ArrayList<>();
+    private final ArrayList<DebateFormatListEntry> mStylesList = new ArrayList<>();  // only those shown
+
+    // The index is rebuilt on the index thread whenever the list changes.  Until the new one is
+    // ready, the old one is used, leaving out formats that are no longer in the list.  What was
+    // read from each file's header is kept, so a rebuild only reads files that are new or changed.
+    private final FormatSearchFilters mSearchFilters = new FormatSearchFilters();
+    private FormatSearchIndex<DebateFormatListEntry> mSearchIndex = null;
+    private boolean mSearchIndexCurrent = false;
+    private int mSearchIndexGeneration = 0;
+    private FormatSearchIndex.Facet mPendingFilterFacet = null;
+    private String mSearchQuery = "";
+    private ExecutorService mSearchIndexExecutor = null;
+    private final Handler mMainThreadHandler = HandlerCompat.createAsync(Looper.getMainLooper());
+    private final HashMap<String, HeaderFields> mHeaderFields = new HashMap<>();  // index thread only
 
     private static final String DIALOG_ARGUMENT_FILE_NAME = "filename";
     private static final String DIALOG_ARGUMENT_IMPORT_URI = "import-uri";
     private static final String DIALOG_ARGUMENT_STYLE_NAME = "style-name";
+    private static final String DIALOG_ARGUMENT_MESSAGES = "messages";
     private static final String DIALOG_TAG_MORE_DETAILS = "details/";
     private static final String DIALOG_TAG_CONFIRM_DELETION = "delete/";
     private static final String DIALOG_TAG_CONFIRM_OVERWRITE = "overwrite/";
+    private static final String DIALOG_TAG_IMPORT_PROBLEMS = "import-problems/";
 
     public static final String BUNDLE_KEY_RESULT         = "res";
     public static final String BUNDLE_KEY_XML_FILE_NAME  = "xmlfn";
@@ -247,6 +280,34 @@ public class FormatChooserFragment extends Fragment {
         }
     }
 
+    public static class ImportProblemsDialogFragment extends DialogFragment {
+
+        static ImportProblemsDialogFragment newInstance(String filename, String[] messages) {
+            ImportProblemsDialogFragment fragment = new ImportProblemsDialogFragment();
+            Bundle args = new Bundle();
+            args.putString(DIALOG_ARGUMENT_FILE_NAME, filename);
+            args.putStringArray(DIALOG_ARGUMENT_MESSAGES, messages);
+            fragment.setArguments(args);
+            return fragment;
+        }
+
+        @NonNull
+        @Override
+        public Dialog onCreateDialog(@Nullable Bundle savedInstanceState) {
+            Bundle args = getArguments();
+            assert args != null;
+            String filename = args.getString(DIALOG_ARGUMENT_FILE_NAME);
+            String[] messages = args.getStringArray(DIALOG_ARGUMENT_MESSAGES);
+
+            AlertDialog.Builder builder = new AlertDialog.Builder(requireActivity());
+            builder.setTitle(getString(R.string.formatChooser_dialog_importProblems_title, filename))
+                    .setItems(messages, null)
+                    .setPositiveButton(android.R.string.ok, null);
+
+            return builder.create();
+        }
+    }
+
     public static class MoreDetailsDialogFragment extends DialogFragment {
 
         static MoreDetailsDialogFragment newInstance(String filename) {
@@ -270,7 +331,7 @@ public class FormatChooserFragment extends Fragment {
 
             ViewFormatFullBinding binding = ViewFormatFullBinding.inflate(getLayoutInflater());
 
-            DebateFormatInfo dfi = null;
+            DebateFormatInfoFromHeaderForSchema2 dfi = null;
             try {
                 dfi = parent.getDebateFormatInfo(filename);
             } catch (IOException|SAXException e) {
@@ -290,11 +351,13 @@ public class FormatChooserFragment extends Fragment {
                 String schemaVersion = dfi.getSchemaVersion();
                 populateFileInfo(binding, filename, schemaVersion);
                 populateBasicInfo(binding, dfi);
-                populatePrepTimeInfo(binding, dfi);
-                List<String[]> speechDescriptions = dfi.getSpeechFormatDescriptions();
-                populateTwoColumnTable(binding.viewFormatTableSpeechTypes, R.layout.speech_type_row, dfi.getSpeechFormatDescriptions());
-                populateTwoColumnTable(binding.viewFormatTableSpeeches, R.layout.speech_row, dfi.getSpeeches(speechDescriptions));
                 binding.viewFormatTitle.setText(dfi.getName());
+
+                // The details take longer to read, so fill them in when they're ready
+                dfi.loadDetails((info) -> {
+                    if (!isAdded()) return;
+                    populateDetails(binding, info);
+                });
             }
             builder.setCancelable(true);
 
@@ -361,6 +424,13 @@ public class FormatChooserFragment extends Fragment {
             }
         }
 
+        private void populateDetails(ViewFormatFullBinding vb, DebateFormatInfo dfi) {
+            populatePrepTimeInfo(vb, dfi);
+            List<String[]> speechDescriptions = dfi.getSpeechFormatDescriptions();
+            populateTwoColumnTable(vb.viewFormatTableSpeechTypes, R.layout.speech_type_row, speechDescriptions);
+            populateTwoColumnTable(vb.viewFormatTableSpeeches, R.layout.speech_row, dfi.getSpeeches(speechDescriptions));
+        }
+
         /**
          * Populates a table from an ArrayList of String arrays.
          * @param table A <code>TableLayout</code>
@@ -414,6 +484,53 @@ public class FormatChooserFragment extends Fragment {
 
     }
 
+    /**
+     * Refreshes the list when format files are added, removed or changed by something other than
+     * this fragment, keeping the current selection if it's still there.
+     */
+    private class FormatFilesChangedListener implements FilesChangedListener {
+        @Override
+        public void onFormatFilesChanged() {
+            String selectedFilename = getSelectedFilename();
+            populateStylesList();
+            setSelectionAndScroll(selectedFilename);
+        }
+    }
+
+    /**
+     * Reports the outcome of bundle imports and exports.  These can finish after the view has
+     * gone, in which case there's no one to tell.
+     */
+    private class FormatBundleListener implements FormatBundleManager.BundleListener {
+        @Override
+        public void onExportFinished(int fileCount, @Nullable IOException error) {
+            if (getView() == null) return;
+            if (error == null)
+                showSnackbar(R.string.formatChooser_bundle_export_success, fileCount);
+            else
+                showSnackbar(R.string.formatChooser_bundle_export_error, error.getLocalizedMessage());
+        }
+
+        @Override
+        public void onImportFinished(@NonNull FormatBundleManager.ImportResult result) {
+            if (getView() == null) return;
+            if (result.error != null) {
+                showSnackbar(R.string.formatChooser_bundle_import_error, result.error.getLocalizedMessage());
+            } else if (!result.invalidFilenames.isEmpty()) {
+                showSnackbar(R.string.formatChooser_bundle_import_invalid, TextUtils.join(", ", result.invalidFilenames));
+            } else {
+                String selectedFilename = getSelectedFilename();
+                populateStylesList();
+                setSelectionAndScroll(selectedFilename);
+                if (result.duplicateCount > 0)
+                    showSnackbar(R.string.formatChooser_bundle_import_successWithDuplicates,
+                            result.fileCount, result.duplicateCount);
+                else
+                    showSnackbar(R.string.formatChooser_bundle_import_success, result.fileCount);
+            }
+        }
+    }
+
     private class FormatChooserMenuItemClickListener implements Toolbar.OnMenuItemClickListener {
         @Override
         public boolean onMenuItemClick(MenuItem item) {
@@ -428,6 +545,25 @@ public class FormatChooserFragment extends Fragment {
             } else if (itemId == R.id.formatChooser_actionBar_importFile) {
                 mImportFileLauncher.launch(new String[]{"text/xml", "application/xml"});
                 return true;
+            } else if (itemId == R.id.formatChooser_actionBar_importBundle) {
+                mImportBundleLauncher.launch(new String[]{"application/zip"});
+                return true;
+            } else if (itemId == R.id.formatChooser_actionBar_exportBundle) {
+                mExportBundleLauncher.launch(getString(R.string.formatChooser_bundle_defaultFileName));
+                return true;
+            } else if (itemId == R.id.formatChooser_actionBar_filterRegion) {
+                showFilterDialog(FormatSearchIndex.Facet.REGION);
+                return true;
+            } else if (itemId == R.id.formatChooser_actionBar_filterLevel) {
+                showFilterDialog(FormatSearchIndex.Facet.LEVEL);
+                return true;
+            } else if (itemId == R.id.formatChooser_actionBar_filterUsedAt) {
+                showFilterDialog(FormatSearchIndex.Facet.USED_AT);
+                return true;
+            } else if (itemId == R.id.formatChooser_actionBar_clearFilters) {
+                mSearchFilters.clear();
+                showMatchingStyles();
+                return true;
             } else if (itemId == R.id.formatChooser_actionBar_learnMore) {
                 Uri uri = Uri.parse(getString(R.string.formats_learnMoreUrl));
                 Intent intent = new Intent(Intent.ACTION_VIEW, uri);
@@ -437,6 +573,26 @@ public class FormatChooserFragment extends Fragment {
         }
     }
 
+    /**
+     * Passive data class holding what the search index needs from a file's header, and when the
+     * file was last modified, so that it can be kept until the file changes.
+     */
+    private static class HeaderFields {
+        final long lastModified;
+        final String description;
+        final List<String> regions;
+        final List<String> levels;
+        final List<String> usedAts;
+
+        HeaderFields(long lastModified, @NonNull DebateFormatInfo dfi) {
+            this.lastModified = lastModified;
+            this.description = dfi.getDescription();
+            this.regions = dfi.getRegions();
+            this.levels = dfi.getLevels();
+            this.usedAts = dfi.getUsedAts();
+        }
+    }
+
     /**
      * A comparator for DebateFormatListEntries, which sorts the debate formats alphabetically
      * by style name.
@@ -451,6 +607,20 @@ public class FormatChooserFragment extends Fragment {
 
     }
 
+    private class SearchQueryTextListener implements SearchView.OnQueryTextListener {
+        @Override
+        public boolean onQueryTextSubmit(String query) {
+            return false;
+        }
+
+        @Override
+        public boolean onQueryTextChange(String newText) {
+            mSearchQuery = newText;
+            showMatchingStyles();
+            return true;
+        }
+    }
+
     private class StylesListViewOnItemClickListener implements OnItemClickListener {
         @Override
         public void onItemClick(AdapterView<?> parent, View view, int position,
@@ -470,6 +640,11 @@ public class FormatChooserFragment extends Fragment {
 
         mImportFileLauncher = registerForActivityResult(new ActivityResultContracts.OpenDocument(),
                 this::importIncomingFilePrompt);
+        mImportBundleLauncher = registerForActivityResult(new ActivityResultContracts.OpenDocument(),
+                this::importBundle);
+        mExportBundleLauncher = registerForActivityResult(new ActivityResultContracts.CreateDocument("application/zip"),
+                this::exportBundle);
+        mBundleManager = new FormatBundleManager(requireContext());
     }
 
     @Nullable
@@ -487,9 +662,14 @@ public class FormatChooserFragment extends Fragment {
         mViewBinding.toolbarFormatChooser.setOnMenuItemClickListener(new FormatChooserMenuItemClickListener());
         mViewBinding.toolbarFormatChooser.setNavigationOnClickListener(
                 (v) -> NavHostFragment.findNavController(this).navigateUp());
+        MenuItem searchItem = mViewBinding.toolbarFormatChooser.getMenu().findItem(R.id.formatChooser_actionBar_search);
+        if (searchItem != null) {
+            SearchView searchView = (SearchView) searchItem.getActionView();
+            searchView.setOnQueryTextListener(new SearchQueryTextListener());
+        }
 
         Context context = requireContext();
-        mFilesManager = new FormatXmlFilesManager(context);
+        mFilesManager = FormatXmlFilesManager.getInstance(context);
         mStylesArrayAdapter = new DebateFormatEntryArrayAdapter(context, mStylesList,
                 new FormatChooserFragmentBinder());
 
@@ -498,8 +678,9 @@ public class FormatChooserFragment extends Fragment {
         mStylesListView.setAdapter(mStylesArrayAdapter);
         mStylesListView.setOnItemClickListener(new StylesListViewOnItemClickListener());
 
-        // Populate the styles list
+        // Populate the styles list, and keep it up to date
         populateStylesList();
+        mFilesManager.addListener(mFilesChangedListener);
 
         // Show the download banner if it hasn't been dismissed
         showDownloadHelpBanner(context);
@@ -509,6 +690,18 @@ public class FormatChooserFragment extends Fragment {
         setSelectionAndScroll(incomingFilename);
     }
 
+    @Override
+    public void onDestroyView() {
+        mFilesManager.removeListener(mFilesChangedListener);
+        super.onDestroyView();
+    }
+
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        if (mSearchIndexExecutor != null) mSearchIndexExecutor.shutdownNow();
+    }
+
     //******************************************************************************************
     // Private methods
     //******************************************************************************************
@@ -590,27 +783,29 @@ public class FormatChooserFragment extends Fragment {
             showSnackbar(R.string.formatChooser_dialog_deleted_success, filename);
 
             // Remove the entry from the styles list
-            int index = convertFilenameToIndex(filename);
-            if (index >= 0) {
-                mStylesList.remove(index);
-                mStylesArrayAdapter.notifyDataSetChanged();
-            }
+            Iterator<DebateFormatListEntry> iterator = mAllStylesList.iterator();
+            while (iterator.hasNext())
+                if (iterator.next().getFilename().equals(filename)) iterator.remove();
+            startBuildingSearchIndex();
+            showMatchingStyles();
         }
         else showSnackbar(R.string.formatChooser_dialog_deleted_failure, filename);
     }
 
 
     /**
-     * Parses an XML file to get the {@link DebateFormatInfo} object
+     * Reads the header of an XML file to get the {@link DebateFormatInfo} object. Details (speeches
+     * and prep time) are read later, when asked for.
      * @param filename the filename for the debate format XML file
-     * @return a <code>DebateFormatInfo</code> object, or <code>null</code>
+     * @return a <code>DebateFormatInfoFromHeaderForSchema2</code> object
      * @throws IOException if there was an IO problem with the XML file
      * @throws SAXException if thrown by the XML parser
      */
-    private DebateFormatInfo getDebateFormatInfo(String filename) throws IOException, SAXException {
-        InputStream is;
-        is = mFilesManager.open(filename);
-        return new DebateFormatInfoForSchema2(requireContext(), is);
+    @NonNull
+    private DebateFormatInfoFromHeaderForSchema2 getDebateFormatInfo(String filename) throws IOException, SAXException {
+        File file = mFilesManager.getFileFromExternalStorage(filename);
+        if (file == null) throw new FileNotFoundException(filename);
+        return DebateFormatInfoFromHeaderForSchema2.forFile(requireContext(), file);
     }
 
     /**
@@ -624,6 +819,29 @@ public class FormatChooserFragment extends Fragment {
         return convertIndexToFilename(selectedPosition);
     }
 
+    /**
+     * Exports all formats to a ZIP file chosen by the user.
+     * @param uri a {@link Uri} to write to, or <code>null</code> if the user cancelled
+     */
+    private void exportBundle(@Nullable Uri uri) {
+        if (uri == null) return;
+        mBundleManager.startExport(uri, new FormatBundleListener());
+    }
+
+    /**
+     * Imports all formats from a ZIP file chosen by the user.  Files in the bundle overwrite
+     * existing files of the same name without asking, but nothing is imported if any of them has
+     * problems.
+     * @param uri a {@link Uri} to the ZIP file, or <code>null</code> if the user cancelled
+     */
+    private void importBundle(@Nullable Uri uri) {
+        if (uri == null) {
+            showSnackbar(R.string.formatChooser_import_error_noFileChosen);
+            return;
+        }
+        mBundleManager.startImport(uri, new FormatBundleListener());
+    }
+
     /**
      * Checks if the incoming file would overwrite an existing one. If so, prompt the user with
      * a dialog; if not, just import it.
@@ -678,7 +896,8 @@ public class FormatChooserFragment extends Fragment {
     }
 
     /**
-     * Imports the selected file, refreshes the list and selects the new file.
+     * Imports the selected file, refreshes the list and selects the new file.  If there's already
+     * a file with the same content under another name, that file is selected instead.
      * @param uri a {@link Uri} to import
      */
     private void importIncomingFile(@NonNull Uri uri, @NonNull String filename) {
@@ -697,21 +916,70 @@ public class FormatChooserFragment extends Fragment {
             return;
         }
 
+        FormatXmlFilesManager.CopyResult result;
         try {
-            mFilesManager.copy(in, filename);
+            result = mFilesManager.copyUnlessDuplicate(in, filename);
         } catch (IOException e) {
             e.printStackTrace();
             showSnackbar(R.string.formatChooser_import_error_reading);
             return;
         }
 
-        showSnackbar(R.string.formatChooser_import_success, filename);
+        // If the user already has this file under another name, just select that one
+        if (result.isDuplicateOf(filename)) {
+            setSelectionAndScroll(result.filename);
+            showSnackbar(R.string.formatChooser_import_duplicate, result.filename);
+            return;
+        }
+
         populateStylesList();
         setSelectionAndScroll(filename);
+        validateImportedFile(filename, result.sha256);
+    }
+
+    /**
+     * Checks a newly imported file for problems on a background thread, then tells the user
+     * whether the import succeeded.  This way, broken files are flagged straight away, rather than
+     * when someone next tries to use them.
+     * @param filename the name of the imported file
+     * @param sha256 the hash of the imported file, from when it was copied, so that the file
+     *               doesn't need to be read again if it's been checked before
+     */
+    private void validateImportedFile(@NonNull String filename, @NonNull String sha256) {
+        File file = mFilesManager.getFileFromExternalStorage(filename);
+        if (file == null) {
+            showSnackbar(R.string.formatChooser_import_success, filename);
+            return;
+        }
+
+        if (mValidator == null) mValidator = new FormatXmlValidator(requireContext());
+        mValidator.validateInBackground(file, sha256, (result) -> {
+            if (!isAdded() || mViewBinding == null) return;
+            if (result == null || !result.hasErrors()) {
+                showSnackbar(R.string.formatChooser_import_success, filename);
+                return;
+            }
+
+            String[] messages = new String[result.diagnostics.size()];
+            for (int i = 0; i < messages.length; i++) {
+                FormatXmlValidator.Diagnostic diagnostic = result.diagnostics.get(i);
+                String message = diagnostic.getMessage(requireContext());
+                messages[i] = (diagnostic.line > 0)
+                        ? getString(R.string.formatChooser_dialog_importProblems_line, diagnostic.line, message)
+                        : message;
+            }
+
+            Snackbar snackbar = makeSnackbar(R.string.formatChooser_import_problems, filename);
+            snackbar.setAction(R.string.formatChooser_import_problems_action, (v) -> {
+                DialogFragment fragment = ImportProblemsDialogFragment.newInstance(filename, messages);
+                fragment.show(getChildFragmentManager(), DIALOG_TAG_IMPORT_PROBLEMS + filename);
+            });
+            snackbar.show();
+        });
     }
 
     /**
-     * Populates the master styles list, <code>mStylesList</code>.  Should be called when this
+     * Populates the master styles list, <code>mAllStylesList</code>.  Should be called when this
      * Activity is created, or whenever we want to refresh the styles list. If there is an error so
      * serious that it can't even get the list, we show a dialog to that effect, and leave the list
      * empty.
@@ -730,7 +998,7 @@ public class FormatChooserFragment extends Fragment {
             return;
         }
 
-        mStylesList.clear();
+        mAllStylesList.clear();
 
         for (String filename : fileList) {
             if (!filename.endsWith(".xml")) continue;
@@ -759,13 +1027,148 @@ public class FormatChooserFragment extends Fragment {
 
             if (styleName == null)
                 styleName = filename;
-            mStylesList.add(new DebateFormatListEntry(filename, styleName));
+            mAllStylesList.add(new DebateFormatListEntry(filename, styleName));
 
         }
 
-        // Sort alphabetically by style name and tell observers
-        mStylesArrayAdapter.sort(new StyleEntryComparatorByStyleName());
+        // Sort alphabetically by style name and show those that match the search
+        Collections.sort(mAllStylesList, new StyleEntryComparatorByStyleName());
+        startBuildingSearchIndex();
+        showMatchingStyles();
+    }
+
+    /**
+     * Starts building the search index for the list as it is now, on the index thread.
+     */
+    private void startBuildingSearchIndex() {
+        mSearchIndexCurrent = false;
+        final int generation = ++mSearchIndexGeneration;
+        final ArrayList<DebateFormatListEntry> entries = new ArrayList<>(mAllStylesList);
+        final Context context = requireContext().getApplicationContext();
+        final FormatXmlFilesManager filesManager = mFilesManager;
+
+        if (mSearchIndexExecutor == null) mSearchIndexExecutor = Executors.newSingleThreadExecutor();
+        mSearchIndexExecutor.execute(() -> {
+            FormatSearchIndex<DebateFormatListEntry> index = buildSearchIndex(context, filesManager, entries);
+            mMainThreadHandler.post(() -> onSearchIndexBuilt(generation, index));
+        });
+    }
+
+    /**
+     * Builds a search index.  This reads the headers of files that are new or have changed since
+     * the last time it was called, so it must be run on the index thread.
+     */
+    @NonNull
+    private FormatSearchIndex<DebateFormatListEntry> buildSearchIndex(
+            Context context, FormatXmlFilesManager filesManager, List<DebateFormatListEntry> entries) {
+        FormatSearchIndex.Builder<DebateFormatListEntry> builder = new FormatSearchIndex.Builder<>();
+        HashMap<String, HeaderFields> headerFields = new HashMap<>();
+
+        for (DebateFormatListEntry entry : entries) {
+            String filename = entry.getFilename();
+            HeaderFields fields = mHeaderFields.get(filename);
+            File file = filesManager.getFileFromExternalStorage(filename);
+            if (file != null && (fields == null || fields.lastModified != file.lastModified())) {
+                try {
+                    fields = new HeaderFields(file.lastModified(),
+                            DebateFormatInfoFromHeaderForSchema2.forFile(context, file));
+                } catch (IOException | SAXException e) {
+                    Log.e(TAG, "buildSearchIndex: Couldn't read info from " + filename);
+                    fields = null;
+                }
+            }
+
+            if (fields == null) {
+                builder.add(entry, entry.getStyleName(), null, Collections.emptyList(),
+                        Collections.emptyList(), Collections.emptyList());
+                continue;
+            }
+            headerFields.put(filename, fields);
+            builder.add(entry, entry.getStyleName(), fields.description, fields.regions,
+                    fields.levels, fields.usedAts);
+        }
+
+        // Forget files that are no longer in the list
+        mHeaderFields.clear();
+        mHeaderFields.putAll(headerFields);
+        return builder.build();
+    }
+
+    /**
+     * Called on the main thread when a search index has been built.
+     */
+    private void onSearchIndexBuilt(int generation, @NonNull FormatSearchIndex<DebateFormatListEntry> index) {
+        if (generation != mSearchIndexGeneration || getView() == null) return;  // superseded
+        mSearchIndex = index;
+        mSearchIndexCurrent = true;
+        if (!mSearchQuery.isEmpty() || mSearchFilters.isActive()) showMatchingStyles();
+
+        if (mPendingFilterFacet != null) {
+            FormatSearchIndex.Facet facet = mPendingFilterFacet;
+            mPendingFilterFacet = null;
+            showFilterDialog(facet);
+        }
+    }
+
+    /**
+     * Runs the current search.
+     * @return the result, or <code>null</code> if no index has been built yet
+     */
+    @Nullable
+    private FormatSearchIndex.Result<DebateFormatListEntry> searchStyles() {
+        if (mSearchIndex == null) return null;
+        return mSearchIndex.query(mSearchQuery, mSearchFilters.getSelected());
+    }
+
+    /**
+     * Shows the styles that match the current search and filters, or all of them if there isn't
+     * a search, keeping the current selection if it's still shown.
+     */
+    private void showMatchingStyles() {
+        String selectedFilename = getSelectedFilename();
+
+        mStylesList.clear();
+        if (mSearchQuery.isEmpty() && !mSearchFilters.isActive()) {
+            mStylesList.addAll(mAllStylesList);
+        } else {
+            FormatSearchIndex.Result<DebateFormatListEntry> result = searchStyles();
+            if (result == null) {
+                mStylesList.addAll(mAllStylesList);  // filtered when the index is ready
+            } else if (mSearchIndexCurrent) {
+                mStylesList.addAll(result.matches);
+            } else {
+                // The index is out of date, so leave out anything that's no longer in the list.
+                // The list's entries are new objects each time it's refreshed, so they're matched
+                // up by file name.
+                HashMap<String, DebateFormatListEntry> currentEntries = new HashMap<>();
+                for (DebateFormatListEntry entry : mAllStylesList)
+                    currentEntries.put(entry.getFilename(), entry);
+                for (DebateFormatListEntry match : result.matches) {
+                    DebateFormatListEntry entry = currentEntries.get(match.getFilename());
+                    if (entry != null) mStylesList.add(entry);
+                }
+            }
+        }
         mStylesArrayAdapter.notifyDataSetChanged();
+
+        int index = convertFilenameToIndex(selectedFilename);
+        if (index != ListView.INVALID_POSITION) mStylesListView.setItemChecked(index, true);
+        else mStylesListView.clearChoices();
+
+        Menu menu = mViewBinding.toolbarFormatChooser.getMenu();
+        MenuItem clearItem = (menu != null) ? menu.findItem(R.id.formatChooser_actionBar_clearFilters) : null;
+        if (clearItem != null) clearItem.setVisible(mSearchFilters.isActive());
+    }
+
+    private void showFilterDialog(FormatSearchIndex.Facet facet) {
+        // If the list has changed, wait for the new index, so that the counts are right
+        FormatSearchIndex.Result<DebateFormatListEntry> result = mSearchIndexCurrent ? searchStyles() : null;
+        if (result == null) {
+            mPendingFilterFacet = facet;
+            return;
+        }
+        mSearchFilters.showDialog(requireContext(), facet, result.getFacetCounts(facet),
+                this::showMatchingStyles);
     }
 
     /**
@@ -850,6 +1253,10 @@ public class FormatChooserFragment extends Fragment {
     }
 
     private void showSnackbar(int stringResId, Object... formatArgs) {
+        makeSnackbar(stringResId, formatArgs).show();
+    }
+
+    private Snackbar makeSnackbar(int stringResId, Object... formatArgs) {
         String string = getString(stringResId, formatArgs);
         View coordinator = mViewBinding.formatChooserCoordinator;
         Snackbar snackbar = Snackbar.make(coordinator, string, BaseTransientBottomBar.LENGTH_LONG);
@@ -859,7 +1266,7 @@ public class FormatChooserFragment extends Fragment {
         View snackbarText = snackbar.getView();
         TextView textView = snackbarText.findViewById(com.google.android.material.R.id.snackbar_text);
         if (textView != null) textView.setMaxLines(5);
-        snackbar.show();
+        return snackbar;
     }
 
     /**
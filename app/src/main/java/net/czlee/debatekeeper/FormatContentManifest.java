@@ -0,0 +1,367 @@
+/*
+ * Copyright (C) 2026 Chuan-Zheng Lee
+ *
+ * This file is part of the Debatekeeper app, which is licensed under the GNU
+ * General Public Licence version 3 (GPLv3).  You can redistribute and/or modify
+ * it under the terms of the GPLv3, and you must not use this file except in
+ * compliance with the GPLv3.
+ *
+ * This app is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE.  See the GNU General Public Licence for more details.
+ *
+ * You should have received a copy of the GNU General Public Licence along with
+ * this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.czlee.debatekeeper;
+
+import android.util.JsonReader;
+import android.util.JsonToken;
+import android.util.JsonWriter;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * FormatContentManifest records the SHA-256 hash of the content of each debate format file, so that
+ * {@link FormatXmlFilesManager} can look files up by content.  It maps each file name to a hash, and
+ * each hash to the file names that have that content, so finding out whether a file has some given
+ * content, or whether the same content is already stored under another name, doesn't need to read
+ * any files.  It also remembers the version of each file's content, once someone has parsed it, so
+ * that update checks don't need to parse the file again.
+ *
+ * <p>Files can be changed by things other than this app, so each record also holds the size and
+ * modification time of the file when it was recorded.  Records that no longer match the file are
+ * ignored, and replaced when the file is next recorded.</p>
+ *
+ * <p>The manifest is kept in a JSON file in the app's internal storage.  Changes are saved on a
+ * background thread, at most once every {@link #SAVE_DELAY_MILLIS}, so that recording many files
+ * at once costs one write.  It's only a cache: if it's lost or corrupt (or the last changes didn't
+ * get saved), it's rebuilt as files are read.</p>
+ *
+ * @author Chuan-Zheng Lee
+ * @since 2026-10-19
+ */
+class FormatContentManifest {
+
+    private static final String TAG = "FormatContentManifest";
+
+    private static final String KEY_FILES = "files";
+    private static final String KEY_NAME = "name";
+    private static final String KEY_SHA256 = "sha256";
+    private static final String KEY_SIZE = "size";
+    private static final String KEY_MODIFIED = "modified";
+    private static final String KEY_VERSION = "version";
+
+    private static final long SAVE_DELAY_MILLIS = 1000;
+
+    private final File mManifestFile;
+    private final HashMap<String, Record> mRecordsByName = new HashMap<>();
+    private final HashMap<String, Set<String>> mNamesBySha256 = new HashMap<>();
+    private boolean mLoaded = false;
+
+    private final ScheduledExecutorService mSaveExecutor = Executors.newSingleThreadScheduledExecutor();
+    private boolean mSaveScheduled = false;  // guarded by this
+
+    //******************************************************************************************
+    // Private classes
+    //******************************************************************************************
+
+    private static class Record {
+        @NonNull final String sha256;
+        final long size;
+        final long lastModified;
+        @Nullable String version;
+
+        Record(@NonNull String sha256, long size, long lastModified, @Nullable String version) {
+            this.sha256 = sha256;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.version = version;
+        }
+
+        boolean matches(File file) {
+            return file.length() == size && file.lastModified() == lastModified;
+        }
+    }
+
+    //******************************************************************************************
+    // Constructor
+    //******************************************************************************************
+
+    /**
+     * @param manifestFile the file in which to keep the manifest
+     */
+    FormatContentManifest(@NonNull File manifestFile) {
+        mManifestFile = manifestFile;
+    }
+
+    //******************************************************************************************
+    // Package-private methods
+    //******************************************************************************************
+
+    /**
+     * Records the hash of a file that has just been written.
+     *
+     * @param file   the file, which must exist
+     * @param sha256 the SHA-256 hash of its content, in lowercase hexadecimal
+     */
+    synchronized void put(@NonNull File file, @NonNull String sha256) {
+        ensureLoaded();
+        String name = file.getName();
+        Record previous = mRecordsByName.get(name);
+
+        // If the content hasn't changed, the version hasn't either
+        String version = (previous != null && previous.sha256.equals(sha256)) ? previous.version : null;
+
+        removeRecord(name);
+        addRecord(name, new Record(sha256, file.length(), file.lastModified(), version));
+        scheduleSave();
+    }
+
+    /**
+     * @param file a file in the user files directory
+     * @return the SHA-256 hash recorded for the file, or <code>null</code> if there isn't one or
+     * the file has changed since it was recorded
+     */
+    @Nullable
+    synchronized String getSha256(@NonNull File file) {
+        Record record = getValidRecord(file);
+        return (record != null) ? record.sha256 : null;
+    }
+
+    /**
+     * @param file a file in the user files directory
+     * @return the version recorded for the file's content, or <code>null</code> if there isn't one
+     * or the file has changed since it was recorded
+     */
+    @Nullable
+    synchronized String getVersion(@NonNull File file) {
+        Record record = getValidRecord(file);
+        return (record != null) ? record.version : null;
+    }
+
+    /**
+     * Records the version of a file's content.  This does nothing if the file's hash isn't already
+     * recorded, since the version is really a property of the content.
+     *
+     * @param file    a file in the user files directory
+     * @param version the version found in the file
+     */
+    synchronized void putVersion(@NonNull File file, @NonNull String version) {
+        Record record = getValidRecord(file);
+        if (record == null || version.equals(record.version)) return;
+        record.version = version;
+        scheduleSave();
+    }
+
+    /**
+     * @param sha256 a SHA-256 hash, in lowercase hexadecimal
+     * @return the names of all files recorded as having that content, possibly empty.  These
+     * aren't checked against the file system, so callers should check that the files haven't
+     * changed (using {@link #getSha256(File)}) before relying on them.
+     */
+    @NonNull
+    synchronized List<String> getNames(@NonNull String sha256) {
+        ensureLoaded();
+        Set<String> names = mNamesBySha256.get(sha256);
+        if (names == null) return Collections.emptyList();
+        return new ArrayList<>(names);
+    }
+
+    /**
+     * Forgets the record for a file, for example, because it was deleted.
+     *
+     * @param name the name of the file
+     */
+    synchronized void remove(@NonNull String name) {
+        ensureLoaded();
+        if (removeRecord(name)) scheduleSave();
+    }
+
+    /**
+     * Forgets records for all files not in the given list.
+     *
+     * @param existingNames the names of all files that currently exist
+     */
+    synchronized void retainOnly(@NonNull Set<String> existingNames) {
+        ensureLoaded();
+        boolean changed = false;
+        for (String name : new ArrayList<>(mRecordsByName.keySet())) {
+            if (!existingNames.contains(name)) {
+                removeRecord(name);
+                changed = true;
+            }
+        }
+        if (changed) scheduleSave();
+    }
+
+    //******************************************************************************************
+    // Private methods
+    //******************************************************************************************
+
+    /**
+     * @return the record for the file, or <code>null</code> if there isn't one or it doesn't match
+     * the file any more.  A record that doesn't match is left alone; it'll be replaced when the
+     * file is next recorded.
+     */
+    @Nullable
+    private Record getValidRecord(File file) {
+        ensureLoaded();
+        Record record = mRecordsByName.get(file.getName());
+        if (record == null || !record.matches(file)) return null;
+        return record;
+    }
+
+    private void addRecord(String name, Record record) {
+        mRecordsByName.put(name, record);
+        Set<String> names = mNamesBySha256.get(record.sha256);
+        if (names == null) {
+            names = new HashSet<>();
+            mNamesBySha256.put(record.sha256, names);
+        }
+        names.add(name);
+    }
+
+    private boolean removeRecord(String name) {
+        Record record = mRecordsByName.remove(name);
+        if (record == null) return false;
+        Set<String> names = mNamesBySha256.get(record.sha256);
+        if (names != null) {
+            names.remove(name);
+            if (names.isEmpty()) mNamesBySha256.remove(record.sha256);
+        }
+        return true;
+    }
+
+    private void ensureLoaded() {
+        if (mLoaded) return;
+        mLoaded = true;
+        if (!mManifestFile.exists()) return;
+
+        try (JsonReader reader = new JsonReader(new InputStreamReader(
+                new FileInputStream(mManifestFile), StandardCharsets.UTF_8))) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (reader.nextName().equals(KEY_FILES))
+                    readRecords(reader);
+                else
+                    reader.skipValue();
+            }
+            reader.endObject();
+        } catch (IOException | IllegalStateException | NumberFormatException e) {
+            Log.e(TAG, "Couldn't read manifest, starting again", e);
+            mRecordsByName.clear();
+            mNamesBySha256.clear();
+        }
+    }
+
+    private void readRecords(JsonReader reader) throws IOException {
+        reader.beginArray();
+        while (reader.hasNext()) {
+            String name = null, sha256 = null, version = null;
+            long size = -1, lastModified = -1;
+
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case KEY_NAME:
+                        name = reader.nextString();
+                        break;
+                    case KEY_SHA256:
+                        sha256 = reader.nextString();
+                        break;
+                    case KEY_SIZE:
+                        size = reader.nextLong();
+                        break;
+                    case KEY_MODIFIED:
+                        lastModified = reader.nextLong();
+                        break;
+                    case KEY_VERSION:
+                        if (reader.peek() == JsonToken.NULL) reader.nextNull();
+                        else version = reader.nextString();
+                        break;
+                    default:
+                        reader.skipValue();
+                }
+            }
+            reader.endObject();
+
+            if (name != null && sha256 != null && size >= 0)
+                addRecord(name, new Record(sha256, size, lastModified, version));
+        }
+        reader.endArray();
+    }
+
+    /**
+     * Arranges for the manifest to be saved soon, if it isn't already going to be.  Must be called
+     * while holding the lock.
+     */
+    private void scheduleSave() {
+        if (mSaveScheduled) return;
+        mSaveScheduled = true;
+        mSaveExecutor.schedule(this::save, SAVE_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Writes the manifest to a temporary file, then renames it over the old one, so that a
+     * half-written manifest is never left behind.  This runs on the save thread; the records are
+     * copied while holding the lock, and written out without it.
+     */
+    private void save() {
+        HashMap<String, Record> records = new HashMap<>();
+        synchronized (this) {
+            mSaveScheduled = false;
+            for (Map.Entry<String, Record> entry : mRecordsByName.entrySet()) {
+                Record record = entry.getValue();
+                records.put(entry.getKey(), new Record(record.sha256, record.size, record.lastModified, record.version));
+            }
+        }
+
+        File temp = new File(mManifestFile.getPath() + ".tmp");
+        try (JsonWriter writer = new JsonWriter(new OutputStreamWriter(
+                new FileOutputStream(temp), StandardCharsets.UTF_8))) {
+            writer.beginObject();
+            writer.name(KEY_FILES).beginArray();
+            for (Map.Entry<String, Record> entry : records.entrySet()) {
+                Record record = entry.getValue();
+                writer.beginObject();
+                writer.name(KEY_NAME).value(entry.getKey());
+                writer.name(KEY_SHA256).value(record.sha256);
+                writer.name(KEY_SIZE).value(record.size);
+                writer.name(KEY_MODIFIED).value(record.lastModified);
+                if (record.version != null) writer.name(KEY_VERSION).value(record.version);
+                writer.endObject();
+            }
+            writer.endArray();
+            writer.endObject();
+        } catch (IOException e) {
+            Log.e(TAG, "Couldn't write manifest", e);
+            return;
+        }
+
+        if (!temp.renameTo(mManifestFile))
+            Log.e(TAG, "Couldn't rename manifest into place");
+    }
+
+}
@@ -0,0 +1,294 @@
+/*
+ * Copyright (C) 2026 Chuan-Zheng Lee
+ *
+ * This file is part of the Debatekeeper app, which is licensed under the GNU
+ * General Public Licence version 3 (GPLv3).  You can redistribute and/or modify
+ * it under the terms of the GPLv3, and you must not use this file except in
+ * compliance with the GPLv3.
+ *
+ * This app is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE.  See the GNU General Public Licence for more details.
+ *
+ * You should have received a copy of the GNU General Public Licence along with
+ * this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.czlee.debatekeeper;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * FormatDownloadScheduler runs downloads on a small pool of threads, so that several files can be
+ * downloaded at once without overwhelming the device or any one server.
+ *
+ * <p>At most {@link #MAX_CONCURRENT_DOWNLOADS} downloads run at once, and at most
+ * {@link #MAX_DOWNLOADS_PER_HOST} from any one host; anything else waits its turn, in the order it
+ * was submitted.  A download that fails with an error that might be temporary is tried again, up to
+ * {@link #MAX_ATTEMPTS} times in total, waiting a little longer each time.  Downloads can be
+ * cancelled at any point, including while they're waiting to be retried.</p>
+ *
+ * <p>The scheduler doesn't know what a download is: it just runs a {@link Job}, and tells a
+ * {@link Callback} what happened.  Callbacks are called on a background thread.</p>
+ *
+ * @author Chuan-Zheng Lee
+ * @since 2026-10-19
+ */
+class FormatDownloadScheduler {
+
+    private static final String TAG = "FormatDownloadScheduler";
+
+    static final int MAX_CONCURRENT_DOWNLOADS = 4;
+    static final int MAX_DOWNLOADS_PER_HOST = 2;
+    static final int MAX_ATTEMPTS = 3;
+    private static final long INITIAL_BACKOFF_MILLIS = 1000;
+
+    private final ScheduledExecutorService mExecutor = Executors.newScheduledThreadPool(MAX_CONCURRENT_DOWNLOADS);
+    private final Random mRandom = new Random();
+
+    // All of these are guarded by this
+    private final ArrayDeque<Task> mPending = new ArrayDeque<>();
+    private final HashSet<Task> mLiveTasks = new HashSet<>();
+    private final HashMap<String, Integer> mRunningPerHost = new HashMap<>();
+    private int mRunning = 0;
+
+    //******************************************************************************************
+    // Public classes
+    //******************************************************************************************
+
+    /**
+     * A download to run.  It may be run more than once, if it fails and is retried.  If the task is
+     * cancelled while this is running, the thread running it is interrupted.
+     */
+    interface Job {
+        void run() throws IOException;
+    }
+
+    /**
+     * Exactly one of these methods is called for each task, on a background thread.
+     */
+    interface Callback {
+        void onSucceeded();
+        void onFailed(@NonNull IOException e);
+        void onCancelled();
+    }
+
+    /**
+     * A download submitted to the scheduler, used to cancel it.
+     */
+    class Task {
+        private final String host;
+        private final Job job;
+        private final Callback callback;
+        private State state = State.PENDING;
+        private int attempts = 0;
+        private boolean cancelled = false;
+        private Thread worker = null;
+        private Future<?> retryFuture = null;
+
+        private Task(String host, Job job, Callback callback) {
+            this.host = host;
+            this.job = job;
+            this.callback = callback;
+        }
+
+        /**
+         * Cancels this download.  Does nothing if it has already finished.
+         */
+        void cancel() {
+            FormatDownloadScheduler.this.cancel(this);
+        }
+    }
+
+    //******************************************************************************************
+    // Private classes
+    //******************************************************************************************
+
+    private enum State {
+        PENDING,
+        RUNNING,
+        WAITING_TO_RETRY
+    }
+
+    //******************************************************************************************
+    // Package-private methods
+    //******************************************************************************************
+
+    /**
+     * Submits a download.  It starts as soon as there's room for it.
+     *
+     * @param host     the host the download is from, used to limit downloads from each host
+     * @param job      the download itself
+     * @param callback a {@link Callback} to tell when the download finishes
+     * @return a {@link Task} that can be used to cancel the download
+     */
+    @NonNull
+    synchronized Task submit(@NonNull String host, @NonNull Job job, @NonNull Callback callback) {
+        Task task = new Task(host, job, callback);
+        mLiveTasks.add(task);
+        mPending.add(task);
+        dispatch();
+        return task;
+    }
+
+    /**
+     * Cancels every download that hasn't finished yet.
+     */
+    synchronized void cancelAll() {
+        for (Task task : new ArrayList<>(mLiveTasks))
+            cancel(task);
+    }
+
+    /**
+     * Cancels every download that hasn't finished yet, and releases the threads once their
+     * callbacks have been called.  Nothing can be submitted after this.
+     */
+    synchronized void shutdown() {
+        cancelAll();
+        mExecutor.shutdown();
+    }
+
+    //******************************************************************************************
+    // Private methods
+    //******************************************************************************************
+
+    private synchronized void cancel(Task task) {
+        if (task.cancelled || !mLiveTasks.contains(task)) return;
+        task.cancelled = true;
+
+        switch (task.state) {
+            case PENDING:
+                mPending.remove(task);
+                finish(task);
+                mExecutor.execute(task.callback::onCancelled);
+                break;
+            case WAITING_TO_RETRY:
+                task.retryFuture.cancel(false);
+                finish(task);
+                mExecutor.execute(task.callback::onCancelled);
+                break;
+            case RUNNING:
+                // runTask() will notice the flag, and call the callback when the job stops
+                if (task.worker != null) task.worker.interrupt();
+                break;
+        }
+    }
+
+    /**
+     * Starts as many pending tasks as the limits allow.  Must be called while holding the lock.
+     */
+    private void dispatch() {
+        Iterator<Task> iterator = mPending.iterator();
+        while (mRunning < MAX_CONCURRENT_DOWNLOADS && iterator.hasNext()) {
+            Task task = iterator.next();
+            Integer runningForHost = mRunningPerHost.get(task.host);
+            if (runningForHost != null && runningForHost >= MAX_DOWNLOADS_PER_HOST) continue;
+
+            iterator.remove();
+            mRunning++;
+            mRunningPerHost.put(task.host, (runningForHost == null) ? 1 : runningForHost + 1);
+            task.state = State.RUNNING;
+            task.attempts++;
+            mExecutor.execute(() -> runTask(task));
+        }
+    }
+
+    private void runTask(Task task) {
+        synchronized (this) {
+            task.worker = Thread.currentThread();
+        }
+
+        IOException error = null;
+        boolean completed = false;
+        if (!task.cancelled) {
+            try {
+                task.job.run();
+                completed = true;
+            } catch (IOException e) {
+                error = e;
+            }
+        }
+
+        boolean cancelled, retrying = false;
+        synchronized (this) {
+            task.worker = null;
+            Thread.interrupted();  // clear any interrupt from cancel(), now that it can't happen
+
+            mRunning--;
+            int runningForHost = mRunningPerHost.get(task.host) - 1;
+            if (runningForHost == 0) mRunningPerHost.remove(task.host);
+            else mRunningPerHost.put(task.host, runningForHost);
+
+            // A job that finished before it noticed it was cancelled still succeeded
+            cancelled = task.cancelled && !completed;
+            if (!cancelled && error != null && task.attempts < MAX_ATTEMPTS && isRetryable(error)) {
+                long delay = getBackoffMillis(task.attempts);
+                Log.i(TAG, String.format("Attempt %d failed (%s), retrying in %d ms", task.attempts,
+                        error.getMessage(), delay));
+                task.state = State.WAITING_TO_RETRY;
+                task.retryFuture = mExecutor.schedule(() -> retry(task), delay, TimeUnit.MILLISECONDS);
+                retrying = true;
+            } else {
+                finish(task);
+            }
+
+            dispatch();
+        }
+
+        if (retrying) return;
+        if (completed) task.callback.onSucceeded();
+        else if (cancelled) task.callback.onCancelled();
+        else task.callback.onFailed(error);
+    }
+
+    private synchronized void retry(Task task) {
+        if (task.cancelled) return;
+        task.state = State.PENDING;
+        task.retryFuture = null;
+        mPending.addFirst(task);  // it's waited long enough already
+        dispatch();
+    }
+
+    /**
+     * Forgets a task that has finished.  Must be called while holding the lock.
+     */
+    private void finish(Task task) {
+        mLiveTasks.remove(task);
+    }
+
+    /**
+     * @return the time to wait before the next attempt: doubling after each attempt, with up to 50%
+     * added at random, so that downloads that failed together don't all retry together
+     */
+    private long getBackoffMillis(int attempts) {
+        long base = INITIAL_BACKOFF_MILLIS << (attempts - 1);
+        return base + (long) (mRandom.nextDouble() * base / 2);
+    }
+
+    /**
+     * @return <code>false</code> if the error will happen again no matter how many times the
+     * download is tried, <code>true</code> if it might be temporary
+     */
+    private static boolean isRetryable(IOException e) {
+        // FileNotFoundException is what URLConnection throws for 404s and the like;
+        // MalformedURLException includes host mismatches
+        return !(e instanceof FileNotFoundException) && !(e instanceof MalformedURLException);
+    }
+
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2026 Chuan-Zheng Lee
+ *
+ * This file is part of the Debatekeeper app, which is licensed under the GNU
+ * General Public Licence version 3 (GPLv3).  You can redistribute and/or modify
+ * it under the terms of the GPLv3, and you must not use this file except in
+ * compliance with the GPLv3.
+ *
+ * This app is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE.  See the GNU General Public Licence for more details.
+ *
+ * You should have received a copy of the GNU General Public Licence along with
+ * this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.czlee.debatekeeper;
+
+import android.app.AlertDialog;
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+
+import net.czlee.debatekeeper.FormatSearchIndex.Facet;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * FormatSearchFilters holds the facet values the user has chosen to filter a formats list by,
+ * for use with {@link FormatSearchIndex#query}, and shows the dialogs for choosing them.
+ *
+ * @author Chuan-Zheng Lee
+ * @since 2026-10-19
+ */
+class FormatSearchFilters {
+
+    private final EnumMap<Facet, HashSet<String>> mSelected = new EnumMap<>(Facet.class);
+
+    //******************************************************************************************
+    // Constructor
+    //******************************************************************************************
+
+    FormatSearchFilters() {
+        for (Facet facet : Facet.values())
+            mSelected.put(facet, new HashSet<>());
+    }
+
+    //******************************************************************************************
+    // Package-private methods
+    //******************************************************************************************
+
+    /**
+     * @return the selected values of each facet, to pass to {@link FormatSearchIndex#query}
+     */
+    @NonNull
+    Map<Facet, HashSet<String>> getSelected() {
+        return mSelected;
+    }
+
+    /**
+     * @return <code>true</code> if any facet has a value selected
+     */
+    boolean isActive() {
+        for (HashSet<String> values : mSelected.values())
+            if (!values.isEmpty()) return true;
+        return false;
+    }
+
+    void clear() {
+        for (HashSet<String> values : mSelected.values())
+            values.clear();
+    }
+
+    /**
+     * Shows a dialog for choosing the values of a facet to filter by, with the number of formats
+     * that have each value.
+     *
+     * @param context   a {@link Context}
+     * @param facet     the facet to choose values of
+     * @param counts    the counts for the facet, from {@link FormatSearchIndex.Result#getFacetCounts}
+     * @param onChanged what to do after the user confirms a new selection
+     */
+    void showDialog(@NonNull Context context, @NonNull Facet facet, @NonNull Map<String, Integer> counts,
+                    @NonNull Runnable onChanged) {
+        HashSet<String> selected = mSelected.get(facet);
+
+        // Values that are selected but don't match anything any more are still listed, so that
+        // they can be deselected
+        LinkedHashMap<String, Integer> allCounts = new LinkedHashMap<>(counts);
+        for (String value : selected)
+            if (!allCounts.containsKey(value)) allCounts.put(value, 0);
+
+        final ArrayList<String> values = new ArrayList<>(allCounts.keySet());
+        String[] labels = new String[values.size()];
+        boolean[] checked = new boolean[values.size()];
+        for (int i = 0; i < values.size(); i++) {
+            String value = values.get(i);
+            labels[i] = context.getString(R.string.formatSearch_facetValue, value, allCounts.get(value));
+            checked[i] = selected.contains(value);
+        }
+
+        AlertDialog.Builder builder = new AlertDialog.Builder(context);
+        builder.setTitle(getTitleResId(facet))
+                .setMultiChoiceItems(labels, checked, (dialog, which, isChecked) -> checked[which] = isChecked)
+                .setPositiveButton(R.string.formatSearch_dialog_apply, (dialog, which) -> {
+                    selected.clear();
+                    for (int i = 0; i < values.size(); i++)
+                        if (checked[i]) selected.add(values.get(i));
+                    onChanged.run();
+                })
+                .setNegativeButton(R.string.formatSearch_dialog_cancel, null);
+        if (values.isEmpty()) builder.setMessage(R.string.formatSearch_dialog_noValues);
+        builder.show();
+    }
+
+    //******************************************************************************************
+    // Private methods
+    //******************************************************************************************
+
+    private static int getTitleResId(Facet facet) {
+        switch (facet) {
+            case REGION:
+                return R.string.formatSearch_filterByRegion;
+            case LEVEL:
+                return R.string.formatSearch_filterByLevel;
+            case USED_AT:
+            default:
+                return R.string.formatSearch_filterByUsedAt;
+        }
+    }
+
+}
@@ -0,0 +1,367 @@
+/*
+ * Copyright (C) 2026 Chuan-Zheng Lee
+ *
+ * This file is part of the Debatekeeper app, which is licensed under the GNU
+ * General Public Licence version 3 (GPLv3).  You can redistribute and/or modify
+ * it under the terms of the GPLv3, and you must not use this file except in
+ * compliance with the GPLv3.
+ *
+ * This app is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE.  See the GNU General Public Licence for more details.
+ *
+ * You should have received a copy of the GNU General Public Licence along with
+ * this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.czlee.debatekeeper;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+
+/**
+ * FormatSearchIndex is an in-memory search index over a list of debate formats, used to search
+ * the formats list as the user types, and to filter it by region, level and where a format is used.
+ *
+ * <p>Every word in each format's name, description, regions, levels and "used at"s is indexed, so
+ * a query matches a format if every word in the query is the start of some word in the format.
+ * Case and accents are ignored.  Words are kept in a sorted array, each with a sorted list of the
+ * formats it appears in, so looking up a prefix is a binary search followed by a scan of the words
+ * that start with it.</p>
+ *
+ * <p>Regions, levels and "used at"s are also facets: values that formats can be filtered by.  Each
+ * query result says how many formats have each value, counting the formats that would match if
+ * that facet's own filter were removed, so that the counts show what choosing another value would
+ * do.</p>
+ *
+ * <p>An index is immutable once built, so it can be queried from any thread.  It should be built
+ * again whenever the list changes.  Each format's words are worked out once, in an {@link Entry},
+ * so callers that keep their entries can rebuild an index without doing that again.</p>
+ *
+ * @param <T> the type of the formats in the list
+ * @author Chuan-Zheng Lee
+ * @since 2026-10-19
+ */
+class FormatSearchIndex<T> {
+
+    private static final Pattern DIACRITICS = Pattern.compile("\\p{M}+");
+
+    private final List<T> mItems;
+    private final String[] mTerms;
+    private final int[][] mPostings;
+    private final EnumMap<Facet, String[]> mFacetValues = new EnumMap<>(Facet.class);
+    private final EnumMap<Facet, int[][]> mFacetValuesByItem = new EnumMap<>(Facet.class);
+
+    //******************************************************************************************
+    // Public classes
+    //******************************************************************************************
+
+    enum Facet {
+        REGION,
+        LEVEL,
+        USED_AT
+    }
+
+    /**
+     * A format's words and facet values, ready to be added to an index.  Entries are immutable, so
+     * callers can keep them and add them to a new index when the list changes, instead of
+     * splitting the same text into words again.
+     */
+    static class Entry<T> {
+        @NonNull final T item;
+        private final String[] mTerms;
+        private final List<String> mRegions;
+        private final List<String> mLevels;
+        private final List<String> mUsedAts;
+
+        Entry(@NonNull T item, @Nullable String name, @Nullable String description,
+              @NonNull Collection<String> regions, @NonNull Collection<String> levels,
+              @NonNull Collection<String> usedAts) {
+            this.item = item;
+
+            TreeSet<String> terms = new TreeSet<>(tokenise(name));
+            terms.addAll(tokenise(description));
+            for (String region : regions) terms.addAll(tokenise(region));
+            for (String level : levels) terms.addAll(tokenise(level));
+            for (String usedAt : usedAts) terms.addAll(tokenise(usedAt));
+            mTerms = terms.toArray(new String[0]);
+
+            mRegions = new ArrayList<>(regions);
+            mLevels = new ArrayList<>(levels);
+            mUsedAts = new ArrayList<>(usedAts);
+        }
+    }
+
+    /**
+     * Collects formats to be indexed.  Formats are returned by queries in the order in which they
+     * were added.
+     */
+    static class Builder<T> {
+        private final ArrayList<T> mItems = new ArrayList<>();
+        private final HashMap<String, ArrayList<Integer>> mPostings = new HashMap<>();
+        private final EnumMap<Facet, ArrayList<List<String>>> mFacets = new EnumMap<>(Facet.class);
+
+        Builder() {
+            for (Facet facet : Facet.values())
+                mFacets.put(facet, new ArrayList<>());
+        }
+
+        @NonNull
+        Builder<T> add(@NonNull T item, @Nullable String name, @Nullable String description,
+                       @NonNull Collection<String> regions, @NonNull Collection<String> levels,
+                       @NonNull Collection<String> usedAts) {
+            return add(new Entry<>(item, name, description, regions, levels, usedAts));
+        }
+
+        @NonNull
+        Builder<T> add(@NonNull Entry<T> entry) {
+            int id = mItems.size();
+            mItems.add(entry.item);
+
+            // An entry's terms are distinct, so each id is added to each list at most once
+            for (String term : entry.mTerms) {
+                ArrayList<Integer> ids = mPostings.get(term);
+                if (ids == null) {
+                    ids = new ArrayList<>();
+                    mPostings.put(term, ids);
+                }
+                ids.add(id);
+            }
+
+            mFacets.get(Facet.REGION).add(entry.mRegions);
+            mFacets.get(Facet.LEVEL).add(entry.mLevels);
+            mFacets.get(Facet.USED_AT).add(entry.mUsedAts);
+            return this;
+        }
+
+        @NonNull
+        FormatSearchIndex<T> build() {
+            return new FormatSearchIndex<>(this);
+        }
+    }
+
+    /**
+     * The result of a query: the formats that matched, and the facet counts.
+     */
+    static class Result<T> {
+        @NonNull final List<T> matches;
+        private final EnumMap<Facet, Map<String, Integer>> mFacetCounts;
+
+        private Result(@NonNull List<T> matches, EnumMap<Facet, Map<String, Integer>> facetCounts) {
+            this.matches = matches;
+            mFacetCounts = facetCounts;
+        }
+
+        /**
+         * @param facet a {@link Facet}
+         * @return the number of formats with each value of the facet, most common first, leaving
+         * out values that no format has
+         */
+        @NonNull
+        Map<String, Integer> getFacetCounts(@NonNull Facet facet) {
+            return mFacetCounts.get(facet);
+        }
+    }
+
+    //******************************************************************************************
+    // Constructor
+    //******************************************************************************************
+
+    private FormatSearchIndex(Builder<T> builder) {
+        mItems = Collections.unmodifiableList(new ArrayList<>(builder.mItems));
+
+        mTerms = builder.mPostings.keySet().toArray(new String[0]);
+        Arrays.sort(mTerms);
+        mPostings = new int[mTerms.length][];
+        for (int i = 0; i < mTerms.length; i++) {
+            ArrayList<Integer> ids = builder.mPostings.get(mTerms[i]);
+            mPostings[i] = new int[ids.size()];
+            for (int j = 0; j < ids.size(); j++)
+                mPostings[i][j] = ids.get(j);
+        }
+
+        for (Facet facet : Facet.values()) {
+            ArrayList<List<String>> valuesByItem = builder.mFacets.get(facet);
+            TreeSet<String> distinct = new TreeSet<>();
+            for (List<String> values : valuesByItem) distinct.addAll(values);
+            String[] values = distinct.toArray(new String[0]);
+
+            int[][] valueIdsByItem = new int[valuesByItem.size()][];
+            for (int id = 0; id < valuesByItem.size(); id++) {
+                TreeSet<Integer> valueIds = new TreeSet<>();
+                for (String value : valuesByItem.get(id))
+                    valueIds.add(Arrays.binarySearch(values, value));
+                valueIdsByItem[id] = new int[valueIds.size()];
+                int j = 0;
+                for (int valueId : valueIds) valueIdsByItem[id][j++] = valueId;
+            }
+
+            mFacetValues.put(facet, values);
+            mFacetValuesByItem.put(facet, valueIdsByItem);
+        }
+    }
+
+    //******************************************************************************************
+    // Package-private methods
+    //******************************************************************************************
+
+    /**
+     * @return the number of formats in the index
+     */
+    int size() {
+        return mItems.size();
+    }
+
+    /**
+     * Finds the formats that match a query and the selected facet values.
+     *
+     * @param query   what the user has typed so far; every word in it must be the start of a word
+     *                in the format.  An empty query matches every format.
+     * @param filters for each facet, the values to allow; a format must have at least one of the
+     *                allowed values of each facet that has any.  Facets that aren't in the map, or
+     *                have no values, don't filter anything.
+     * @return a {@link Result}
+     */
+    @NonNull
+    Result<T> query(@Nullable String query, @NonNull Map<Facet, ? extends Set<String>> filters) {
+        int size = mItems.size();
+
+        BitSet textMatches = new BitSet(size);
+        textMatches.set(0, size);
+        for (String prefix : tokenise(query))
+            textMatches.and(findPrefix(prefix));
+
+        EnumMap<Facet, BitSet> facetMatches = new EnumMap<>(Facet.class);
+        for (Facet facet : Facet.values()) {
+            Set<String> allowed = filters.get(facet);
+            if (allowed != null && !allowed.isEmpty())
+                facetMatches.put(facet, findFacetValues(facet, allowed));
+        }
+
+        BitSet matches = (BitSet) textMatches.clone();
+        for (BitSet bits : facetMatches.values())
+            matches.and(bits);
+
+        ArrayList<T> matchedItems = new ArrayList<>(matches.cardinality());
+        for (int id = matches.nextSetBit(0); id >= 0; id = matches.nextSetBit(id + 1))
+            matchedItems.add(mItems.get(id));
+
+        EnumMap<Facet, Map<String, Integer>> facetCounts = new EnumMap<>(Facet.class);
+        for (Facet facet : Facet.values()) {
+            // Counts ignore this facet's own filter, but not the others
+            BitSet base = matches;
+            if (facetMatches.containsKey(facet)) {
+                base = (BitSet) textMatches.clone();
+                for (Map.Entry<Facet, BitSet> entry : facetMatches.entrySet())
+                    if (entry.getKey() != facet) base.and(entry.getValue());
+            }
+            facetCounts.put(facet, countFacetValues(facet, base));
+        }
+
+        return new Result<>(Collections.unmodifiableList(matchedItems), facetCounts);
+    }
+
+    //******************************************************************************************
+    // Private methods
+    //******************************************************************************************
+
+    /**
+     * @return the formats with any word starting with the given prefix
+     */
+    @NonNull
+    private BitSet findPrefix(String prefix) {
+        BitSet result = new BitSet(mItems.size());
+        int index = Arrays.binarySearch(mTerms, prefix);
+        if (index < 0) index = -index - 1;
+        for (; index < mTerms.length && mTerms[index].startsWith(prefix); index++)
+            for (int id : mPostings[index]) result.set(id);
+        return result;
+    }
+
+    /**
+     * @return the formats with any of the given values of a facet
+     */
+    @NonNull
+    private BitSet findFacetValues(Facet facet, Set<String> allowed) {
+        String[] values = mFacetValues.get(facet);
+        int[][] valueIdsByItem = mFacetValuesByItem.get(facet);
+
+        boolean[] allowedIds = new boolean[values.length];
+        for (String value : allowed) {
+            int valueId = Arrays.binarySearch(values, value);
+            if (valueId >= 0) allowedIds[valueId] = true;
+        }
+
+        BitSet result = new BitSet(mItems.size());
+        for (int id = 0; id < valueIdsByItem.length; id++) {
+            for (int valueId : valueIdsByItem[id]) {
+                if (allowedIds[valueId]) {
+                    result.set(id);
+                    break;
+                }
+            }
+        }
+        return result;
+    }
+
+    @NonNull
+    private Map<String, Integer> countFacetValues(Facet facet, BitSet items) {
+        String[] values = mFacetValues.get(facet);
+        int[][] valueIdsByItem = mFacetValuesByItem.get(facet);
+
+        int[] counts = new int[values.length];
+        for (int id = items.nextSetBit(0); id >= 0; id = items.nextSetBit(id + 1))
+            for (int valueId : valueIdsByItem[id]) counts[valueId]++;
+
+        ArrayList<Integer> valueIds = new ArrayList<>();
+        for (int valueId = 0; valueId < values.length; valueId++)
+            if (counts[valueId] > 0) valueIds.add(valueId);
+        Collections.sort(valueIds, (a, b) -> (counts[a] != counts[b])
+                ? Integer.compare(counts[b], counts[a]) : values[a].compareTo(values[b]));
+
+        LinkedHashMap<String, Integer> result = new LinkedHashMap<>();
+        for (int valueId : valueIds)
+            result.put(values[valueId], counts[valueId]);
+        return result;
+    }
+
+    /**
+     * Splits text into words, ignoring case, accents and punctuation.
+     */
+    @NonNull
+    private static List<String> tokenise(@Nullable String text) {
+        if (text == null || text.isEmpty()) return Collections.emptyList();
+        String normalised = Normalizer.normalize(text, Normalizer.Form.NFD);
+        normalised = DIACRITICS.matcher(normalised).replaceAll("").toLowerCase(Locale.ROOT);
+
+        ArrayList<String> words = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i <= normalised.length(); i++) {
+            boolean inWord = i < normalised.length() && Character.isLetterOrDigit(normalised.charAt(i));
+            if (inWord && start < 0) {
+                start = i;
+            } else if (!inWord && start >= 0) {
+                words.add(normalised.substring(start, i));
+                start = -1;
+            }
+        }
+        return words;
+    }
+
+}
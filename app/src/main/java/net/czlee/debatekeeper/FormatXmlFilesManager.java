@@ -19,10 +19,16 @@ package net.czlee.debatekeeper;
 import android.annotation.SuppressLint;
 import android.content.Context;
 import android.os.Environment;
+import android.os.FileObserver;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+import androidx.core.os.HandlerCompat;
 
 import java.io.File;
 import java.io.FileInputStream;
@@ -30,9 +36,20 @@ import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.security.MessageDigest;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  * FormatXmlFilesManager manages the multiple sources of debate format XML files. All debate format
@@ -46,20 +63,136 @@ import java.util.List;
  * location to the "scoped storage" location before Android 11, so the current code does this: - The
  * method migrateToScopedStorage() copies all files from the legacy location to the new scoped
  * app-specific location. -
+ * <p>
+ * There is one FormatXmlFilesManager per process, obtained using {@link #getInstance(Context)}.
+ * It finds the user files directory once, keeps a listing of it in memory, and watches the
+ * directory with a {@link FileObserver} so that the listing stays current when files are added or
+ * removed by anything else.  Objects interested in such changes can register a
+ * {@link FilesChangedListener}.  Events are coalesced: copying a file causes several, and a file
+ * manager might copy many files at once, so the directory is rescanned once things have been
+ * quiet for {@link #RESCAN_DELAY_MILLIS}.  Events for files this class is changing itself are
+ * ignored.
+ * <p>
+ * Files are stored by name, since users can see and share them, but the SHA-256 hash of each file
+ * is also recorded in a {@link FormatContentManifest}.  This makes it cheap to find whether a file
+ * already has some given content, and to remember the version of a file until it changes.
  *
  * @author Chuan-Zheng Lee
  * @since 2012-06-27
  */
 class FormatXmlFilesManager {
 
+    private static FormatXmlFilesManager sInstance;
+
     private final Context mContext;
+    private final FormatContentManifest mManifest;
+    private final Handler mMainHandler = HandlerCompat.createAsync(Looper.getMainLooper());
+    private final CopyOnWriteArrayList<FilesChangedListener> mListeners = new CopyOnWriteArrayList<>();
+    private File mDirectory;             // guarded by this
+    private TreeSet<String> mListing;    // guarded by this
+    private FileObserver mObserver;      // guarded by this
+    private final ScheduledExecutorService mRescanExecutor = Executors.newSingleThreadScheduledExecutor();
+    private boolean mRescanScheduled = false;  // guarded by this
+
+    // Names of files this class is changing itself, mapped to when (in uptime) to stop ignoring
+    // events for them.  Events arrive some time after the change, so they can't just be ignored
+    // while the change is being made.
+    private final HashMap<String, Long> mOwnChanges = new HashMap<>();  // guarded by this
+
     private static final String TAG = "FormatXmlFilesManager";
     private static final String LEGACY_DIRECTORY_NAME = "debatekeeper";
     private static final String XML_FORMATS_DIRECTORY_NAME = "formats";
     private static final String ASSETS_PATH = "formats";
+    private static final String TEMP_FILE_PREFIX = ".copy-";
+    private static final String TEMP_FILE_SUFFIX = ".part";
+    private static final String PARTIAL_FILE_PREFIX = TEMP_FILE_PREFIX + "resume-";
+    private static final String MANIFEST_FILE_NAME = "format-manifest.json";
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+    private static final long RESCAN_DELAY_MILLIS = 250;
+    private static final long OWN_CHANGE_WINDOW_MILLIS = 2000;
+    private static final int OBSERVER_MASK = FileObserver.CREATE | FileObserver.DELETE
+            | FileObserver.MOVED_FROM | FileObserver.MOVED_TO | FileObserver.CLOSE_WRITE
+            | FileObserver.DELETE_SELF | FileObserver.MOVE_SELF;
 
-    FormatXmlFilesManager(Context context) {
+    private FormatXmlFilesManager(Context context) {
         mContext = context;
+        mManifest = new FormatContentManifest(new File(context.getFilesDir(), MANIFEST_FILE_NAME));
+    }
+
+    /**
+     * @param context a {@link Context}; only its application context is kept
+     * @return the process-wide {@link FormatXmlFilesManager}
+     */
+    @NonNull
+    static synchronized FormatXmlFilesManager getInstance(@NonNull Context context) {
+        if (sInstance == null)
+            sInstance = new FormatXmlFilesManager(context.getApplicationContext());
+        return sInstance;
+    }
+
+    /**
+     * Forgets the process-wide instance, so that the next call to {@link #getInstance(Context)}
+     * creates a new one.  Tests need this, since each test has its own files directory.
+     */
+    @VisibleForTesting
+    static synchronized void resetInstance() {
+        sInstance = null;
+    }
+
+    //******************************************************************************************
+    // Public classes
+    //******************************************************************************************
+
+    /**
+     * A file written to a temporary location by {@link #stage(InputStream)}, waiting to be given
+     * its real name or thrown away.
+     */
+    static class StagedFile {
+        @NonNull final File temp;
+        final long byteCount;
+        @NonNull final String sha256;
+
+        StagedFile(@NonNull File temp, long byteCount, @NonNull String sha256) {
+            this.temp = temp;
+            this.byteCount = byteCount;
+            this.sha256 = sha256;
+        }
+    }
+
+    /**
+     * Interface for objects that want to know when files in the user files directory change.
+     * Listeners are called on the main thread, and only for changes made outside this class
+     * (for example, by a file manager or another process); the caller of {@link #copy} or
+     * {@link #delete} already knows what it did.
+     */
+    public interface FilesChangedListener {
+        void onFormatFilesChanged();
+    }
+
+    /**
+     * Passive data class holding the name, size and SHA-256 hash of a file written by
+     * {@link #copy(InputStream, String)} or {@link #copyUnlessDuplicate(InputStream, String)},
+     * computed while it was written.  For {@link #copyUnlessDuplicate(InputStream, String)}, the
+     * name is that of the existing file if nothing was written.
+     */
+    static class CopyResult {
+        @NonNull final String filename;
+        final long byteCount;
+        @NonNull final String sha256;
+
+        CopyResult(@NonNull String filename, long byteCount, @NonNull String sha256) {
+            this.filename = filename;
+            this.byteCount = byteCount;
+            this.sha256 = sha256;
+        }
+
+        /**
+         * @param destinationName the name that was asked for
+         * @return <code>true</code> if an existing file under another name was used instead
+         */
+        boolean isDuplicateOf(@NonNull String destinationName) {
+            return !filename.equals(destinationName);
+        }
     }
 
 
@@ -68,29 +201,263 @@ class FormatXmlFilesManager {
     //******************************************************************************************
 
     /**
-     * Copies all data from the given stream to a file in the user-defined XML files directory.
+     * Copies all data from the given stream to a file in the user-defined XML files directory,
+     * then closes the stream.
      * <p><b>Note that this overwrites the existing file if there is one.</b></p>
+     * <p>The data is first written to a temporary file in the same directory, which is synced to
+     * disk and then renamed over the destination.  So if the copy is interrupted, the destination
+     * is left as it was, rather than truncated.  If the destination already has exactly the same
+     * content, it isn't touched at all.</p>
      *
      * @param in              an {@link InputStream}
      * @param destinationName the name of the destination file
+     * @return a {@link CopyResult} with the number of bytes written and their SHA-256 hash
      * @throws IOException if there was an error dealing with any of the files
      */
-    public void copy(InputStream in, @NonNull String destinationName) throws IOException {
-        // Figure out where to copy the file to
+    @NonNull
+    public CopyResult copy(InputStream in, @NonNull String destinationName) throws IOException {
+        StagedFile staged;
+        try {
+            staged = stage(in);
+        } finally {
+            in.close();
+        }
+        commit(staged, destinationName);
+        return new CopyResult(destinationName, staged.byteCount, staged.sha256);
+    }
+
+    /**
+     * Like {@link #copy(InputStream, String)}, but if there isn't a file called
+     * <code>destinationName</code> yet and another file already has exactly the same content,
+     * nothing is written, and the returned {@link CopyResult} has the name of the existing file.
+     * This way, importing the same format twice doesn't leave two copies of it under different
+     * names.  If the destination does exist, it's overwritten as usual, since the user will have
+     * been asked about that.
+     *
+     * @param in              an {@link InputStream}
+     * @param destinationName the name of the destination file
+     * @return a {@link CopyResult}; use {@link CopyResult#isDuplicateOf(String)} to find out
+     * whether an existing file was used instead
+     * @throws IOException if there was an error dealing with any of the files
+     */
+    @NonNull
+    public CopyResult copyUnlessDuplicate(InputStream in, @NonNull String destinationName) throws IOException {
+        StagedFile staged;
+        try {
+            staged = stage(in);
+        } finally {
+            in.close();
+        }
+
+        String existing = findDuplicate(staged, destinationName);
+        if (existing != null) {
+            Log.i(TAG, destinationName + " has the same content as " + existing + ", not copying it");
+            discard(staged);
+            return new CopyResult(existing, staged.byteCount, staged.sha256);
+        }
+
+        commit(staged, destinationName);
+        return new CopyResult(destinationName, staged.byteCount, staged.sha256);
+    }
+
+    /**
+     * Copies all data from the given stream to a temporary file in the user files directory, which
+     * is synced to disk.  The stream is read to the end but not closed.  The temporary file
+     * doesn't show up in {@link #list()}; it must then be passed to one of the commit methods or
+     * to {@link #discard(StagedFile)}.
+     *
+     * @param in an {@link InputStream}
+     * @return a {@link StagedFile}
+     * @throws IOException if there was an error reading the stream or writing the file
+     */
+    @NonNull
+    StagedFile stage(@NonNull InputStream in) throws IOException {
         File userFilesDirectory = getAppSpecificUserFilesDirectory();
-        File destination = new File(userFilesDirectory, destinationName);
+        if (userFilesDirectory == null)
+            throw new IOException("Couldn't find user files directory");
+        File temp = File.createTempFile(TEMP_FILE_PREFIX, TEMP_FILE_SUFFIX, userFilesDirectory);
+
+        MessageDigest digest = DebatekeeperUtils.newSha256Digest();
+        long byteCount;
+        boolean written = false;
+        try {
+            byteCount = writeAndDigest(in, temp, false, digest);
+            written = true;
+        } finally {
+            if (!written) deleteTempFile(temp);
+        }
+
+        return new StagedFile(temp, byteCount, DebatekeeperUtils.toHexString(digest.digest()));
+    }
+
+    /**
+     * Like {@link #stage(InputStream)}, but for downloads that can be resumed if they're
+     * interrupted.  The data is written to a partial file kept for the given destination, and if
+     * reading the stream fails, whatever was read before the failure is kept there, so that the
+     * download can pick up where it left off.  The hash covers the whole file, including anything
+     * written before this call.
+     *
+     * @param in              an {@link InputStream}, which is read to the end but not closed
+     * @param destinationName the name the file will have once it's committed
+     * @param append          <code>true</code> to add to what's already in the partial file,
+     *                        which should then have {@link #getPartialLength(String)} bytes, or
+     *                        <code>false</code> to start again
+     * @return a {@link StagedFile}, to be committed or discarded as usual
+     * @throws IOException if there was an error reading the stream or writing the file
+     */
+    @NonNull
+    StagedFile stagePartial(@NonNull InputStream in, @NonNull String destinationName, boolean append)
+            throws IOException {
+        File partial = getPartialFile(destinationName);
+        if (partial == null)
+            throw new IOException("Couldn't find user files directory");
+
+        MessageDigest digest = DebatekeeperUtils.newSha256Digest();
+        long byteCount = 0;
+        if (append && partial.exists()) {
+            digestFile(partial, digest);
+            byteCount = partial.length();
+        }
+        byteCount += writeAndDigest(in, partial, append, digest);
+        return new StagedFile(partial, byteCount, DebatekeeperUtils.toHexString(digest.digest()));
+    }
+
+    /**
+     * @param destinationName the name of a file being downloaded
+     * @return the number of bytes kept from an interrupted download of the file by
+     * {@link #stagePartial(InputStream, String, boolean)}, or 0 if there isn't one
+     */
+    long getPartialLength(@NonNull String destinationName) {
+        File partial = getPartialFile(destinationName);
+        return (partial != null && partial.isFile()) ? partial.length() : 0;
+    }
+
+    /**
+     * Throws away anything kept from an interrupted download of a file.
+     *
+     * @param destinationName the name of a file being downloaded
+     */
+    void discardPartial(@NonNull String destinationName) {
+        File partial = getPartialFile(destinationName);
+        if (partial != null && partial.exists()) deleteTempFile(partial);
+    }
+
+    /**
+     * Gives a staged file its real name, overwriting the existing file if there is one.  If the
+     * existing file already has the same content, it's left alone and the staged file is thrown
+     * away.  If this fails, the staged file is thrown away and the existing file is left as it was.
+     *
+     * @param staged          a {@link StagedFile} from {@link #stage(InputStream)}
+     * @param destinationName the name of the destination file
+     * @throws IOException if the file couldn't be renamed
+     */
+    void commit(@NonNull StagedFile staged, @NonNull String destinationName) throws IOException {
+        File destination = new File(staged.temp.getParentFile(), destinationName);
 
-        // Open the files
-        OutputStream out = new FileOutputStream(destination);
+        if (staged.sha256.equals(mManifest.getSha256(destination))) {
+            Log.d(TAG, destinationName + " already has this content, leaving it alone");
+            discard(staged);
+            return;
+        }
 
-        // Copy the file over
-        byte[] buf = new byte[1024];
-        int len;
-        while ((len = in.read(buf)) > 0)
-            out.write(buf, 0, len);
-        out.flush();
-        in.close();
-        out.close();
+        expectOwnChange(destinationName);
+        if (!staged.temp.renameTo(destination)) {
+            discard(staged);
+            throw new IOException("Couldn't rename " + staged.temp.getName() + " to " + destinationName);
+        }
+        addToListing(destinationName);
+        mManifest.put(destination, staged.sha256);
+    }
+
+    /**
+     * Gives each of a list of staged files its real name, as {@link #commit(StagedFile, String)}
+     * does, but all or nothing: if any of them can't be renamed, all of the files that had already
+     * been replaced are put back as they were.  Either way, all of the staged files are used up.
+     *
+     * @param staged           a list of {@link StagedFile}s from {@link #stage(InputStream)}
+     * @param destinationNames a list of names, in the same order, which must all be different
+     * @throws IOException if any file couldn't be renamed (in which case nothing has changed)
+     */
+    void commitAll(@NonNull List<StagedFile> staged, @NonNull List<String> destinationNames)
+            throws IOException {
+        if (staged.size() != destinationNames.size())
+            throw new IllegalArgumentException("staged and destinationNames must be the same size");
+
+        int count = staged.size();
+        File[] destinations = new File[count];
+        File[] backups = new File[count];
+        boolean[] replaced = new boolean[count];
+        boolean success = false;
+
+        try {
+            for (int i = 0; i < count; i++) {
+                StagedFile file = staged.get(i);
+                File destination = new File(file.temp.getParentFile(), destinationNames.get(i));
+                destinations[i] = destination;
+                if (file.sha256.equals(mManifest.getSha256(destination))) continue;
+                expectOwnChange(destination.getName());
+
+                // Move the existing file aside, so that it can be put back if anything goes wrong
+                // Only record the backup once the original is really in it, because the rollback
+                // renames backups over their destinations.
+                if (destination.exists()) {
+                    File backup = File.createTempFile(TEMP_FILE_PREFIX, TEMP_FILE_SUFFIX, destination.getParentFile());
+                    if (!destination.renameTo(backup)) {
+                        deleteTempFile(backup);
+                        throw new IOException("Couldn't move " + destination.getName() + " aside");
+                    }
+                    backups[i] = backup;
+                }
+                if (!file.temp.renameTo(destination))
+                    throw new IOException("Couldn't rename " + file.temp.getName() + " to " + destination.getName());
+                replaced[i] = true;
+            }
+            success = true;
+
+        } finally {
+            for (int i = count - 1; i >= 0; i--) {
+                if (!success && replaced[i] && !destinations[i].delete())
+                    Log.e(TAG, "Couldn't remove " + destinations[i].getName() + " while rolling back");
+                if (backups[i] != null) {
+                    if (success) deleteTempFile(backups[i]);
+                    else if (!backups[i].renameTo(destinations[i]))
+                        Log.e(TAG, "Couldn't restore " + destinations[i].getName() + " while rolling back");
+                }
+                discard(staged.get(i));  // does nothing if it was committed
+            }
+        }
+
+        for (int i = 0; i < count; i++) {
+            if (!replaced[i]) continue;
+            addToListing(destinationNames.get(i));
+            mManifest.put(destinations[i], staged.get(i).sha256);
+        }
+    }
+
+    /**
+     * Looks for a file that already has a staged file's content, for when the staged file would
+     * otherwise be committed under a new name.  The hash of the staged file is looked up with
+     * {@link #findFilesWithSha256(String)}, so this doesn't read any files.
+     *
+     * @param staged          a {@link StagedFile} from {@link #stage(InputStream)}
+     * @param destinationName the name it would be committed under
+     * @return the name of a file with the same content, or <code>null</code> if there isn't one or
+     * if a file called <code>destinationName</code> already exists
+     */
+    @Nullable
+    String findDuplicate(@NonNull StagedFile staged, @NonNull String destinationName) {
+        if (exists(destinationName)) return null;
+        List<String> existing = findFilesWithSha256(staged.sha256);
+        return existing.isEmpty() ? null : existing.get(0);
+    }
+
+    /**
+     * Throws away a staged file.  This does nothing if the file has already been committed.
+     *
+     * @param staged a {@link StagedFile} from {@link #stage(InputStream)}
+     */
+    void discard(@NonNull StagedFile staged) {
+        if (staged.temp.exists()) deleteTempFile(staged.temp);
     }
 
     /**
@@ -116,35 +483,129 @@ class FormatXmlFilesManager {
      */
     public boolean delete(String filename) {
         File file = new File(getAppSpecificUserFilesDirectory(), filename);
-        return file.delete();
+        expectOwnChange(filename);
+        boolean deleted = file.delete();
+        if (deleted) {
+            removeFromListing(filename);
+            mManifest.remove(filename);
+        }
+        return deleted;
     }
 
     /**
-     * Returns a list of all user files in the app-specific external storage location.
+     * Returns the SHA-256 hash of a file's content.  This is normally looked up in the manifest;
+     * if the file isn't in the manifest, or has changed since, it's read and hashed, and the
+     * result is recorded.
+     *
+     * @param filename the name of the file
+     * @return the hash in lowercase hexadecimal, or <code>null</code> if the file doesn't exist or
+     * couldn't be read
+     */
+    @Nullable
+    public String getSha256(@NonNull String filename) {
+        File file = getFileFromExternalStorage(filename);
+        if (file == null) return null;
+
+        String sha256 = mManifest.getSha256(file);
+        if (sha256 != null) return sha256;
+
+        MessageDigest digest = DebatekeeperUtils.newSha256Digest();
+        try {
+            digestFile(file, digest);
+        } catch (IOException e) {
+            Log.e(TAG, "Couldn't hash " + filename, e);
+            return null;
+        }
+
+        sha256 = DebatekeeperUtils.toHexString(digest.digest());
+        mManifest.put(file, sha256);
+        return sha256;
+    }
+
+    /**
+     * Finds files that have the given content, without reading any files.  Only files whose
+     * hashes have been recorded (which includes every file written by this class) are found.
+     *
+     * @param sha256 a SHA-256 hash, in lowercase hexadecimal
+     * @return the names of files with that content, possibly empty
+     */
+    @NonNull
+    public List<String> findFilesWithSha256(@NonNull String sha256) {
+        List<String> result = new ArrayList<>();
+        for (String filename : mManifest.getNames(sha256)) {
+            File file = getFileFromExternalStorage(filename);
+            if (file != null && sha256.equals(mManifest.getSha256(file)))
+                result.add(filename);
+        }
+        return result;
+    }
+
+    /**
+     * @param filename the name of the file
+     * @return the version previously recorded for this file using
+     * {@link #putCachedVersion(String, String)}, or <code>null</code> if there isn't one or the
+     * file has changed since
+     */
+    @Nullable
+    public String getCachedVersion(@NonNull String filename) {
+        File file = getFileFromExternalStorage(filename);
+        if (file == null) return null;
+        return mManifest.getVersion(file);
+    }
+
+    /**
+     * Records the version found in a file, so that it needn't be parsed again until the file
+     * changes.
+     *
+     * @param filename the name of the file
+     * @param version  the version found in the file
+     */
+    public void putCachedVersion(@NonNull String filename, @NonNull String version) {
+        if (getSha256(filename) == null) return;  // makes sure the file is in the manifest
+        File file = getFileFromExternalStorage(filename);
+        if (file != null) mManifest.putVersion(file, version);
+    }
+
+    /**
+     * Returns a list of all user files in the app-specific external storage location.  The
+     * directory is only scanned the first time, or after it has changed; otherwise, this comes
+     * from the in-memory listing.
      *
      * @return an array of Strings, possibly empty, each being an existent file name in external
-     * storage.
+     * storage, in alphabetical order.
      * @throws IOException if there is a problem with some file
      */
     @NonNull
-    public String[] list() throws IOException {
-        File userFilesDirectory = getAppSpecificUserFilesDirectory();
-        if (userFilesDirectory == null) return new String[0];
+    public synchronized String[] list() throws IOException {
+        if (mListing == null) mListing = scan();
+        return mListing.toArray(new String[0]);
+    }
 
-        String[] list = userFilesDirectory.list();
-        if (list == null) return new String[0];
+    /**
+     * @param filename the name of the file
+     * @return <code>true</code> if the file exists in the user files directory
+     */
+    public boolean exists(@NonNull String filename) {
+        return getFileFromExternalStorage(filename) != null;
+    }
 
-        return list;
+    /**
+     * Registers a listener to be told when files change outside this class.  Listeners should
+     * remove themselves using {@link #removeListener(FilesChangedListener)} when they no longer
+     * need to know, since this object lives as long as the process does.
+     *
+     * @param listener a {@link FilesChangedListener}
+     */
+    public void addListener(@NonNull FilesChangedListener listener) {
+        mListeners.addIfAbsent(listener);
     }
 
-    public boolean exists(@NonNull String filename) {
-        try {
-            InputStream in = open(filename);
-            in.close();
-        } catch (IOException e) {
-            return false;
-        }
-        return true;
+    /**
+     * @param listener a {@link FilesChangedListener} previously added with
+     *                 {@link #addListener(FilesChangedListener)}
+     */
+    public void removeListener(@NonNull FilesChangedListener listener) {
+        mListeners.remove(listener);
     }
 
     /**
@@ -237,11 +698,184 @@ class FormatXmlFilesManager {
     //******************************************************************************************
 
     /**
-     * App-specific user files directory.
+     * Reads the names of the files in the user files directory.
+     *
+     * @return a new set of file names, excluding temporary files, possibly empty
+     */
+    @NonNull
+    private TreeSet<String> scan() {
+        TreeSet<String> result = new TreeSet<>();
+        File userFilesDirectory = getAppSpecificUserFilesDirectory();
+        if (userFilesDirectory == null) return result;
+
+        String[] list = userFilesDirectory.list();
+        if (list == null) return result;
+
+        // Leave out temporary files from copies in progress (or interrupted)
+        for (String name : list)
+            if (!isTempFileName(name)) result.add(name);
+
+        return result;
+    }
+
+    private synchronized void addToListing(String filename) {
+        if (mListing != null) mListing.add(filename);
+    }
+
+    private synchronized void removeFromListing(String filename) {
+        if (mListing != null) mListing.remove(filename);
+    }
+
+    /**
+     * Notes that this class is about to change a file itself, so that the events that causes
+     * don't get passed on to listeners.
+     */
+    private synchronized void expectOwnChange(String filename) {
+        mOwnChanges.put(filename, SystemClock.uptimeMillis() + OWN_CHANGE_WINDOW_MILLIS);
+    }
+
+    /**
+     * @return <code>true</code> if this class recently changed the file itself; must be called
+     * while holding the lock
+     */
+    private boolean isOwnChange(String filename) {
+        Long until = mOwnChanges.get(filename);
+        if (until == null) return false;
+        if (SystemClock.uptimeMillis() <= until) return true;
+        mOwnChanges.remove(filename);
+        return false;
+    }
+
+    /**
+     * Called on the observer's thread when something in the user files directory changes.
+     */
+    private void onDirectoryEvent(int event, @Nullable String path) {
+        event &= FileObserver.ALL_EVENTS;
+
+        synchronized (this) {
+            if ((event & (FileObserver.DELETE_SELF | FileObserver.MOVE_SELF)) == 0) {
+                if (path == null || isTempFileName(path) || isOwnChange(path)) return;
+                if (!mRescanScheduled) {
+                    mRescanScheduled = true;
+                    mRescanExecutor.schedule(this::rescan, RESCAN_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+                }
+                return;
+            }
+
+            // The directory itself has gone, so find (or recreate) it next time it's needed
+            Log.i(TAG, "User files directory was removed");
+            stopObserving();
+            mDirectory = null;
+            mListing = null;
+        }
+
+        mMainHandler.post(this::notifyListeners);
+    }
+
+    /**
+     * Rescans the user files directory after changes made outside this class, and tells the
+     * listeners.  This runs on the rescan thread.
+     */
+    private void rescan() {
+        synchronized (this) {
+            mRescanScheduled = false;
+            if (mDirectory == null) return;  // removed since, and listeners already told
+            TreeSet<String> listing = scan();
+            mListing = listing;
+            mManifest.retainOnly(listing);
+        }
+
+        mMainHandler.post(this::notifyListeners);
+    }
+
+    private void notifyListeners() {
+        for (FilesChangedListener listener : mListeners)
+            listener.onFormatFilesChanged();
+    }
+
+    private void startObserving(File directory) {
+        mObserver = new FileObserver(directory.getPath(), OBSERVER_MASK) {
+            @Override
+            public void onEvent(int event, @Nullable String path) {
+                onDirectoryEvent(event, path);
+            }
+        };
+        mObserver.startWatching();
+    }
+
+    private void stopObserving() {
+        if (mObserver == null) return;
+        mObserver.stopWatching();
+        mObserver = null;
+    }
+
+    @Nullable
+    private File getPartialFile(String destinationName) {
+        File userFilesDirectory = getAppSpecificUserFilesDirectory();
+        if (userFilesDirectory == null) return null;
+        return new File(userFilesDirectory, PARTIAL_FILE_PREFIX + destinationName + TEMP_FILE_SUFFIX);
+    }
+
+    /**
+     * Copies a stream to a file, adding everything written to a digest.  The stream isn't closed.
+     * What's been written is synced to disk even if reading the stream fails part way, so that
+     * partial files can be resumed.
+     *
+     * @return the number of bytes written
+     */
+    private static long writeAndDigest(InputStream in, File file, boolean append, MessageDigest digest)
+            throws IOException {
+        long byteCount = 0;
+        // The channel isn't closed, since that would close the stream
+        ReadableByteChannel source = Channels.newChannel(in);
+        try (FileOutputStream out = new FileOutputStream(file, append)) {
+            FileChannel sink = out.getChannel();
+            try {
+                ByteBuffer buffer = ByteBuffer.allocateDirect(COPY_BUFFER_SIZE);
+                while (source.read(buffer) >= 0) {
+                    buffer.flip();
+                    digest.update(buffer.duplicate());
+                    while (buffer.hasRemaining())
+                        byteCount += sink.write(buffer);
+                    buffer.clear();
+                }
+            } finally {
+                sink.force(true);
+            }
+        }
+        return byteCount;
+    }
+
+    private static void digestFile(File file, MessageDigest digest) throws IOException {
+        try (ReadableByteChannel source = Channels.newChannel(new FileInputStream(file))) {
+            ByteBuffer buffer = ByteBuffer.allocate(COPY_BUFFER_SIZE);
+            while (source.read(buffer) >= 0) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+        }
+    }
+
+    private static boolean isTempFileName(String name) {
+        return name.startsWith(TEMP_FILE_PREFIX) && name.endsWith(TEMP_FILE_SUFFIX);
+    }
+
+    private static void deleteTempFile(File temp) {
+        if (!temp.delete())
+            Log.e(TAG, "Couldn't delete temporary file " + temp.getName());
+    }
+
+    /**
+     * App-specific user files directory.  This is only looked up (and created if necessary) the
+     * first time it's needed, or after the directory has been removed; after that, the same
+     * {@link File} is returned.
      *
      * @return the user files directory if it exists, or <code>null</code> if it does not exist.
      */
-    private File getAppSpecificUserFilesDirectory() {
+    private synchronized File getAppSpecificUserFilesDirectory() {
+        if (mDirectory != null) return mDirectory;
+
         File root = mContext.getExternalFilesDir(null);
         File directory = new File(root, XML_FORMATS_DIRECTORY_NAME);
 
@@ -253,6 +887,8 @@ class FormatXmlFilesManager {
 
         if (!directory.isDirectory()) return null;
 
+        mDirectory = directory;
+        startObserving(directory);
         return directory;
     }
 
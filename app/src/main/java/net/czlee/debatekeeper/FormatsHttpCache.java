@@ -0,0 +1,353 @@
+/*
+ * Copyright (C) 2026 Chuan-Zheng Lee
+ *
+ * This file is part of the Debatekeeper app, which is licensed under the GNU
+ * General Public Licence version 3 (GPLv3).  You can redistribute and/or modify
+ * it under the terms of the GPLv3, and you must not use this file except in
+ * compliance with the GPLv3.
+ *
+ * This app is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE.  See the GNU General Public Licence for more details.
+ *
+ * You should have received a copy of the GNU General Public Licence along with
+ * this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.czlee.debatekeeper;
+
+import android.util.JsonReader;
+import android.util.JsonWriter;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * FormatsHttpCache is a small on-disk cache for requests to the formats server.  It remembers the
+ * <code>ETag</code> and <code>Last-Modified</code> headers of each response, and sends them back
+ * the next time the same URL is requested, so that the server can reply "304 Not Modified" instead
+ * of sending the whole thing again.
+ *
+ * <p>There are two ways to use it.  For the formats list, the whole response body is cached, so
+ * that it can be shown straight away (and when the device is offline) while it's being checked.
+ * For format files, the body is already saved by {@link FormatXmlFilesManager}, so only the
+ * headers and the SHA-256 hash of the body are cached; the caller should only use the headers if
+ * the file still has that hash.</p>
+ *
+ * <p>The cache is kept in the app's cache directory, so the system may clear it at any time; this
+ * just means the next request is unconditional.</p>
+ *
+ * @author Chuan-Zheng Lee
+ * @since 2026-10-19
+ */
+class FormatsHttpCache {
+
+    private static final String TAG = "FormatsHttpCache";
+
+    private static final String META_SUFFIX = ".meta";
+    private static final String BODY_SUFFIX = ".body";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final String KEY_URL = "url";
+    private static final String KEY_ETAG = "etag";
+    private static final String KEY_LAST_MODIFIED = "lastModified";
+    private static final String KEY_SHA256 = "sha256";
+    private static final int CONNECT_TIMEOUT_MILLIS = 15000;
+    private static final int READ_TIMEOUT_MILLIS = 30000;
+    private static final int COPY_BUFFER_SIZE = 8192;
+
+    private final File mDirectory;
+
+    //******************************************************************************************
+    // Public classes
+    //******************************************************************************************
+
+    /**
+     * Passive data class holding what's cached for a URL.
+     */
+    static class Entry {
+        @Nullable final String etag;
+        @Nullable final String lastModified;
+        @Nullable final String sha256;
+        @Nullable final File body;
+
+        Entry(@Nullable String etag, @Nullable String lastModified, @Nullable String sha256, @Nullable File body) {
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.sha256 = sha256;
+            this.body = body;
+        }
+    }
+
+    /**
+     * An {@link InputStream} that passes on a response body, saving a copy to the cache as it goes.
+     * See {@link #record(URL, URLConnection)}.
+     */
+    class Recorder extends FilterInputStream {
+        private final URL mUrl;
+        private final URLConnection mConnection;
+        private final File mBody;
+        private final File mTemp;
+        private final OutputStream mOut;
+        private boolean mCommitted = false;
+
+        private Recorder(URL url, URLConnection connection) throws IOException {
+            super(connection.getInputStream());
+            ensureDirectory();
+            String key = getKey(url);
+            mUrl = url;
+            mConnection = connection;
+            mBody = new File(mDirectory, key + BODY_SUFFIX);
+            mTemp = File.createTempFile(key, TEMP_SUFFIX, mDirectory);
+            mOut = new BufferedOutputStream(new FileOutputStream(mTemp), COPY_BUFFER_SIZE);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) mOut.write(b);
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) mOut.write(b, off, n);
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            // Read rather than skip, so that the skipped bytes are saved too
+            byte[] buffer = new byte[(int) Math.min(n, COPY_BUFFER_SIZE)];
+            int read = read(buffer, 0, buffer.length);
+            return Math.max(read, 0);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        /**
+         * Reads whatever the caller didn't, then saves the body and its validators to the cache.
+         *
+         * @return the cached body
+         * @throws IOException if there was an error reading the response or writing the cache
+         */
+        @NonNull
+        File commit() throws IOException {
+            byte[] buffer = new byte[COPY_BUFFER_SIZE];
+            //noinspection StatementWithEmptyBody
+            while (read(buffer, 0, buffer.length) >= 0);
+            mOut.close();
+
+            synchronized (FormatsHttpCache.this) {
+                if (!mTemp.renameTo(mBody))
+                    throw new IOException("Couldn't save cached response for " + mUrl);
+                writeMeta(mUrl, mConnection, null);
+            }
+            mCommitted = true;
+            return mBody;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                if (!mCommitted) {
+                    mOut.close();
+                    if (mTemp.exists() && !mTemp.delete())
+                        Log.e(TAG, "Couldn't delete " + mTemp.getName());
+                }
+            }
+        }
+    }
+
+    //******************************************************************************************
+    // Constructor
+    //******************************************************************************************
+
+    /**
+     * @param directory the directory in which to keep cached responses; created if necessary
+     */
+    FormatsHttpCache(@NonNull File directory) {
+        mDirectory = directory;
+    }
+
+    //******************************************************************************************
+    // Package-private methods
+    //******************************************************************************************
+
+    /**
+     * @param url a URL
+     * @return what's cached for the URL, or <code>null</code> if nothing is.  The
+     * <code>body</code> field is <code>null</code> if no body was cached.
+     */
+    @Nullable
+    synchronized Entry lookup(@NonNull URL url) {
+        String key = getKey(url);
+        File metaFile = new File(mDirectory, key + META_SUFFIX);
+        if (!metaFile.isFile()) return null;
+
+        String cachedUrl = null, etag = null, lastModified = null, sha256 = null;
+        try (JsonReader reader = new JsonReader(new InputStreamReader(
+                new FileInputStream(metaFile), StandardCharsets.UTF_8))) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case KEY_URL:
+                        cachedUrl = reader.nextString();
+                        break;
+                    case KEY_ETAG:
+                        etag = reader.nextString();
+                        break;
+                    case KEY_LAST_MODIFIED:
+                        lastModified = reader.nextString();
+                        break;
+                    case KEY_SHA256:
+                        sha256 = reader.nextString();
+                        break;
+                    default:
+                        reader.skipValue();
+                }
+            }
+            reader.endObject();
+        } catch (IOException | IllegalStateException e) {
+            Log.e(TAG, "Couldn't read cache entry for " + url, e);
+            return null;
+        }
+
+        if (!url.toString().equals(cachedUrl)) return null;  // the (unlikely) hash collision
+
+        File body = new File(mDirectory, key + BODY_SUFFIX);
+        return new Entry(etag, lastModified, sha256, body.isFile() ? body : null);
+    }
+
+    /**
+     * Opens a connection to the URL, making the request conditional if there's a cached entry
+     * with validators.  After calling this, use {@link #isNotModified(URLConnection)} to find out
+     * if the cached entry is still current.
+     *
+     * @param url    the URL to request
+     * @param cached the cached entry to revalidate, or <code>null</code> to make an unconditional
+     *               request
+     * @return an open {@link URLConnection}
+     * @throws IOException if the connection couldn't be opened
+     */
+    @NonNull
+    URLConnection openConditional(@NonNull URL url, @Nullable Entry cached) throws IOException {
+        URLConnection connection = url.openConnection();
+        connection.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
+        connection.setReadTimeout(READ_TIMEOUT_MILLIS);
+        connection.setUseCaches(false);  // we're the cache
+        if (cached != null) {
+            if (cached.etag != null)
+                connection.setRequestProperty("If-None-Match", cached.etag);
+            if (cached.lastModified != null)
+                connection.setRequestProperty("If-Modified-Since", cached.lastModified);
+        }
+        return connection;
+    }
+
+    /**
+     * @param connection a connection from {@link #openConditional(URL, Entry)}
+     * @return <code>true</code> if the server said the cached entry is still current
+     * @throws IOException if there was an error getting the response
+     */
+    static boolean isNotModified(@NonNull URLConnection connection) throws IOException {
+        return connection instanceof HttpURLConnection
+                && ((HttpURLConnection) connection).getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED;
+    }
+
+    /**
+     * Returns a stream that reads the body of a response, and saves everything read through it to
+     * the cache.  Once the caller has finished reading, it should call {@link Recorder#commit()}
+     * to finish saving the body, along with its validators.  If the stream is closed without
+     * being committed, whatever was cached before is left as it was.
+     *
+     * @param url        the URL that was requested
+     * @param connection the connection the response came from
+     * @return a {@link Recorder}
+     * @throws IOException if there was an error getting the response or creating the cache file
+     */
+    @NonNull
+    Recorder record(@NonNull URL url, @NonNull URLConnection connection) throws IOException {
+        return new Recorder(url, connection);
+    }
+
+    /**
+     * Saves the validators of a response whose body was stored somewhere else.
+     *
+     * @param url        the URL that was requested
+     * @param connection the connection the response came from
+     * @param sha256     the SHA-256 hash of the body
+     */
+    synchronized void putValidators(@NonNull URL url, @NonNull URLConnection connection, @NonNull String sha256) {
+        try {
+            ensureDirectory();
+            writeMeta(url, connection, sha256);
+        } catch (IOException e) {
+            Log.e(TAG, "Couldn't save cache entry for " + url, e);
+        }
+    }
+
+    //******************************************************************************************
+    // Private methods
+    //******************************************************************************************
+
+    private void ensureDirectory() throws IOException {
+        if (!mDirectory.isDirectory() && !mDirectory.mkdirs())
+            throw new IOException("Couldn't create cache directory");
+    }
+
+    /**
+     * Writes the metadata for a response.  This is written even if the response has no
+     * validators, since a cached body is still useful when the device is offline.
+     */
+    private void writeMeta(URL url, URLConnection connection, @Nullable String sha256) throws IOException {
+        String key = getKey(url);
+        File metaFile = new File(mDirectory, key + META_SUFFIX);
+        String etag = connection.getHeaderField("ETag");
+        String lastModified = connection.getHeaderField("Last-Modified");
+
+        File temp = new File(mDirectory, key + META_SUFFIX + TEMP_SUFFIX);
+        try (JsonWriter writer = new JsonWriter(new OutputStreamWriter(
+                new FileOutputStream(temp), StandardCharsets.UTF_8))) {
+            writer.beginObject();
+            writer.name(KEY_URL).value(url.toString());
+            if (etag != null) writer.name(KEY_ETAG).value(etag);
+            if (lastModified != null) writer.name(KEY_LAST_MODIFIED).value(lastModified);
+            if (sha256 != null) writer.name(KEY_SHA256).value(sha256);
+            writer.endObject();
+        }
+        if (!temp.renameTo(metaFile))
+            throw new IOException("Couldn't save cache entry for " + url);
+    }
+
+    /**
+     * @return a file name for the URL, which is the hexadecimal SHA-256 hash of the URL
+     */
+    @NonNull
+    private static String getKey(@NonNull URL url) {
+        byte[] hash = DebatekeeperUtils.newSha256Digest().digest(url.toString().getBytes(StandardCharsets.UTF_8));
+        return DebatekeeperUtils.toHexString(hash);
+    }
+
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright (C) 2026 Chuan-Zheng Lee
+ *
+ * This file is part of the Debatekeeper app, which is licensed under the GNU
+ * General Public Licence version 3 (GPLv3).  You can redistribute and/or modify
+ * it under the terms of the GPLv3, and you must not use this file except in
+ * compliance with the GPLv3.
+ *
+ * This app is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE.  See the GNU General Public Licence for more details.
+ *
+ * You should have received a copy of the GNU General Public Licence along with
+ * this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.czlee.debatekeeper;
+
+import android.content.Context;
+import android.os.CancellationSignal;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.OperationCanceledException;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.core.os.HandlerCompat;
+
+import net.czlee.debatekeeper.debatemanager.DebateHistoryExporter;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Runs {@link DebateHistoryExporter} on a background thread, writing to a file in the cache
+ * directory that can then be shared.  Only one export is active at a time: starting a new export
+ * cancels the previous one, and the listener for a cancelled export is never called.
+ *
+ * @author Chuan-Zheng Lee
+ * @since 2026-10-19
+ */
+class HistoryExportRunner {
+
+    private static final String TAG = "HistoryExportRunner";
+
+    // This must match the cache-path in res/xml/filepaths.xml
+    private static final String EXPORTS_DIRECTORY = "exports";
+    private static final String EXPORT_FILE_NAME = "debate-history";
+
+    private final Context mContext;
+    private ExecutorService mExecutorService;
+    private Handler mMainThreadHandler;
+    private CancellationSignal mCurrentSignal = null;  // accessed only on the main thread
+
+    //******************************************************************************************
+    // Public classes
+    //******************************************************************************************
+
+    interface ExportListener {
+        /**
+         * Called on the main thread when an export finishes, unless it was cancelled.
+         * @param file the file written, or <code>null</code> if the export failed
+         * @param rows the number of rows written
+         */
+        void onExportFinished(@Nullable File file, int rows);
+    }
+
+    //******************************************************************************************
+    // Constructor
+    //******************************************************************************************
+
+    HistoryExportRunner(Context context) {
+        mContext = context.getApplicationContext();
+    }
+
+    //******************************************************************************************
+    // Package-private methods
+    //******************************************************************************************
+
+    /**
+     * Starts exporting the history on a background thread, cancelling any export already in
+     * progress.  This must be called from the main thread.
+     *
+     * @param format   the {@link DebateHistoryExporter.Format} to export in
+     * @param listener an {@link ExportListener}, called on the main thread when the export finishes
+     */
+    void export(@NonNull DebateHistoryExporter.Format format, @NonNull ExportListener listener) {
+        initialiseThreads();
+        cancel();
+        final CancellationSignal signal = new CancellationSignal();
+        mCurrentSignal = signal;
+        mExecutorService.execute(() -> {
+            File file = new File(new File(mContext.getCacheDir(), EXPORTS_DIRECTORY),
+                    EXPORT_FILE_NAME + format.extension);
+            int rows = 0;
+            boolean successful = false;
+            try {
+                rows = synchronousExport(format, file, signal);
+                successful = true;
+            } catch (OperationCanceledException e) {
+                Log.i(TAG, "export cancelled");
+            } catch (IOException e) {
+                Log.e(TAG, "export failed", e);
+            }
+
+            if (!successful && file.exists() && !file.delete())
+                Log.w(TAG, "couldn't delete partial export " + file);
+            if (signal.isCanceled()) return;
+
+            final File result = successful ? file : null;
+            final int finalRows = rows;
+            mMainThreadHandler.post(() -> {
+                if (signal.isCanceled()) return;
+                mCurrentSignal = null;
+                listener.onExportFinished(result, finalRows);
+            });
+        });
+    }
+
+    /**
+     * Cancels the export in progress, if there is one.  Its listener will not be called.  This
+     * must be called from the main thread.
+     */
+    void cancel() {
+        if (mCurrentSignal != null) {
+            mCurrentSignal.cancel();
+            mCurrentSignal = null;
+        }
+    }
+
+    /**
+     * Cancels any export in progress and releases the background thread.
+     */
+    void shutdown() {
+        cancel();
+        if (mExecutorService != null) {
+            mExecutorService.shutdown();
+            mExecutorService = null;
+        }
+    }
+
+    //******************************************************************************************
+    // Private methods
+    //******************************************************************************************
+
+    private void initialiseThreads() {
+        if (mExecutorService == null)
+            mExecutorService = Executors.newSingleThreadExecutor();
+        if (mMainThreadHandler == null)
+            mMainThreadHandler = HandlerCompat.createAsync(Looper.getMainLooper());
+    }
+
+    private int synchronousExport(DebateHistoryExporter.Format format, File file, CancellationSignal signal)
+            throws IOException {
+        File directory = file.getParentFile();
+        if (directory != null && !directory.isDirectory() && !directory.mkdirs())
+            throw new IOException("Couldn't create " + directory);
+
+        DebateHistoryExporter exporter = new DebateHistoryExporter(mContext);
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(file), StandardCharsets.UTF_8))) {
+            return exporter.export(format, writer, signal);
+        }
+    }
+
+}
@@ -245,7 +245,7 @@ public class PrepTimeBellsEditFragment extends Fragment {
                    .setPositiveButton(R.string.prepTimeBellsEditor_clearAllDialog_confirmButton, (dialog, which) -> {
                        boolean spareFinish = parent.mPtbm.hasBellsOtherThanFinish();
                        parent.mPtbm.deleteAllBells(spareFinish);
-                       parent.refreshBellsList();
+                       parent.onBellsChanged();
                    })
                    .setNegativeButton(android.R.string.cancel, (dialog, which) -> dialog.cancel());
 
@@ -353,23 +353,33 @@ public class PrepTimeBellsEditFragment extends Fragment {
             return true;
         } else if (itemId == R.id.prepTimeBellsEditor_contextMenu_delete) {
             mPtbm.deleteBell(info.position);
-            refreshBellsList();
+            onBellsChanged();
             return true;
         }
         return super.onContextItemSelected(item);
     }
 
     @Override
-    public void onDestroy() {
-        super.onDestroy();
-        SharedPreferences prefs = requireContext().getSharedPreferences(PrepTimeBellsManager.PREP_TIME_BELLS_PREFERENCES_NAME, MODE_PRIVATE);
-        mPtbm.saveToPreferences(prefs);
+    public void onPause() {
+        super.onPause();
+        // Don't leave a save pending, the timer reads the bells when it resumes
+        mPtbm.savePendingChanges();
     }
 
     //******************************************************************************************
     // Private methods
     //******************************************************************************************
 
+    /**
+     * Saves the bells (after a short delay, in case more changes follow) and refreshes the list.
+     * Call this after every change to the bells.
+     */
+    private void onBellsChanged() {
+        SharedPreferences prefs = requireContext().getSharedPreferences(PrepTimeBellsManager.PREP_TIME_BELLS_PREFERENCES_NAME, MODE_PRIVATE);
+        mPtbm.saveToPreferencesLater(prefs);
+        refreshBellsList();
+    }
+
     @SuppressLint("DefaultLocale")
     private void refreshBellsList() {
         ArrayList<String> descriptions = mPtbm.getBellDescriptions();
@@ -426,7 +436,7 @@ public class PrepTimeBellsEditFragment extends Fragment {
             Dialog dialog = (Dialog) dialogInterface;
             Bundle newBundle = createBellBundleFromAddOrEditDialog(dialog);
             mPtbm.addFromBundle(newBundle);
-            refreshBellsList();
+            onBellsChanged();
         };
     }
 
@@ -435,7 +445,7 @@ public class PrepTimeBellsEditFragment extends Fragment {
             Dialog dialog = (Dialog) dialogInterface;
             Bundle newBundle = createBellBundleFromAddOrEditDialog(dialog);
             mPtbm.replaceFromBundle(index, newBundle);
-            refreshBellsList();
+            onBellsChanged();
         };
     }
 
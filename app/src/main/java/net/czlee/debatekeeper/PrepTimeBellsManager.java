@@ -19,16 +19,25 @@ package net.czlee.debatekeeper;
 import android.content.Context;
 import android.content.SharedPreferences;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Base64;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
+import androidx.core.os.HandlerCompat;
 
 import net.czlee.debatekeeper.debateformat.BellInfo;
 import net.czlee.debatekeeper.debateformat.PrepTimeSimpleFormat;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Iterator;
+import java.util.List;
 import java.util.ListIterator;
 import java.util.Locale;
 
@@ -64,12 +73,31 @@ public class PrepTimeBellsManager {
     public  static final String VALUE_TYPE_FINISH                = "finish";
     public  static final String VALUE_TYPE_PROPORTIONAL          = "proportional";
     public  static final String PREP_TIME_BELLS_PREFERENCES_NAME = "prep_time_bells";
-    private static final String KEY_TOTAL_NUMBER_OF_BELLS        = "totalBells";
+    private static final String KEY_BELL_SPECS                   = "bellSpecs";
+    private static final String KEY_TOTAL_NUMBER_OF_BELLS        = "totalBells";  // legacy format only
+
+    // Version of the format written under KEY_BELL_SPECS; see writeSpecs()
+    private static final byte STORAGE_VERSION = 1;
+
+    // How long to wait after an edit before saving, so that a quick run of edits is saved once
+    private static final long SAVE_DELAY_MILLIS = 500;
+
+    // Bells closer together than this are treated as duplicates
+    private static final long DUPLICATE_BELL_WINDOW = 15;
 
     private final ArrayList<PrepTimeBellSpec> mBellSpecs = new ArrayList<>();
 
     private final Context mContext;
 
+    // Incremented whenever mBellSpecs changes, so that mCompiledBells can tell if it's stale.
+    // mCompiledBells is read from the timer thread, so it's replaced rather than modified.
+    private int mSpecsVersion = 0;
+    private volatile CompiledBells mCompiledBells = null;
+
+    private Handler mSaveHandler;
+    private SharedPreferences mPendingSavePrefs = null;
+    private final Runnable mPendingSave = () -> saveToPreferences(mPendingSavePrefs);
+
     public PrepTimeBellsManager(Context context) {
         mContext = context;
     }
@@ -78,6 +106,22 @@ public class PrepTimeBellsManager {
     // Private classes
     //******************************************************************************************
 
+    /**
+     * The bells list for a particular version of the bell specs and prep time length.
+     */
+    private static class CompiledBells {
+
+        final int specsVersion;
+        final long length;
+        final List<BellInfo> bells;
+
+        CompiledBells(int specsVersion, long length, List<BellInfo> bells) {
+            this.specsVersion = specsVersion;
+            this.length = length;
+            this.bells = bells;
+        }
+    }
+
     private interface PrepTimeBellSpec {
 
         /**
@@ -95,10 +139,17 @@ public class PrepTimeBellsManager {
         void saveToBundle(Bundle bundle);
 
         /**
-         * Saves this bell specification to a shared preferences file.
-         * @param index the index of this PrepTimeBellSpec in the list
+         * Writes this bell specification, for {@link #writeSpecs()}.  The type is written by the
+         * caller, so this should write only the parameters.
+         * @param out the stream to write to
+         */
+        void writeTo(DataOutputStream out) throws IOException;
+
+        /**
+         * @return the type of this bell specification, one of the <code>VALUE_TYPE_*</code>
+         * constants
          */
-        void saveToPreferences(SharedPreferences.Editor editor, int index);
+        String getValueType();
 
         /**
          * @return <code>true</code> if the bell is <i>always</i> at the finish; <code>false</code>
@@ -158,13 +209,10 @@ public class PrepTimeBellsManager {
         }
 
         @Override
-        public void saveToPreferences(SharedPreferences.Editor editor, int index) {
-            editor.putString(index + KEY_TYPE, getValueType());
-            editor.putLong(index + KEY_TIME, time);
+        public void writeTo(DataOutputStream out) throws IOException {
+            out.writeLong(time);
         }
 
-        protected abstract String getValueType();
-
     }
 
     /**
@@ -214,7 +262,7 @@ public class PrepTimeBellsManager {
         }
 
         @Override
-        protected String getValueType() {
+        public String getValueType() {
             return VALUE_TYPE_FINISH;
         }
 
@@ -231,6 +279,10 @@ public class PrepTimeBellsManager {
             super(bundle);
         }
 
+        public PrepTimeBellFromStart(long time) {
+            super(time);
+        }
+
         public PrepTimeBellFromStart(SharedPreferences prefs, int index) throws PrepTimeBellConstructorException {
             super(prefs, index);
         }
@@ -253,7 +305,7 @@ public class PrepTimeBellsManager {
         }
 
         @Override
-        protected String getValueType() {
+        public String getValueType() {
             return VALUE_TYPE_START;
         }
 
@@ -286,6 +338,10 @@ public class PrepTimeBellsManager {
             this.proportion = bundle.getDouble(KEY_PROPORTION, 0);
         }
 
+        public PrepTimeBellProportional(double proportion) {
+            this.proportion = proportion;
+        }
+
         /**
          * Constructor from a {@link SharedPreferences} file.
          * @param prefs the {@link SharedPreferences} object
@@ -317,9 +373,8 @@ public class PrepTimeBellsManager {
         }
 
         @Override
-        public void saveToPreferences(SharedPreferences.Editor editor, int index) {
-            editor.putString(index + KEY_TYPE, getValueType());
-            editor.putString(index + KEY_PROPORTION, String.valueOf(proportion));
+        public void writeTo(DataOutputStream out) throws IOException {
+            out.writeDouble(proportion);
         }
 
         @NonNull
@@ -335,7 +390,8 @@ public class PrepTimeBellsManager {
                     percentageStr);
         }
 
-        private String getValueType() {
+        @Override
+        public String getValueType() {
             return VALUE_TYPE_PROPORTIONAL;
         }
 
@@ -380,6 +436,7 @@ public class PrepTimeBellsManager {
     public void addFromBundle(Bundle bundle) {
         PrepTimeBellSpec bell = createFromBundle(bundle);
         mBellSpecs.add(bell);
+        mSpecsVersion++;
     }
 
     /**
@@ -388,6 +445,7 @@ public class PrepTimeBellsManager {
      */
     public void deleteBell(int index) {
         mBellSpecs.remove(index);
+        mSpecsVersion++;
     }
 
     /**
@@ -408,6 +466,7 @@ public class PrepTimeBellsManager {
 
             iterator.remove();
         }
+        mSpecsVersion++;
     }
 
     /**
@@ -476,82 +535,156 @@ public class PrepTimeBellsManager {
 
     /**
      * Returns a list of the bells that the current user-defined settings imply
-     * for prep time of a given length
+     * for prep time of a given length.  The list is cached, so this is cheap to call
+     * repeatedly until the bell specifications change.
      * @param length total length of the prep time
-     * @return an {@link ArrayList} of {@link BellInfo} objects sorted by time
+     * @return an unmodifiable {@link List} of {@link BellInfo} objects sorted by time
      */
-    public ArrayList<BellInfo> getBellsList(long length) {
+    public List<BellInfo> getBellsList(long length) {
+        CompiledBells compiled = mCompiledBells;
+        if (compiled == null || compiled.specsVersion != mSpecsVersion || compiled.length != length) {
+            compiled = new CompiledBells(mSpecsVersion, length, compileBellsList(length));
+            mCompiledBells = compiled;
+        }
+        return compiled.bells;
+    }
 
-        Iterator<PrepTimeBellSpec> specIterator = mBellSpecs.iterator();
-        ArrayList<BellInfo> allBells = new ArrayList<>();
+    /**
+     * Loads bell specifications from a {@link SharedPreferences} file.  If the file is in the
+     * legacy format, with a set of keys for each bell, it is converted to the current format.
+     * @param prefs a {@link SharedPreferences} instance
+     */
+    public void loadFromPreferences(SharedPreferences prefs) {
+        // Clear the bells list.
+        mBellSpecs.clear();
+        mSpecsVersion++;
 
-        // First, generate all the bells and put them in a list.
-        // Don't bother adding null bells.
-        while (specIterator.hasNext()) {
-            PrepTimeBellSpec spec = specIterator.next();
-            BellInfo bell = spec.getBell(length);
-            if (bell == null) continue;
+        String encoded = prefs.getString(KEY_BELL_SPECS, null);
 
-            // If it's a finish bell, make it a double bell
-            if (spec.isAtFinish()) bell.getBellSoundInfo().setNumberOfBells(2);
+        if (encoded != null) {
+            try {
+                readSpecs(Base64.decode(encoded, Base64.NO_WRAP));
+                return;
+            } catch (IOException | IllegalArgumentException e) {
+                Log.e(TAG, "Couldn't read bell specs, loading default", e);
+                mBellSpecs.clear();
+            }
 
-            allBells.add(bell);
+        } else if (prefs.contains(KEY_TOTAL_NUMBER_OF_BELLS)) {
+            loadFromLegacyPreferences(prefs);
+            Log.i(TAG, "Converting " + mBellSpecs.size() + " bells from legacy preferences");
+            saveToPreferences(prefs);
+            return;
         }
 
-        // Then, sort the bells in order of priority.
-        // Currently, this sorts them in descending order of number of bells to play.
-        Collections.sort(allBells, (lhs, rhs) -> rhs.getBellSoundInfo().getNumberOfBells() - lhs.getBellSoundInfo().getNumberOfBells());
-
-        // Then, run through the bells, adding only non-duplicates.
-        Iterator<BellInfo> allBellsIterator = allBells.iterator();
-        ArrayList<BellInfo> bells = new ArrayList<>();
-        while (allBellsIterator.hasNext()) {
-            BellInfo bell = allBellsIterator.next();
+        // If the file was empty, then load the default: a single bell at the end.
+        PrepTimeBellFromFinish bell = new PrepTimeBellFromFinish(0);
+        mBellSpecs.add(bell);
+        Log.i(TAG, "No file found, loaded default");
+    }
 
-            boolean duplicate = false;
+    public void replaceFromBundle(int index, Bundle bundle) {
+        PrepTimeBellSpec bell = createFromBundle(bundle);
+        mBellSpecs.set(index, bell);
+        mSpecsVersion++;
+    }
 
-            // Treat as a "duplicate" if the bell is within fifteen seconds of another bell.
-            // (The bells are already in prioritised order.)
-            for (BellInfo checkBell : bells) {
-                if (Math.abs(checkBell.getBellTime() - bell.getBellTime()) < 15) {
-                    duplicate = true;
-                    break;
-                }
-            }
+    /**
+     * Saves bell specifications to a {@link SharedPreferences} file, replacing everything in it.
+     * Any save scheduled by {@link #saveToPreferencesLater(SharedPreferences)} is cancelled.
+     * @param prefs a {@link SharedPreferences} instance
+     */
+    public void saveToPreferences(SharedPreferences prefs) {
+        if (mSaveHandler != null) mSaveHandler.removeCallbacks(mPendingSave);
+        mPendingSavePrefs = null;
 
-            // If duplicate, skip the rest
-            if (duplicate) continue;
+        String encoded = Base64.encodeToString(writeSpecs(), Base64.NO_WRAP);
 
-            // Otherwise, add the bell.
-            bells.add(bell);
-        }
+        // The clear() also removes any keys left over from the legacy format.  (Editor applies
+        // clear() before the put, whatever order they're called in.)
+        prefs.edit()
+                .clear()
+                .putString(KEY_BELL_SPECS, encoded)
+                .apply();
+    }
 
-        return bells;
+    /**
+     * Saves bell specifications to a {@link SharedPreferences} file after a short delay, so that
+     * if this is called again in that time, the bells are only saved once.  This must be called
+     * from the main thread, and {@link #savePendingChanges()} must be called before this object
+     * is discarded.
+     * @param prefs a {@link SharedPreferences} instance
+     */
+    public void saveToPreferencesLater(SharedPreferences prefs) {
+        if (mSaveHandler == null)
+            mSaveHandler = HandlerCompat.createAsync(Looper.getMainLooper());
+        mSaveHandler.removeCallbacks(mPendingSave);
+        mPendingSavePrefs = prefs;
+        mSaveHandler.postDelayed(mPendingSave, SAVE_DELAY_MILLIS);
+    }
 
+    /**
+     * Saves straight away any save scheduled by {@link #saveToPreferencesLater(SharedPreferences)}.
+     */
+    public void savePendingChanges() {
+        if (mPendingSavePrefs != null) saveToPreferences(mPendingSavePrefs);
     }
 
+    //******************************************************************************************
+    // Private methods
+    //******************************************************************************************
+
     /**
-     * Loads bell specifications from a {@link SharedPreferences} file
-     * @param prefs a {@link SharedPreferences} instance
+     * Builds the list of bells for prep time of a given length.  Use {@link #getBellsList(long)},
+     * which caches the result, rather than calling this directly.
+     * @param length total length of the prep time
+     * @return an unmodifiable {@link List} of {@link BellInfo} objects sorted by time
      */
-    public void loadFromPreferences(SharedPreferences prefs) {
-        // Clear the bells list.
-        mBellSpecs.clear();
+    private List<BellInfo> compileBellsList(long length) {
 
-        // Check if there's anything in the file.  We just do this by checking the "total
-        // number of bells" field, and assume that if we can't find it, the file is empty
-        // (since the file is useless to us without this field anyway).
-        if (!prefs.contains(KEY_TOTAL_NUMBER_OF_BELLS)) {
-            // If the file was empty, then load the default: a single bell at the end.
-            PrepTimeBellFromFinish bell = new PrepTimeBellFromFinish(0);
-            mBellSpecs.add(bell);
-            Log.i(TAG, "No file found, loaded default");
-            return;
+        ArrayList<BellInfo> allBells = new ArrayList<>(mBellSpecs.size());
+
+        // First, generate all the bells and put them in a list.
+        // Don't bother adding null bells.
+        for (PrepTimeBellSpec spec : mBellSpecs) {
+            BellInfo bell = spec.getBell(length);
+            if (bell == null) continue;
+
+            // If it's a finish bell, make it a double bell
+            if (spec.isAtFinish()) bell = new BellInfo(bell.getBellTime(), 2);
+
+            allBells.add(bell);
         }
 
-        // If we get to this point, that means there's something in the preferences file.
-        // Proceed to load it.
+        // Then, sort the bells from latest to earliest, and where two bells are at the same time,
+        // in descending order of number of bells to play.  Finish bells are always the latest, so
+        // this puts them first.
+        Collections.sort(allBells, (lhs, rhs) -> {
+            int byTime = Long.compare(rhs.getBellTime(), lhs.getBellTime());
+            if (byTime != 0) return byTime;
+            return rhs.getBellSoundInfo().getNumberOfBells() - lhs.getBellSoundInfo().getNumberOfBells();
+        });
+
+        // Then, sweep through the bells, treating a bell as a "duplicate" if it is within fifteen
+        // seconds of the last bell kept.
+        ArrayList<BellInfo> bells = new ArrayList<>(allBells.size());
+        for (BellInfo bell : allBells) {
+            if (!bells.isEmpty() && bells.get(bells.size() - 1).getBellTime() - bell.getBellTime() < DUPLICATE_BELL_WINDOW)
+                continue;
+            bells.add(bell);
+        }
 
+        Collections.reverse(bells);
+        return Collections.unmodifiableList(bells);
+    }
+
+    /**
+     * Loads bell specifications from a {@link SharedPreferences} file in the legacy format, which
+     * had keys like "0type", "0time", "1type", "1proportion", etc., and a separate key for the
+     * total number of bells.
+     * @param prefs a {@link SharedPreferences} instance
+     */
+    private void loadFromLegacyPreferences(SharedPreferences prefs) {
         // Get the total number of bells
         int numberOfBells = prefs.getInt(KEY_TOTAL_NUMBER_OF_BELLS, 0);
 
@@ -585,7 +718,6 @@ public class PrepTimeBellsManager {
                         Log.e(TAG, indexStr + ": Unrecognised type: " + type);
                         continue;
                 }
-                // Log.v(TAG, indexStr + ": Found a " + type);
             } catch (PrepTimeBellConstructorException e) {
                 Log.e(TAG, e.getLocalizedMessage());
                 continue;
@@ -596,46 +728,61 @@ public class PrepTimeBellsManager {
         }
     }
 
-    public void replaceFromBundle(int index, Bundle bundle) {
-        PrepTimeBellSpec bell = createFromBundle(bundle);
-        mBellSpecs.set(index, bell);
+    /**
+     * Reads bell specifications written by {@link #writeSpecs()}, adding them to the list.
+     * @param bytes the bytes to read
+     * @throws IOException if the bytes are truncated, from a newer version or otherwise invalid
+     */
+    private void readSpecs(byte[] bytes) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+
+        byte version = in.readByte();
+        if (version != STORAGE_VERSION)
+            throw new IOException("Unsupported storage version " + version);
+
+        int count = in.readInt();
+        if (count < 0) throw new IOException("Invalid number of bells " + count);
+
+        for (int i = 0; i < count; i++) {
+            String type = in.readUTF();
+            switch (type) {
+                case VALUE_TYPE_START:
+                    mBellSpecs.add(new PrepTimeBellFromStart(in.readLong()));
+                    break;
+                case VALUE_TYPE_FINISH:
+                    mBellSpecs.add(new PrepTimeBellFromFinish(in.readLong()));
+                    break;
+                case VALUE_TYPE_PROPORTIONAL:
+                    mBellSpecs.add(new PrepTimeBellProportional(in.readDouble()));
+                    break;
+                default:
+                    throw new IOException("Unrecognised type: " + type);
+            }
+        }
     }
 
     /**
-     * Saves bell specifications to a {@link SharedPreferences} file
-     * @param prefs a {@link SharedPreferences} instance
+     * Writes the bell specifications: the storage version (a byte), the number of bells (an
+     * int), and then for each bell, its type (a UTF string) followed by its parameters.
+     * @return the bytes written
      */
-    public void saveToPreferences(SharedPreferences prefs) {
-        // Convention:
-        //  The keys are always numbers, followed by a hyphen, followed by a parameter.
-        //  For example: "0-type", "0-time", "1-type", "1-time", etc.
-        //  The numbers in the keys denote the order in which the bells are listed in the
-        //  edit screen.  The saving and loading is handled by individual PrepTimeBellSpec
-        //  subclasses.
-        // Also, a separate field denotes the total number of bell specifications.
-
-        Iterator<PrepTimeBellSpec> specIterator = mBellSpecs.iterator();
-        SharedPreferences.Editor editor = prefs.edit();
-        int index = 0;
-
-        // Save all the bell specifications
-        while (specIterator.hasNext()) {
-            PrepTimeBellSpec spec = specIterator.next();
-            spec.saveToPreferences(editor, index);
-            index++;
-        }
-
-        // Save the total number of bells
-        editor.putInt(KEY_TOTAL_NUMBER_OF_BELLS, index);
-
-        // Commit the changes
-        editor.apply();
+    private byte[] writeSpecs() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeByte(STORAGE_VERSION);
+            out.writeInt(mBellSpecs.size());
+            for (PrepTimeBellSpec spec : mBellSpecs) {
+                out.writeUTF(spec.getValueType());
+                spec.writeTo(out);
+            }
+        } catch (IOException e) {
+            // ByteArrayOutputStream doesn't throw IOException
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
     }
 
-    //******************************************************************************************
-    // Private methods
-    //******************************************************************************************
-
     /**
      * Creates a {@link PrepTimeBellSpec} from a {@link Bundle}.
      * @param bundle the {@link Bundle} containing the information from which the {@link PrepTimeBellSpec}
@@ -16,7 +16,8 @@
 
 package net.czlee.debatekeeper.debateformat;
 
-
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 
 /**
@@ -25,6 +26,9 @@ package net.czlee.debatekeeper.debateformat;
  * This includes (but is not limited to) when the bell is to be played, what it sounds like and
  * what the name of the following period is.
  *
+ * BellInfo is immutable, so that identical bells can share a single instance (see
+ * {@link DebateFormatInterner}).
+ *
  * @author Chuan-Zheng Lee
  * @since  2012-05-12
  *
@@ -32,24 +36,23 @@ package net.czlee.debatekeeper.debateformat;
 public class BellInfo {
 
     private final long mBellTime;
-    private boolean mPauseOnBell = false;
-    private PeriodInfo mNextPeriodInfo  = new PeriodInfo();
-    private final BellSoundInfo mSoundInfo = new BellSoundInfo();
+    private final boolean mPauseOnBell;
+    private final PeriodInfo mNextPeriodInfo;
+    private final BellSoundInfo mSoundInfo;
 
     public BellInfo(long seconds, int numberOfBells) {
-        super();
-        mBellTime = seconds;
-        mSoundInfo.setNumberOfBells(numberOfBells);
+        this(seconds, new BellSoundInfo(numberOfBells), PeriodInfo.BLANK, false);
     }
 
-    public void setPauseOnBell(boolean pauseOnBell) {
+    public BellInfo(long seconds, @NonNull BellSoundInfo soundInfo, @NonNull PeriodInfo nextPeriodInfo,
+                    boolean pauseOnBell) {
+        super();
+        mBellTime = seconds;
+        mSoundInfo = soundInfo;
+        mNextPeriodInfo = nextPeriodInfo;
         mPauseOnBell = pauseOnBell;
     }
 
-    public void setNextPeriodInfo(PeriodInfo pi) {
-        mNextPeriodInfo = pi;
-    }
-
     public long getBellTime() {
         return mBellTime;
     }
@@ -70,4 +73,24 @@ public class BellInfo {
         return mSoundInfo.getNumberOfBells() == 0;
     }
 
-}
\ No newline at end of file
+    @Override
+    public boolean equals(@Nullable Object o) {
+        if (this == o) return true;
+        if (!(o instanceof BellInfo)) return false;
+        BellInfo bi = (BellInfo) o;
+        return mBellTime == bi.mBellTime
+                && mPauseOnBell == bi.mPauseOnBell
+                && mNextPeriodInfo.equals(bi.mNextPeriodInfo)
+                && mSoundInfo.equals(bi.mSoundInfo);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = Long.hashCode(mBellTime);
+        result = 31 * result + (mPauseOnBell ? 1 : 0);
+        result = 31 * result + mNextPeriodInfo.hashCode();
+        result = 31 * result + mSoundInfo.hashCode();
+        return result;
+    }
+
+}
@@ -16,8 +16,12 @@
 
 package net.czlee.debatekeeper.debateformat;
 
+import androidx.annotation.Nullable;
+
 import net.czlee.debatekeeper.R;
 
+import java.util.Arrays;
+
 /**
  * BellSoundInfo is a passive data class containing information about a bell sound.
  *
@@ -28,37 +32,38 @@ import net.czlee.debatekeeper.R;
  * a "double bell" may be a single bell repeated twice; for others, there may be another sound
  * file for a double bell that only needs to be played once.
  *
- * BellSoundInfo is handled by BellRepeater, and is a member of BellInfo.
+ * BellSoundInfo is handled by BellRepeater, and is a member of BellInfo.  It is immutable, so
+ * that identical instances can be shared between bells (see {@link DebateFormatInterner}).
  *
  * @author Chuan-Zheng Lee
  * @since  2012-05-30
  */
 public class BellSoundInfo {
 
-    protected int mNumberOfBells = 1;
-    protected long mRepeatPeriod = 500;
+    private static final int[] DEFAULT_SOUND_RES_IDS = {R.raw.desk_bell, R.raw.desk_bell_double, R.raw.desk_bell_triple};
+
+    protected final int mNumberOfBells;
+    protected final long mRepeatPeriod = 500;
 
     /**
      * Array of sound resource IDs. If more than one is provided, the second should be a double bell
-     * sound, the third should be a triple bell sound, etc.
+     * sound, the third should be a triple bell sound, etc.  This must not be modified.
      */
-    protected int[] mSoundResIds = {R.raw.desk_bell, R.raw.desk_bell_double, R.raw.desk_bell_triple};
+    protected final int[] mSoundResIds = DEFAULT_SOUND_RES_IDS;
 
     //******************************************************************************************
     // Public constructors
     //******************************************************************************************
 
-    public BellSoundInfo() {}
+    public BellSoundInfo() {
+        this(1);
+    }
 
     public BellSoundInfo(int numberOfBells) {
         super();
         mNumberOfBells = numberOfBells;
     }
 
-    public void setNumberOfBells(int numberOfBells) {
-        mNumberOfBells = numberOfBells;
-    }
-
     //******************************************************************************************
     // Public methods
     //******************************************************************************************
@@ -101,4 +106,19 @@ public class BellSoundInfo {
         return mRepeatPeriod;
     }
 
+    @Override
+    public boolean equals(@Nullable Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        BellSoundInfo bsi = (BellSoundInfo) o;
+        return mNumberOfBells == bsi.mNumberOfBells
+                && mRepeatPeriod == bsi.mRepeatPeriod
+                && Arrays.equals(mSoundResIds, bsi.mSoundResIds);
+    }
+
+    @Override
+    public int hashCode() {
+        return (31 * mNumberOfBells + Long.hashCode(mRepeatPeriod)) * 31 + Arrays.hashCode(mSoundResIds);
+    }
+
 }
\ No newline at end of file
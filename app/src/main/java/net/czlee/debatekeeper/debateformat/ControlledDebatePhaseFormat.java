@@ -33,7 +33,7 @@ import java.util.Iterator;
 public abstract class ControlledDebatePhaseFormat extends GenericDebatePhaseFormat {
 
     protected final long          mLength;
-    protected PeriodInfo          mFirstPeriodInfo = new PeriodInfo();
+    protected PeriodInfo          mFirstPeriodInfo = PeriodInfo.BLANK;
     protected ArrayList<BellInfo> mBells = new ArrayList<>();
 
     public ControlledDebatePhaseFormat(long length) {
@@ -52,9 +52,7 @@ public abstract class ControlledDebatePhaseFormat extends GenericDebatePhaseForm
 
     @Override
     public PeriodInfo getFirstPeriodInfo() {
-        PeriodInfo pi = super.getFirstPeriodInfo();
-        pi.update(mFirstPeriodInfo);
-        return pi;
+        return super.getFirstPeriodInfo().updatedWith(mFirstPeriodInfo);
     }
 
     public void setFirstPeriodInfo(PeriodInfo firstPeriodInfo) {
@@ -44,6 +44,12 @@ public class DebateFormat {
     private final HashMap<String, SpeechFormat>  mSpeechFormats;
     private final ArrayList<SpeechSpec>          mSpeechSpecs;
 
+    // Compiled from mSpeechFormats and mSpeechSpecs when first needed, so that looking up a
+    // speech is just an array access.  Set back to null whenever a speech or format is added.
+    // It's published through a volatile field as a single immutable object, so a thread that
+    // reads a debate format built on another thread always sees a complete table.
+    private volatile PhaseTable                  mPhaseTable = null;
+
     //******************************************************************************************
     // Public classes
     //******************************************************************************************
@@ -80,6 +86,19 @@ public class DebateFormat {
         }
     }
 
+    /**
+     * The speech formats and names of every speech, in order.  Never modified once created.
+     */
+    private static class PhaseTable {
+        final DebatePhaseFormat[] formats;
+        final String[] names;
+
+        PhaseTable(DebatePhaseFormat[] formats, String[] names) {
+            this.formats = formats;
+            this.names = names;
+        }
+    }
+
     //******************************************************************************************
     // Public methods
     //******************************************************************************************
@@ -109,6 +128,7 @@ public class DebateFormat {
      */
     public void addSpeechFormat(String formatRef, SpeechFormat sf) {
         mSpeechFormats.put(formatRef, sf);
+        invalidatePhaseTable();
     }
 
 
@@ -133,6 +153,7 @@ public class DebateFormat {
                     String.format("Added a speech with non-existent format ref '%s'", formatRef));
         }
         mSpeechSpecs.add(new SpeechSpec(name, formatRef));
+        invalidatePhaseTable();
     }
 
     /**
@@ -157,25 +178,12 @@ public class DebateFormat {
      * the speech has no such format.
      */
     public DebatePhaseFormat getSpeechFormat(int index) {
-        String speechType;
-        DebatePhaseFormat speechFormat;
-
-        // 1. Retrieve the speech type
-        try {
-            speechType = mSpeechSpecs.get(index).type;
-        } catch (IndexOutOfBoundsException e) {
+        DebatePhaseFormat[] table = getPhaseTable().formats;
+        if (index < 0 || index >= table.length) {
             Log.e(TAG, "Attempted to retrieve speech format for index " + index);
             return null;
         }
-
-        // 2. Retrieve the speech format for that type
-        speechFormat = mSpeechFormats.get(speechType);
-
-        if (speechFormat == null) {
-            Log.e(TAG, "No speech format for key " + speechType);
-        }
-
-        return speechFormat;
+        return table[index];
     }
 
     /**
@@ -184,12 +192,12 @@ public class DebateFormat {
      * @return the name of the speech, or null if there is no such speech.
      */
     public String getSpeechName(int index) {
-        try {
-            return mSpeechSpecs.get(index).name;
-        } catch (IndexOutOfBoundsException e) {
+        String[] names = getPhaseTable().names;
+        if (index < 0 || index >= names.length) {
             Log.e(TAG, "Attempted to retrieve speech name for index " + index);
             return null;
         }
+        return names[index];
     }
 
     /**
@@ -231,4 +239,46 @@ public class DebateFormat {
         return this.mShortName;
     }
 
+    //******************************************************************************************
+    // Private methods
+    //******************************************************************************************
+
+    /**
+     * Returns the compiled phase table, compiling it first if necessary.  If two threads get here
+     * at once, both might compile it, but they'll compile the same thing.
+     * @return the {@link PhaseTable}
+     */
+    private PhaseTable getPhaseTable() {
+        PhaseTable table = mPhaseTable;
+        if (table == null) {
+            table = compilePhaseTable();
+            mPhaseTable = table;
+        }
+        return table;
+    }
+
+    /**
+     * Resolves every speech's format reference once and stores the results in parallel arrays.
+     * @return a new {@link PhaseTable}
+     */
+    private PhaseTable compilePhaseTable() {
+        int count = mSpeechSpecs.size();
+        DebatePhaseFormat[] table = new DebatePhaseFormat[count];
+        String[] names = new String[count];
+
+        for (int i = 0; i < count; i++) {
+            SpeechSpec spec = mSpeechSpecs.get(i);
+            table[i] = mSpeechFormats.get(spec.type);
+            names[i] = spec.name;
+            if (table[i] == null)
+                Log.e(TAG, "No speech format for key " + spec.type);
+        }
+
+        return new PhaseTable(table, names);
+    }
+
+    private void invalidatePhaseTable() {
+        mPhaseTable = null;
+    }
+
 }
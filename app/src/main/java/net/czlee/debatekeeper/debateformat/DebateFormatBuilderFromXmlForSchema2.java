@@ -71,12 +71,13 @@ public class DebateFormatBuilderFromXmlForSchema2 implements DebateFormatBuilder
     private final PeriodInfoManager      mPeriodInfoManager;
     private final Context                mContext;
     private final ArrayList<String>      mErrorLog = new ArrayList<>();
+    private final DebateFormatInterner   mInterner = new DebateFormatInterner();
 
     private final XmlUtilities xu;
 
     private String mSchemaVersion;
-    private static final String MINIMUM_SCHEMA_VERSION = "2.0";
-    private static final String MAXIMUM_SCHEMA_VERSION = "2.2";
+    static final String MINIMUM_SCHEMA_VERSION = "2.0";
+    static final String MAXIMUM_SCHEMA_VERSION = "2.2";
 
     /**
      * Constructor.
@@ -97,11 +98,72 @@ public class DebateFormatBuilderFromXmlForSchema2 implements DebateFormatBuilder
     public DebateFormat buildDebateFromXml(InputStream is)
             throws SAXException, IOException {
 
-        DebateFormat df = new DebateFormat();
         Document doc = getDocumentFromInputStream(is);
         assert doc != null;
-        Element root = doc.getDocumentElement();
-        
+        try {
+            return buildDebateFromRoot(doc.getDocumentElement());
+        } finally {
+            // Don't keep the document alive through the child index once we're done with it
+            xu.clearChildIndex();
+        }
+    }
+
+    @Override
+    public boolean hasErrors() {
+        return mErrorLog.size() > 0;
+    }
+
+
+    @Override
+    public boolean isSchemaOutdated() {
+        if (mSchemaVersion == null)
+            return false; // either not built, or if it was built then probably the wrong schema
+        try {
+            return XmlUtilities.compareSchemaVersions(mSchemaVersion, MINIMUM_SCHEMA_VERSION) < 0;
+        } catch (IllegalSchemaVersionException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public boolean isSchemaTooNew() {
+        if (mSchemaVersion == null)
+            return false; // either not built, or if it was built then probably the wrong schema
+        try {
+            return XmlUtilities.compareSchemaVersions(mSchemaVersion, MAXIMUM_SCHEMA_VERSION) > 0;
+        } catch (IllegalSchemaVersionException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public List<String> getErrorLog() {
+        return mErrorLog;
+    }
+
+    @Override
+    public String getSchemaVersion() {
+        return mSchemaVersion;
+    }
+
+    @Override
+    public String getSupportedSchemaVersion() {
+        return MAXIMUM_SCHEMA_VERSION;
+    }
+
+    //******************************************************************************************
+    // Private methods
+    //******************************************************************************************
+
+    /**
+     * Builds a debate format from the root element of a debate format XML file.
+     * @param root the root element
+     * @return the {@link DebateFormat}
+     */
+    private DebateFormat buildDebateFromRoot(Element root) {
+
+        DebateFormat df = new DebateFormat();
+
         // 0. Schema version
         mSchemaVersion = xu.findAttributeText(root, R.string.xml2attrName_root_schemaVersion);
 
@@ -158,7 +220,7 @@ public class DebateFormatBuilderFromXmlForSchema2 implements DebateFormatBuilder
             if (ptsf != null) df.setPrepFormat(ptsf);
         } else if (prepTimeControlled != null) {
             PrepTimeControlledFormat ptcf = createPrepTimeControlledFormatFromElement(prepTimeControlled);
-            if (ptcf != null) df.setPrepFormat(ptcf);
+            if (ptcf != null) df.setPrepFormat(mInterner.intern(ptcf));
         }
 
         // 4. <speech-types>/<speech-type> (speech formats)
@@ -176,7 +238,8 @@ public class DebateFormatBuilderFromXmlForSchema2 implements DebateFormatBuilder
                 continue;
             }
 
-            df.addSpeechFormat(reference, sf);
+            // Speech types that are identical apart from their reference share one instance
+            df.addSpeechFormat(reference, mInterner.intern(sf));
         }
 
         // 5. <speeches>/<speech>
@@ -207,53 +270,6 @@ public class DebateFormatBuilderFromXmlForSchema2 implements DebateFormatBuilder
         return df;
     }
 
-    @Override
-    public boolean hasErrors() {
-        return mErrorLog.size() > 0;
-    }
-
-
-    @Override
-    public boolean isSchemaOutdated() {
-        if (mSchemaVersion == null)
-            return false; // either not built, or if it was built then probably the wrong schema
-        try {
-            return XmlUtilities.compareSchemaVersions(mSchemaVersion, MINIMUM_SCHEMA_VERSION) < 0;
-        } catch (IllegalSchemaVersionException e) {
-            return false;
-        }
-    }
-
-    @Override
-    public boolean isSchemaTooNew() {
-        if (mSchemaVersion == null)
-            return false; // either not built, or if it was built then probably the wrong schema
-        try {
-            return XmlUtilities.compareSchemaVersions(mSchemaVersion, MAXIMUM_SCHEMA_VERSION) > 0;
-        } catch (IllegalSchemaVersionException e) {
-            return false;
-        }
-    }
-
-    @Override
-    public List<String> getErrorLog() {
-        return mErrorLog;
-    }
-
-    @Override
-    public String getSchemaVersion() {
-        return mSchemaVersion;
-    }
-
-    @Override
-    public String getSupportedSchemaVersion() {
-        return MAXIMUM_SCHEMA_VERSION;
-    }
-
-    //******************************************************************************************
-    // Private methods
-    //******************************************************************************************
-
     private Document getDocumentFromInputStream(InputStream is)
             throws SAXException, IOException {
 
@@ -308,7 +324,7 @@ public class DebateFormatBuilderFromXmlForSchema2 implements DebateFormatBuilder
 
         SpeechFormat sf = new SpeechFormat(reference, length);
 
-        String location = getString(R.string.xml2elemName_speechFormat) + " '" + reference + "'"; // for error messages
+        String location = xu.getString(R.string.xml2elemName_speechFormat) + " '" + reference + "'"; // for error messages
 
         populateControlledTimeFormat(sf, element, location);
 
@@ -335,7 +351,7 @@ public class DebateFormatBuilderFromXmlForSchema2 implements DebateFormatBuilder
             return null;
         }
 
-        if (timeStr.equals(getString(R.string.xml2attrValue_bell_time_finish)))
+        if (timeStr.equals(xu.getString(R.string.xml2attrValue_bell_time_finish)))
             time = finishTime;
         else {
             try {
@@ -361,18 +377,17 @@ public class DebateFormatBuilderFromXmlForSchema2 implements DebateFormatBuilder
         }
         if (numberOfBells == null) numberOfBells = 1;
 
-        BellInfo bi = new BellInfo(time, numberOfBells);
-
         // attribute 'next-period' - optional
         // If there is a next period specified, and it is not "#stay", set it accordingly
+        PeriodInfo nextPeriodInfo = PeriodInfo.BLANK;
         String nextPeriod = xu.findAttributeText(element, R.string.xml2attrName_bell_nextPeriod);
         if (nextPeriod != null) {
-            if (!nextPeriod.equals(getString(R.string.xml2attrValue_common_stay))) {
+            if (!nextPeriod.equals(xu.getString(R.string.xml2attrValue_common_stay))) {
                 PeriodInfo npi = mPeriodInfoManager.getPeriodInfo(nextPeriod);
                 if (npi == null)
                     logXmlError(R.string.dfb2error_periodInfo_notFound, nextPeriod);
                 else
-                    bi.setNextPeriodInfo(npi);
+                    nextPeriodInfo = npi;
             }
         }
 
@@ -384,9 +399,8 @@ public class DebateFormatBuilderFromXmlForSchema2 implements DebateFormatBuilder
             logXmlError(R.string.xml2error_bell_pauseOnBell_invalid, e.getValue(), location, timeStr);
             pauseOnBell = false;
         }
-        bi.setPauseOnBell(pauseOnBell);
 
-        return bi;
+        return mInterner.intern(new BellInfo(time, new BellSoundInfo(numberOfBells), nextPeriodInfo, pauseOnBell));
 
     }
 
@@ -436,7 +450,7 @@ public class DebateFormatBuilderFromXmlForSchema2 implements DebateFormatBuilder
 
         PrepTimeControlledFormat ptcf = new PrepTimeControlledFormat(length);
 
-        String location = getString(R.string.xml2elemName_prepTimeControlledFormat); // for error messages
+        String location = xu.getString(R.string.xml2elemName_prepTimeControlledFormat); // for error messages
         populateControlledTimeFormat(ptcf, element, location);
 
         return ptcf;
@@ -457,7 +471,7 @@ public class DebateFormatBuilderFromXmlForSchema2 implements DebateFormatBuilder
         // If there is a first period specified, and it is not "#stay", set it accordingly
         String firstPeriod = xu.findAttributeText(element, R.string.xml2attrName_controlledTimeFirstPeriod);
         if (firstPeriod != null) {
-            if (!firstPeriod.equals(getString(R.string.xml2attrValue_common_stay))) {
+            if (!firstPeriod.equals(xu.getString(R.string.xml2attrValue_common_stay))) {
                 PeriodInfo npi = mPeriodInfoManager.getPeriodInfo(firstPeriod);
                 if (npi == null)
                     logXmlError(R.string.dfb2error_periodInfo_notFound, firstPeriod); // not checked by schema
@@ -478,10 +492,6 @@ public class DebateFormatBuilderFromXmlForSchema2 implements DebateFormatBuilder
 
     }
 
-    private String getString(int resId, Object... formatArgs) {
-        return mContext.getString(resId, formatArgs);
-    }
-
     // Error log methods
 
     /**
@@ -0,0 +1,278 @@
+/*
+ * Copyright (C) 2026 Chuan-Zheng Lee
+ *
+ * This file is part of the Debatekeeper app, which is licensed under the GNU
+ * General Public Licence version 3 (GPLv3).  You can redistribute and/or modify
+ * it under the terms of the GPLv3, and you must not use this file except in
+ * compliance with the GPLv3.
+ *
+ * This app is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE.  See the GNU General Public Licence for more details.
+ *
+ * You should have received a copy of the GNU General Public Licence along with
+ * this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.czlee.debatekeeper.debateformat;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import net.czlee.debatekeeper.R;
+import net.czlee.debatekeeper.debateformat.XmlUtilities.IllegalSchemaVersionException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * DebateFormatBuilderRegistry chooses which {@link DebateFormatBuilderFromXml} to use for a given
+ * debate format XML file, based on its schema version.
+ *
+ * <p>The schema version is found by reading only the first few hundred bytes of the file, so that
+ * files with an outdated schema can be rejected, and files with a schema that is too new can be
+ * identified, without building the whole document.  Builders are registered for ranges of schema
+ * versions; if more than one registered range includes a version, the most recently registered
+ * builder is used.</p>
+ *
+ * @author Chuan-Zheng Lee
+ * @since 2026-10-19
+ */
+public class DebateFormatBuilderRegistry {
+
+    private static final String TAG = "DebateFormatBuilderRegistry";
+
+    /** Number of bytes to read when looking for the schema version. */
+    private static final int SNIFF_LENGTH = 512;
+
+    private final Context mContext;
+    private final Pattern mSchemaVersionPattern;
+    private final ArrayList<Registration> mRegistrations = new ArrayList<>();
+
+    //******************************************************************************************
+    // Public classes
+    //******************************************************************************************
+
+    public interface BuilderFactory {
+        DebateFormatBuilderFromXml create(Context context);
+    }
+
+    //******************************************************************************************
+    // Private classes
+    //******************************************************************************************
+
+    private static class Registration {
+        final String minimumVersion;
+        final String maximumVersion;
+        final BuilderFactory factory;
+
+        Registration(String minimumVersion, String maximumVersion, BuilderFactory factory) {
+            this.minimumVersion = minimumVersion;
+            this.maximumVersion = maximumVersion;
+            this.factory = factory;
+        }
+
+        boolean includes(String version) throws IllegalSchemaVersionException {
+            return XmlUtilities.compareSchemaVersions(version, minimumVersion) >= 0
+                    && XmlUtilities.compareSchemaVersions(version, maximumVersion) <= 0;
+        }
+    }
+
+    //******************************************************************************************
+    // Constructor
+    //******************************************************************************************
+
+    /**
+     * Constructor.  The registry starts with the builders built into the app already registered.
+     *
+     * @param context a {@link Context}, passed to builders when they are created
+     */
+    public DebateFormatBuilderRegistry(Context context) {
+        mContext = context;
+        String attrName = context.getString(R.string.xml2attrName_root_schemaVersion);
+        mSchemaVersionPattern = Pattern.compile("\\s" + Pattern.quote(attrName) + "\\s*=\\s*[\"']([^\"']*)[\"']");
+
+        register(DebateFormatBuilderFromXmlForSchema2.MINIMUM_SCHEMA_VERSION,
+                DebateFormatBuilderFromXmlForSchema2.MAXIMUM_SCHEMA_VERSION,
+                DebateFormatBuilderFromXmlForSchema2::new);
+    }
+
+    //******************************************************************************************
+    // Public methods
+    //******************************************************************************************
+
+    /**
+     * Registers a builder for a range of schema versions (inclusive).  This takes precedence over
+     * all builders already registered, for versions in this range.
+     *
+     * @param minimumVersion the lowest schema version this builder supports
+     * @param maximumVersion the highest schema version this builder supports
+     * @param factory        a {@link BuilderFactory} that creates the builder
+     */
+    public void register(@NonNull String minimumVersion, @NonNull String maximumVersion,
+                         @NonNull BuilderFactory factory) {
+        mRegistrations.add(new Registration(minimumVersion, maximumVersion, factory));
+    }
+
+    /**
+     * Reads the schema version from the root element of an XML file, without parsing the rest of
+     * the file.  The stream must support {@link InputStream#mark(int)}; it is reset to where it
+     * was on entry, so it can then be passed to a builder.
+     *
+     * @param is an {@link InputStream} that supports marks, at the start of an XML file
+     * @return the schema version, or <code>null</code> if it couldn't be found in the first part of
+     * the file (in which case the caller should find out the hard way)
+     * @throws IOException if there was an error reading from the stream
+     */
+    @Nullable
+    public String sniffSchemaVersion(@NonNull InputStream is) throws IOException {
+        if (!is.markSupported())
+            throw new IllegalArgumentException("InputStream must support marks");
+
+        byte[] buf = new byte[SNIFF_LENGTH];
+        int length = 0;
+        is.mark(SNIFF_LENGTH);
+        try {
+            int read;
+            while (length < SNIFF_LENGTH && (read = is.read(buf, length, SNIFF_LENGTH - length)) > 0)
+                length += read;
+        } finally {
+            is.reset();
+        }
+
+        String head = new String(buf, 0, length, StandardCharsets.UTF_8);
+        String rootTag = findRootTag(head);
+        if (rootTag == null) return null;
+
+        Matcher matcher = mSchemaVersionPattern.matcher(rootTag);
+        if (!matcher.find()) return null;
+        return matcher.group(1);
+    }
+
+    /**
+     * @param version a schema version, or <code>null</code> if unknown
+     * @return <code>true</code> if the version is valid and older than every registered builder
+     * supports, <code>false</code> otherwise
+     */
+    public boolean isSchemaOutdated(@Nullable String version) {
+        if (version == null) return false;
+        try {
+            for (Registration registration : mRegistrations)
+                if (XmlUtilities.compareSchemaVersions(version, registration.minimumVersion) >= 0)
+                    return false;
+        } catch (IllegalSchemaVersionException e) {
+            return false;
+        }
+        return !mRegistrations.isEmpty();
+    }
+
+    /**
+     * @param version a schema version, or <code>null</code> if unknown
+     * @return <code>true</code> if the version is valid and newer than every registered builder
+     * supports, <code>false</code> otherwise
+     */
+    public boolean isSchemaTooNew(@Nullable String version) {
+        if (version == null) return false;
+        try {
+            return XmlUtilities.compareSchemaVersions(version, getMaximumSchemaVersion()) > 0;
+        } catch (IllegalSchemaVersionException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @return the highest schema version supported by any registered builder
+     */
+    @NonNull
+    public String getMaximumSchemaVersion() {
+        return getLatestRegistration().maximumVersion;
+    }
+
+    /**
+     * Creates a builder for the given schema version.  If no registered builder supports the
+     * version (for example, if it is too new or couldn't be determined), this returns the builder
+     * that supports the latest schema, since the file might still work.
+     *
+     * @param version a schema version, or <code>null</code> if unknown
+     * @return a new {@link DebateFormatBuilderFromXml}
+     */
+    @NonNull
+    public DebateFormatBuilderFromXml createBuilder(@Nullable String version) {
+        if (version != null) {
+            try {
+                for (int i = mRegistrations.size() - 1; i >= 0; i--) {
+                    Registration registration = mRegistrations.get(i);
+                    if (registration.includes(version))
+                        return registration.factory.create(mContext);
+                }
+            } catch (IllegalSchemaVersionException e) {
+                Log.w(TAG, "Invalid schema version: " + version);
+            }
+        }
+        return getLatestRegistration().factory.create(mContext);
+    }
+
+    //******************************************************************************************
+    // Private methods
+    //******************************************************************************************
+
+    /**
+     * @return the registration supporting the highest schema version (the most recent one, if
+     * there is a tie)
+     */
+    @NonNull
+    private Registration getLatestRegistration() {
+        Registration latest = null;
+        for (Registration registration : mRegistrations) {
+            try {
+                if (latest == null || XmlUtilities.compareSchemaVersions(
+                        registration.maximumVersion, latest.maximumVersion) >= 0)
+                    latest = registration;
+            } catch (IllegalSchemaVersionException e) {
+                Log.e(TAG, "Invalid schema version in registration: " + registration.maximumVersion);
+            }
+        }
+        if (latest == null) throw new IllegalStateException("No builders registered");
+        return latest;
+    }
+
+    /**
+     * Finds the start tag of the root element, skipping the XML declaration, processing
+     * instructions, comments and the document type declaration.
+     *
+     * @param head the start of the file
+     * @return the root start tag (from "&lt;" up to but not including "&gt;"), or <code>null</code>
+     * if it isn't entirely in <code>head</code>
+     */
+    @Nullable
+    private static String findRootTag(String head) {
+        int pos = 0;
+        while (true) {
+            int start = head.indexOf('<', pos);
+            if (start < 0 || start + 1 >= head.length()) return null;
+            char next = head.charAt(start + 1);
+            if (next == '?') {
+                pos = head.indexOf("?>", start);
+                if (pos < 0) return null;
+            } else if (head.startsWith("<!--", start)) {
+                pos = head.indexOf("-->", start);
+                if (pos < 0) return null;
+            } else if (next == '!') {
+                pos = head.indexOf('>', start);
+                if (pos < 0) return null;
+            } else {
+                int end = head.indexOf('>', start);
+                if (end < 0) return null;
+                return head.substring(start, end);
+            }
+        }
+    }
+
+}
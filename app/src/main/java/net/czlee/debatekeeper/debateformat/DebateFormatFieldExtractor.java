@@ -78,7 +78,7 @@ public class DebateFormatFieldExtractor {
         } catch (AllInformationFoundException e) {
             return mFieldValue;
         } catch (AllLanguagesFoundException e) {
-            LanguageChooser languageChooser = new LanguageChooser();
+            LanguageChooser languageChooser = LanguageChooser.getInstance();
             // Choose appropriate name language
             String bestLang = languageChooser.choose(mLanguages);
             // Map back to the matching name
@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2026 Chuan-Zheng Lee
+ *
+ * This file is part of the Debatekeeper app, which is licensed under the GNU
+ * General Public Licence version 3 (GPLv3).  You can redistribute and/or modify
+ * it under the terms of the GPLv3, and you must not use this file except in
+ * compliance with the GPLv3.
+ *
+ * This app is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE.  See the GNU General Public Licence for more details.
+ *
+ * You should have received a copy of the GNU General Public Licence along with
+ * this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.czlee.debatekeeper.debateformat;
+
+import androidx.annotation.NonNull;
+
+import java.util.IdentityHashMap;
+import java.util.Locale;
+
+/**
+ * DebateFormatFootprint is a passive data class that reports how many objects a loaded
+ * {@link DebateFormat} uses, and roughly how much heap they take up.  For each kind of object, it
+ * counts both how many times it is referred to and how many distinct instances there are, so the
+ * difference shows how much sharing (see {@link DebateFormatInterner}) has saved.
+ *
+ * <p>The byte counts are rough estimates of shallow sizes, not measurements.  They don't include
+ * strings, which are shared with the XML parser anyway.  Bells generated from the user's prep time
+ * settings aren't counted, since they aren't part of the format.  The contents of a phase format
+ * used by several speeches are only counted once, since speeches of the same type have always
+ * shared a phase format.</p>
+ *
+ * @author Chuan-Zheng Lee
+ * @since 2026-10-19
+ */
+public class DebateFormatFootprint {
+
+    // Rough shallow sizes, in bytes, on a typical 32-bit-reference runtime
+    private static final int PHASE_FORMAT_BYTES = 40;
+    private static final int BELL_INFO_BYTES = 32;
+    private static final int PERIOD_INFO_BYTES = 32;
+    private static final int BELL_SOUND_INFO_BYTES = 24;
+
+    private final Counter mPhaseFormats = new Counter();
+    private final Counter mBellInfos = new Counter();
+    private final Counter mPeriodInfos = new Counter();
+    private final Counter mBellSoundInfos = new Counter();
+
+    //******************************************************************************************
+    // Private classes
+    //******************************************************************************************
+
+    private static class Counter {
+        final IdentityHashMap<Object, Boolean> instances = new IdentityHashMap<>();
+        int references = 0;
+
+        /** @return <code>true</code> if this is the first time <code>o</code> has been seen */
+        boolean add(Object o) {
+            references++;
+            return instances.put(o, Boolean.TRUE) == null;
+        }
+
+        int distinct() {
+            return instances.size();
+        }
+    }
+
+    //******************************************************************************************
+    // Constructor
+    //******************************************************************************************
+
+    private DebateFormatFootprint() {}
+
+    //******************************************************************************************
+    // Public methods
+    //******************************************************************************************
+
+    /**
+     * Walks a debate format and counts the objects it uses.
+     * @param df a {@link DebateFormat}
+     * @return a {@link DebateFormatFootprint} for that format
+     */
+    @NonNull
+    public static DebateFormatFootprint measure(@NonNull DebateFormat df) {
+        DebateFormatFootprint footprint = new DebateFormatFootprint();
+        if (df.hasPrepFormat())
+            footprint.addPhaseFormat(df.getPrepFormat());
+        for (int i = 0; i < df.numberOfSpeeches(); i++)
+            footprint.addPhaseFormat(df.getSpeechFormat(i));
+        return footprint;
+    }
+
+    /**
+     * @return the estimated number of bytes used by the distinct objects counted
+     */
+    public long getEstimatedBytes() {
+        return (long) mPhaseFormats.distinct() * PHASE_FORMAT_BYTES
+                + (long) mBellInfos.distinct() * BELL_INFO_BYTES
+                + (long) mPeriodInfos.distinct() * PERIOD_INFO_BYTES
+                + (long) mBellSoundInfos.distinct() * BELL_SOUND_INFO_BYTES;
+    }
+
+    /**
+     * @return the estimated number of bytes the objects counted would use if nothing were shared
+     */
+    public long getEstimatedUnsharedBytes() {
+        return (long) mPhaseFormats.references * PHASE_FORMAT_BYTES
+                + (long) mBellInfos.references * BELL_INFO_BYTES
+                + (long) mPeriodInfos.references * PERIOD_INFO_BYTES
+                + (long) mBellSoundInfos.references * BELL_SOUND_INFO_BYTES;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return String.format(Locale.ENGLISH,
+                "phase formats %d/%d, bells %d/%d, periods %d/%d, bell sounds %d/%d (distinct/references), " +
+                        "about %d bytes (%d if unshared)",
+                mPhaseFormats.distinct(), mPhaseFormats.references,
+                mBellInfos.distinct(), mBellInfos.references,
+                mPeriodInfos.distinct(), mPeriodInfos.references,
+                mBellSoundInfos.distinct(), mBellSoundInfos.references,
+                getEstimatedBytes(), getEstimatedUnsharedBytes());
+    }
+
+    //******************************************************************************************
+    // Private methods
+    //******************************************************************************************
+
+    private void addPhaseFormat(DebatePhaseFormat dpf) {
+        if (dpf == null) return;
+        if (!mPhaseFormats.add(dpf)) return;  // already counted its contents
+        if (!(dpf instanceof ControlledDebatePhaseFormat)) return;
+
+        ControlledDebatePhaseFormat cdpf = (ControlledDebatePhaseFormat) dpf;
+        mPeriodInfos.add(cdpf.mFirstPeriodInfo);
+        for (BellInfo bi : cdpf.mBells) {
+            mBellInfos.add(bi);
+            mPeriodInfos.add(bi.getNextPeriodInfo());
+            mBellSoundInfos.add(bi.getBellSoundInfo());
+        }
+    }
+
+}
@@ -0,0 +1,525 @@
+/*
+ * Copyright (C) 2026 Chuan-Zheng Lee
+ *
+ * This file is part of the Debatekeeper app, which is licensed under the GNU
+ * General Public Licence version 3 (GPLv3).  You can redistribute and/or modify
+ * it under the terms of the GPLv3, and you must not use this file except in
+ * compliance with the GPLv3.
+ *
+ * This app is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE.  See the GNU General Public Licence for more details.
+ *
+ * You should have received a copy of the GNU General Public Licence along with
+ * this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.czlee.debatekeeper.debateformat;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.util.Xml;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.core.os.HandlerCompat;
+import androidx.core.os.LocaleListCompat;
+
+import com.ibm.icu.util.ULocale;
+
+import net.czlee.debatekeeper.R;
+import net.czlee.debatekeeper.debateformat.XmlUtilities.IllegalSchemaVersionException;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * A {@link DebateFormatInfo} that reads the information in a debate format XML file in two phases.
+ *
+ * <p>On construction, it streams only the header of the file: the schema version, the name, the
+ * declared languages and the &lt;info&gt; block.  Schema 2 files put these before the period types,
+ * prep time and speeches, so parsing stops as soon as any of those is reached.  This is all the
+ * format chooser needs to show its list and the selected item.</p>
+ *
+ * <p>The details (prep time, speech types and speeches) are only read when they are first asked
+ * for, on a background thread, by delegating to {@link DebateFormatInfoForSchema2}.  Callers on
+ * the main thread should use {@link #loadDetails(DetailsListener)}; the synchronous getters will
+ * otherwise block until the details are ready.</p>
+ *
+ * <p>Instances are obtained through {@link #forFile(Context, File)}, which returns a cached instance
+ * (with whatever details it has already loaded) unless the file has changed since.  Since
+ * instances are shared, the lists they return are unmodifiable.</p>
+ *
+ * @author Chuan-Zheng Lee
+ * @since 2026-10-19
+ */
+public class DebateFormatInfoFromHeaderForSchema2 implements DebateFormatInfo {
+
+    private static final String TAG = "DebateFormatInfoFromHeader";
+
+    private static final String MINIMUM_SCHEMA_VERSION = "2.0";
+    private static final String MAXIMUM_SCHEMA_VERSION = "2.2";
+
+    private static final int MAX_CACHED_INSTANCES = 32;
+
+    private static final LinkedHashMap<String, DebateFormatInfoFromHeaderForSchema2> sCache =
+            new LinkedHashMap<String, DebateFormatInfoFromHeaderForSchema2>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, DebateFormatInfoFromHeaderForSchema2> eldest) {
+                    return size() > MAX_CACHED_INSTANCES;
+                }
+            };
+
+    private static ExecutorService sDetailsExecutor = null;
+    private static Handler sMainThreadHandler = null;
+
+    @NonNull private final Context mContext;
+    @NonNull private final File mFile;
+    private final long mLastModified;
+    private final long mLength;
+    @NonNull private final String mLocaleTags;
+
+    @Nullable private String mSchemaVersion = null;
+    @NonNull private String mName = "";
+    @NonNull private String mDescription = "-";
+    @NonNull private List<String> mRegions = Collections.emptyList();
+    @NonNull private List<String> mLevels = Collections.emptyList();
+    @NonNull private List<String> mUsedAts = Collections.emptyList();
+    @NonNull private final ArrayList<String> mDeclaredLanguages = new ArrayList<>();
+
+    @Nullable private Future<Details> mDetailsFuture = null;
+
+    //******************************************************************************************
+    // Public classes
+    //******************************************************************************************
+
+    /**
+     * Interface for callers that want to be told when the details of a format have been read.
+     */
+    public interface DetailsListener {
+        /**
+         * Called on the main thread when the details are available.  From this point, the
+         * getters for details on this object return immediately.
+         *
+         * @param info the {@link DebateFormatInfoFromHeaderForSchema2} whose details were loaded
+         */
+        void onDetailsLoaded(DebateFormatInfoFromHeaderForSchema2 info);
+    }
+
+    //******************************************************************************************
+    // Private classes
+    //******************************************************************************************
+
+    /**
+     * Passive data class holding the details of a format, as returned by the methods of
+     * {@link DebateFormatInfo} that describe prep time, speech types and speeches.
+     */
+    private static class Details {
+        @Nullable String prepTimeDescription = null;
+        @NonNull List<String[]> speechFormatDescriptions = Collections.emptyList();
+        @NonNull List<String[]> speeches = Collections.emptyList();
+    }
+
+    private static class HeaderCompleteException extends SAXException {
+        private static final long serialVersionUID = -2087411569231937105L;
+    }
+
+    /**
+     * Text of elements that can appear in several languages, in the order in which their
+     * languages first appeared.
+     */
+    private static class LocalisedCandidates<T> {
+        final ArrayList<String> languages = new ArrayList<>();
+        final HashMap<String, T> candidates = new HashMap<>();
+
+        void add(String lang, T candidate) {
+            if (candidates.containsKey(lang)) return;
+            languages.add(lang);
+            candidates.put(lang, candidate);
+        }
+
+        @Nullable
+        T choose(XmlUtilities xu) {
+            String lang = xu.chooseLanguage(languages);
+            if (lang == null) return null;
+            return candidates.get(lang);
+        }
+    }
+
+    /**
+     * Contents of a single &lt;info&gt; element.
+     */
+    private static class InfoBlock {
+        final ArrayList<String> regions = new ArrayList<>();
+        final ArrayList<String> levels = new ArrayList<>();
+        final ArrayList<String> usedAts = new ArrayList<>();
+        final LocalisedCandidates<String> descriptions = new LocalisedCandidates<>();
+    }
+
+    /**
+     * Reads the schema version, names, declared languages and &lt;info&gt; blocks, and stops
+     * (by throwing {@link HeaderCompleteException}) once it reaches the body of the format.
+     */
+    private class HeaderXmlContentHandler extends DefaultHandler {
+
+        private final String mUri;
+        private final String mSchemaVersionAttr;
+        private final String mLangAttr;
+        private final String mNameElem;
+        private final String mLanguagesElem;
+        private final String mLanguageElem;
+        private final String mInfoElem;
+        private final String mRegionElem;
+        private final String mLevelElem;
+        private final String mUsedAtElem;
+        private final String mDescElem;
+        private final String[] mBodyElems;
+
+        final LocalisedCandidates<String> names = new LocalisedCandidates<>();
+        final LocalisedCandidates<InfoBlock> infos = new LocalisedCandidates<>();
+
+        private int mDepth = 0;
+        private boolean mInLanguages = false;
+        @Nullable private InfoBlock mCurrentInfo = null;
+        @Nullable private StringBuilder mTextBuffer = null;
+        @Nullable private String mTextElement = null;
+        @Nullable private String mTextLang = null;
+
+        HeaderXmlContentHandler(XmlUtilities xu) {
+            mUri = mContext.getString(R.string.xml_uri);
+            mSchemaVersionAttr = xu.getString(R.string.xml2attrName_root_schemaVersion);
+            mLangAttr = xu.getString(R.string.xml2attrName_language);
+            mNameElem = xu.getString(R.string.xml2elemName_name);
+            mLanguagesElem = xu.getString(R.string.xml2elemName_languages);
+            mLanguageElem = xu.getString(R.string.xml2elemName_languages_language);
+            mInfoElem = xu.getString(R.string.xml2elemName_info);
+            mRegionElem = xu.getString(R.string.xml2elemName_info_region);
+            mLevelElem = xu.getString(R.string.xml2elemName_info_level);
+            mUsedAtElem = xu.getString(R.string.xml2elemName_info_usedAt);
+            mDescElem = xu.getString(R.string.xml2elemName_info_desc);
+            mBodyElems = new String[]{
+                    xu.getString(R.string.xml2elemName_periodTypes),
+                    xu.getString(R.string.xml2elemName_prepTimeSimpleFormat),
+                    xu.getString(R.string.xml2elemName_prepTimeControlledFormat),
+                    xu.getString(R.string.xml2elemName_speechFormats),
+                    xu.getString(R.string.xml2elemName_speechesList),
+            };
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) {
+            if (mTextBuffer != null) mTextBuffer.append(ch, start, length);
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes atts)
+                throws SAXException {
+            int depth = mDepth++;
+            if (!uri.equals(mUri)) return;
+
+            if (depth == 0) {
+                mSchemaVersion = atts.getValue(mSchemaVersionAttr);
+
+            } else if (depth == 1) {
+                for (String bodyElem : mBodyElems)
+                    if (localName.equals(bodyElem)) throw new HeaderCompleteException();
+
+                if (localName.equals(mNameElem)) {
+                    startText(localName, atts);
+                } else if (localName.equals(mLanguagesElem)) {
+                    mInLanguages = true;
+                } else if (localName.equals(mInfoElem)) {
+                    mCurrentInfo = new InfoBlock();
+                    infos.add(getLang(atts), mCurrentInfo);
+                }
+
+            } else if (depth == 2) {
+                if (mInLanguages && localName.equals(mLanguageElem))
+                    startText(localName, atts);
+                else if (mCurrentInfo != null && (localName.equals(mRegionElem)
+                        || localName.equals(mLevelElem) || localName.equals(mUsedAtElem)
+                        || localName.equals(mDescElem)))
+                    startText(localName, atts);
+            }
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) {
+            mDepth--;
+            if (!uri.equals(mUri)) return;
+
+            if (mTextBuffer != null && localName.equals(mTextElement)) {
+                String text = mTextBuffer.toString();
+                if (mDepth == 1) {
+                    names.add(mTextLang, text);
+                } else if (mInLanguages) {
+                    mDeclaredLanguages.add(text);
+                } else if (mCurrentInfo != null) {
+                    if (localName.equals(mRegionElem)) mCurrentInfo.regions.add(text);
+                    else if (localName.equals(mLevelElem)) mCurrentInfo.levels.add(text);
+                    else if (localName.equals(mUsedAtElem)) mCurrentInfo.usedAts.add(text);
+                    else mCurrentInfo.descriptions.add(mTextLang, text);
+                }
+                mTextBuffer = null;
+                mTextElement = null;
+            }
+
+            if (mDepth == 1) {
+                mInLanguages = false;
+                mCurrentInfo = null;
+            }
+        }
+
+        private void startText(String localName, Attributes atts) {
+            mTextBuffer = new StringBuilder();
+            mTextElement = localName;
+            mTextLang = getLang(atts);
+        }
+
+        private String getLang(Attributes atts) {
+            String lang = atts.getValue(mLangAttr);
+            return (lang == null) ? "" : lang;
+        }
+    }
+
+    //******************************************************************************************
+    // Constructor
+    //******************************************************************************************
+
+    private DebateFormatInfoFromHeaderForSchema2(@NonNull Context context, @NonNull File file,
+                                                 @NonNull String localeTags) throws IOException, SAXException {
+        mContext = context;
+        mFile = file;
+        mLastModified = file.lastModified();
+        mLength = file.length();
+        mLocaleTags = localeTags;
+
+        XmlUtilities xu = new XmlUtilities(context.getResources());
+        HeaderXmlContentHandler handler = new HeaderXmlContentHandler(xu);
+
+        try (InputStream is = new FileInputStream(file)) {
+            Xml.parse(is, Xml.Encoding.UTF_8, handler);
+        } catch (HeaderCompleteException e) {
+            // this just means we have everything we need
+        }
+
+        xu.setDeclaredLanguages(mDeclaredLanguages);
+
+        String name = handler.names.choose(xu);
+        if (name != null) mName = name;
+
+        InfoBlock info = handler.infos.choose(xu);
+        if (info != null) {
+            mRegions = Collections.unmodifiableList(info.regions);
+            mLevels = Collections.unmodifiableList(info.levels);
+            mUsedAts = Collections.unmodifiableList(info.usedAts);
+            String description = info.descriptions.choose(xu);
+            if (description != null) mDescription = description;
+        }
+    }
+
+    //******************************************************************************************
+    // Public methods
+    //******************************************************************************************
+
+    /**
+     * Returns a {@link DebateFormatInfoFromHeaderForSchema2} for the given file.  If one was
+     * recently created for the same file, and the file hasn't changed since (nor has the user's
+     * locale), that one is returned, along with any details it has already loaded.
+     *
+     * @param context a {@link Context}
+     * @param file    a debate format XML file
+     * @return a {@link DebateFormatInfoFromHeaderForSchema2}
+     * @throws IOException  if there was an IO error reading the file
+     * @throws SAXException if thrown by the XML parser
+     */
+    @NonNull
+    public static DebateFormatInfoFromHeaderForSchema2 forFile(@NonNull Context context, @NonNull File file)
+            throws IOException, SAXException {
+        String path = file.getAbsolutePath();
+        String localeTags = LocaleListCompat.getAdjustedDefault().toLanguageTags();
+
+        synchronized (sCache) {
+            DebateFormatInfoFromHeaderForSchema2 cached = sCache.get(path);
+            if (cached != null && cached.mLastModified == file.lastModified()
+                    && cached.mLength == file.length() && cached.mLocaleTags.equals(localeTags))
+                return cached;
+        }
+
+        DebateFormatInfoFromHeaderForSchema2 info = new DebateFormatInfoFromHeaderForSchema2(
+                context.getApplicationContext(), file, localeTags);
+        synchronized (sCache) {
+            sCache.put(path, info);
+        }
+        return info;
+    }
+
+    /**
+     * Starts reading the details of this format on a background thread, if this hasn't already
+     * started, and calls the listener on the main thread when they're available.  If they are
+     * already available, the listener is still called asynchronously.  This must be called from
+     * the main thread.
+     *
+     * @param listener a {@link DetailsListener}
+     */
+    public void loadDetails(@NonNull DetailsListener listener) {
+        final Future<Details> future = startLoadingDetails();
+        sDetailsExecutor.execute(() -> {
+            try {
+                future.get();
+            } catch (ExecutionException | InterruptedException e) {
+                Log.e(TAG, "Couldn't wait for details of " + mFile.getName(), e);
+            }
+            sMainThreadHandler.post(() -> listener.onDetailsLoaded(this));
+        });
+    }
+
+    @Override
+    public String getName() {
+        return mName;
+    }
+
+    @Override
+    public String getDescription() {
+        return mDescription;
+    }
+
+    @Override
+    public List<String> getRegions() {
+        return mRegions;
+    }
+
+    @Override
+    public List<String> getLevels() {
+        return mLevels;
+    }
+
+    @Override
+    public List<String> getUsedAts() {
+        return mUsedAts;
+    }
+
+    @Override
+    public List<String> getDisplayLanguages() {
+        ArrayList<String> languages = new ArrayList<>();
+        for (String code : mDeclaredLanguages) {
+            ULocale locale = new ULocale(code);
+            String language = locale.getDisplayLanguage();
+            if (language != null) languages.add(language);
+        }
+        return languages;
+    }
+
+    @Override
+    public String getPrepTimeDescription() {
+        return getDetails().prepTimeDescription;
+    }
+
+    @Override
+    public String getSchemaVersion() {
+        return mSchemaVersion;
+    }
+
+    @Override
+    public boolean isSchemaSupported() {
+        if (mSchemaVersion == null)
+            return false; // either not built, or if it was built then probably the wrong schema
+        try {
+            return (XmlUtilities.compareSchemaVersions(mSchemaVersion, MAXIMUM_SCHEMA_VERSION) <= 0)
+                    && (XmlUtilities.compareSchemaVersions(mSchemaVersion, MINIMUM_SCHEMA_VERSION) >= 0);
+        } catch (IllegalSchemaVersionException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public List<String[]> getSpeechFormatDescriptions() {
+        return getDetails().speechFormatDescriptions;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This implementation always returns the speeches computed from the descriptions returned by
+     * {@link #getSpeechFormatDescriptions()}, so the argument is ignored.
+     */
+    @Override
+    public List<String[]> getSpeeches(List<String[]> descriptions) {
+        return getDetails().speeches;
+    }
+
+    //******************************************************************************************
+    // Private methods
+    //******************************************************************************************
+
+    /**
+     * Starts loading details on the background thread, if this hasn't already started.
+     *
+     * @return a {@link Future} for the details
+     */
+    @NonNull
+    private synchronized Future<Details> startLoadingDetails() {
+        synchronized (DebateFormatInfoFromHeaderForSchema2.class) {
+            if (sDetailsExecutor == null)
+                sDetailsExecutor = Executors.newSingleThreadExecutor();
+            if (sMainThreadHandler == null)
+                sMainThreadHandler = HandlerCompat.createAsync(Looper.getMainLooper());
+        }
+        if (mDetailsFuture == null)
+            mDetailsFuture = sDetailsExecutor.submit(this::readDetails);
+        return mDetailsFuture;
+    }
+
+    /**
+     * Returns the details, waiting for them to be read if necessary.  If there was an error reading
+     * them, this returns empty details.
+     */
+    @NonNull
+    private Details getDetails() {
+        Future<Details> future = startLoadingDetails();
+        try {
+            return future.get();
+        } catch (ExecutionException | InterruptedException e) {
+            Log.e(TAG, "Couldn't get details of " + mFile.getName(), e);
+            return new Details();
+        }
+    }
+
+    /**
+     * Reads the details from the file.  This does file I/O and parses the whole file, so it should
+     * be run on a background thread.
+     */
+    @NonNull
+    private Details readDetails() {
+        Details details = new Details();
+        try (InputStream is = new FileInputStream(mFile)) {
+            DebateFormatInfoForSchema2 dfi = new DebateFormatInfoForSchema2(mContext, is);
+            details.prepTimeDescription = dfi.getPrepTimeDescription();
+            List<String[]> descriptions = dfi.getSpeechFormatDescriptions();
+            details.speechFormatDescriptions = Collections.unmodifiableList(descriptions);
+            details.speeches = Collections.unmodifiableList(dfi.getSpeeches(descriptions));
+        } catch (IOException | SAXException e) {
+            Log.e(TAG, "Couldn't read details of " + mFile.getName(), e);
+        }
+        return details;
+    }
+
+}
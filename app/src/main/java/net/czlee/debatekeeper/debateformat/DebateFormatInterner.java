@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2026 Chuan-Zheng Lee
+ *
+ * This file is part of the Debatekeeper app, which is licensed under the GNU
+ * General Public Licence version 3 (GPLv3).  You can redistribute and/or modify
+ * it under the terms of the GPLv3, and you must not use this file except in
+ * compliance with the GPLv3.
+ *
+ * This app is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE.  See the GNU General Public Licence for more details.
+ *
+ * You should have received a copy of the GNU General Public Licence along with
+ * this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.czlee.debatekeeper.debateformat;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * DebateFormatInterner canonicalises the parts of a debate format as it is being built, so that
+ * identical values share a single instance.  Debate formats tend to repeat the same bells and
+ * periods across many speeches, so this saves a lot of small objects in long formats.
+ *
+ * <p>{@link PeriodInfo}, {@link BellSoundInfo} and {@link BellInfo} are immutable, so they can be
+ * shared freely.  {@link ControlledDebatePhaseFormat}s are not, so they must only be interned after
+ * they have been fully built, and must not be changed after that.</p>
+ *
+ * <p>Instances are meant to be used for building a single debate format; this class is not
+ * thread-safe.</p>
+ *
+ * @author Chuan-Zheng Lee
+ * @since 2026-10-19
+ */
+class DebateFormatInterner {
+
+    private final HashMap<PeriodInfo, PeriodInfo>       mPeriodInfos    = new HashMap<>();
+    private final HashMap<BellSoundInfo, BellSoundInfo> mBellSoundInfos = new HashMap<>();
+    private final HashMap<BellInfo, BellInfo>           mBellInfos      = new HashMap<>();
+    private final HashMap<List<Object>, ControlledDebatePhaseFormat> mPhaseFormats = new HashMap<>();
+
+    //******************************************************************************************
+    // Public methods
+    //******************************************************************************************
+
+    @NonNull
+    PeriodInfo intern(@NonNull PeriodInfo pi) {
+        PeriodInfo existing = mPeriodInfos.get(pi);
+        if (existing != null) return existing;
+        mPeriodInfos.put(pi, pi);
+        return pi;
+    }
+
+    @NonNull
+    BellSoundInfo intern(@NonNull BellSoundInfo bsi) {
+        BellSoundInfo existing = mBellSoundInfos.get(bsi);
+        if (existing != null) return existing;
+        mBellSoundInfos.put(bsi, bsi);
+        return bsi;
+    }
+
+    /**
+     * Returns the canonical instance of a bell.  Its sound and next period are also canonicalised.
+     * @param bi a {@link BellInfo}
+     * @return a {@link BellInfo} equal to <code>bi</code>, shared with all other equal bells
+     * interned by this interner
+     */
+    @NonNull
+    BellInfo intern(@NonNull BellInfo bi) {
+        BellInfo existing = mBellInfos.get(bi);
+        if (existing != null) return existing;
+
+        BellSoundInfo bsi = intern(bi.getBellSoundInfo());
+        PeriodInfo npi = intern(bi.getNextPeriodInfo());
+        if (bsi != bi.getBellSoundInfo() || npi != bi.getNextPeriodInfo())
+            bi = new BellInfo(bi.getBellTime(), bsi, npi, bi.isPauseOnBell());
+
+        mBellInfos.put(bi, bi);
+        return bi;
+    }
+
+    /**
+     * Returns the canonical instance of a fully built phase format.  Its bells are replaced with
+     * their canonical instances first.  The returned format must not be changed.
+     * @param cdpf a {@link ControlledDebatePhaseFormat}
+     * @return a format of the same class with the same length, first period and bells as
+     * <code>cdpf</code>, shared with all other such formats interned by this interner
+     */
+    @NonNull
+    <T extends ControlledDebatePhaseFormat> T intern(@NonNull T cdpf) {
+        cdpf.mFirstPeriodInfo = intern(cdpf.mFirstPeriodInfo);
+        for (int i = 0; i < cdpf.mBells.size(); i++)
+            cdpf.mBells.set(i, intern(cdpf.mBells.get(i)));
+
+        List<Object> key = Arrays.asList(cdpf.getClass(), cdpf.getLength(), cdpf.mFirstPeriodInfo,
+                new ArrayList<>(cdpf.mBells));
+        ControlledDebatePhaseFormat existing = mPhaseFormats.get(key);
+
+        // The class is part of the key, so this cast is safe.
+        if (existing != null) {
+            @SuppressWarnings("unchecked") T result = (T) existing;
+            return result;
+        }
+
+        mPhaseFormats.put(key, cdpf);
+        return cdpf;
+    }
+
+}
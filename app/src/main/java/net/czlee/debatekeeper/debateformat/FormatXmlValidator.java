@@ -0,0 +1,625 @@
+/*
+ * Copyright (C) 2026 Chuan-Zheng Lee
+ *
+ * This file is part of the Debatekeeper app, which is licensed under the GNU
+ * General Public Licence version 3 (GPLv3).  You can redistribute and/or modify
+ * it under the terms of the GPLv3, and you must not use this file except in
+ * compliance with the GPLv3.
+ *
+ * This app is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE.  See the GNU General Public Licence for more details.
+ *
+ * You should have received a copy of the GNU General Public Licence along with
+ * this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.czlee.debatekeeper.debateformat;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.util.Xml;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.core.os.HandlerCompat;
+
+import net.czlee.debatekeeper.DebatekeeperUtils;
+import net.czlee.debatekeeper.R;
+import net.czlee.debatekeeper.debateformat.XmlUtilities.IllegalSchemaVersionException;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+import org.xml.sax.helpers.DefaultHandler;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * FormatXmlValidator checks a schema 2 debate format XML file for the same problems that
+ * {@link DebateFormatBuilderFromXmlForSchema2} would find, without building the debate format.
+ *
+ * <p>The file is checked in a single streaming pass.  Problems are reported as {@link Diagnostic}s,
+ * which record where in the file the problem is and which error it is, and are only turned into
+ * (localised) messages when they are displayed.  References to period types and speech types are
+ * checked at the end of the file, since they can be used before they are declared.</p>
+ *
+ * <p>Results are cached by the SHA-256 hash of the file's contents, which is worked out as the
+ * file is parsed.  Callers that already know the hash can pass it to
+ * {@link #validate(InputStream, String)}, so that a file that hasn't changed is only checked once.</p>
+ *
+ * @author Chuan-Zheng Lee
+ * @since 2026-10-19
+ */
+public class FormatXmlValidator {
+
+    private static final String TAG = "FormatXmlValidator";
+
+    private static final String MINIMUM_SCHEMA_VERSION = DebateFormatBuilderFromXmlForSchema2.MINIMUM_SCHEMA_VERSION;
+    private static final String MAXIMUM_SCHEMA_VERSION = DebateFormatBuilderFromXmlForSchema2.MAXIMUM_SCHEMA_VERSION;
+    private static final int MAX_CACHED_RESULTS = 32;
+
+    private static final Map<String, Result> sResultCache = new LinkedHashMap<String, Result>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Result> eldest) {
+            return size() > MAX_CACHED_RESULTS;
+        }
+    };
+    private static ExecutorService sExecutor = null;
+    private static Handler sMainThreadHandler = null;
+
+    private final Context mContext;
+    private final XmlUtilities xu;
+    private Set<String> mBuiltInPeriodRefs = null;  // loaded on first validation
+
+    //******************************************************************************************
+    // Public classes
+    //******************************************************************************************
+
+    /**
+     * A single problem found in a debate format file.  The code is the resource ID of the error
+     * message, which is formatted with the arguments when {@link #getMessage(Context)} is called.
+     * The line and column are 1-based, or -1 if unknown.
+     */
+    public static class Diagnostic {
+        public final int line;
+        public final int column;
+        public final int code;
+        @NonNull private final Object[] args;
+
+        Diagnostic(int line, int column, int code, @NonNull Object... args) {
+            this.line = line;
+            this.column = column;
+            this.code = code;
+            this.args = args;
+        }
+
+        @NonNull
+        public List<Object> getArgs() {
+            return Collections.unmodifiableList(Arrays.asList(args));
+        }
+
+        @NonNull
+        public String getMessage(@NonNull Context context) {
+            return context.getString(code, args);
+        }
+    }
+
+    /**
+     * Passive data class holding the outcome of validating a file.
+     */
+    public static class Result {
+        @NonNull public final String contentHash;
+        @Nullable public final String schemaVersion;
+        public final boolean schemaTooNew;
+        @NonNull public final List<Diagnostic> diagnostics;
+
+        Result(@NonNull String contentHash, @Nullable String schemaVersion, boolean schemaTooNew,
+               @NonNull List<Diagnostic> diagnostics) {
+            this.contentHash = contentHash;
+            this.schemaVersion = schemaVersion;
+            this.schemaTooNew = schemaTooNew;
+            this.diagnostics = Collections.unmodifiableList(diagnostics);
+        }
+
+        public boolean hasErrors() {
+            return !diagnostics.isEmpty();
+        }
+    }
+
+    public interface ValidationListener {
+        /**
+         * Called on the main thread when validation finishes.
+         * @param result the {@link Result}, or <code>null</code> if the file couldn't be read
+         */
+        void onValidated(@Nullable Result result);
+    }
+
+    //******************************************************************************************
+    // Private classes
+    //******************************************************************************************
+
+    /**
+     * Stops the parser from closing the stream, so that the rest of it can still be read after
+     * parsing stops.
+     */
+    private static class NonClosingInputStream extends FilterInputStream {
+
+        NonClosingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public void close() {
+            // do nothing
+        }
+    }
+
+    /**
+     * Thrown to stop parsing early, when the rest of the file can't usefully be checked.
+     */
+    private static class StopValidationException extends SAXException {
+        private static final long serialVersionUID = 3570457104982815163L;
+    }
+
+    /**
+     * A reference to a period type or speech type, to be checked at the end of the file.
+     */
+    private static class PendingReference {
+        final String ref;
+        final String context;
+        final int line;
+        final int column;
+
+        PendingReference(String ref, String context, Locator locator) {
+            this.ref = ref;
+            this.context = context;
+            this.line = (locator != null) ? locator.getLineNumber() : -1;
+            this.column = (locator != null) ? locator.getColumnNumber() : -1;
+        }
+    }
+
+    private class ValidatingContentHandler extends DefaultHandler {
+
+        private final ArrayList<Diagnostic> mDiagnostics = new ArrayList<>();
+        private final ArrayDeque<String> mPath = new ArrayDeque<>();
+        private Locator mLocator = null;
+
+        private String mSchemaVersion = null;
+        private boolean mSchemaTooNew = false;
+        private boolean mSawName = false;
+        private boolean mSawPrepTime = false;
+        private int mSpeechCount = 0;
+
+        private final HashSet<String> mPeriodRefs = new HashSet<>();
+        private final HashSet<String> mSpeechFormatRefs = new HashSet<>();
+        private final ArrayList<PendingReference> mPendingPeriodRefs = new ArrayList<>();
+        private final ArrayList<PendingReference> mPendingSpeechRefs = new ArrayList<>();
+
+        // Current period-type, speech-type or prep-time-controlled, and speech
+        private String mPeriodTypeRef = null;
+        private boolean mPeriodTypeHasName = false;
+        private StringBuilder mBgColorText = null;
+        private String mControlledLocation = null;
+        private Long mControlledLength = null;
+        private boolean mInSpeech = false;
+        private String mSpeechType = null;
+        private String mSpeechName = null;
+        private StringBuilder mSpeechNameText = null;
+
+        @Override
+        public void setDocumentLocator(Locator locator) {
+            mLocator = locator;
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes atts) throws SAXException {
+            String name = (localName == null || localName.isEmpty()) ? qName : localName;
+            String parent = mPath.peek();
+            int depth = mPath.size();
+            mPath.push(name);
+
+            if (depth == 0) {
+                checkSchemaVersion(atts.getValue(xu.getString(R.string.xml2attrName_root_schemaVersion)));
+
+            } else if (depth == 1) {
+                if (name.equals(xu.getString(R.string.xml2elemName_name))) {
+                    mSawName = true;
+                } else if (name.equals(xu.getString(R.string.xml2elemName_prepTimeSimpleFormat))) {
+                    if (checkSinglePrepTime())
+                        checkLength(atts, R.string.xml2error_prepTimeSimple_length_null,
+                                R.string.xml2error_prepTimeSimple_length_invalid);
+                } else if (name.equals(xu.getString(R.string.xml2elemName_prepTimeControlledFormat))) {
+                    if (checkSinglePrepTime()) {
+                        mControlledLength = checkLength(atts, R.string.xml2error_prepTimeControlled_length_null,
+                                R.string.xml2error_prepTimeControlled_length_invalid);
+                        mControlledLocation = name;
+                        addFirstPeriodReference(atts);
+                    }
+                }
+
+            } else if (name.equals(xu.getString(R.string.xml2elemName_periodType))
+                    && xu.getString(R.string.xml2elemName_periodTypes).equals(parent) && depth == 2) {
+                startPeriodType(atts);
+
+            } else if (name.equals(xu.getString(R.string.xml2elemName_speechFormat))
+                    && xu.getString(R.string.xml2elemName_speechFormats).equals(parent) && depth == 2) {
+                startSpeechFormat(atts);
+
+            } else if (name.equals(xu.getString(R.string.xml2elemName_speech))
+                    && xu.getString(R.string.xml2elemName_speechesList).equals(parent) && depth == 2) {
+                mInSpeech = true;
+                mSpeechType = atts.getValue(xu.getString(R.string.xml2attrName_speech_format));
+                mSpeechName = null;
+
+            } else if (name.equals(xu.getString(R.string.xml2elemName_bell))) {
+                if (mControlledLength != null && mControlledLocation != null) checkBell(atts);
+
+            } else if (mPeriodTypeRef != null && depth == 3) {
+                if (name.equals(xu.getString(R.string.xml2elemName_periodType_name)))
+                    mPeriodTypeHasName = true;
+                else if (name.equals(xu.getString(R.string.xml2elemName_periodType_defaultBackgroundColor)))
+                    mBgColorText = new StringBuilder();
+
+            } else if (mInSpeech && depth == 3 && name.equals(xu.getString(R.string.xml2elemName_speech_name))) {
+                mSpeechNameText = new StringBuilder();
+            }
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) {
+            if (mBgColorText != null) mBgColorText.append(ch, start, length);
+            if (mSpeechNameText != null) mSpeechNameText.append(ch, start, length);
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) {
+            String name = mPath.pop();
+            int depth = mPath.size();
+
+            if (depth == 3 && mBgColorText != null) {
+                checkBackgroundColor(mBgColorText.toString().trim());
+                mBgColorText = null;
+            } else if (depth == 3 && mSpeechNameText != null) {
+                if (mSpeechName == null) mSpeechName = mSpeechNameText.toString().trim();
+                mSpeechNameText = null;
+            } else if (depth == 2 && mPeriodTypeRef != null) {
+                if (!mPeriodTypeHasName) addError(R.string.xml2error_periodType_name_null, mPeriodTypeRef);
+                mPeriodTypeRef = null;
+            } else if (depth == 2 && mInSpeech) {
+                endSpeech();
+            } else if (name.equals(xu.getString(R.string.xml2elemName_speechFormat))
+                    || name.equals(xu.getString(R.string.xml2elemName_prepTimeControlledFormat))) {
+                mControlledLocation = null;
+                mControlledLength = null;
+            }
+        }
+
+        @Override
+        public void endDocument() {
+            if (!mSawName) addError(R.string.xml2error_root_noName);
+
+            for (PendingReference pending : mPendingPeriodRefs)
+                if (!mPeriodRefs.contains(pending.ref) && !mBuiltInPeriodRefs.contains(pending.ref))
+                    mDiagnostics.add(new Diagnostic(pending.line, pending.column,
+                            R.string.dfb2error_periodInfo_notFound, pending.ref));
+
+            for (PendingReference pending : mPendingSpeechRefs)
+                if (!mSpeechFormatRefs.contains(pending.ref))
+                    mDiagnostics.add(new Diagnostic(pending.line, pending.column,
+                            R.string.dfb2error_addSpeech_speechFormatNotFound, pending.ref, pending.context));
+
+            if (mSpeechCount == 0) addError(R.string.debateLoadError_noSpeeches);
+        }
+
+        private void checkSchemaVersion(String version) throws SAXException {
+            mSchemaVersion = version;
+            if (version == null) {
+                addError(R.string.xmlError_rootNoSchemaVersion);
+                return;
+            }
+            try {
+                if (XmlUtilities.compareSchemaVersions(version, MINIMUM_SCHEMA_VERSION) < 0) {
+                    // The rest of the file won't be in schema 2, so there's no point going on
+                    addError(R.string.debateLoadError_schemaOutdated);
+                    throw new StopValidationException();
+                }
+                // If the schema is too new, just keep going, the file might still work
+                mSchemaTooNew = XmlUtilities.compareSchemaVersions(version, MAXIMUM_SCHEMA_VERSION) > 0;
+            } catch (IllegalSchemaVersionException e) {
+                addError(R.string.xmlError_rootInvalidSchemaVersion, version);
+            }
+        }
+
+        /**
+         * @return <code>true</code> if this is the first prep time element, <code>false</code>
+         * otherwise
+         */
+        private boolean checkSinglePrepTime() {
+            if (mSawPrepTime) {
+                addError(R.string.xml2error_prepTime_multiple);
+                return false;
+            }
+            mSawPrepTime = true;
+            return true;
+        }
+
+        @Nullable
+        private Long checkLength(Attributes atts, int nullResId, int invalidResId,
+                                 Object... extraArgs) {
+            String lengthStr = atts.getValue(xu.getString(R.string.xml2attrName_controlledTimeLength));
+            if (lengthStr == null) {
+                addError(nullResId, extraArgs);
+                return null;
+            }
+            try {
+                return XmlUtilities.timeStr2Secs(lengthStr);
+            } catch (NumberFormatException e) {
+                Object[] args = new Object[extraArgs.length + 1];
+                args[0] = lengthStr;
+                System.arraycopy(extraArgs, 0, args, 1, extraArgs.length);
+                addError(invalidResId, args);
+                return null;
+            }
+        }
+
+        private void startPeriodType(Attributes atts) {
+            String ref = atts.getValue(xu.getString(R.string.xml2attrName_common_ref));
+            if (ref == null) {
+                addError(R.string.xml2error_periodType_ref_null);
+                return;
+            }
+            if (ref.isEmpty()) {
+                addError(R.string.xml2error_periodType_ref_blank);
+                return;
+            }
+            if (mBuiltInPeriodRefs.contains(ref))
+                addError(R.string.dfb2error_periodInfo_builtInDuplicate, ref);
+            else if (!mPeriodRefs.add(ref))
+                addError(R.string.dfb2error_periodInfo_duplicate, ref);
+
+            String poisAllowed = atts.getValue(xu.getString(R.string.xml2attrName_periodType_poisAllowed));
+            if (poisAllowed != null && !isBoolean(poisAllowed))
+                addError(R.string.xml2Error_periodType_poisAllowed_invalid, poisAllowed, ref);
+
+            mPeriodTypeRef = ref;
+            mPeriodTypeHasName = false;
+        }
+
+        private void checkBackgroundColor(String value) {
+            if (value.startsWith("#")) {
+                try {
+                    new BigInteger(value.substring(1), 16);
+                    return;
+                } catch (NumberFormatException e) {
+                    // fall through
+                }
+            }
+            addError(R.string.xml2Error_periodType_defaultBgColor_invalid, value, mPeriodTypeRef);
+        }
+
+        private void startSpeechFormat(Attributes atts) {
+            String ref = atts.getValue(xu.getString(R.string.xml2attrName_common_ref));
+            if (ref == null) {
+                addError(R.string.xml2error_speechFormat_ref_null);
+                return;
+            }
+            if (ref.isEmpty()) {
+                addError(R.string.xml2error_speechFormat_ref_blank);
+                return;
+            }
+            if (!mSpeechFormatRefs.add(ref))
+                addError(R.string.dfb2error_speechFormat_duplicate, ref);
+
+            mControlledLength = checkLength(atts, R.string.xml2error_speechFormat_length_null,
+                    R.string.xml2error_speechFormat_length_invalid, ref);
+            mControlledLocation = xu.getString(R.string.xml2elemName_speechFormat) + " '" + ref + "'";
+            addFirstPeriodReference(atts);
+        }
+
+        private void addFirstPeriodReference(Attributes atts) {
+            String firstPeriod = atts.getValue(xu.getString(R.string.xml2attrName_controlledTimeFirstPeriod));
+            if (firstPeriod != null && !firstPeriod.equals(xu.getString(R.string.xml2attrValue_common_stay)))
+                mPendingPeriodRefs.add(new PendingReference(firstPeriod, mControlledLocation, mLocator));
+        }
+
+        private void checkBell(Attributes atts) {
+            String location = mControlledLocation;
+            String timeStr = atts.getValue(xu.getString(R.string.xml2attrName_bell_time));
+            if (timeStr == null) {
+                addError(R.string.xml2error_bell_time_null, "", location);
+                return;
+            }
+
+            long time;
+            if (timeStr.equals(xu.getString(R.string.xml2attrValue_bell_time_finish)))
+                time = mControlledLength;
+            else try {
+                time = XmlUtilities.timeStr2Secs(timeStr);
+            } catch (NumberFormatException e) {
+                addError(R.string.xml2error_bell_time_invalid, timeStr, location);
+                return;
+            }
+            if (time > mControlledLength) {
+                addError(R.string.dfb2error_bell_afterFinishTime, timeStr, location);
+                return;
+            }
+
+            String number = atts.getValue(xu.getString(R.string.xml2attrName_bell_number));
+            if (number != null) {
+                try {
+                    Integer.parseInt(number);
+                } catch (NumberFormatException e) {
+                    addError(R.string.xml2error_bell_number_invalid, number, location, timeStr);
+                }
+            }
+
+            String nextPeriod = atts.getValue(xu.getString(R.string.xml2attrName_bell_nextPeriod));
+            if (nextPeriod != null && !nextPeriod.equals(xu.getString(R.string.xml2attrValue_common_stay)))
+                mPendingPeriodRefs.add(new PendingReference(nextPeriod, location, mLocator));
+
+            String pauseOnBell = atts.getValue(xu.getString(R.string.xml2attrName_bell_pauseOnBell));
+            if (pauseOnBell != null && !isBoolean(pauseOnBell))
+                addError(R.string.xml2error_bell_pauseOnBell_invalid, pauseOnBell, location, timeStr);
+        }
+
+        private void endSpeech() {
+            mInSpeech = false;
+            if (mSpeechName == null) {
+                addError(R.string.xml2error_speech_name_null);
+                return;
+            }
+            if (mSpeechType == null) {
+                addError(R.string.xml2error_speech_format_null, mSpeechName);
+                return;
+            }
+            mPendingSpeechRefs.add(new PendingReference(mSpeechType, mSpeechName, mLocator));
+            mSpeechCount++;
+        }
+
+        private boolean isBoolean(String value) {
+            return value.equals(xu.getString(R.string.xml2attrValue_common_true))
+                    || value.equals(xu.getString(R.string.xml2attrValue_common_false));
+        }
+
+        private void addError(int resId, Object... args) {
+            int line = (mLocator != null) ? mLocator.getLineNumber() : -1;
+            int column = (mLocator != null) ? mLocator.getColumnNumber() : -1;
+            mDiagnostics.add(new Diagnostic(line, column, resId, args));
+        }
+    }
+
+    //******************************************************************************************
+    // Constructor
+    //******************************************************************************************
+
+    public FormatXmlValidator(@NonNull Context context) {
+        mContext = context.getApplicationContext();
+        xu = new XmlUtilities(context.getResources());
+    }
+
+    //******************************************************************************************
+    // Public methods
+    //******************************************************************************************
+
+    /**
+     * Validates a debate format file.  This does file I/O and parsing, so it shouldn't be called
+     * from the main thread; see {@link #validateInBackground(File, String, ValidationListener)}.
+     *
+     * @param is an {@link InputStream} for the file, which is read to the end but not closed
+     * @return a {@link Result}
+     * @throws IOException if there was an error reading the file
+     */
+    @NonNull
+    public Result validate(@NonNull InputStream is) throws IOException {
+        return validate(is, null);
+    }
+
+    /**
+     * Validates a debate format file, as {@link #validate(InputStream)} does, but if the file's
+     * hash is already known and the file has already been checked, returns the earlier result
+     * without reading the file.
+     *
+     * @param is an {@link InputStream} for the file, which is read to the end (unless a cached
+     *           result is returned) but not closed
+     * @param knownHash the SHA-256 hash of the file as a hex string, or <code>null</code> if not known
+     * @return a {@link Result}
+     * @throws IOException if there was an error reading the file
+     */
+    @NonNull
+    public Result validate(@NonNull InputStream is, @Nullable String knownHash) throws IOException {
+        if (knownHash != null) {
+            synchronized (sResultCache) {
+                Result cached = sResultCache.get(knownHash);
+                if (cached != null) return cached;
+            }
+        }
+
+        synchronized (this) {
+            if (mBuiltInPeriodRefs == null)
+                mBuiltInPeriodRefs = new PeriodInfoManager(mContext, xu).getBuiltInReferences();
+        }
+
+        MessageDigest digest = DebatekeeperUtils.newSha256Digest();
+        DigestInputStream digestStream = new DigestInputStream(is, digest);
+
+        ValidatingContentHandler handler = new ValidatingContentHandler();
+        try {
+            Xml.parse(new NonClosingInputStream(digestStream), Xml.Encoding.UTF_8, handler);
+        } catch (StopValidationException e) {
+            // Diagnostic already recorded
+        } catch (SAXParseException e) {
+            handler.mDiagnostics.add(new Diagnostic(e.getLineNumber(), e.getColumnNumber(),
+                    R.string.debateLoadError_badXml, e.getLocalizedMessage()));
+        } catch (SAXException e) {
+            handler.mDiagnostics.add(new Diagnostic(-1, -1, R.string.debateLoadError_badXml,
+                    e.getLocalizedMessage()));
+        }
+
+        // If parsing stopped early, the rest of the file still needs to go into the hash
+        byte[] buffer = new byte[8192];
+        while (digestStream.read(buffer) != -1) {
+            // just reading it is enough
+        }
+        String hash = DebatekeeperUtils.toHexString(digest.digest());
+
+        Result result = new Result(hash, handler.mSchemaVersion, handler.mSchemaTooNew, handler.mDiagnostics);
+        synchronized (sResultCache) {
+            sResultCache.put(hash, result);
+        }
+        return result;
+    }
+
+    /**
+     * Validates a debate format file on a background thread, and calls the listener on the main
+     * thread when done.  This must be called from the main thread.
+     *
+     * @param file the debate format file
+     * @param knownHash the SHA-256 hash of the file as a hex string, if the caller already has it
+     *                  (for example, from {@link net.czlee.debatekeeper.FormatXmlFilesManager}),
+     *                  so that a cached result can be used; or <code>null</code> if not known
+     * @param listener a {@link ValidationListener}
+     */
+    public void validateInBackground(@NonNull File file, @Nullable String knownHash,
+                                     @NonNull ValidationListener listener) {
+        synchronized (FormatXmlValidator.class) {
+            if (sExecutor == null)
+                sExecutor = Executors.newSingleThreadExecutor();
+            if (sMainThreadHandler == null)
+                sMainThreadHandler = HandlerCompat.createAsync(Looper.getMainLooper());
+        }
+        sExecutor.execute(() -> {
+            Result result = null;
+            try (InputStream is = new FileInputStream(file)) {
+                result = validate(is, knownHash);
+                Log.i(TAG, String.format("%s: %d problems", file.getName(), result.diagnostics.size()));
+            } catch (IOException e) {
+                Log.e(TAG, "Couldn't read " + file.getName(), e);
+            }
+            final Result finalResult = result;
+            sMainThreadHandler.post(() -> listener.onValidated(finalResult));
+        });
+    }
+
+}
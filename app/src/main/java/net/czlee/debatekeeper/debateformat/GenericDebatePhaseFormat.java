@@ -43,15 +43,18 @@ abstract class GenericDebatePhaseFormat implements DebatePhaseFormat {
     public abstract long getLength();
 
     /**
-     * @return an {@link ArrayList} of {@link BellInfo} objects for this format
+     * @return a {@link List} of {@link BellInfo} objects for this format, which must not be
+     * modified
      */
-    protected abstract ArrayList<BellInfo> getBells();
+    protected abstract List<BellInfo> getBells();
+
+    // The description is blank, not null - it needs to remove any previous description
+    // that may have been there.
+    private static final PeriodInfo DEFAULT_FIRST_PERIOD_INFO = new PeriodInfo(null, null, "", null, false);
 
     @Override
     public PeriodInfo getFirstPeriodInfo() {
-        // The description is blank, not null - it needs to remove any previous description
-        // that may have been there.
-        return new PeriodInfo(null, null, "", null, false);
+        return DEFAULT_FIRST_PERIOD_INFO;
     }
 
     @Override
@@ -70,13 +73,11 @@ abstract class GenericDebatePhaseFormat implements DebatePhaseFormat {
 
     @Override
     public PeriodInfo getPeriodInfoForTime(long seconds) {
-        PeriodInfo workingPi = new PeriodInfo();
+        PeriodInfo workingPi = PeriodInfo.BLANK.updatedWith(getFirstPeriodInfo());
         Iterator<BellInfo> bellIterator = getBells().iterator();
         BellInfo thisBell;
         long latestBellTimeSoFar = 0;
 
-        workingPi.update(getFirstPeriodInfo());
-
         // We are looking for the *latest* bell that is *before* (or at) the given time,
         // that actually has a descriptor.
         while (bellIterator.hasNext()) {
@@ -88,10 +89,10 @@ abstract class GenericDebatePhaseFormat implements DebatePhaseFormat {
             if (thisBell.getBellTime() > seconds)
                 continue;
             if (thisBell.getBellTime() > latestBellTimeSoFar) {
-                workingPi.update(thisBell.getNextPeriodInfo()); // update and replace info
+                workingPi = workingPi.updatedWith(thisBell.getNextPeriodInfo()); // update and replace info
                 latestBellTimeSoFar = thisBell.getBellTime();   // take note of the new latest bell
             } else {
-                workingPi.addInfo(thisBell.getNextPeriodInfo()); // add, but don't replace
+                workingPi = workingPi.withInfoAddedFrom(thisBell.getNextPeriodInfo()); // add, but don't replace
             }
         }
 
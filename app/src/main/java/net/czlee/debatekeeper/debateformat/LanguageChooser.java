@@ -16,23 +16,56 @@
 
 package net.czlee.debatekeeper.debateformat;
 
+import android.util.Log;
+
+import androidx.annotation.NonNull;
 import androidx.core.os.LocaleListCompat;
 
 import com.ibm.icu.util.LocaleMatcher;
 import com.ibm.icu.util.LocalePriorityList;
 import com.ibm.icu.util.ULocale;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 
 /**
  * Helper class to choose the 'best' language from an unordered list.
  * Used for XML 'lang' attribute support.
+ *
+ * <p>There is a single shared instance, obtained using {@link #getInstance()}.  Because the same
+ * sets of candidate languages come up over and over again (in every element of a format file, and
+ * in every entry of the downloadable formats list), results are cached by candidate list.  The
+ * cache is discarded whenever the system locale list changes.</p>
  */
 public class LanguageChooser {
-    private final LocalePriorityList mLocaleList;
 
-    public LanguageChooser() {
-        mLocaleList = buildLocalePriorityList(LocaleListCompat.getAdjustedDefault());
+    private static final String TAG = "LanguageChooser";
+
+    /** Once the cache gets this big, something unusual is going on, so just start again. */
+    private static final int MAX_CACHE_SIZE = 256;
+
+    private static LanguageChooser sInstance = null;
+
+    private LocalePriorityList mLocaleList;
+    private String mLocaleTags;
+    private final HashMap<List<String>, String> mCache = new HashMap<>();
+    private int mCacheHits = 0;
+    private int mCacheMisses = 0;
+
+    private LanguageChooser() {
+        LocaleListCompat locales = LocaleListCompat.getAdjustedDefault();
+        mLocaleTags = locales.toLanguageTags();
+        mLocaleList = buildLocalePriorityList(locales);
+    }
+
+    /**
+     * @return the shared {@link LanguageChooser}
+     */
+    @NonNull
+    public static synchronized LanguageChooser getInstance() {
+        if (sInstance == null) sInstance = new LanguageChooser();
+        return sInstance;
     }
 
     /**
@@ -40,10 +73,56 @@ public class LanguageChooser {
      * @param languages Non-empty array with languages to choose from.
      * @return A language from @a languages.
      */
-    public String choose (List<String> languages) {
+    public synchronized String choose (List<String> languages) {
+        if (languages.isEmpty()) return null;
+
+        checkLocalesUnchanged();
+
+        String result = mCache.get(languages);
+        if (result != null) {
+            mCacheHits++;
+            return result;
+        }
+
+        mCacheMisses++;
+        result = chooseUncached(languages);
+        if (mCache.size() >= MAX_CACHE_SIZE) mCache.clear();
+        mCache.put(new ArrayList<>(languages), result);  // copy, in case the caller modifies it
+        return result;
+    }
+
+    /**
+     * @return the number of calls to {@link #choose(List)} that were answered from the cache
+     */
+    public synchronized int getCacheHits() {
+        return mCacheHits;
+    }
+
+    /**
+     * @return the number of calls to {@link #choose(List)} that required locale matching
+     */
+    public synchronized int getCacheMisses() {
+        return mCacheMisses;
+    }
+
+    /**
+     * Checks whether the system locale list has changed since it was last read, and if it has,
+     * rebuilds the priority list and discards all cached results.
+     */
+    private void checkLocalesUnchanged() {
+        LocaleListCompat locales = LocaleListCompat.getAdjustedDefault();
+        String tags = locales.toLanguageTags();
+        if (tags.equals(mLocaleTags)) return;
+
+        Log.i(TAG, "Locales changed from " + mLocaleTags + " to " + tags + ", clearing cache");
+        mLocaleTags = tags;
+        mLocaleList = buildLocalePriorityList(locales);
+        mCache.clear();
+    }
+
+    private String chooseUncached(List<String> languages) {
         // TODO: Should probably use Locale.lookupTag once we require minimum API level 26
 
-        if (languages.isEmpty()) return null;
         if (mLocaleList == null) return languages.get(0);
 
         // Parse languages into ULocales
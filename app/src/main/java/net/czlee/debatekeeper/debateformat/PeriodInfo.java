@@ -16,7 +16,13 @@
 
 package net.czlee.debatekeeper.debateformat;
 
-import android.os.Bundle;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Objects;
 
 /**
  * PeriodInfo is a passive data class that holds information about a period *between* bells.
@@ -26,27 +32,30 @@ import android.os.Bundle;
  *
  * This information is intended to be drawn to the GUI immediately after a bell.
  *
- * This class intentionally does not have setters.  Members should never be changed individually.
- * In most cases, its members should be set and final upon construction.  "Working copies" should
- * use the update() and restoreState() methods.
+ * This class is immutable, so that instances can be shared between bells, speeches and formats
+ * (see {@link DebateFormatInterner}).  "Working copies" are replaced, rather than changed, using
+ * the updatedWith(), withInfoAddedFrom(), withStateOf() and restoredFromState() methods.
  *
  * @author Chuan-Zheng Lee
  * @since  2012-05-12
  */
 public class PeriodInfo {
 
-    private String mReference         = null;
-    private String mName              = null;
+    /** A blank {@link PeriodInfo}, which changes nothing except to disallow POIs. */
+    public static final PeriodInfo BLANK = new PeriodInfo();
+
+    private final String mReference;
+    private final String mName;
 
     // The meaning of "null" in both these objects is "do not change from what it is currently".
-    private String  mDescription      = null;
-    private Integer mBackgroundColor  = null; // Use Integer so that we can also use null.
-    private boolean mPoisAllowed      = false; // There is no "null" option for this, it is always updated.
+    private final String  mDescription;
+    private final Integer mBackgroundColor; // Use Integer so that we can also use null.
+    private final boolean mPoisAllowed; // There is no "null" option for this, it is always updated.
 
-    // Bundle suffixes
-    private final String BUNDLE_SUFFIX_DESC = ".d";
-    private final String BUNDLE_SUFFIX_BGCOLOR = ".b";
-    private final String BUNDLE_SUFFIX_POIS_ALLOWED = ".p";
+    // Flags for writeState() and restoredFromState()
+    private static final int STATE_FLAG_DESC         = 0x1;
+    private static final int STATE_FLAG_BGCOLOR      = 0x2;
+    private static final int STATE_FLAG_POIS_ALLOWED = 0x4;
 
     //******************************************************************************************
     // Public methods
@@ -56,6 +65,7 @@ public class PeriodInfo {
      * Constructor for a blank {@link PeriodInfo}.
      */
     public PeriodInfo() {
+        this(null, null, null, null, false);
     }
 
     /**
@@ -115,60 +125,125 @@ public class PeriodInfo {
     }
 
     /**
-     * Updates this <code>PeriodInfo</code> using the information in another PeriodInfo.
+     * Returns this <code>PeriodInfo</code> updated using the information in another PeriodInfo.
      * It replaces members if the new information is not null, and leaves them as they are if
-     * the new information is null.
+     * the new information is null.  Neither <code>PeriodInfo</code> is changed.
      * @param pi The new PeriodInfo object from which to take the updated information.
+     * @return the updated <code>PeriodInfo</code>, which may be <code>this</code> if nothing changed
      */
-    public void update(PeriodInfo pi) {
-        if (pi.mDescription != null)     mDescription     = pi.mDescription;
-        if (pi.mBackgroundColor != null) mBackgroundColor = pi.mBackgroundColor;
+    @NonNull
+    public PeriodInfo updatedWith(@NonNull PeriodInfo pi) {
+        String description      = (pi.mDescription != null)     ? pi.mDescription     : mDescription;
+        Integer backgroundColor = (pi.mBackgroundColor != null) ? pi.mBackgroundColor : mBackgroundColor;
 
         // There is no "do not change" option for POIs allowed
-        mPoisAllowed = pi.mPoisAllowed;
+        return withValues(description, backgroundColor, pi.mPoisAllowed);
     }
 
     /**
-     * Adds information to this <code>PeriodInfo</code>, but does not replace existing information.
-     * It replaces members if the existing member is null, but always leaves non-null members as
-     * they are.
+     * Returns this <code>PeriodInfo</code> with information added from another PeriodInfo, but
+     * without replacing existing information.  It replaces members if the existing member is null,
+     * but always leaves non-null members as they are.  Neither <code>PeriodInfo</code> is changed.
      * @param pi The new PeriodInfo object from which to take the information.
+     * @return the resulting <code>PeriodInfo</code>, which may be <code>this</code> if nothing
+     * changed
      */
-    public void addInfo(PeriodInfo pi) {
-        if (this.mDescription == null)     mDescription     = pi.mDescription;
-        if (this.mBackgroundColor == null) mBackgroundColor = pi.mBackgroundColor;
+    @NonNull
+    public PeriodInfo withInfoAddedFrom(@NonNull PeriodInfo pi) {
+        String description      = (mDescription != null)     ? mDescription     : pi.mDescription;
+        Integer backgroundColor = (mBackgroundColor != null) ? mBackgroundColor : pi.mBackgroundColor;
 
         // There is no "do not change" option for POIs allowed
-        mPoisAllowed = pi.mPoisAllowed;
+        return withValues(description, backgroundColor, pi.mPoisAllowed);
     }
 
     /**
-     * Saves the state of this <code>PeriodInfo</code> to a {@link Bundle}.
-     * @param key A String to uniquely distinguish this <code>PeriodInfo</code> from any other
-     *        objects that might be stored in the same Bundle.
-     * @param bundle The Bundle to which to save this information.
+     * Returns this <code>PeriodInfo</code> with the description, background colour and whether
+     * POIs are allowed taken from another <code>PeriodInfo</code>.  Neither <code>PeriodInfo</code>
+     * is changed.
+     * @param pi The PeriodInfo object from which to take the information.
+     * @return the resulting <code>PeriodInfo</code>, which may be <code>this</code> if nothing
+     * changed
      */
-    public void saveState(String key, Bundle bundle) {
-        bundle.putString(key + BUNDLE_SUFFIX_DESC, mDescription);
-        if (mBackgroundColor != null)
-            bundle.putInt(key + BUNDLE_SUFFIX_BGCOLOR, mBackgroundColor);
-        bundle.putBoolean(key + BUNDLE_SUFFIX_POIS_ALLOWED, mPoisAllowed);
+    @NonNull
+    public PeriodInfo withStateOf(@NonNull PeriodInfo pi) {
+        return withValues(pi.mDescription, pi.mBackgroundColor, pi.mPoisAllowed);
     }
 
     /**
-     * Restores the state of this <code>PeriodInfo</code> from a {@link Bundle}.
-     * @param key A String to uniquely distinguish this <code>PeriodInfo</code> from any other
-     *        objects that might be stored in the same Bundle.
-     * @param bundle The Bundle from which to restore this information.
+     * @param pi another <code>PeriodInfo</code>
+     * @return <code>true</code> if the other <code>PeriodInfo</code> has the same description,
+     * background colour and whether POIs are allowed, i.e. the state that
+     * {@link #writeState(DataOutputStream)} writes
      */
-    public void restoreState(String key, Bundle bundle) {
-        String description = bundle.getString(key + BUNDLE_SUFFIX_DESC);
-        if (description != null) mDescription = description;
-        if (bundle.containsKey(key + BUNDLE_SUFFIX_BGCOLOR))
-            mBackgroundColor = bundle.getInt(key + BUNDLE_SUFFIX_BGCOLOR);
-        else
-            mBackgroundColor = null;
-        mPoisAllowed = bundle.getBoolean(key + BUNDLE_SUFFIX_POIS_ALLOWED, false);
+    public boolean hasSameStateAs(@NonNull PeriodInfo pi) {
+        return mPoisAllowed == pi.mPoisAllowed
+                && Objects.equals(mDescription, pi.mDescription)
+                && Objects.equals(mBackgroundColor, pi.mBackgroundColor);
+    }
+
+    /**
+     * Writes the state of this <code>PeriodInfo</code>, i.e. the description, background colour
+     * and whether POIs are allowed.
+     * @param out The stream to which to write this information.
+     * @throws IOException if the stream throws it
+     */
+    public void writeState(@NonNull DataOutputStream out) throws IOException {
+        int flags = 0;
+        if (mDescription != null) flags |= STATE_FLAG_DESC;
+        if (mBackgroundColor != null) flags |= STATE_FLAG_BGCOLOR;
+        if (mPoisAllowed) flags |= STATE_FLAG_POIS_ALLOWED;
+        out.writeByte(flags);
+        if (mDescription != null) out.writeUTF(mDescription);
+        if (mBackgroundColor != null) out.writeInt(mBackgroundColor);
+    }
+
+    /**
+     * Returns this <code>PeriodInfo</code> with its state restored from what was written by
+     * {@link #writeState(DataOutputStream)}.  This <code>PeriodInfo</code> is not changed.
+     * @param in The stream from which to read this information.
+     * @return the restored <code>PeriodInfo</code>
+     * @throws IOException if the stream throws it
+     */
+    @NonNull
+    public PeriodInfo restoredFromState(@NonNull DataInputStream in) throws IOException {
+        int flags = in.readUnsignedByte();
+        String description = ((flags & STATE_FLAG_DESC) != 0) ? in.readUTF() : mDescription;
+        Integer backgroundColor = ((flags & STATE_FLAG_BGCOLOR) != 0) ? in.readInt() : null;
+        boolean poisAllowed = (flags & STATE_FLAG_POIS_ALLOWED) != 0;
+        return withValues(description, backgroundColor, poisAllowed);
+    }
+
+    @Override
+    public boolean equals(@Nullable Object o) {
+        if (this == o) return true;
+        if (!(o instanceof PeriodInfo)) return false;
+        PeriodInfo pi = (PeriodInfo) o;
+        return mPoisAllowed == pi.mPoisAllowed
+                && Objects.equals(mReference, pi.mReference)
+                && Objects.equals(mName, pi.mName)
+                && Objects.equals(mDescription, pi.mDescription)
+                && Objects.equals(mBackgroundColor, pi.mBackgroundColor);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(mReference, mName, mDescription, mBackgroundColor, mPoisAllowed);
+    }
+
+    //******************************************************************************************
+    // Private methods
+    //******************************************************************************************
+
+    /**
+     * @return a <code>PeriodInfo</code> with the same reference and name as this one, and the given
+     * values; or <code>this</code> if the given values are the same as this one's
+     */
+    private PeriodInfo withValues(String description, Integer backgroundColor, boolean poisAllowed) {
+        if (Objects.equals(description, mDescription) && Objects.equals(backgroundColor, mBackgroundColor)
+                && poisAllowed == mPoisAllowed)
+            return this;
+        return new PeriodInfo(mReference, mName, description, backgroundColor, poisAllowed);
     }
 
 }
\ No newline at end of file
@@ -21,6 +21,8 @@ import android.content.res.AssetManager;
 import android.content.res.Resources;
 import android.util.Log;
 
+import androidx.annotation.NonNull;
+
 import net.czlee.debatekeeper.R;
 import net.czlee.debatekeeper.debateformat.XmlUtilities.XmlInvalidValueException;
 
@@ -32,8 +34,11 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.math.BigInteger;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
@@ -127,6 +132,14 @@ public class PeriodInfoManager {
         return result; // just return, as if this is also null we will want to return null anyway
     }
 
+    /**
+     * @return the references of all built-in period types
+     */
+    @NonNull
+    public Set<String> getBuiltInReferences() {
+        return Collections.unmodifiableSet(new HashSet<>(mBuiltInPeriodInfos.keySet()));
+    }
+
     /**
      * Retrieves the list of parsing errors in processing the last element with <code>addPeriodInfoFromElement()</code>
      * @return an {@link ArrayList} of strings, each one being a parsing error message encountered
@@ -207,6 +220,8 @@ public class PeriodInfoManager {
                 Log.e(TAG, "A global period didn't have a reference");
         }
 
+        xu.clearChildIndex();
+
     }
 
     /**
@@ -16,6 +16,7 @@
 package net.czlee.debatekeeper.debateformat;
 
 import java.util.ArrayList;
+import java.util.List;
 
 import net.czlee.debatekeeper.PrepTimeBellsManager;
 
@@ -68,7 +69,7 @@ public class PrepTimeSimpleFormat extends GenericDebatePhaseFormat implements Pr
     //******************************************************************************************
 
     @Override
-    protected ArrayList<BellInfo> getBells() {
+    protected List<BellInfo> getBells() {
 
         if (mBellsManager == null) {
             ArrayList<BellInfo> bells = new ArrayList<>(1);
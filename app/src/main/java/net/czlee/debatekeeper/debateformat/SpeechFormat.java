@@ -53,7 +53,8 @@ public class SpeechFormat extends ControlledDebatePhaseFormat {
      * @return a reference string, not strictly part of the speech format but users
      * may find it useful to know what the reference was that was used to create this
      * <code>SpeechFormat</code>.  This may return <code>null</code> if the <code>SpeechFormat</code>
-     * was created from a version 1 schema.
+     * was created from a version 1 schema.  If several identical speech types were shared as one
+     * <code>SpeechFormat</code>, this is the reference of the first of them.
      */
     public String getReference() {
         return mReference;
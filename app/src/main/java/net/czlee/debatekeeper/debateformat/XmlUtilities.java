@@ -30,8 +30,10 @@ import org.w3c.dom.NodeList;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Provides convenience functions for dealing with XML files.
@@ -48,12 +50,68 @@ public class XmlUtilities {
     @NonNull
     private final Resources mResources;
     @NonNull
-    private final LanguageChooser mLangChooser = new LanguageChooser();
+    private final LanguageChooser mLangChooser = LanguageChooser.getInstance();
     @Nullable
     private List<String> mDeclaredLanguages = null;
 
+    /**
+     * Children of elements already looked up, grouped by tag name.  This keeps the document alive,
+     * so whoever parses a document with this object should call {@link #clearChildIndex()} when
+     * they're finished with it.
+     */
+    private final HashMap<Element, HashMap<String, List<Element>>> mChildIndices = new HashMap<>();
+
+    /**
+     * The element names, attribute names and attribute values of the schema 2 vocabulary.  These
+     * are all non-translatable, so they only need to be retrieved from resources once per process.
+     */
+    private static final int[] SCHEMA_2_VOCABULARY = {
+            R.string.xml2attrName_root_schemaVersion,
+            R.string.xml2attrName_common_ref,
+            R.string.xml2attrValue_common_true,
+            R.string.xml2attrValue_common_false,
+            R.string.xml2attrValue_common_stay,
+            R.string.xml2elemName_name,
+            R.string.xml2elemName_shortName,
+            R.string.xml2elemName_version,
+            R.string.xml2elemName_info,
+            R.string.xml2elemName_info_region,
+            R.string.xml2elemName_info_level,
+            R.string.xml2elemName_info_usedAt,
+            R.string.xml2elemName_info_desc,
+            R.string.xml2elemName_languages,
+            R.string.xml2elemName_languages_language,
+            R.string.xml2elemName_periodTypes,
+            R.string.xml2elemName_periodType,
+            R.string.xml2attrName_periodType_poisAllowed,
+            R.string.xml2elemName_periodType_name,
+            R.string.xml2elemName_periodType_display,
+            R.string.xml2elemName_periodType_defaultBackgroundColor,
+            R.string.xml2elemName_prepTimeSimpleFormat,
+            R.string.xml2attrName_controlledTimeLength,
+            R.string.xml2attrName_controlledTimeFirstPeriod,
+            R.string.xml2elemName_prepTimeControlledFormat,
+            R.string.xml2elemName_speechFormats,
+            R.string.xml2elemName_speechFormat,
+            R.string.xml2elemName_bell,
+            R.string.xml2attrName_bell_time,
+            R.string.xml2attrValue_bell_time_finish,
+            R.string.xml2attrName_bell_number,
+            R.string.xml2attrName_bell_nextPeriod,
+            R.string.xml2attrName_bell_pauseOnBell,
+            R.string.xml2elemName_speechesList,
+            R.string.xml2elemName_speech,
+            R.string.xml2elemName_speech_name,
+            R.string.xml2attrName_speech_format,
+            R.string.xml2attrName_language,
+    };
+
+    @Nullable
+    private static Map<Integer, String> sNameTable = null;
+
     XmlUtilities(@NonNull Resources resources) {
         mResources = resources;
+        buildNameTable(resources);
     }
 
     //******************************************************************************************
@@ -328,11 +386,90 @@ public class XmlUtilities {
         mDeclaredLanguages = declaredLanguages;
     }
 
+    /**
+     * Chooses the most appropriate language from those available for some resource, taking into
+     * account the declared languages (if set) and the user's locale preferences.
+     *
+     * @param languages a list of BCP 47 language codes supported by some given resource, in the
+     *                  order in which they appear in the file; this list is not modified
+     * @return one of the given languages, or <code>null</code> if the list is empty
+     */
+    @Nullable
+    String chooseLanguage(List<String> languages) {
+        if (languages.isEmpty()) return null;
+        if (languages.size() == 1) return languages.get(0);
+        List<String> languagesOrdered = getLanguageOrder(new ArrayList<>(languages));
+        return mLangChooser.choose(languagesOrdered);
+    }
+
+    /**
+     * Forgets the child elements indexed so far.  This should be called when the document being
+     * parsed is no longer needed, since the index refers to its elements.
+     */
+    void clearChildIndex() {
+        mChildIndices.clear();
+    }
+
+    /**
+     * Retrieves a string from resources, using the precomputed table if it is part of the schema 2
+     * vocabulary.  Callers comparing attribute values against keywords like "finish" or "#stay"
+     * should use this rather than fetching the string from resources every time.
+     *
+     * @param resId a resource ID referring to a string
+     * @return the string
+     */
+    String getString(int resId) {
+        String name = (sNameTable != null) ? sNameTable.get(resId) : null;
+        if (name != null) return name;
+        return mResources.getString(resId);
+    }
+
     //******************************************************************************************
     // Private methods
     //******************************************************************************************
-    private String getString(int resId, Object... formatArgs) {
-        return mResources.getString(resId, formatArgs);
+
+    /**
+     * Resolves every string in {@link #SCHEMA_2_VOCABULARY}, if this hasn't already been done in
+     * this process.  The strings are interned, since they'll be compared against tag and attribute
+     * names many times over.
+     *
+     * @param resources the {@link Resources} from which to retrieve the strings
+     */
+    private static synchronized void buildNameTable(Resources resources) {
+        if (sNameTable != null) return;
+        HashMap<Integer, String> table = new HashMap<>(SCHEMA_2_VOCABULARY.length * 2);
+        for (int resId : SCHEMA_2_VOCABULARY)
+            table.put(resId, resources.getString(resId).intern());
+        sNameTable = Collections.unmodifiableMap(table);
+    }
+
+    /**
+     * Groups the immediate child elements of the given element by tag name, in a single pass over
+     * its children.  The result is remembered, so subsequent lookups on the same element are just
+     * map lookups.  The returned lists must not be modified.
+     *
+     * @param element an {@link org.w3c.dom.Element} whose children are to be indexed
+     * @return a map from tag names to lists of child elements with that name, in document order
+     */
+    private HashMap<String, List<Element>> getChildIndex(@NonNull Element element) {
+        HashMap<String, List<Element>> index = mChildIndices.get(element);
+        if (index != null) return index;
+
+        index = new HashMap<>();
+        NodeList children = element.getChildNodes();
+        for (int i = 0; i < children.getLength(); i++) {
+            Node child = children.item(i);
+            if (!(child instanceof Element)) continue;
+            String name = child.getNodeName();
+            List<Element> list = index.get(name);
+            if (list == null) {
+                list = new ArrayList<>(1);
+                index.put(name, list);
+            }
+            list.add((Element) child);
+        }
+        mChildIndices.put(element, index);
+        return index;
     }
 
     /**
@@ -341,20 +478,17 @@ public class XmlUtilities {
      * the immediate children with the matching tag name, and is intended to be used instead of
      * {@link org.w3c.dom.Element#getElementsByTagName(String)}.
      *
+     * <p>
+     * The list returned is unmodifiable.
+     *
      * @param element an {@link org.w3c.dom.Element} to search
      * @param name    the child element name to look for
      */
     private List<Element> getChildElementsByTagName(@Nullable Element element, String name) {
-        ArrayList<Element> result = new ArrayList<>();
-        if (element == null) return result;  // empty list
-        NodeList children = element.getChildNodes();
-        for (int i = 0; i < children.getLength(); i++) {
-            Node child = children.item(i);
-            if (!(child instanceof Element)) continue;
-            if (child.getNodeName().equals(name))
-                result.add((Element) child);
-        }
-        return result;
+        if (element == null) return Collections.emptyList();
+        List<Element> result = getChildIndex(element).get(name);
+        if (result == null) return Collections.emptyList();
+        return Collections.unmodifiableList(result);
     }
 
     /**
@@ -0,0 +1,394 @@
+/*
+ * Copyright (C) 2026 Chuan-Zheng Lee
+ *
+ * This file is part of the Debatekeeper app, which is licensed under the GNU
+ * General Public Licence version 3 (GPLv3).  You can redistribute and/or modify
+ * it under the terms of the GPLv3, and you must not use this file except in
+ * compliance with the GPLv3.
+ *
+ * This app is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE.  See the GNU General Public Licence for more details.
+ *
+ * You should have received a copy of the GNU General Public Licence along with
+ * this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.czlee.debatekeeper.debatemanager;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+import android.os.CancellationSignal;
+import android.os.OperationCanceledException;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * DebateHistory keeps a record of every debate timed, so that users can look back on how long
+ * speakers actually spoke, and how far over time they went, e.g. across a whole tournament.
+ *
+ * <p>Each debate is recorded when its {@link DebateManager} is released, with a row for each
+ * phase that was timed: its final time, how far over time it went, how many bells rang and how
+ * many POIs were offered.  Recording the same debate again replaces the old record, so a debate
+ * that's restored and then released again isn't counted twice.</p>
+ *
+ * <p>The history is kept in an SQLite database.  Phases are indexed by format, phase type and
+ * speech, with the times included in the index, so that summaries for a format can be computed
+ * from the index alone.</p>
+ *
+ * <p>There is one DebateHistory per process, obtained using {@link #getInstance(Context)}.
+ * Recording happens on a background thread.  Queries are synchronous, and must not be run on the
+ * main thread.</p>
+ *
+ * @author Chuan-Zheng Lee
+ * @since 2026-10-19
+ */
+public class DebateHistory {
+
+    private static final String TAG = "DebateHistory";
+
+    private static final String DATABASE_NAME = "history.db";
+    private static final int DATABASE_VERSION = 1;
+
+    static final String TABLE_DEBATES = "debates";
+    static final String TABLE_PHASES = "phases";
+
+    static final String COLUMN_ID          = "_id";
+    static final String COLUMN_HISTORY_ID  = "history_id";
+    static final String COLUMN_DEBATE_ID   = "debate_id";
+    static final String COLUMN_FORMAT_NAME = "format_name";
+    static final String COLUMN_STARTED_AT  = "started_at";
+    static final String COLUMN_RECORDED_AT = "recorded_at";
+    static final String COLUMN_PHASE_TYPE  = "phase_type";
+    static final String COLUMN_SPEECH      = "speech";
+    static final String COLUMN_NAME        = "name";
+    static final String COLUMN_LENGTH      = "length";
+    static final String COLUMN_TIME        = "time";
+    static final String COLUMN_OVERTIME    = "overtime";
+    static final String COLUMN_BELLS       = "bells";
+    static final String COLUMN_POIS        = "pois";
+
+    private static DebateHistory sInstance;
+
+    private final DatabaseHelper mHelper;
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor();
+
+    //******************************************************************************************
+    // Public classes
+    //******************************************************************************************
+
+    /**
+     * A summary of one speech of a format across every debate in the history.
+     */
+    public static class SpeechSummary {
+        public final int speechIndex;
+        @Nullable public final String name;
+        public final int count;
+        public final double averageTime;
+        public final double averageOvertime;
+        public final long maxOvertime;
+        public final int overtimeCount;
+
+        private SpeechSummary(int speechIndex, @Nullable String name, int count, double averageTime,
+                              double averageOvertime, long maxOvertime, int overtimeCount) {
+            this.speechIndex = speechIndex;
+            this.name = name;
+            this.count = count;
+            this.averageTime = averageTime;
+            this.averageOvertime = averageOvertime;
+            this.maxOvertime = maxOvertime;
+            this.overtimeCount = overtimeCount;
+        }
+    }
+
+    /**
+     * A phase of a debate, to be recorded.
+     */
+    static class PhaseRecord {
+        final DebateManager.DebatePhaseType type;
+        final int speechIndex;
+        final String name;
+        final long length;
+        final long time;
+        final int bells;
+        final int pois;
+
+        PhaseRecord(DebateManager.DebatePhaseType type, int speechIndex, String name, long length,
+                    long time, int bells, int pois) {
+            this.type = type;
+            this.speechIndex = speechIndex;
+            this.name = name;
+            this.length = length;
+            this.time = time;
+            this.bells = bells;
+            this.pois = pois;
+        }
+    }
+
+    //******************************************************************************************
+    // Private classes
+    //******************************************************************************************
+
+    private static class DatabaseHelper extends SQLiteOpenHelper {
+
+        DatabaseHelper(Context context) {
+            super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        }
+
+        @Override
+        public void onConfigure(SQLiteDatabase db) {
+            db.setForeignKeyConstraintsEnabled(true);
+        }
+
+        @Override
+        public void onCreate(SQLiteDatabase db) {
+            db.execSQL("CREATE TABLE " + TABLE_DEBATES + " ("
+                    + COLUMN_ID + " INTEGER PRIMARY KEY, "
+                    + COLUMN_HISTORY_ID + " INTEGER NOT NULL UNIQUE, "
+                    + COLUMN_FORMAT_NAME + " TEXT NOT NULL, "
+                    + COLUMN_STARTED_AT + " INTEGER NOT NULL, "
+                    + COLUMN_RECORDED_AT + " INTEGER NOT NULL)");
+            db.execSQL("CREATE TABLE " + TABLE_PHASES + " ("
+                    + COLUMN_ID + " INTEGER PRIMARY KEY, "
+                    + COLUMN_DEBATE_ID + " INTEGER NOT NULL REFERENCES " + TABLE_DEBATES
+                    + "(" + COLUMN_ID + ") ON DELETE CASCADE, "
+                    + COLUMN_FORMAT_NAME + " TEXT NOT NULL, "
+                    + COLUMN_PHASE_TYPE + " TEXT NOT NULL, "
+                    + COLUMN_SPEECH + " INTEGER NOT NULL, "
+                    + COLUMN_NAME + " TEXT, "
+                    + COLUMN_LENGTH + " INTEGER NOT NULL, "
+                    + COLUMN_TIME + " INTEGER NOT NULL, "
+                    + COLUMN_OVERTIME + " INTEGER NOT NULL, "
+                    + COLUMN_BELLS + " INTEGER NOT NULL, "
+                    + COLUMN_POIS + " INTEGER NOT NULL)");
+
+            // Covers the summary queries, so they don't need to touch the table at all
+            db.execSQL("CREATE INDEX phases_by_speech ON " + TABLE_PHASES + " ("
+                    + COLUMN_FORMAT_NAME + ", " + COLUMN_PHASE_TYPE + ", " + COLUMN_SPEECH + ", "
+                    + COLUMN_TIME + ", " + COLUMN_OVERTIME + ")");
+            db.execSQL("CREATE INDEX phases_by_debate ON " + TABLE_PHASES + " (" + COLUMN_DEBATE_ID + ")");
+
+            // Lets exports go through debates in order without sorting them
+            db.execSQL("CREATE INDEX debates_by_start ON " + TABLE_DEBATES + " ("
+                    + COLUMN_STARTED_AT + ")");
+        }
+
+        @Override
+        public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+            // There's only been one version so far
+        }
+    }
+
+    //******************************************************************************************
+    // Constructor
+    //******************************************************************************************
+
+    private DebateHistory(Context context) {
+        mHelper = new DatabaseHelper(context);
+    }
+
+    /**
+     * @param context a {@link Context}; only its application context is kept
+     * @return the process-wide {@link DebateHistory}
+     */
+    @NonNull
+    public static synchronized DebateHistory getInstance(@NonNull Context context) {
+        if (sInstance == null)
+            sInstance = new DebateHistory(context.getApplicationContext());
+        return sInstance;
+    }
+
+    /**
+     * Closes and forgets the process-wide instance, so that the next call to
+     * {@link #getInstance(Context)} creates a new one.  Tests need this, since each test has its
+     * own database directory.
+     */
+    @VisibleForTesting
+    static synchronized void resetInstance() {
+        if (sInstance != null) {
+            sInstance.mExecutor.shutdown();
+            sInstance.mHelper.close();
+        }
+        sInstance = null;
+    }
+
+    //******************************************************************************************
+    // Public methods
+    //******************************************************************************************
+
+    /**
+     * Summarises each speech of a format across every debate in the history.  Must not be called
+     * on the main thread.
+     * @param formatName the name of the debate format
+     * @return a {@link SpeechSummary} for each speech that has been timed, in speech order
+     */
+    @NonNull
+    public List<SpeechSummary> getSpeechSummaries(@NonNull String formatName) {
+        long startTime = SystemClock.elapsedRealtime();
+        ArrayList<SpeechSummary> summaries = new ArrayList<>();
+
+        SQLiteDatabase db;
+        try {
+            db = mHelper.getReadableDatabase();
+        } catch (SQLiteException e) {
+            Log.e(TAG, "Couldn't open history", e);
+            return Collections.emptyList();
+        }
+
+        // The name is looked up separately, so that the aggregates can use only the index
+        String[] args = {formatName, DebateManager.DebatePhaseType.SPEECH.toString()};
+        try (Cursor cursor = db.rawQuery("SELECT " + COLUMN_SPEECH + ", COUNT(*), AVG(" + COLUMN_TIME
+                + "), AVG(" + COLUMN_OVERTIME + "), MAX(" + COLUMN_OVERTIME + "), SUM(" + COLUMN_OVERTIME
+                + " > 0) FROM " + TABLE_PHASES + " WHERE " + COLUMN_FORMAT_NAME + " = ? AND "
+                + COLUMN_PHASE_TYPE + " = ? GROUP BY " + COLUMN_SPEECH + " ORDER BY " + COLUMN_SPEECH, args)) {
+            while (cursor.moveToNext()) {
+                int speechIndex = cursor.getInt(0);
+                summaries.add(new SpeechSummary(speechIndex, getSpeechName(db, formatName, speechIndex),
+                        cursor.getInt(1), cursor.getDouble(2), cursor.getDouble(3), cursor.getLong(4),
+                        cursor.getInt(5)));
+            }
+        } catch (SQLiteException e) {
+            Log.e(TAG, "Couldn't query history", e);
+            return Collections.emptyList();
+        }
+
+        Log.d(TAG, String.format(Locale.ROOT, "getSpeechSummaries: %d speeches in %d ms",
+                summaries.size(), SystemClock.elapsedRealtime() - startTime));
+        return summaries;
+    }
+
+    //******************************************************************************************
+    // Package-private methods
+    //******************************************************************************************
+
+    /**
+     * Records a debate in the background, replacing any earlier record of the same debate.
+     * @param historyId  a number that identifies this debate, and stays the same if the debate is
+     *                   saved and restored
+     * @param formatName the name of the debate format
+     * @param startedAt  when the debate started, in milliseconds since the epoch
+     * @param phases     the phases to record
+     */
+    void record(long historyId, @NonNull String formatName, long startedAt, @NonNull List<PhaseRecord> phases) {
+        final long recordedAt = System.currentTimeMillis();
+        mExecutor.execute(() -> {
+            long startTime = SystemClock.elapsedRealtime();
+            try {
+                writeDebate(mHelper.getWritableDatabase(), historyId, formatName, startedAt, recordedAt, phases);
+            } catch (SQLiteException e) {
+                Log.e(TAG, "Couldn't record debate", e);
+                return;
+            }
+            Log.d(TAG, String.format(Locale.ROOT, "Recorded %d phases in %d ms", phases.size(),
+                    SystemClock.elapsedRealtime() - startTime));
+        });
+    }
+
+    /**
+     * Waits for every debate already passed to {@link #record} to be written.  Tests need this,
+     * since debates are recorded in the background.
+     */
+    @VisibleForTesting
+    void waitForRecords() throws InterruptedException, ExecutionException {
+        mExecutor.submit(() -> {}).get();
+    }
+
+    /**
+     * Queries every phase in the history, in the order the debates started, for exporting.  The
+     * columns are, in order: the debate's ID, when it started, the format name, then the phase
+     * type, speech, name, length, time, overtime, bells and POIs.  Must not be called on the main
+     * thread.
+     * @param signal a {@link CancellationSignal} to cancel the query with
+     * @return a {@link Cursor}, which the caller must close
+     * @throws SQLiteException if the history couldn't be read
+     * @throws OperationCanceledException if the query was cancelled
+     */
+    @NonNull
+    Cursor queryAllPhases(@NonNull CancellationSignal signal) {
+        return mHelper.getReadableDatabase().rawQuery("SELECT d." + COLUMN_ID + ", d." + COLUMN_STARTED_AT
+                + ", d." + COLUMN_FORMAT_NAME + ", p." + COLUMN_PHASE_TYPE + ", p." + COLUMN_SPEECH
+                + ", p." + COLUMN_NAME + ", p." + COLUMN_LENGTH + ", p." + COLUMN_TIME + ", p." + COLUMN_OVERTIME
+                + ", p." + COLUMN_BELLS + ", p." + COLUMN_POIS + " FROM " + TABLE_DEBATES + " d JOIN "
+                + TABLE_PHASES + " p ON p." + COLUMN_DEBATE_ID + " = d." + COLUMN_ID + " ORDER BY d."
+                + COLUMN_STARTED_AT + ", d." + COLUMN_ID + ", p." + COLUMN_ID, null, signal);
+    }
+
+    //******************************************************************************************
+    // Private methods
+    //******************************************************************************************
+
+    private static void writeDebate(SQLiteDatabase db, long historyId, String formatName, long startedAt,
+                                    long recordedAt, List<PhaseRecord> phases) {
+        db.beginTransaction();
+        try {
+            // Replacing the debate row deletes its phases too
+            db.delete(TABLE_DEBATES, COLUMN_HISTORY_ID + " = ?", new String[]{Long.toString(historyId)});
+
+            ContentValues values = new ContentValues();
+            values.put(COLUMN_HISTORY_ID, historyId);
+            values.put(COLUMN_FORMAT_NAME, formatName);
+            values.put(COLUMN_STARTED_AT, startedAt);
+            values.put(COLUMN_RECORDED_AT, recordedAt);
+            long debateId = db.insertOrThrow(TABLE_DEBATES, null, values);
+
+            SQLiteStatement insert = db.compileStatement("INSERT INTO " + TABLE_PHASES + " ("
+                    + COLUMN_DEBATE_ID + ", " + COLUMN_FORMAT_NAME + ", " + COLUMN_PHASE_TYPE + ", "
+                    + COLUMN_SPEECH + ", " + COLUMN_NAME + ", " + COLUMN_LENGTH + ", " + COLUMN_TIME + ", "
+                    + COLUMN_OVERTIME + ", " + COLUMN_BELLS + ", " + COLUMN_POIS
+                    + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)");
+            try {
+                for (PhaseRecord phase : phases) {
+                    insert.clearBindings();
+                    insert.bindLong(1, debateId);
+                    insert.bindString(2, formatName);
+                    insert.bindString(3, phase.type.toString());
+                    insert.bindLong(4, phase.speechIndex);
+                    if (phase.name != null) insert.bindString(5, phase.name);
+                    insert.bindLong(6, phase.length);
+                    insert.bindLong(7, phase.time);
+                    insert.bindLong(8, Math.max(0, phase.time - phase.length));
+                    insert.bindLong(9, phase.bells);
+                    insert.bindLong(10, phase.pois);
+                    insert.executeInsert();
+                }
+            } finally {
+                insert.close();
+            }
+
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * @return the name the speech had in the most recent debate with it, or <code>null</code>
+     */
+    @Nullable
+    private static String getSpeechName(SQLiteDatabase db, String formatName, int speechIndex) {
+        String[] args = {formatName, DebateManager.DebatePhaseType.SPEECH.toString(), Integer.toString(speechIndex)};
+        try (Cursor cursor = db.query(TABLE_PHASES, new String[]{COLUMN_NAME},
+                COLUMN_FORMAT_NAME + " = ? AND " + COLUMN_PHASE_TYPE + " = ? AND " + COLUMN_SPEECH + " = ?",
+                args, null, null, COLUMN_ID + " DESC", "1")) {
+            return cursor.moveToFirst() ? cursor.getString(0) : null;
+        }
+    }
+
+}
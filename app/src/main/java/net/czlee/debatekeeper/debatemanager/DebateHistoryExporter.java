@@ -0,0 +1,206 @@
+/*
+ * Copyright (C) 2026 Chuan-Zheng Lee
+ *
+ * This file is part of the Debatekeeper app, which is licensed under the GNU
+ * General Public Licence version 3 (GPLv3).  You can redistribute and/or modify
+ * it under the terms of the GPLv3, and you must not use this file except in
+ * compliance with the GPLv3.
+ *
+ * This app is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE.  See the GNU General Public Licence for more details.
+ *
+ * You should have received a copy of the GNU General Public Licence along with
+ * this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.czlee.debatekeeper.debatemanager;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteException;
+import android.os.CancellationSignal;
+import android.os.OperationCanceledException;
+import android.os.SystemClock;
+import android.util.JsonWriter;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * DebateHistoryExporter writes the {@link DebateHistory} out as CSV or JSON Lines, with a row for
+ * each phase of each debate, so that it can be opened in a spreadsheet.
+ *
+ * <p>Rows are read from the database and written out one at a time, so exporting takes the same
+ * amount of memory however long the history is.  An export can be cancelled using a
+ * {@link CancellationSignal}.</p>
+ *
+ * @author Chuan-Zheng Lee
+ * @since 2026-10-19
+ */
+public class DebateHistoryExporter {
+
+    private static final String TAG = "DebateHistoryExporter";
+
+    // The columns, in the order they're written, and the order DebateHistory.queryAllPhases()
+    // returns them in
+    private static final String[] COLUMNS = {"debate", "started_at", "format", "phase_type",
+            "speech", "phase", "length", "time", "overtime", "bells", "pois"};
+    private static final int COLUMN_DEBATE     = 0;
+    private static final int COLUMN_STARTED_AT = 1;
+    private static final int COLUMN_FORMAT     = 2;
+    private static final int COLUMN_PHASE_TYPE = 3;
+    private static final int COLUMN_SPEECH     = 4;
+    private static final int COLUMN_PHASE      = 5;
+    private static final int COLUMN_LENGTH     = 6;
+    private static final int COLUMN_TIME       = 7;
+    private static final int COLUMN_OVERTIME   = 8;
+    private static final int COLUMN_BELLS      = 9;
+    private static final int COLUMN_POIS       = 10;
+
+    private final DebateHistory mHistory;
+
+    //******************************************************************************************
+    // Public classes
+    //******************************************************************************************
+
+    public enum Format {
+        CSV ("text/csv", ".csv"),
+        JSON_LINES ("application/x-ndjson", ".jsonl");
+
+        public final String mimeType;
+        public final String extension;
+
+        Format(String mimeType, String extension) {
+            this.mimeType = mimeType;
+            this.extension = extension;
+        }
+    }
+
+    //******************************************************************************************
+    // Constructor
+    //******************************************************************************************
+
+    public DebateHistoryExporter(@NonNull Context context) {
+        mHistory = DebateHistory.getInstance(context);
+    }
+
+    //******************************************************************************************
+    // Public methods
+    //******************************************************************************************
+
+    /**
+     * Writes the whole history.  Times are in seconds, and when each debate started is in UTC.
+     * Speeches are numbered from 1; prep time has no speech number.  Must not be called on the
+     * main thread.
+     *
+     * @param format the {@link Format} to write
+     * @param writer where to write it; this isn't closed
+     * @param signal a {@link CancellationSignal} to cancel the export with
+     * @return the number of rows written, not counting the CSV header
+     * @throws IOException if the history couldn't be read, or the writer throws it
+     * @throws OperationCanceledException if the export was cancelled
+     */
+    public int export(@NonNull Format format, @NonNull Writer writer, @NonNull CancellationSignal signal)
+            throws IOException {
+        long startTime = SystemClock.elapsedRealtime();
+
+        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'", Locale.ROOT);
+        dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+
+        JsonWriter jsonWriter = null;
+        if (format == Format.JSON_LINES) {
+            jsonWriter = new JsonWriter(writer);
+            jsonWriter.setLenient(true);  // allows more than one top-level value
+        } else {
+            writeCsvRow(writer, COLUMNS);
+        }
+
+        int count = 0;
+        String[] values = new String[COLUMNS.length];
+
+        try (Cursor cursor = mHistory.queryAllPhases(signal)) {
+            while (cursor.moveToNext()) {
+                signal.throwIfCanceled();
+
+                values[COLUMN_DEBATE] = cursor.getString(COLUMN_DEBATE);
+                values[COLUMN_STARTED_AT] = dateFormat.format(new Date(cursor.getLong(COLUMN_STARTED_AT)));
+                values[COLUMN_FORMAT] = cursor.getString(COLUMN_FORMAT);
+                values[COLUMN_PHASE_TYPE] = cursor.getString(COLUMN_PHASE_TYPE);
+                values[COLUMN_SPEECH] = DebateManager.DebatePhaseType.SPEECH.toString().equals(values[COLUMN_PHASE_TYPE])
+                        ? Integer.toString(cursor.getInt(COLUMN_SPEECH) + 1) : null;
+                values[COLUMN_PHASE] = cursor.getString(COLUMN_PHASE);
+                for (int i = COLUMN_LENGTH; i <= COLUMN_POIS; i++)
+                    values[i] = cursor.getString(i);
+
+                if (jsonWriter != null) writeJsonLine(jsonWriter, writer, values);
+                else writeCsvRow(writer, values);
+                count++;
+            }
+        } catch (SQLiteException e) {
+            throw new IOException("Couldn't read history", e);
+        }
+
+        writer.flush();
+        Log.d(TAG, String.format(Locale.ROOT, "Exported %d rows as %s in %d ms", count, format,
+                SystemClock.elapsedRealtime() - startTime));
+        return count;
+    }
+
+    //******************************************************************************************
+    // Private methods
+    //******************************************************************************************
+
+    private static void writeCsvRow(Writer writer, String[] values) throws IOException {
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) writer.write(',');
+            writeCsvField(writer, values[i]);
+        }
+        writer.write("\r\n");
+    }
+
+    /**
+     * Writes a CSV field, quoting it if it has anything that needs quoting (RFC 4180).
+     */
+    private static void writeCsvField(Writer writer, @Nullable String value) throws IOException {
+        if (value == null) return;
+        boolean needsQuotes = false;
+        for (int i = 0; i < value.length() && !needsQuotes; i++) {
+            char c = value.charAt(i);
+            needsQuotes = c == ',' || c == '"' || c == '\r' || c == '\n';
+        }
+        if (!needsQuotes) {
+            writer.write(value);
+            return;
+        }
+        writer.write('"');
+        writer.write(value.replace("\"", "\"\""));
+        writer.write('"');
+    }
+
+    private static void writeJsonLine(JsonWriter jsonWriter, Writer writer, String[] values) throws IOException {
+        jsonWriter.beginObject();
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] == null) continue;
+            jsonWriter.name(COLUMNS[i]);
+            if (i == COLUMN_DEBATE || i == COLUMN_SPEECH || i >= COLUMN_LENGTH)
+                jsonWriter.value(Long.parseLong(values[i]));
+            else
+                jsonWriter.value(values[i]);
+        }
+        jsonWriter.endObject();
+
+        // JsonWriter doesn't separate top-level values, so end the line ourselves.  (JsonWriter
+        // writes straight through to the writer, so this comes after the object.)
+        writer.write('\n');
+    }
+
+}
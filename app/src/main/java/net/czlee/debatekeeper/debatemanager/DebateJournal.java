@@ -0,0 +1,479 @@
+/*
+ * Copyright (C) 2026 Chuan-Zheng Lee
+ *
+ * This file is part of the Debatekeeper app, which is licensed under the GNU
+ * General Public Licence version 3 (GPLv3).  You can redistribute and/or modify
+ * it under the terms of the GPLv3, and you must not use this file except in
+ * compliance with the GPLv3.
+ *
+ * This app is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE.  See the GNU General Public Licence for more details.
+ *
+ * You should have received a copy of the GNU General Public Licence along with
+ * this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.czlee.debatekeeper.debatemanager;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * DebateJournal records what happens in a debate to a file, so that if the process is killed
+ * mid-debate, the debate can be picked up where it was left.
+ *
+ * <p>The journal starts with a {@link Snapshot} of the whole debate, followed by an {@link Event}
+ * for everything that has happened since: the timer starting and stopping, bells, the time being
+ * edited, and so on.  Replaying the events over the snapshot gives the state of the debate.  When
+ * the debate moves to another phase, the journal is compacted: it's replaced by a new snapshot, so
+ * it never grows beyond the events of one phase.</p>
+ *
+ * <p>Events are written as they happen, so they survive the process being killed.  They're only
+ * synced to storage once every {@link #SYNC_DELAY_MILLIS}, on a background thread, so that a burst
+ * of events costs only one sync and the main thread never waits for one.  Snapshots are synced
+ * before they replace the old journal, so that a power failure can't leave an empty journal in
+ * place of the old one.  Each record has a checksum, so a record that was only partly written when
+ * the device lost power is ignored, along with anything after it.</p>
+ *
+ * <p>The time each event takes to write is measured, and logged every so often.</p>
+ *
+ * <p>This class is thread-safe; bells are journaled from the timer thread.</p>
+ *
+ * @author Chuan-Zheng Lee
+ * @since 2026-10-19
+ */
+class DebateJournal {
+
+    private static final String TAG = "DebateJournal";
+
+    private static final String JOURNAL_FILE_NAME = "debate-journal";
+    private static final int JOURNAL_VERSION = 2;
+    private static final int MAX_RECORD_LENGTH = 64 * 1024;
+    private static final long SYNC_DELAY_MILLIS = 1000;
+    private static final int TIMING_LOG_INTERVAL = 50;
+
+    private static final byte RECORD_SNAPSHOT = 0;
+    private static final byte RECORD_EVENT    = 1;
+
+    private final File mFile;
+    private final ScheduledExecutorService mSyncExecutor = Executors.newSingleThreadScheduledExecutor();
+
+    // All of these are guarded by this
+    private FileOutputStream mOut = null;
+    private boolean mSyncScheduled = false;
+    private boolean mDeleted = false;
+    private int mEventCount = 0;
+    private long mTotalWriteNanos = 0;
+    private long mMaxWriteNanos = 0;
+    private int mSyncCount = 0;
+    private long mTotalSyncNanos = 0;
+
+    //******************************************************************************************
+    // Public classes
+    //******************************************************************************************
+
+    /**
+     * The things that can happen in a debate.  Changes of phase aren't events; they compact the
+     * journal to a new {@link Snapshot} instead.
+     */
+    enum EventType {
+        START       ('s'),
+        STOP        ('t'),
+        BELL        ('b'),
+        BELL_PAUSE  ('p'),
+        TIME_EDIT   ('e'),
+        RESET       ('r'),
+        POI_START   ('i'),
+        POI_STOP    ('j');
+
+        // Codes are written to the journal, so they must never change
+        private final char code;
+
+        EventType(char code) {
+            this.code = code;
+        }
+
+        @Nullable
+        private static EventType fromCode(char code) {
+            for (EventType type : values())
+                if (type.code == code) return type;
+            return null;
+        }
+    }
+
+    static class Event {
+        @NonNull final EventType type;
+        final long wallTime;
+        final long time;
+
+        /**
+         * @param type     the {@link EventType}
+         * @param wallTime when it happened, in milliseconds since the epoch
+         * @param time     the time on the timer when it happened; for POI events, the time on the
+         *                 POI timer
+         */
+        Event(@NonNull EventType type, long wallTime, long time) {
+            this.type = type;
+            this.wallTime = wallTime;
+            this.time = time;
+        }
+    }
+
+    /**
+     * The state of a debate at a point in time.  If the timer was running, it was still running at
+     * <code>wallTime</code>.
+     */
+    static class Snapshot {
+        final long wallTime;
+        @NonNull final byte[] state;
+
+        /**
+         * @param wallTime when the snapshot was taken, in milliseconds since the epoch
+         * @param state    the state of the debate, as written by {@link DebateManager}
+         */
+        private Snapshot(long wallTime, @NonNull byte[] state) {
+            this.wallTime = wallTime;
+            this.state = state;
+        }
+    }
+
+    /**
+     * What was read from a journal.
+     */
+    static class Contents {
+        @NonNull final Snapshot snapshot;
+        @NonNull final List<Event> events;
+
+        private Contents(@NonNull Snapshot snapshot, @NonNull List<Event> events) {
+            this.snapshot = snapshot;
+            this.events = events;
+        }
+    }
+
+    //******************************************************************************************
+    // Constructor
+    //******************************************************************************************
+
+    /**
+     * @param directory the directory to keep the journal in, normally the app's files directory
+     */
+    DebateJournal(@NonNull File directory) {
+        mFile = new File(directory, JOURNAL_FILE_NAME);
+    }
+
+    //******************************************************************************************
+    // Package-private methods
+    //******************************************************************************************
+
+    /**
+     * @return <code>true</code> if the journal has been started with a snapshot, and events can be
+     * appended to it
+     */
+    synchronized boolean isOpen() {
+        return mOut != null;
+    }
+
+    /**
+     * Replaces the journal with a snapshot, discarding all events, and opens it for appending.  The
+     * snapshot is synced to storage before it replaces the old journal; the events that follow it
+     * are synced in the background.
+     * @param state the state of the debate now, as written by {@link DebateManager}
+     */
+    synchronized void compact(@NonNull byte[] state) {
+        if (mDeleted) return;
+        closeStream();
+
+        // Write the snapshot to a temporary file and rename it over the old one, so that if we
+        // stop half-way, the old journal is still there
+        File temp = new File(mFile.getPath() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(temp)) {
+            out.write(frameRecord(encodeSnapshot(new Snapshot(System.currentTimeMillis(), state))));
+            out.getFD().sync();
+        } catch (IOException e) {
+            Log.e(TAG, "Couldn't write snapshot", e);
+            return;
+        }
+
+        if (!temp.renameTo(mFile)) {
+            Log.e(TAG, "Couldn't rename snapshot into place");
+            return;
+        }
+
+        try {
+            mOut = new FileOutputStream(mFile, true);
+        } catch (FileNotFoundException e) {
+            Log.e(TAG, "Couldn't open journal", e);
+            return;
+        }
+        scheduleSync();
+    }
+
+    /**
+     * Appends an event to the journal.  Does nothing if the journal isn't open.
+     * @param type the {@link EventType}
+     * @param time the time on the timer when it happened; for POI events, the time on the POI timer
+     */
+    synchronized void append(@NonNull EventType type, long time) {
+        if (mOut == null) return;
+
+        long startTime = System.nanoTime();
+        try {
+            mOut.write(frameRecord(encodeEvent(new Event(type, System.currentTimeMillis(), time))));
+        } catch (IOException e) {
+            Log.e(TAG, "Couldn't write event, closing journal", e);
+            closeStream();
+            return;
+        }
+        long writeNanos = System.nanoTime() - startTime;
+
+        mEventCount++;
+        mTotalWriteNanos += writeNanos;
+        mMaxWriteNanos = Math.max(mMaxWriteNanos, writeNanos);
+        if (mEventCount % TIMING_LOG_INTERVAL == 0) logTimings();
+
+        scheduleSync();
+    }
+
+    /**
+     * Reads the journal.
+     * @return the {@link Contents} of the journal, or <code>null</code> if there isn't one or it
+     * couldn't be read
+     */
+    @Nullable
+    synchronized Contents read() {
+        if (!mFile.exists()) return null;
+
+        try (DataInputStream in = new DataInputStream(new FileInputStream(mFile))) {
+            byte[] record = readRecord(in);
+            if (record == null) {
+                Log.w(TAG, "Journal didn't start with a snapshot");
+                return null;
+            }
+            Snapshot snapshot = decodeSnapshot(record);
+            if (snapshot == null) return null;
+
+            ArrayList<Event> events = new ArrayList<>();
+            while ((record = readRecord(in)) != null) {
+                Event event = decodeEvent(record);
+                if (event == null) break;
+                events.add(event);
+            }
+            return new Contents(snapshot, Collections.unmodifiableList(events));
+
+        } catch (IOException e) {
+            Log.e(TAG, "Couldn't read journal", e);
+            return null;
+        }
+    }
+
+    /**
+     * Closes and deletes the journal.  Once this has been called, this journal can't be used again.
+     */
+    synchronized void delete() {
+        logTimings();
+        closeStream();
+        mDeleted = true;
+        mSyncExecutor.shutdownNow();
+        if (mFile.exists() && !mFile.delete())
+            Log.e(TAG, "Couldn't delete journal");
+    }
+
+    //******************************************************************************************
+    // Private methods
+    //******************************************************************************************
+
+    /**
+     * Arranges for everything written so far to be synced soon, if it isn't already going to be.
+     * Must be called while holding the lock.
+     */
+    private void scheduleSync() {
+        if (mSyncScheduled) return;
+        mSyncScheduled = true;
+        mSyncExecutor.schedule(this::sync, SYNC_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Syncs everything written so far to storage.  Runs on the sync executor, and doesn't hold the
+     * lock while syncing, so that events can still be written in the meantime.
+     */
+    private void sync() {
+        FileDescriptor fd;
+        synchronized (this) {
+            mSyncScheduled = false;
+            if (mOut == null) return;
+            try {
+                fd = mOut.getFD();
+            } catch (IOException e) {
+                return;
+            }
+        }
+
+        long startTime = System.nanoTime();
+        try {
+            fd.sync();
+        } catch (IOException e) {
+            // The journal was probably closed in the meantime; if it was compacted, the new one
+            // has its own sync scheduled
+            Log.d(TAG, "Couldn't sync journal: " + e.getMessage());
+            return;
+        }
+        long syncNanos = System.nanoTime() - startTime;
+
+        synchronized (this) {
+            mSyncCount++;
+            mTotalSyncNanos += syncNanos;
+        }
+    }
+
+    private void closeStream() {
+        if (mOut == null) return;
+        try {
+            mOut.close();
+        } catch (IOException e) {
+            Log.e(TAG, "Couldn't close journal", e);
+        }
+        mOut = null;
+    }
+
+    private void logTimings() {
+        if (mEventCount == 0) return;
+        Log.d(TAG, String.format(Locale.ROOT,
+                "%d events, write avg %.1f us, max %.1f us; %d syncs, avg %.1f ms",
+                mEventCount, mTotalWriteNanos / 1e3 / mEventCount, mMaxWriteNanos / 1e3,
+                mSyncCount, (mSyncCount == 0) ? 0.0 : mTotalSyncNanos / 1e6 / mSyncCount));
+    }
+
+    /**
+     * Frames a record as its length, the record itself, and a CRC-32 checksum of the record.
+     */
+    @NonNull
+    private static byte[] frameRecord(@NonNull byte[] record) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(record);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(record.length + 8);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(record.length);
+        out.write(record);
+        out.writeInt((int) crc.getValue());
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Reads a framed record.
+     * @return the record, or <code>null</code> if there are no more records, or what's left is
+     * incomplete or corrupt
+     */
+    @Nullable
+    private static byte[] readRecord(@NonNull DataInputStream in) throws IOException {
+        try {
+            int length = in.readInt();
+            if (length < 0 || length > MAX_RECORD_LENGTH) {
+                Log.w(TAG, "Ignoring journal from record with bad length " + length);
+                return null;
+            }
+
+            byte[] record = new byte[length];
+            in.readFully(record);
+            int expected = in.readInt();
+
+            CRC32 crc = new CRC32();
+            crc.update(record);
+            if ((int) crc.getValue() != expected) {
+                Log.w(TAG, "Ignoring journal from record with bad checksum");
+                return null;
+            }
+            return record;
+
+        } catch (EOFException e) {
+            // Either the end of the journal, or a record that was only partly written
+            return null;
+        }
+    }
+
+    @NonNull
+    private static byte[] encodeSnapshot(@NonNull Snapshot snapshot) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(snapshot.state.length + 17);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(RECORD_SNAPSHOT);
+        out.writeInt(JOURNAL_VERSION);
+        out.writeLong(snapshot.wallTime);
+        out.writeInt(snapshot.state.length);
+        out.write(snapshot.state);
+        return bytes.toByteArray();
+    }
+
+    @Nullable
+    private static Snapshot decodeSnapshot(@NonNull byte[] record) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+        if (in.readByte() != RECORD_SNAPSHOT) {
+            Log.w(TAG, "Journal didn't start with a snapshot");
+            return null;
+        }
+        int version = in.readInt();
+        if (version != JOURNAL_VERSION) {
+            Log.w(TAG, "Ignoring journal with version " + version);
+            return null;
+        }
+
+        long wallTime = in.readLong();
+        int length = in.readInt();
+        if (length < 0 || length > MAX_RECORD_LENGTH) return null;
+        byte[] state = new byte[length];
+        in.readFully(state);
+        return new Snapshot(wallTime, state);
+    }
+
+    @NonNull
+    private static byte[] encodeEvent(@NonNull Event event) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(19);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(RECORD_EVENT);
+        out.writeChar(event.type.code);
+        out.writeLong(event.wallTime);
+        out.writeLong(event.time);
+        return bytes.toByteArray();
+    }
+
+    @Nullable
+    private static Event decodeEvent(@NonNull byte[] record) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+        if (in.readByte() != RECORD_EVENT) {
+            Log.w(TAG, "Ignoring journal from unexpected record");
+            return null;
+        }
+        char code = in.readChar();
+        EventType type = EventType.fromCode(code);
+        if (type == null) {
+            Log.w(TAG, "Ignoring journal from unknown event " + code);
+            return null;
+        }
+        long wallTime = in.readLong();
+        long time = in.readLong();
+        return new Event(type, wallTime, time);
+    }
+
+}
@@ -22,18 +22,30 @@ import android.os.Bundle;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
 import androidx.viewpager.widget.PagerAdapter;
 
 import net.czlee.debatekeeper.AlertManager;
 import net.czlee.debatekeeper.DebatingTimerService.GuiUpdateBroadcastSender;
 import net.czlee.debatekeeper.PrepTimeBellsManager;
 import net.czlee.debatekeeper.R;
+import net.czlee.debatekeeper.debateformat.BellInfo;
 import net.czlee.debatekeeper.debateformat.DebateFormat;
 import net.czlee.debatekeeper.debateformat.DebatePhaseFormat;
 import net.czlee.debatekeeper.debateformat.PeriodInfo;
 import net.czlee.debatekeeper.debateformat.PrepTimeSimpleFormat;
-
+import net.czlee.debatekeeper.debatemanager.DebateJournal.EventType;
+import net.czlee.debatekeeper.debatemanager.DebatePhaseManager.DebateTimerState;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Locale;
+import java.util.Random;
 
 
 /**
@@ -54,6 +66,10 @@ import java.util.ArrayList;
  *
  * <p>The internal mechanics of a single speech are handled by {@link DebatePhaseManager}.</p>
  *
+ * <p>Everything that happens in the debate is recorded in a {@link DebateJournal}, so that if the
+ * process is killed mid-debate, {@link #restoreFromJournal()} can pick it up where it was left.
+ * When it's released, the debate is recorded in the {@link DebateHistory}.</p>
+ *
  * @author Chuan-Zheng Lee
  * @since  2012-06-09
  */
@@ -62,22 +78,34 @@ public class DebateManager {
     private static final String TAG = "DebateManager";
 
     private final DebateFormat        mDebateFormat;
+    private final String              mFormatFileName;
+    private final String              mFormatContentHash;
     private final DebatePhaseManager  mPhaseManager;
     private final PoiManager          mPoiManager;
     private final Context             mContext;
+    private final DebateJournal       mJournal;
+    private final DebateHistory       mHistory;
 
-    private final ArrayList<Long>     mSpeechTimes;
+    private final long[]              mSpeechTimes;
     private long                      mPrepTime;
 
+    // For the history; the last element of each count array is for prep time
+    private long                      mHistoryId;
+    private long                      mStartedAt = 0;
+    private final int[]               mBellCounts;
+    private final int[]               mPoiCounts;
+
     private boolean                   mPrepTimeEnabledByUser = true;
     private int                       mActiveSpeechIndex;
     private DebatePhaseType           mActivePhaseType;
 
-    private static final String BUNDLE_SUFFIX_ITEM_TYPE    = ".cit";
-    private static final String BUNDLE_SUFFIX_INDEX        = ".csi";
-    private static final String BUNDLE_SUFFIX_SPEECH       = ".sm";
-    private static final String BUNDLE_SUFFIX_SPEECH_TIMES = ".st";
-    private static final String BUNDLE_SUFFIX_PREP_TIME    = ".pt";
+    // Version of the state written by saveState(), to be changed whenever its layout changes.  If
+    // it changes, restoreState() should still read version 1, which DebateManagerTest checks.
+    private static final int STATE_VERSION = 1;
+
+    // A journal whose last record is older than this is from some earlier debate, not one that was
+    // interrupted, so it isn't restored
+    private static final long JOURNAL_MAX_AGE_MILLIS = 30 * 60 * 1000;
 
     private static final int NO_SUCH_PHASE = PagerAdapter.POSITION_NONE;
 
@@ -85,21 +113,32 @@ public class DebateManager {
      * Constructor.
      * @param context a {@link Context} relating to this DebateManager, probably a {@link Service}.
      * @param df The {@link DebateFormat} used by this DebateManager.
+     * @param formatFileName the name of the file <code>df</code> was loaded from
+     * @param formatContentHash the SHA-256 hash of that file, or <code>null</code> if not known
      * @param am The {@link AlertManager} used by this DebateManager.
      */
-    public DebateManager(Context context, DebateFormat df, AlertManager am) {
+    public DebateManager(Context context, DebateFormat df, @NonNull String formatFileName,
+                         @Nullable String formatContentHash, AlertManager am) {
         super();
         this.mContext       = context;
         this.mDebateFormat  = df;
+        this.mFormatFileName = formatFileName;
+        this.mFormatContentHash = (formatContentHash == null) ? "" : formatContentHash;
         this.mPhaseManager = new DebatePhaseManager(am);
         // TODO un-hardcode this '15'
         this.mPoiManager    = new PoiManager(am, 15);
-        this.mSpeechTimes   = new ArrayList<>();
+        this.mSpeechTimes   = new long[df.numberOfSpeeches()];
         this.mPrepTime      = 0;
+        this.mJournal       = new DebateJournal(context.getFilesDir());
+        this.mHistory       = DebateHistory.getInstance(context);
+        this.mHistoryId     = new Random().nextLong();
+        this.mBellCounts    = new int[df.numberOfSpeeches() + 1];
+        this.mPoiCounts     = new int[df.numberOfSpeeches() + 1];
 
-        this.mSpeechTimes.ensureCapacity(df.numberOfSpeeches());
-        for (int i = 0; i < df.numberOfSpeeches(); i++)
-            mSpeechTimes.add((long) 0);
+        this.mPhaseManager.setBellListener((time, paused) -> {
+            mBellCounts[getActiveCountIndex()]++;
+            journal(paused ? EventType.BELL_PAUSE : EventType.BELL, time);
+        });
 
         if (hasPrepTime()) {
             this.mActivePhaseType = DebatePhaseType.PREP_TIME;
@@ -268,9 +307,9 @@ public class DebateManager {
         else if (phaseIndex == 0 && hasPrepTime())
             return mPrepTime;
         else if (hasPrepTime())
-            return mSpeechTimes.get(phaseIndex - 1);
+            return mSpeechTimes[phaseIndex - 1];
         else
-            return mSpeechTimes.get(phaseIndex);
+            return mSpeechTimes[phaseIndex];
     }
 
     /**
@@ -425,10 +464,13 @@ public class DebateManager {
     }
 
     /**
-     * Cleans up, should be called before deleting.
+     * Cleans up, should be called before deleting.  This also deletes the journal, since the
+     * debate is being finished with deliberately.
      */
     public void release() {
+        mJournal.delete();
         stopTimer();
+        recordHistory();
     }
 
     /**
@@ -436,6 +478,133 @@ public class DebateManager {
      */
     public void resetActivePhase() {
         mPhaseManager.reset();
+        journal(EventType.RESET, 0);
+    }
+
+    /**
+     * <p>Restores the state of this <code>DebateManager</code> from the journal left by a previous
+     * <code>DebateManager</code> that wasn't released, normally because the process was killed.
+     * This should be called straight after this <code>DebateManager</code> is created.</p>
+     *
+     * <p>If the timer was running, it's restored to the time it would be now, and keeps running,
+     * unless it would have been paused by a bell in the meantime.  A POI timer that would still be
+     * running is also restored.  A journal that hasn't been written to for a long time is ignored,
+     * since it can't be from a debate that was only interrupted.</p>
+     *
+     * @return <code>true</code> if the state was restored, <code>false</code> if there was no
+     * journal, it was too old, or it was for a different debate format file or different content
+     */
+    public boolean restoreFromJournal() {
+        DebateJournal.Contents contents = mJournal.read();
+        if (contents == null) return false;
+
+        long lastWritten = contents.snapshot.wallTime;
+        if (!contents.events.isEmpty())
+            lastWritten = Math.max(lastWritten, contents.events.get(contents.events.size() - 1).wallTime);
+        long age = System.currentTimeMillis() - lastWritten;
+        if (age > JOURNAL_MAX_AGE_MILLIS) {
+            Log.i(TAG, String.format(Locale.ROOT, "restoreFromJournal: journal is %d s old, ignoring it", age / 1000));
+            return false;
+        }
+
+        if (!restoreState(contents.snapshot.state)) {
+            Log.i(TAG, "restoreFromJournal: couldn't restore snapshot, ignoring journal");
+            return false;
+        }
+
+        // Replay the events over the snapshot
+        long time = mPhaseManager.getCurrentTime();
+        DebateTimerState state = mPhaseManager.getStatus();
+        DebatePhaseFormat format = mPhaseManager.getFormat();
+        PeriodInfo periodInfo = mPhaseManager.getCurrentPeriodInfo();
+        long runningSince = contents.snapshot.wallTime;
+        Long poiTime = null;
+        long poiSince = 0;
+
+        for (DebateJournal.Event event : contents.events) {
+            switch (event.type) {
+                case START:
+                    time = event.time;
+                    state = DebateTimerState.RUNNING;
+                    runningSince = event.wallTime;
+                    if (mStartedAt == 0) mStartedAt = event.wallTime;
+                    break;
+                case STOP:
+                    time = event.time;
+                    state = DebateTimerState.STOPPED_BY_USER;
+                    break;
+                case BELL:
+                    time = event.time;
+                    runningSince = event.wallTime;
+                    periodInfo = updatedForBell(periodInfo, format.getBellAtTime(time));
+                    mBellCounts[getActiveCountIndex()]++;
+                    break;
+                case BELL_PAUSE:
+                    time = event.time;
+                    state = DebateTimerState.STOPPED_BY_BELL;
+                    periodInfo = updatedForBell(periodInfo, format.getBellAtTime(time));
+                    mBellCounts[getActiveCountIndex()]++;
+                    break;
+                case TIME_EDIT:
+                    time = event.time;
+                    runningSince = event.wallTime;
+                    periodInfo = format.getPeriodInfoForTime(time);
+                    if (state != DebateTimerState.RUNNING)
+                        state = (time == 0) ? DebateTimerState.NOT_STARTED : DebateTimerState.STOPPED_BY_USER;
+                    break;
+                case RESET:
+                    time = 0;
+                    state = DebateTimerState.NOT_STARTED;
+                    periodInfo = format.getFirstPeriodInfo();
+                    break;
+                case POI_START:
+                    poiTime = event.time;
+                    poiSince = event.wallTime;
+                    mPoiCounts[getActiveCountIndex()]++;
+                    break;
+                case POI_STOP:
+                    poiTime = null;
+                    break;
+            }
+        }
+
+        // Catch up on the time that passed while the process was dead
+        long now = System.currentTimeMillis();
+        boolean running = state == DebateTimerState.RUNNING;
+        if (running) {
+            long target = time + getSecondsBetween(runningSince, now);
+
+            // Bells in the meantime would have changed the period info, and a bell that pauses
+            // the timer would have stopped it
+            for (long t = time + 1; t <= target; t++) {
+                BellInfo bell = format.getBellAtTime(t);
+                periodInfo = updatedForBell(periodInfo, bell);
+                if (bell != null && bell.isPauseOnBell()) {
+                    target = t;
+                    running = false;
+                    state = DebateTimerState.STOPPED_BY_BELL;
+                    break;
+                }
+            }
+            time = target;
+        }
+
+        Log.i(TAG, String.format(Locale.ROOT, "restoreFromJournal: %s %d, %d events, time %d, %s",
+                mActivePhaseType, mActiveSpeechIndex, contents.events.size(), time, state));
+
+        mPhaseManager.restoreState(time, running ? DebateTimerState.STOPPED_BY_USER : state, periodInfo);
+        mJournal.compact(saveState());
+        if (running) startTimer();
+
+        if (running && poiTime != null) {
+            long poiLeft = poiTime - getSecondsBetween(poiSince, now);
+            if (poiLeft > 0) {
+                mPoiManager.startFrom(poiLeft);
+                journal(EventType.POI_START, poiLeft);
+            }
+        }
+
+        return true;
     }
 
     /**
@@ -445,31 +614,19 @@ public class DebateManager {
      * @param bundle The Bundle from which to restore this information.
      */
     public void restoreState(String key, Bundle bundle) {
-
-        // Restore the current item type
-        String itemTypeValue = bundle.getString(key + BUNDLE_SUFFIX_ITEM_TYPE);
-        if (itemTypeValue == null)
-            Log.e(TAG, "restoreState: No item type found");
-        else try {
-            mActivePhaseType = DebatePhaseType.toEnum(itemTypeValue);
-        } catch (IllegalArgumentException e) {
-            Log.e(TAG, "restoreState: Invalid item type: " + itemTypeValue);
+        byte[] state = bundle.getByteArray(key);
+        if (state == null) {
+            Log.e(TAG, "restoreState: No state found");
+            return;
         }
+        if (!restoreState(state)) return;
 
-        // Restore the current speech
-        mActiveSpeechIndex = bundle.getInt(key + BUNDLE_SUFFIX_INDEX, 0);
-        loadSpeech();
-
-        // If there are saved speech times, restore them as well
-        long[] speechTimes = bundle.getLongArray(key + BUNDLE_SUFFIX_SPEECH_TIMES);
-        if (speechTimes != null)
-            for (int i = 0; i < speechTimes.length; i++)
-                mSpeechTimes.set(i, speechTimes[i]);
-
-        // Restore the prep time
-        mPrepTime = bundle.getLong(key + BUNDLE_SUFFIX_PREP_TIME, 0);
+        // Whatever was running before isn't running any more, and we don't know for how long
+        if (mPhaseManager.getStatus() == DebateTimerState.RUNNING)
+            mPhaseManager.restoreState(mPhaseManager.getCurrentTime(), DebateTimerState.STOPPED_BY_USER,
+                    mPhaseManager.getCurrentPeriodInfo());
 
-        mPhaseManager.restoreState(key + BUNDLE_SUFFIX_SPEECH, bundle);
+        mJournal.compact(saveState());
     }
 
     /**
@@ -479,23 +636,7 @@ public class DebateManager {
      * @param bundle The Bundle to which to save this information.
      */
     public void saveState(String key, Bundle bundle) {
-
-        // Take note of which item type we're in
-        bundle.putString(key + BUNDLE_SUFFIX_ITEM_TYPE, mActivePhaseType.toString());
-
-        // Take note of which speech we're on
-        bundle.putInt(key + BUNDLE_SUFFIX_INDEX, mActiveSpeechIndex);
-
-        // Save the speech times
-        long[] speechTimes = new long[mSpeechTimes.size()];
-        for (int i = 0; i < mSpeechTimes.size(); i++)
-            speechTimes[i] = mSpeechTimes.get(i);
-        bundle.putLongArray(key + BUNDLE_SUFFIX_SPEECH_TIMES, speechTimes);
-
-        // Save the prep time
-        bundle.putLong(key + BUNDLE_SUFFIX_PREP_TIME, mPrepTime);
-
-        mPhaseManager.saveState(key + BUNDLE_SUFFIX_SPEECH, bundle);
+        bundle.putByteArray(key, saveState());
     }
 
     /**
@@ -505,6 +646,7 @@ public class DebateManager {
      */
     public void setActivePhaseCurrentTime(long seconds) {
         mPhaseManager.setCurrentTime(seconds);
+        journal(EventType.TIME_EDIT, seconds);
     }
 
     /**
@@ -535,7 +677,7 @@ public class DebateManager {
         }
 
         loadSpeech();
-
+        mJournal.compact(saveState());
     }
 
     /**
@@ -579,6 +721,7 @@ public class DebateManager {
      * otherwise
      */
     public void setPrepTimeEnabled(boolean prepTimeEnabled) {
+        boolean changed = mPrepTimeEnabledByUser != prepTimeEnabled;
         mPrepTimeEnabledByUser = prepTimeEnabled;
 
         // Switch out of prep time if necessary, since if you disable prep time it doesn't make
@@ -589,7 +732,10 @@ public class DebateManager {
             mActivePhaseType = DebatePhaseType.SPEECH;
             mActiveSpeechIndex = 0;
             loadSpeech();
+            changed = true;
         }
+
+        if (changed) mJournal.compact(saveState());
     }
 
     /**
@@ -597,13 +743,20 @@ public class DebateManager {
      */
     public void startPoiTimer() {
         mPoiManager.start();
+        mPoiCounts[getActiveCountIndex()]++;
+        journal(EventType.POI_START, mPoiManager.getCurrentTime());
     }
 
     /**
      * Starts the timer.
      */
     public void startTimer() {
+        if (mPhaseManager.isRunning()) return;
         mPhaseManager.start();
+        if (mPhaseManager.isRunning()) {
+            if (mStartedAt == 0) mStartedAt = System.currentTimeMillis();
+            journal(EventType.START, mPhaseManager.getCurrentTime());
+        }
     }
 
     /**
@@ -611,6 +764,7 @@ public class DebateManager {
      */
     public void stopPoiTimer() {
         mPoiManager.stop();
+        journal(EventType.POI_STOP, 0);
     }
 
     /**
@@ -618,6 +772,7 @@ public class DebateManager {
      */
     public void stopTimer() {
         mPhaseManager.stop();
+        journal(EventType.STOP, mPhaseManager.getCurrentTime());
         stopPoiTimer();
     }
 
@@ -625,10 +780,42 @@ public class DebateManager {
     // Private methods
     //******************************************************************************************
 
+    /**
+     * @return the index in {@link #mBellCounts} and {@link #mPoiCounts} for the active phase
+     */
+    private int getActiveCountIndex() {
+        return (mActivePhaseType == DebatePhaseType.PREP_TIME) ? mSpeechTimes.length : mActiveSpeechIndex;
+    }
+
+    /**
+     * @return the name of the debate format, as written to the state to check that it's restored
+     * to the same debate format
+     */
+    @NonNull
+    private String getStateFormatName() {
+        String name = mDebateFormat.getName();
+        return (name == null) ? "" : name;
+    }
+
+    private static long getSecondsBetween(long fromMillis, long toMillis) {
+        // If the clock went backwards, assume no time passed
+        return Math.max(0, (toMillis - fromMillis) / 1000);
+    }
+
     private boolean hasPrepTime() {
         return mPrepTimeEnabledByUser && mDebateFormat.hasPrepFormat();
     }
 
+    /**
+     * Appends an event to the journal, starting the journal with a snapshot if it hasn't been
+     * started yet.
+     */
+    private void journal(EventType type, long time) {
+        if (!mJournal.isOpen())
+            mJournal.compact(saveState());
+        mJournal.append(type, time);
+    }
+
     private void loadSpeech() {
         switch (mActivePhaseType) {
         case PREP_TIME:
@@ -637,20 +824,163 @@ public class DebateManager {
             break;
         case SPEECH:
             mPhaseManager.loadSpeech(mDebateFormat.getSpeechFormat(mActiveSpeechIndex),
-                    getActivePhaseName(), mSpeechTimes.get(mActiveSpeechIndex));
+                    getActivePhaseName(), mSpeechTimes[mActiveSpeechIndex]);
         }
     }
 
+    /**
+     * Records this debate in the history, if it was ever started.  Phases that were never timed
+     * are left out.
+     */
+    private void recordHistory() {
+        if (mStartedAt == 0) return;
+        saveSpeech();
+
+        ArrayList<DebateHistory.PhaseRecord> phases = new ArrayList<>();
+        if (mDebateFormat.hasPrepFormat() && mPrepTime > 0) {
+            int i = mSpeechTimes.length;
+            phases.add(new DebateHistory.PhaseRecord(DebatePhaseType.PREP_TIME, 0,
+                    mContext.getString(R.string.prepTime_title), mDebateFormat.getPrepFormat().getLength(),
+                    mPrepTime, mBellCounts[i], mPoiCounts[i]));
+        }
+        for (int i = 0; i < mSpeechTimes.length; i++) {
+            if (mSpeechTimes[i] == 0) continue;
+            phases.add(new DebateHistory.PhaseRecord(DebatePhaseType.SPEECH, i,
+                    mDebateFormat.getSpeechName(i), mDebateFormat.getSpeechFormat(i).getLength(),
+                    mSpeechTimes[i], mBellCounts[i], mPoiCounts[i]));
+        }
+
+        if (!phases.isEmpty())
+            mHistory.record(mHistoryId, getStateFormatName(), mStartedAt, phases);
+    }
+
     private void saveSpeech() {
         switch (mActivePhaseType) {
         case PREP_TIME:
             mPrepTime = mPhaseManager.getCurrentTime();
             break;
         case SPEECH:
-            mSpeechTimes.set(mActiveSpeechIndex, mPhaseManager.getCurrentTime());
+            mSpeechTimes[mActiveSpeechIndex] = mPhaseManager.getCurrentTime();
         }
     }
 
+    /**
+     * Restores the state of this <code>DebateManager</code> from what was written by
+     * {@link #saveState()}.  If the state can't be read, or is for a different debate format,
+     * nothing is changed.
+     * @param state the state
+     * @return <code>true</code> if the state was restored, <code>false</code> otherwise
+     */
+    @VisibleForTesting
+    boolean restoreState(@NonNull byte[] state) {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(state));
+        try {
+            int version = in.readUnsignedByte();
+            if (version != STATE_VERSION) {
+                Log.e(TAG, "restoreState: Unknown state version " + version);
+                return false;
+            }
+
+            String formatName = in.readUTF();
+            String formatFileName = in.readUTF();
+            String formatContentHash = in.readUTF();
+            boolean prepTimeEnabled = in.readBoolean();
+            DebatePhaseType phaseType = DebatePhaseType.toEnum(in.readUTF());
+            int speechIndex = in.readInt();
+            long prepTime = in.readLong();
+            int numberOfSpeeches = in.readInt();
+
+            if (!formatName.equals(getStateFormatName()) || !formatFileName.equals(mFormatFileName)
+                    || !formatContentHash.equals(mFormatContentHash) || numberOfSpeeches != mSpeechTimes.length
+                    || speechIndex < 0 || speechIndex >= numberOfSpeeches
+                    || (phaseType == DebatePhaseType.PREP_TIME
+                        && (!mDebateFormat.hasPrepFormat() || !prepTimeEnabled))) {
+                Log.e(TAG, "restoreState: State is for a different debate format");
+                return false;
+            }
+
+            long[] speechTimes = new long[numberOfSpeeches];
+            for (int i = 0; i < numberOfSpeeches; i++)
+                speechTimes[i] = in.readLong();
+
+            long historyId = in.readLong();
+            long startedAt = in.readLong();
+            int[] bellCounts = new int[mBellCounts.length];
+            int[] poiCounts = new int[mPoiCounts.length];
+            for (int i = 0; i < bellCounts.length; i++) {
+                bellCounts[i] = in.readInt();
+                poiCounts[i] = in.readInt();
+            }
+
+            DebatePhaseFormat phaseFormat = (phaseType == DebatePhaseType.PREP_TIME)
+                    ? mDebateFormat.getPrepFormat() : mDebateFormat.getSpeechFormat(speechIndex);
+            DebatePhaseManager.SavedState phaseState = DebatePhaseManager.readState(in, phaseFormat);
+
+            // Everything has been read, so nothing below can fail part-way through
+            mPrepTimeEnabledByUser = prepTimeEnabled;
+            mActivePhaseType = phaseType;
+            mActiveSpeechIndex = speechIndex;
+            mPrepTime = prepTime;
+            System.arraycopy(speechTimes, 0, mSpeechTimes, 0, numberOfSpeeches);
+            mHistoryId = historyId;
+            mStartedAt = startedAt;
+            System.arraycopy(bellCounts, 0, mBellCounts, 0, bellCounts.length);
+            System.arraycopy(poiCounts, 0, mPoiCounts, 0, poiCounts.length);
+            loadSpeech();
+            mPhaseManager.restoreState(phaseState);
+
+        } catch (IOException | IllegalArgumentException e) {
+            Log.e(TAG, "restoreState: Couldn't read state", e);
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Writes the state of this <code>DebateManager</code> to a byte array, which is used both
+     * for saved instance state and for the journal.
+     * @return the state
+     */
+    @NonNull
+    @VisibleForTesting
+    byte[] saveState() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeByte(STATE_VERSION);
+            out.writeUTF(getStateFormatName());
+            out.writeUTF(mFormatFileName);
+            out.writeUTF(mFormatContentHash);
+            out.writeBoolean(mPrepTimeEnabledByUser);
+            out.writeUTF(mActivePhaseType.toString());
+            out.writeInt(mActiveSpeechIndex);
+            out.writeLong(mPrepTime);
+            out.writeInt(mSpeechTimes.length);
+            for (long speechTime : mSpeechTimes)
+                out.writeLong(speechTime);
+            out.writeLong(mHistoryId);
+            out.writeLong(mStartedAt);
+            for (int i = 0; i < mBellCounts.length; i++) {
+                out.writeInt(mBellCounts[i]);
+                out.writeInt(mPoiCounts[i]);
+            }
+            mPhaseManager.writeState(out);
+        } catch (IOException e) {
+            // ByteArrayOutputStream never throws this
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @return the period info after a bell, as {@link DebatePhaseManager} would update it, or
+     * <code>periodInfo</code> unchanged if there's no bell
+     */
+    private static PeriodInfo updatedForBell(PeriodInfo periodInfo, @Nullable BellInfo bell) {
+        return (bell == null) ? periodInfo : periodInfo.updatedWith(bell.getNextPeriodInfo());
+    }
+
     private void validatePhaseIndex(int phaseIndex) {
         if (phaseIndex >= mDebateFormat.numberOfSpeeches() + 1)
             throw new IndexOutOfBoundsException(String.format("Position %d out of bounds, with prep time", phaseIndex));
@@ -16,7 +16,6 @@
 
 package net.czlee.debatekeeper.debatemanager;
 
-import android.os.Bundle;
 import android.util.Log;
 
 import net.czlee.debatekeeper.AlertManager;
@@ -26,6 +25,9 @@ import net.czlee.debatekeeper.debateformat.DebatePhaseFormat;
 import net.czlee.debatekeeper.debateformat.PeriodInfo;
 import net.czlee.debatekeeper.debateformat.SpeechFormat;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.util.Timer;
 import java.util.TimerTask;
 
@@ -58,17 +60,14 @@ public class DebatePhaseManager extends DebateElementManager {
 
     private DebatePhaseFormat        mFormat;
     private String                   mPhaseName;
-    private PeriodInfo               mCurrentPeriodInfo;
+    private volatile PeriodInfo      mCurrentPeriodInfo;
     private Timer                    mTimer;
     private DebateTimerState         mState = DebateTimerState.NOT_STARTED;
     private long                     mFirstOvertimeBellTime = 30;
     private long                     mOvertimeBellPeriod    = 20;
+    private BellListener             mBellListener;
     protected long mCurrentTime;
 
-    private static final String BUNDLE_SUFFIX_TIME        = ".t";
-    private static final String BUNDLE_SUFFIX_STATE       = ".s";
-    private static final String BUNDLE_SUFFIX_PERIOD_INFO = ".cpi";
-
     /**
      * Constructor.
      * @param am the AlertManager associated with this instance
@@ -90,6 +89,33 @@ public class DebatePhaseManager extends DebateElementManager {
         STOPPED_BY_BELL,
     }
 
+    /**
+     * Told about every bell in the format, on the timer thread.
+     */
+    interface BellListener {
+        /**
+         * @param time the time of the bell
+         * @param paused <code>true</code> if the bell paused the timer
+         */
+        void onBell(long time, boolean paused);
+    }
+
+    /**
+     * Passive data class holding the state read by {@link #readState(DataInputStream, DebatePhaseFormat)},
+     * so that a saved state can be read in full before anything is changed.
+     */
+    static class SavedState {
+        final long time;
+        final DebateTimerState state;
+        final PeriodInfo periodInfo;
+
+        SavedState(long time, DebateTimerState state, PeriodInfo periodInfo) {
+            this.time = time;
+            this.state = state;
+            this.periodInfo = periodInfo;
+        }
+    }
+
     //******************************************************************************************
     // Private classes
     //******************************************************************************************
@@ -288,6 +314,14 @@ public class DebatePhaseManager extends DebateElementManager {
         mCurrentPeriodInfo = mFormat.getPeriodInfoForTime(seconds);
     }
 
+    /**
+     * Sets a listener to be told about bells.
+     * @param listener the {@link BellListener}, or <code>null</code> to remove it
+     */
+    void setBellListener(BellListener listener) {
+        mBellListener = listener;
+    }
+
     /**
      * Sets the overtime bell specifications
      * @param firstBell The number of seconds after the finish time to ring the first overtime bell
@@ -299,37 +333,91 @@ public class DebatePhaseManager extends DebateElementManager {
     }
 
     /**
-     * Saves the state of this <code>DebatePhaseManager</code> to a {@link Bundle}.
-     * @param key A String to uniquely distinguish this <code>DebatePhaseManager</code> from any other
-     *        objects that might be stored in the same Bundle.
-     * @param bundle The Bundle to which to save this information.
+     * Writes the state of this <code>DebatePhaseManager</code>, as part of the state written by
+     * {@link DebateManager}.
+     * @param out The stream to which to write this information.
+     * @throws IOException if the stream throws it
      */
-    public void saveState(String key, Bundle bundle) {
-        bundle.putLong(key + BUNDLE_SUFFIX_TIME, mCurrentTime);
-        bundle.putString(key + BUNDLE_SUFFIX_STATE, mState.name());
-        mCurrentPeriodInfo.saveState(key + BUNDLE_SUFFIX_PERIOD_INFO, bundle);
+    void writeState(DataOutputStream out) throws IOException {
+        out.writeLong(mCurrentTime);
+        out.writeUTF(mState.name());
+
+        // The period info is nearly always what the format says it is at this time, in which case
+        // there's no need to write it out
+        if (mCurrentPeriodInfo.hasSameStateAs(mFormat.getPeriodInfoForTime(mCurrentTime))) {
+            out.writeBoolean(false);
+        } else {
+            out.writeBoolean(true);
+            mCurrentPeriodInfo.writeState(out);
+        }
     }
 
     /**
-     * Restores the state of this <code>DebatePhaseManager</code> from a {@link Bundle}.
-     * <code>loadSpeech()</code> should be called <b>before</b> this is called.
-     * @param key A String to uniquely distinguish this <code>DebatePhaseManager</code> from any other
-     *        objects that might be stored in the same Bundle.
-     * @param bundle The Bundle from which to restore this information.
+     * Reads a state written by {@link #writeState(DataOutputStream)}, without changing anything.
+     * Pass the result to {@link #restoreState(SavedState)} to restore it.
+     * @param in The stream from which to read this information.
+     * @param format The format of the phase to which the state belongs.
+     * @return the state read
+     * @throws IOException if the stream throws it
      */
-    public void restoreState(String key, Bundle bundle) {
-        mCurrentTime = bundle.getLong(key + BUNDLE_SUFFIX_TIME, 0);
+    static SavedState readState(DataInputStream in, DebatePhaseFormat format) throws IOException {
+        long time = in.readLong();
 
-        String stateString = bundle.getString(key + BUNDLE_SUFFIX_STATE);
-        if (stateString == null)
-            mState = (mCurrentTime == 0) ? DebateTimerState.NOT_STARTED : DebateTimerState.STOPPED_BY_USER;
-        else try {
-            mState = DebateTimerState.valueOf(stateString);
+        String stateString = in.readUTF();
+        DebateTimerState state;
+        try {
+            state = DebateTimerState.valueOf(stateString);
         } catch (IllegalArgumentException e) {
-            mState = (mCurrentTime == 0) ? DebateTimerState.NOT_STARTED : DebateTimerState.STOPPED_BY_USER;
+            state = (time == 0) ? DebateTimerState.NOT_STARTED : DebateTimerState.STOPPED_BY_USER;
         }
 
-        mCurrentPeriodInfo.restoreState(key + BUNDLE_SUFFIX_PERIOD_INFO, bundle);
+        // Start from what loadSpeech() would show at this time
+        PeriodInfo formatPeriodInfo = format.getPeriodInfoForTime(time);
+        PeriodInfo basePeriodInfo = (time == 0) ? format.getFirstPeriodInfo() : formatPeriodInfo;
+        PeriodInfo periodInfo;
+        if (in.readBoolean())
+            periodInfo = basePeriodInfo.restoredFromState(in);
+        else
+            periodInfo = basePeriodInfo.withStateOf(formatPeriodInfo);
+
+        return new SavedState(time, state, periodInfo);
+    }
+
+    /**
+     * Restores a state read by {@link #readState(DataInputStream, DebatePhaseFormat)}.
+     * <code>loadSpeech()</code> should be called <b>before</b> this is called, with the format
+     * that was passed to <code>readState()</code>.
+     * @param saved the state to restore
+     * @throws IllegalStateException if the timer is currently running
+     */
+    void restoreState(SavedState saved) {
+        if (mTimer != null)
+            throw new IllegalStateException("Can't restore state while timer running");
+
+        mCurrentTime = saved.time;
+        mState = saved.state;
+        mCurrentPeriodInfo = saved.periodInfo;
+    }
+
+    /**
+     * Restores the time, state and period info of the loaded speech, e.g. as worked out from a
+     * journal.  <code>loadSpeech()</code> should be called <b>before</b> this is called.  To
+     * restore a running timer, restore it as stopped and then start it.
+     * @param seconds the time in seconds
+     * @param state the state, which must not be {@link DebateTimerState#RUNNING}
+     * @param periodInfo the period info to show, which may differ from the format's if bells
+     *                   have changed it
+     * @throws IllegalStateException if the timer is currently running
+     */
+    void restoreState(long seconds, DebateTimerState state, PeriodInfo periodInfo) {
+        if (mTimer != null)
+            throw new IllegalStateException("Can't restore state while timer running");
+        if (state == DebateTimerState.RUNNING)
+            throw new IllegalArgumentException("Can't restore to running, use start() instead");
+
+        mCurrentTime = seconds;
+        mState = state;
+        mCurrentPeriodInfo = periodInfo;
     }
 
     //******************************************************************************************
@@ -363,8 +451,11 @@ public class DebatePhaseManager extends DebateElementManager {
         // affects the background colour) and reading the PeriodInfo for the screen flash.
         // (The screen flash will be on a different thread to this function, which is on a
         // TimerTask.)
-        mCurrentPeriodInfo.update(bi.getNextPeriodInfo());
+        mCurrentPeriodInfo = mCurrentPeriodInfo.updatedWith(bi.getNextPeriodInfo());
         mAlertManager.triggerAlert(bi.getBellSoundInfo());
+
+        if (mBellListener != null)
+            mBellListener.onBell(mCurrentTime, bi.isPauseOnBell());
     }
 
     /**
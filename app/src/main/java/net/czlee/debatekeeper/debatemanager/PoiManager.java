@@ -85,9 +85,18 @@ public class PoiManager extends DebateElementManager {
      */
     @Override
     public void start() {
+        startFrom(mPoiLength);
+    }
+
+    /**
+     * Starts a POI timer with the given time left, e.g. to resume one that was running before the
+     * process was killed.  If a POI timer is currently running, that is discarded.
+     * @param seconds the time left in seconds
+     */
+    void startFrom(long seconds) {
         if (mTimer != null)
             mTimer.cancel();
-        mCurrentTime = mPoiLength;
+        mCurrentTime = seconds;
         mTimer = new Timer();
         mTimer.scheduleAtFixedRate(new DecrementTimeTask(), TIMER_DELAY, TIMER_PERIOD);
         mState = PoiTimerState.RUNNING;
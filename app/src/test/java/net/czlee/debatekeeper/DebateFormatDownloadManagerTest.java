@@ -0,0 +1,344 @@
+/*
+ * Copyright (C) 2026 Chuan-Zheng Lee
+ *
+ * This file is part of the Debatekeeper app, which is licensed under the GNU
+ * General Public Licence version 3 (GPLv3).  You can redistribute and/or modify
+ * it under the terms of the GPLv3, and you must not use this file except in
+ * compliance with the GPLv3.
+ *
+ * This app is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE.  See the GNU General Public Licence for more details.
+ *
+ * You should have received a copy of the GNU General Public Licence along with
+ * this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.czlee.debatekeeper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.robolectric.Shadows.shadowOf;
+
+import android.content.Context;
+import android.os.Looper;
+
+import androidx.preference.PreferenceManager;
+import androidx.test.core.app.ApplicationProvider;
+
+import net.czlee.debatekeeper.DebateFormatDownloadManager.DownloadableFormatEntry;
+import net.czlee.debatekeeper.DebateFormatDownloadManager.DownloadableFormatEntry.DownloadState;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Runs {@link DebateFormatDownloadManager} end to end against a {@link StandInFormatServer}:
+ * downloading the list, then format files, with the server slowed down, throttled or failing.
+ * The download tests report the median and tail latencies of the downloads, and the throughput.
+ * Other tests check that the list and files aren't downloaded again if they haven't changed, and
+ * that the list from last time is shown if the server can't be reached.
+ *
+ * @author Chuan-Zheng Lee
+ * @since 2026-10-19
+ */
+@RunWith(RobolectricTestRunner.class)
+public class DebateFormatDownloadManagerTest {
+
+    private static final long TIMEOUT_MILLIS = 60000;
+
+    private Context mContext;
+    private StandInFormatServer mServer;
+    private RecordingListener mListener;
+    private DebateFormatDownloadManager mManager;
+
+    /**
+     * Records what the manager says, and when each download finishes.
+     */
+    private static class RecordingListener implements DebateFormatDownloadManager.DownloadListener {
+        int itemsReplacedCount = 0;
+        int entriesChangedCount = 0;
+        final ArrayList<String> listErrors = new ArrayList<>();
+        final ArrayList<String> cachedListErrors = new ArrayList<>();
+        final HashMap<String, String> fileErrors = new HashMap<>();
+        final HashMap<String, Long> finishTimes = new HashMap<>();  // by filename, in System.nanoTime()
+        int updateAllSucceeded = -1;
+        int updateAllTotal = -1;
+
+        @Override
+        public void notifyAdapterItemsReplaced() {
+            itemsReplacedCount++;
+        }
+
+        @Override
+        public void notifyEntriesChanged() {
+            entriesChangedCount++;
+        }
+
+        @Override
+        public void notifyListDownloadError(String detailMessage) {
+            listErrors.add(detailMessage);
+        }
+
+        @Override
+        public void notifyJsonParseError(String detailMessage) {
+            listErrors.add(detailMessage);
+        }
+
+        @Override
+        public void notifyCachedListNotRefreshed(String detailMessage) {
+            cachedListErrors.add(detailMessage);
+        }
+
+        @Override
+        public void showSnackbarError(String filename, String detailMessage) {
+            fileErrors.put(filename, detailMessage);
+        }
+
+        @Override
+        public void notifyEntryChanged(DownloadableFormatEntry entry) {
+            if (entry.state != DownloadState.DOWNLOAD_IN_PROGRESS)
+                finishTimes.put(entry.filename, System.nanoTime());
+        }
+
+        @Override
+        public void notifyUpdateAllProgress(int finished, int total) {
+        }
+
+        @Override
+        public void notifyUpdateAllFinished(int succeeded, int total, boolean cancelled) {
+            updateAllSucceeded = succeeded;
+            updateAllTotal = total;
+        }
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        FormatXmlFilesManager.resetInstance();
+        mContext = ApplicationProvider.getApplicationContext();
+        mServer = new StandInFormatServer();
+        PreferenceManager.getDefaultSharedPreferences(mContext).edit()
+                .putString(DownloadFormatsFragment.PREFERENCE_DOWNLOAD_LIST_URL,
+                        mServer.getUrl(StandInFormatServer.LIST_PATH).toString())
+                .commit();
+        mListener = new RecordingListener();
+        mManager = new DebateFormatDownloadManager(mContext, mListener);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mManager.shutdown();
+        mServer.close();
+    }
+
+    @Test
+    public void downloadListThenFiles() {
+        List<String> filenames = mServer.putFormats(200, 1);
+        long delayMillis = 20;
+        mServer.setDelayMillis(delayMillis);
+        mServer.setBytesPerSecond(256 * 1024);
+
+        long listStart = System.nanoTime();
+        downloadList();
+        System.out.printf("List of %d formats: %.1f ms, %d batches shown while downloading%n",
+                filenames.size(), (System.nanoTime() - listStart) / 1e6, mListener.entriesChangedCount);
+
+        List<DownloadableFormatEntry> entries = mManager.getEntries();
+        assertEquals(filenames.size(), entries.size());
+        for (DownloadableFormatEntry entry : entries)
+            assertEquals(DownloadState.NOT_DOWNLOADED, entry.state);
+
+        long start = System.nanoTime();
+        LatencyStats stats = downloadFiles(new ArrayList<>(entries));
+        long elapsed = System.nanoTime() - start;
+        stats.report("Format files", elapsed);
+
+        assertTrue(mListener.fileErrors.isEmpty());
+        FormatXmlFilesManager filesManager = FormatXmlFilesManager.getInstance(mContext);
+        for (DownloadableFormatEntry entry : entries) {
+            assertEquals(DownloadState.DOWNLOADED, entry.state);
+            assertTrue(filesManager.exists(entry.filename));
+        }
+
+        // Every download waits for the server at least once, and no more than the per-host limit
+        // run at a time, which bounds both the latency and the throughput
+        assertTrue(stats.percentile(0) >= delayMillis * 1000000);
+        double filesPerSecond = stats.count() * 1e9 / elapsed;
+        assertTrue(filesPerSecond <= FormatDownloadScheduler.MAX_DOWNLOADS_PER_HOST * 1000.0 / delayMillis);
+    }
+
+    @Test
+    public void failedDownloadsAreRetried() {
+        List<String> filenames = mServer.putFormats(20, 1);
+        mServer.setDelayMillis(5);
+        mServer.failNext(StandInFormatServer.FILES_PATH + filenames.get(0), 1, StandInFormatServer.Failure.SERVER_ERROR);
+        mServer.failNext(StandInFormatServer.FILES_PATH + filenames.get(1), 2, StandInFormatServer.Failure.DROP_CONNECTION);
+        mServer.failNext(StandInFormatServer.FILES_PATH + filenames.get(2), FormatDownloadScheduler.MAX_ATTEMPTS,
+                StandInFormatServer.Failure.SERVER_ERROR);
+
+        downloadList();
+        long start = System.nanoTime();
+        LatencyStats stats = downloadFiles(new ArrayList<>(mManager.getEntries()));
+        stats.report("Format files with failures", System.nanoTime() - start);
+
+        assertEquals(DownloadState.DOWNLOADED, findEntry(filenames.get(0)).state);
+        assertEquals(2, mServer.getRequestCount(StandInFormatServer.FILES_PATH + filenames.get(0)));
+        assertEquals(DownloadState.DOWNLOADED, findEntry(filenames.get(1)).state);
+        assertEquals(3, mServer.getRequestCount(StandInFormatServer.FILES_PATH + filenames.get(1)));
+
+        // The third gives up after the last attempt, and the user is told
+        assertEquals(DownloadState.NOT_DOWNLOADED, findEntry(filenames.get(2)).state);
+        assertEquals(FormatDownloadScheduler.MAX_ATTEMPTS,
+                mServer.getRequestCount(StandInFormatServer.FILES_PATH + filenames.get(2)));
+        assertEquals(1, mListener.fileErrors.size());
+        assertTrue(mListener.fileErrors.containsKey(filenames.get(2)));
+
+        for (String filename : filenames.subList(3, filenames.size()))
+            assertEquals(DownloadState.DOWNLOADED, findEntry(filename).state);
+    }
+
+    @Test
+    public void updateAll() {
+        List<String> filenames = mServer.putFormats(50, 1);
+        downloadList();
+        downloadFiles(new ArrayList<>(mManager.getEntries()));
+
+        // A new version of everything: the list from last time is shown first, then replaced
+        mServer.putFormats(filenames.size(), 2);
+        mServer.setDelayMillis(10);
+        mServer.setBytesPerSecond(64 * 1024);
+        int replacedBefore = mListener.itemsReplacedCount;
+        mManager.startDownloadList();
+        waitUntil(() -> mListener.itemsReplacedCount >= replacedBefore + 2 || !mListener.cachedListErrors.isEmpty());
+        assertTrue(mListener.cachedListErrors.isEmpty());
+        for (DownloadableFormatEntry entry : mManager.getEntries())
+            assertEquals(DownloadState.UPDATE_AVAILABLE, entry.state);
+
+        mListener.finishTimes.clear();
+        long start = System.nanoTime();
+        mManager.startUpdateAll();
+        assertTrue(mManager.isUpdatingAll());
+        waitUntil(() -> mListener.updateAllTotal >= 0);
+        long elapsed = System.nanoTime() - start;
+
+        LatencyStats stats = new LatencyStats();
+        for (long finishTime : mListener.finishTimes.values())
+            stats.add(finishTime - start);
+        stats.report("Update all", elapsed);
+
+        assertEquals(filenames.size(), mListener.updateAllTotal);
+        assertEquals(filenames.size(), mListener.updateAllSucceeded);
+        assertEquals(filenames.size(), stats.count());
+        for (DownloadableFormatEntry entry : mManager.getEntries())
+            assertEquals(DownloadState.DOWNLOADED, entry.state);
+    }
+
+    @Test
+    public void unchangedListIsNotDownloadedAgain() {
+        mServer.putFormats(30, 1);
+        downloadList();
+        assertEquals(0, mServer.getNotModifiedCount());
+
+        // The list from last time is shown, and the server says it's still current
+        int replacedBefore = mListener.itemsReplacedCount;
+        mManager.startDownloadList();
+        waitUntil(() -> mServer.getNotModifiedCount() == 1 && mListener.itemsReplacedCount > replacedBefore);
+        assertEquals(30, mManager.getEntries().size());
+        assertTrue(mListener.cachedListErrors.isEmpty());
+        assertEquals(2, mServer.getRequestCount(StandInFormatServer.LIST_PATH));
+    }
+
+    @Test
+    public void listFromLastTimeIsShownWhenOffline() throws Exception {
+        mServer.putFormats(30, 1);
+        downloadList();
+        mServer.close();
+
+        mManager.shutdown();
+        mListener = new RecordingListener();
+        mManager = new DebateFormatDownloadManager(mContext, mListener);
+        mManager.startDownloadList();
+        waitUntil(() -> !mListener.cachedListErrors.isEmpty() || !mListener.listErrors.isEmpty());
+
+        assertTrue(mListener.listErrors.isEmpty());
+        assertEquals(1, mListener.itemsReplacedCount);
+        assertEquals(30, mManager.getEntries().size());
+    }
+
+    @Test
+    public void unchangedFileIsNotDownloadedAgain() {
+        List<String> filenames = mServer.putFormats(1, 1);
+        downloadList();
+        downloadFiles(new ArrayList<>(mManager.getEntries()));
+        assertEquals(DownloadState.DOWNLOADED, findEntry(filenames.get(0)).state);
+
+        downloadFiles(new ArrayList<>(mManager.getEntries()));
+        assertEquals(DownloadState.DOWNLOADED, findEntry(filenames.get(0)).state);
+        assertEquals(1, mServer.getNotModifiedCount());
+        assertTrue(mListener.fileErrors.isEmpty());
+    }
+
+    //******************************************************************************************
+    // Private methods
+    //******************************************************************************************
+
+    private void downloadList() {
+        int replacedBefore = mListener.itemsReplacedCount;
+        mManager.startDownloadList();
+        waitUntil(() -> mListener.itemsReplacedCount > replacedBefore || !mListener.listErrors.isEmpty());
+        assertTrue(mListener.listErrors.toString(), mListener.listErrors.isEmpty());
+    }
+
+    /**
+     * Starts downloading all of the given entries at once, and waits for them all to finish.
+     *
+     * @return the time each took, from when it was requested
+     */
+    private LatencyStats downloadFiles(List<DownloadableFormatEntry> entries) {
+        HashMap<String, Long> startTimes = new HashMap<>();
+        for (DownloadableFormatEntry entry : entries) {
+            mListener.finishTimes.remove(entry.filename);
+            startTimes.put(entry.filename, System.nanoTime());
+            mManager.startDownloadFile(entry);
+        }
+        waitUntil(() -> mListener.finishTimes.keySet().containsAll(startTimes.keySet()));
+
+        LatencyStats stats = new LatencyStats();
+        for (String filename : startTimes.keySet())
+            stats.add(mListener.finishTimes.get(filename) - startTimes.get(filename));
+        return stats;
+    }
+
+    private DownloadableFormatEntry findEntry(String filename) {
+        for (DownloadableFormatEntry entry : mManager.getEntries())
+            if (entry.filename.equals(filename)) return entry;
+        throw new AssertionError("No entry for " + filename);
+    }
+
+    /**
+     * Runs the main looper until the condition is true, since that's where the manager reports.
+     */
+    private static void waitUntil(BooleanSupplier condition) {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (true) {
+            shadowOf(Looper.getMainLooper()).idle();
+            if (condition.getAsBoolean()) return;
+            if (System.currentTimeMillis() > deadline) fail("Timed out");
+            try {
+                Thread.sleep(2);
+            } catch (InterruptedException e) {
+                throw new AssertionError(e);
+            }
+        }
+    }
+
+}
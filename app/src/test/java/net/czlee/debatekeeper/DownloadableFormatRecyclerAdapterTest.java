@@ -0,0 +1,259 @@
+/*
+ * Copyright (C) 2026 Chuan-Zheng Lee
+ *
+ * This file is part of the Debatekeeper app, which is licensed under the GNU
+ * General Public Licence version 3 (GPLv3).  You can redistribute and/or modify
+ * it under the terms of the GPLv3, and you must not use this file except in
+ * compliance with the GPLv3.
+ *
+ * This app is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE.  See the GNU General Public Licence for more details.
+ *
+ * You should have received a copy of the GNU General Public Licence along with
+ * this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.czlee.debatekeeper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.robolectric.Shadows.shadowOf;
+
+import android.os.Looper;
+
+import androidx.annotation.Nullable;
+import androidx.recyclerview.widget.RecyclerView;
+
+import net.czlee.debatekeeper.DebateFormatDownloadManager.DownloadableFormatEntry;
+import net.czlee.debatekeeper.DebateFormatDownloadManager.DownloadableFormatEntry.DownloadState;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Tests that {@link DownloadableFormatRecyclerAdapter} only updates the rows that changed when a
+ * new list of entries is submitted, and times how long it takes a list of 2,000 entries to be
+ * compared and the updates to be dispatched.
+ *
+ * @author Chuan-Zheng Lee
+ * @since 2026-10-19
+ */
+@RunWith(RobolectricTestRunner.class)
+public class DownloadableFormatRecyclerAdapterTest {
+
+    private static final int LARGE_LIST_SIZE = 2000;
+    private static final int REFRESHES = 50;
+    private static final long TIMEOUT_MILLIS = 10000;
+
+    private DownloadableFormatRecyclerAdapter mAdapter;
+    private CountingObserver mObserver;
+
+    /**
+     * Counts the rows each kind of update touches.  A changed row is rebound; inserted, removed
+     * and moved rows are counted separately.
+     */
+    private static class CountingObserver extends RecyclerView.AdapterDataObserver {
+        int changed = 0;
+        int inserted = 0;
+        int removed = 0;
+        int moved = 0;
+        int reloads = 0;
+
+        @Override
+        public void onChanged() {
+            reloads++;
+        }
+
+        @Override
+        public void onItemRangeChanged(int positionStart, int itemCount) {
+            changed += itemCount;
+        }
+
+        @Override
+        public void onItemRangeChanged(int positionStart, int itemCount, @Nullable Object payload) {
+            changed += itemCount;
+        }
+
+        @Override
+        public void onItemRangeInserted(int positionStart, int itemCount) {
+            inserted += itemCount;
+        }
+
+        @Override
+        public void onItemRangeRemoved(int positionStart, int itemCount) {
+            removed += itemCount;
+        }
+
+        @Override
+        public void onItemRangeMoved(int fromPosition, int toPosition, int itemCount) {
+            moved += itemCount;
+        }
+
+        void reset() {
+            changed = inserted = removed = moved = reloads = 0;
+        }
+    }
+
+    @Before
+    public void setUp() {
+        mAdapter = new DownloadableFormatRecyclerAdapter(null);
+        mObserver = new CountingObserver();
+        mAdapter.registerAdapterDataObserver(mObserver);
+    }
+
+    @Test
+    public void firstListIsInserted() {
+        submitAndWait(buildEntries(LARGE_LIST_SIZE));
+        assertEquals(LARGE_LIST_SIZE, mAdapter.getItemCount());
+        assertEquals(LARGE_LIST_SIZE, mObserver.inserted);
+        assertEquals(0, mObserver.changed);
+    }
+
+    @Test
+    public void unchangedListUpdatesNothing() {
+        submitAndWait(buildEntries(LARGE_LIST_SIZE));
+        mObserver.reset();
+
+        submitAndWait(buildEntries(LARGE_LIST_SIZE));
+        assertCounts(0, 0, 0);
+        assertEquals(0, mObserver.reloads);
+    }
+
+    @Test
+    public void changedEntriesAreTheOnlyOnesUpdated() {
+        submitAndWait(buildEntries(LARGE_LIST_SIZE));
+        mObserver.reset();
+
+        List<DownloadableFormatEntry> entries = buildEntries(LARGE_LIST_SIZE);
+        entries.get(10).state = DownloadState.DOWNLOADED;
+        entries.get(500).version = 2;
+        entries.get(1999).expanded = true;
+        submitAndWait(entries);
+        assertCounts(3, 0, 0);
+    }
+
+    @Test
+    public void insertedAndRemovedEntriesAreNotRebound() {
+        submitAndWait(buildEntries(LARGE_LIST_SIZE));
+        mObserver.reset();
+
+        List<DownloadableFormatEntry> entries = buildEntries(LARGE_LIST_SIZE + 1);
+        entries.remove(0);
+        submitAndWait(entries);
+        assertCounts(0, 1, 1);
+        assertEquals(LARGE_LIST_SIZE, mAdapter.getItemCount());
+    }
+
+    /**
+     * Submits a list of 2,000 entries over and over, either unchanged or with a few entries
+     * changed, and times how long each takes from being submitted to its updates being dispatched
+     * on the main thread.  Also counts the rows rebound, which was the whole list before the
+     * adapter compared lists.
+     */
+    @Test
+    public void refreshLargeList() {
+        submitAndWait(buildEntries(LARGE_LIST_SIZE));
+
+        LatencyStats unchanged = new LatencyStats();
+        LatencyStats fewChanged = new LatencyStats();
+        long unchangedTotal = 0, fewChangedTotal = 0;
+        int unchangedRebinds = 0, fewChangedRebinds = 0;
+
+        for (int i = 0; i < REFRESHES; i++) {
+            List<DownloadableFormatEntry> entries = buildEntries(LARGE_LIST_SIZE);
+            mObserver.reset();
+            long elapsed = submitAndWait(entries);
+            unchanged.add(elapsed);
+            unchangedTotal += elapsed;
+            unchangedRebinds += mObserver.changed;
+
+            entries = buildEntries(LARGE_LIST_SIZE);
+            for (int j = i % 100; j < LARGE_LIST_SIZE; j += 100)
+                entries.get(j).state = DownloadState.DOWNLOADED;
+            mObserver.reset();
+            elapsed = submitAndWait(entries);
+            fewChanged.add(elapsed);
+            fewChangedTotal += elapsed;
+            fewChangedRebinds += mObserver.changed;
+
+            // Put the list back as it was for the next round
+            submitAndWait(buildEntries(LARGE_LIST_SIZE));
+        }
+
+        unchanged.report("Refresh " + LARGE_LIST_SIZE + " entries, none changed", unchangedTotal);
+        fewChanged.report("Refresh " + LARGE_LIST_SIZE + " entries, 1% changed", fewChangedTotal);
+        System.out.printf(Locale.ROOT, "Rows rebound per refresh: %d with none changed, %d with 1%% changed, "
+                        + "%d if the whole list were rebound%n", unchangedRebinds / REFRESHES,
+                fewChangedRebinds / REFRESHES, LARGE_LIST_SIZE);
+        assertEquals(0, unchangedRebinds);
+        assertEquals(REFRESHES * LARGE_LIST_SIZE / 100, fewChangedRebinds);
+    }
+
+    //******************************************************************************************
+    // Private methods
+    //******************************************************************************************
+
+    /**
+     * @return new entries that are all the same as the last time this was called with the same
+     * count, sorted by name as the download manager sorts them
+     */
+    private static List<DownloadableFormatEntry> buildEntries(int count) {
+        ArrayList<DownloadableFormatEntry> entries = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            DownloadableFormatEntry entry = new DownloadableFormatEntry();
+            entry.filename = String.format(Locale.ROOT, "format-%04d.xml", i);
+            entry.url = "https://example.com/formats/" + entry.filename;
+            entry.name = String.format(Locale.ROOT, "Format %04d", i);
+            entry.version = 1;
+            entry.regions = new String[]{"Region " + (i % 7)};
+            entry.levels = new String[]{"University"};
+            entry.usedAts = new String[]{"Tournament " + i};
+            entry.description = "Generated for testing";
+            entries.add(entry);
+        }
+        Collections.sort(entries);
+        return entries;
+    }
+
+    private void assertCounts(int changed, int inserted, int removed) {
+        assertEquals("changed", changed, mObserver.changed);
+        assertEquals("inserted", inserted, mObserver.inserted);
+        assertEquals("removed", removed, mObserver.removed);
+        assertEquals("moved", 0, mObserver.moved);
+    }
+
+    /**
+     * Submits the entries and runs the main looper until the adapter says it's committed them.
+     * The lists are compared on a background thread, so this polls, which adds up to about a
+     * millisecond to the time.
+     *
+     * @return the time from submitting the entries to their updates being dispatched, in
+     * nanoseconds
+     */
+    private long submitAndWait(List<DownloadableFormatEntry> entries) {
+        final long[] committedAt = {0};
+        long start = System.nanoTime();
+        mAdapter.submitEntries(entries, () -> committedAt[0] = System.nanoTime());
+
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (true) {
+            shadowOf(Looper.getMainLooper()).idle();
+            if (committedAt[0] != 0) return committedAt[0] - start;
+            if (System.currentTimeMillis() > deadline) fail("Timed out");
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException e) {
+                throw new AssertionError(e);
+            }
+        }
+    }
+
+}
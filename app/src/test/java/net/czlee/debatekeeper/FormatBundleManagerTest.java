@@ -0,0 +1,223 @@
+/*
+ * Copyright (C) 2026 Chuan-Zheng Lee
+ *
+ * This file is part of the Debatekeeper app, which is licensed under the GNU
+ * General Public Licence version 3 (GPLv3).  You can redistribute and/or modify
+ * it under the terms of the GPLv3, and you must not use this file except in
+ * compliance with the GPLv3.
+ *
+ * This app is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE.  See the GNU General Public Licence for more details.
+ *
+ * You should have received a copy of the GNU General Public Licence along with
+ * this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.czlee.debatekeeper;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import android.content.Context;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Tests {@link FormatBundleManager}: a bundle is imported all or nothing, files already here under
+ * other names are skipped, and what's exported can be imported again.  Also times importing and
+ * exporting a bundle of 1,000 files.
+ *
+ * @author Chuan-Zheng Lee
+ * @since 2026-10-19
+ */
+@RunWith(RobolectricTestRunner.class)
+public class FormatBundleManagerTest {
+
+    private static final int LARGE_BUNDLE_SIZE = 1000;
+    private static final int LARGE_BUNDLE_RUNS = 3;
+
+    private FormatXmlFilesManager mFilesManager;
+    private FormatBundleManager mBundleManager;
+
+    @Before
+    public void setUp() throws Exception {
+        FormatXmlFilesManager.resetInstance();
+        Context context = ApplicationProvider.getApplicationContext();
+        mFilesManager = FormatXmlFilesManager.getInstance(context);
+        for (String filename : mFilesManager.list())
+            mFilesManager.delete(filename);
+        mBundleManager = new FormatBundleManager(context);
+    }
+
+    @Test
+    public void bundleIsImported() throws IOException {
+        Map<String, byte[]> files = buildFiles(10);
+        FormatBundleManager.ImportResult result = mBundleManager.importFrom(zip(files));
+
+        assertTrue(result.isSuccess());
+        assertEquals(10, result.fileCount);
+        assertEquals(0, result.duplicateCount);
+        for (Map.Entry<String, byte[]> file : files.entrySet())
+            assertArrayEquals(file.getValue(), read(file.getKey()));
+    }
+
+    @Test
+    public void invalidFileImportsNothing() throws IOException {
+        Map<String, byte[]> files = buildFiles(10);
+        files.put("broken.xml", "<debate-format schema-version=\"2.2\"><name>Broken".getBytes(StandardCharsets.UTF_8));
+        FormatBundleManager.ImportResult result = mBundleManager.importFrom(zip(files));
+
+        assertFalse(result.isSuccess());
+        assertNull(result.error);
+        assertEquals(Collections.singletonList("broken.xml"), result.invalidFilenames);
+        assertEquals(0, mFilesManager.list().length);
+    }
+
+    @Test
+    public void existingFileIsOverwritten() throws IOException {
+        byte[] old = StandInFormatServer.buildFormatXml("Old", 1, 0).getBytes(StandardCharsets.UTF_8);
+        mFilesManager.copy(new ByteArrayInputStream(old), "format-000.xml");
+
+        Map<String, byte[]> files = buildFiles(3);
+        assertTrue(mBundleManager.importFrom(zip(files)).isSuccess());
+        assertArrayEquals(files.get("format-000.xml"), read("format-000.xml"));
+    }
+
+    @Test
+    public void fileAlreadyHereUnderAnotherNameIsSkipped() throws IOException {
+        Map<String, byte[]> files = buildFiles(3);
+        mFilesManager.copy(new ByteArrayInputStream(files.get("format-001.xml")), "mine.xml");
+
+        FormatBundleManager.ImportResult result = mBundleManager.importFrom(zip(files));
+        assertTrue(result.isSuccess());
+        assertEquals(2, result.fileCount);
+        assertEquals(1, result.duplicateCount);
+        assertFalse(mFilesManager.exists("format-001.xml"));
+        assertTrue(mFilesManager.exists("mine.xml"));
+    }
+
+    @Test
+    public void exportedBundleCanBeImported() throws IOException {
+        Map<String, byte[]> files = buildFiles(5);
+        assertTrue(mBundleManager.importFrom(zip(files)).isSuccess());
+
+        ByteArrayOutputStream bundle = new ByteArrayOutputStream();
+        assertEquals(5, mBundleManager.exportTo(bundle));
+        for (String filename : mFilesManager.list())
+            mFilesManager.delete(filename);
+
+        FormatBundleManager.ImportResult result = mBundleManager.importFrom(new ByteArrayInputStream(bundle.toByteArray()));
+        assertTrue(result.isSuccess());
+        assertEquals(5, result.fileCount);
+        for (Map.Entry<String, byte[]> file : files.entrySet())
+            assertArrayEquals(file.getValue(), read(file.getKey()));
+    }
+
+    /**
+     * Imports a bundle of 1,000 files into an empty directory, then exports them all, a few times
+     * over, and times each import and export.
+     */
+    @Test
+    public void importAndExportLargeBundle() throws IOException {
+        Map<String, byte[]> files = buildFiles(LARGE_BUNDLE_SIZE);
+        byte[] bundle = zipBytes(files);
+        System.out.printf("Bundle of %d files: %d bytes%n", LARGE_BUNDLE_SIZE, bundle.length);
+
+        LatencyStats imports = new LatencyStats();
+        LatencyStats exports = new LatencyStats();
+        long importTotal = 0, exportTotal = 0;
+
+        for (int run = 0; run < LARGE_BUNDLE_RUNS; run++) {
+            for (String filename : mFilesManager.list())
+                mFilesManager.delete(filename);
+
+            long start = System.nanoTime();
+            FormatBundleManager.ImportResult result = mBundleManager.importFrom(new ByteArrayInputStream(bundle));
+            long elapsed = System.nanoTime() - start;
+            imports.add(elapsed);
+            importTotal += elapsed;
+            assertTrue(result.isSuccess());
+            assertEquals(LARGE_BUNDLE_SIZE, result.fileCount);
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream(bundle.length);
+            start = System.nanoTime();
+            int exported = mBundleManager.exportTo(out);
+            elapsed = System.nanoTime() - start;
+            exports.add(elapsed);
+            exportTotal += elapsed;
+            assertEquals(LARGE_BUNDLE_SIZE, exported);
+        }
+
+        imports.report("Import " + LARGE_BUNDLE_SIZE + "-file bundle", importTotal);
+        exports.report("Export " + LARGE_BUNDLE_SIZE + "-file bundle", exportTotal);
+        System.out.printf(Locale.ROOT, "Import: %.0f files/s at the median%n",
+                LARGE_BUNDLE_SIZE * 1e9 / imports.percentile(50));
+        assertEquals(LARGE_BUNDLE_SIZE, mFilesManager.list().length);
+    }
+
+    //******************************************************************************************
+    // Private methods
+    //******************************************************************************************
+
+    /**
+     * @return valid, distinct format files named format-000.xml, format-001.xml and so on, in order
+     */
+    private static Map<String, byte[]> buildFiles(int count) {
+        LinkedHashMap<String, byte[]> files = new LinkedHashMap<>();
+        for (int i = 0; i < count; i++) {
+            String filename = String.format(Locale.ROOT, "format-%03d.xml", i);
+            String name = String.format(Locale.ROOT, "Bundled format %03d", i);
+            files.put(filename, StandInFormatServer.buildFormatXml(name, 1, i).getBytes(StandardCharsets.UTF_8));
+        }
+        return files;
+    }
+
+    private static InputStream zip(Map<String, byte[]> files) throws IOException {
+        return new ByteArrayInputStream(zipBytes(files));
+    }
+
+    private static byte[] zipBytes(Map<String, byte[]> files) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ZipOutputStream zipOut = new ZipOutputStream(out)) {
+            for (Map.Entry<String, byte[]> file : files.entrySet()) {
+                zipOut.putNextEntry(new ZipEntry(file.getKey()));
+                zipOut.write(file.getValue());
+                zipOut.closeEntry();
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private byte[] read(String filename) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (InputStream in = mFilesManager.open(filename)) {
+            byte[] buffer = new byte[4096];
+            int n;
+            while ((n = in.read(buffer)) >= 0)
+                out.write(buffer, 0, n);
+        }
+        return out.toByteArray();
+    }
+
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright (C) 2026 Chuan-Zheng Lee
+ *
+ * This file is part of the Debatekeeper app, which is licensed under the GNU
+ * General Public Licence version 3 (GPLv3).  You can redistribute and/or modify
+ * it under the terms of the GPLv3, and you must not use this file except in
+ * compliance with the GPLv3.
+ *
+ * This app is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE.  See the GNU General Public Licence for more details.
+ *
+ * You should have received a copy of the GNU General Public Licence along with
+ * this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.czlee.debatekeeper;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Tests {@link FormatsHttpCache} against a {@link StandInFormatServer}: a "304 Not Modified" keeps
+ * what's cached, a "200 OK" replaces it, and what's cached is still there when the server isn't.
+ *
+ * @author Chuan-Zheng Lee
+ * @since 2026-10-19
+ */
+@RunWith(RobolectricTestRunner.class)
+public class FormatsHttpCacheTest {
+
+    private static final String PATH = "/list.json";
+    private static final byte[] FIRST_BODY = "{\"formats\": []}".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] SECOND_BODY = "{\"formats\": [], \"new\": true}".getBytes(StandardCharsets.UTF_8);
+
+    private StandInFormatServer mServer;
+    private FormatsHttpCache mCache;
+    private URL mUrl;
+
+    @Before
+    public void setUp() throws Exception {
+        mServer = new StandInFormatServer();
+        mServer.put(PATH, FIRST_BODY, "application/json");
+        mUrl = mServer.getUrl(PATH);
+        File directory = new File(ApplicationProvider.getApplicationContext().getCacheDir(), "formats-http-test");
+        mCache = new FormatsHttpCache(directory);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mServer.close();
+    }
+
+    @Test
+    public void firstResponseIsCached() throws IOException {
+        assertNull(mCache.lookup(mUrl));
+        assertArrayEquals(FIRST_BODY, fetch(null));
+
+        FormatsHttpCache.Entry cached = mCache.lookup(mUrl);
+        assertNotNull(cached);
+        assertNotNull(cached.etag);
+        assertNotNull(cached.lastModified);
+        assertNotNull(cached.body);
+        assertArrayEquals(FIRST_BODY, readFile(cached.body));
+    }
+
+    @Test
+    public void notModifiedKeepsCache() throws IOException {
+        fetch(null);
+        FormatsHttpCache.Entry cached = mCache.lookup(mUrl);
+
+        URLConnection connection = mCache.openConditional(mUrl, cached);
+        assertTrue(FormatsHttpCache.isNotModified(connection));
+        assertEquals(1, mServer.getNotModifiedCount());
+
+        FormatsHttpCache.Entry after = mCache.lookup(mUrl);
+        assertNotNull(after);
+        assertEquals(cached.etag, after.etag);
+        assertArrayEquals(FIRST_BODY, readFile(after.body));
+    }
+
+    @Test
+    public void changedResponseReplacesCache() throws IOException {
+        fetch(null);
+        FormatsHttpCache.Entry cached = mCache.lookup(mUrl);
+
+        mServer.put(PATH, SECOND_BODY, "application/json");
+        assertArrayEquals(SECOND_BODY, fetch(cached));
+        assertEquals(0, mServer.getNotModifiedCount());
+
+        FormatsHttpCache.Entry after = mCache.lookup(mUrl);
+        assertNotNull(after);
+        assertNotEquals(cached.etag, after.etag);
+        assertArrayEquals(SECOND_BODY, readFile(after.body));
+    }
+
+    @Test
+    public void uncommittedResponseLeavesCache() throws IOException {
+        fetch(null);
+        FormatsHttpCache.Entry cached = mCache.lookup(mUrl);
+
+        // Like a download that fails part way through: the stream is closed without committing
+        mServer.put(PATH, SECOND_BODY, "application/json");
+        URLConnection connection = mCache.openConditional(mUrl, cached);
+        assertFalse(FormatsHttpCache.isNotModified(connection));
+        try (FormatsHttpCache.Recorder recorder = mCache.record(mUrl, connection)) {
+            assertTrue(recorder.read() >= 0);
+        }
+
+        FormatsHttpCache.Entry after = mCache.lookup(mUrl);
+        assertNotNull(after);
+        assertEquals(cached.etag, after.etag);
+        assertArrayEquals(FIRST_BODY, readFile(after.body));
+    }
+
+    @Test
+    public void offlineFallsBackToCache() throws IOException {
+        fetch(null);
+        FormatsHttpCache.Entry cached = mCache.lookup(mUrl);
+        mServer.close();
+
+        assertThrows(IOException.class, () -> FormatsHttpCache.isNotModified(mCache.openConditional(mUrl, cached)));
+
+        FormatsHttpCache.Entry after = mCache.lookup(mUrl);
+        assertNotNull(after);
+        assertArrayEquals(FIRST_BODY, readFile(after.body));
+    }
+
+    @Test
+    public void validatorsOnlyEntryHasNoBody() throws IOException {
+        URLConnection connection = mCache.openConditional(mUrl, null);
+        readAll(connection.getInputStream());
+        mCache.putValidators(mUrl, connection, "0123abcd");
+
+        FormatsHttpCache.Entry cached = mCache.lookup(mUrl);
+        assertNotNull(cached);
+        assertEquals("0123abcd", cached.sha256);
+        assertNull(cached.body);
+        assertTrue(FormatsHttpCache.isNotModified(mCache.openConditional(mUrl, cached)));
+    }
+
+    //******************************************************************************************
+    // Private methods
+    //******************************************************************************************
+
+    /**
+     * Requests the URL the way {@link DebateFormatDownloadManager} requests the list, and returns
+     * the body, which should then be cached.
+     */
+    private byte[] fetch(FormatsHttpCache.Entry cached) throws IOException {
+        URLConnection connection = mCache.openConditional(mUrl, cached);
+        assertFalse(FormatsHttpCache.isNotModified(connection));
+        byte[] body;
+        try (FormatsHttpCache.Recorder recorder = mCache.record(mUrl, connection)) {
+            body = readAll(recorder);
+            recorder.commit();
+        }
+        return body;
+    }
+
+    private static byte[] readFile(File file) throws IOException {
+        try (InputStream in = new FileInputStream(file)) {
+            return readAll(in);
+        }
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int n;
+        while ((n = in.read(buffer)) >= 0)
+            out.write(buffer, 0, n);
+        return out.toByteArray();
+    }
+
+}
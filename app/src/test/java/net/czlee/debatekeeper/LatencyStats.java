@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2026 Chuan-Zheng Lee
+ *
+ * This file is part of the Debatekeeper app, which is licensed under the GNU
+ * General Public Licence version 3 (GPLv3).  You can redistribute and/or modify
+ * it under the terms of the GPLv3, and you must not use this file except in
+ * compliance with the GPLv3.
+ *
+ * This app is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE.  See the GNU General Public Licence for more details.
+ *
+ * You should have received a copy of the GNU General Public Licence along with
+ * this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.czlee.debatekeeper;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * LatencyStats collects timings from a test, and works out the percentiles and throughput that the
+ * test reports.  Timings are in nanoseconds, from {@link System#nanoTime()}.
+ *
+ * @author Chuan-Zheng Lee
+ * @since 2026-10-19
+ */
+public class LatencyStats {
+
+    private long[] mSamples = new long[64];
+    private int mCount = 0;
+    private boolean mSorted = true;
+
+    /**
+     * @param nanos a timing, in nanoseconds
+     */
+    public void add(long nanos) {
+        if (mCount == mSamples.length) mSamples = Arrays.copyOf(mSamples, mCount * 2);
+        mSamples[mCount++] = nanos;
+        mSorted = false;
+    }
+
+    public int count() {
+        return mCount;
+    }
+
+    /**
+     * @param percentile between 0 and 100
+     * @return the given percentile, in nanoseconds, using the nearest-rank method
+     */
+    public long percentile(double percentile) {
+        if (mCount == 0) throw new IllegalStateException("No samples");
+        if (!mSorted) {
+            Arrays.sort(mSamples, 0, mCount);
+            mSorted = true;
+        }
+        int rank = (int) Math.ceil(percentile / 100.0 * mCount);
+        return mSamples[Math.max(rank, 1) - 1];
+    }
+
+    public long max() {
+        return percentile(100);
+    }
+
+    /**
+     * @return the mean, in nanoseconds
+     */
+    public double mean() {
+        if (mCount == 0) throw new IllegalStateException("No samples");
+        double total = 0;
+        for (int i = 0; i < mCount; i++)
+            total += mSamples[i];
+        return total / mCount;
+    }
+
+    /**
+     * Formats the percentiles, and the throughput over the given time, and prints them so that they
+     * appear in the test report.
+     *
+     * @param label        what was timed
+     * @param elapsedNanos how long it all took, for working out the throughput
+     * @return the line that was printed
+     */
+    public String report(String label, long elapsedNanos) {
+        String line = String.format(Locale.ROOT,
+                "%s: %d in %.1f ms (%.1f/s); p50 %.2f ms, p95 %.2f ms, p99 %.2f ms, max %.2f ms",
+                label, mCount, elapsedNanos / 1e6, mCount * 1e9 / Math.max(elapsedNanos, 1),
+                percentile(50) / 1e6, percentile(95) / 1e6, percentile(99) / 1e6, max() / 1e6);
+        System.out.println(line);
+        return line;
+    }
+
+}
@@ -0,0 +1,421 @@
+/*
+ * Copyright (C) 2026 Chuan-Zheng Lee
+ *
+ * This file is part of the Debatekeeper app, which is licensed under the GNU
+ * General Public Licence version 3 (GPLv3).  You can redistribute and/or modify
+ * it under the terms of the GPLv3, and you must not use this file except in
+ * compliance with the GPLv3.
+ *
+ * This app is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE.  See the GNU General Public Licence for more details.
+ *
+ * You should have received a copy of the GNU General Public Licence along with
+ * this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.czlee.debatekeeper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.MalformedURLException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * StandInFormatServer is a small HTTP server, running in the test process, that stands in for the
+ * Debatekeeper formats server.  It serves a generated <code>formats.json</code> and format files,
+ * and can be made slow, throttled or unreliable, so that the downloader can be tested and timed
+ * without a network.
+ *
+ * <p>It understands just enough HTTP for {@link DebateFormatDownloadManager}: <code>GET</code>
+ * requests, with <code>If-None-Match</code> and <code>If-Modified-Since</code>.  Every response
+ * closes the connection.</p>
+ *
+ * @author Chuan-Zheng Lee
+ * @since 2026-10-19
+ */
+class StandInFormatServer implements Closeable {
+
+    static final String LIST_PATH = "/formats.json";
+    static final String FILES_PATH = "/files/";
+
+    private final ServerSocket mServerSocket;
+    private final ExecutorService mExecutor = Executors.newCachedThreadPool();
+    private final Map<String, Resource> mResources = new ConcurrentHashMap<>();
+    private final HashMap<String, ArrayDeque<Failure>> mFailures = new HashMap<>();  // guarded by this
+    private final HashMap<String, Integer> mRequestCounts = new HashMap<>();         // guarded by this
+    private final AtomicInteger mNotModifiedCount = new AtomicInteger();
+    private final AtomicInteger mResourceGeneration = new AtomicInteger();
+    private volatile long mDelayMillis = 0;
+    private volatile long mBytesPerSecond = 0;
+
+    //******************************************************************************************
+    // Public classes
+    //******************************************************************************************
+
+    /**
+     * Ways a request can be made to fail.
+     */
+    enum Failure {
+        /** Responds "503 Service Unavailable". */
+        SERVER_ERROR,
+        /** Sends the headers and half of the body, then closes the connection. */
+        DROP_CONNECTION
+    }
+
+    /**
+     * Passive data class holding something the server can send.
+     */
+    private static class Resource {
+        final byte[] body;
+        final String contentType;
+        final String etag;
+        final String lastModified;
+
+        Resource(byte[] body, String contentType, String etag, String lastModified) {
+            this.body = body;
+            this.contentType = contentType;
+            this.etag = etag;
+            this.lastModified = lastModified;
+        }
+    }
+
+    //******************************************************************************************
+    // Constructor
+    //******************************************************************************************
+
+    /**
+     * Starts a server listening on a free port on the loopback interface.
+     */
+    StandInFormatServer() throws IOException {
+        mServerSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        mExecutor.execute(this::acceptConnections);
+    }
+
+    //******************************************************************************************
+    // Package-private methods
+    //******************************************************************************************
+
+    /**
+     * @param path a path starting with "/"
+     * @return the URL of that path on this server
+     */
+    URL getUrl(String path) {
+        try {
+            return new URL("http", mServerSocket.getInetAddress().getHostAddress(),
+                    mServerSocket.getLocalPort(), path);
+        } catch (MalformedURLException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Serves something at a path, replacing anything that was there.  Each call gives the resource
+     * a new <code>ETag</code> and <code>Last-Modified</code>, unless the body is the same as before.
+     */
+    void put(String path, byte[] body, String contentType) {
+        String hash = sha256(body);
+        Resource old = mResources.get(path);
+        if (old != null && old.etag.equals("\"" + hash + "\"")) return;
+        String lastModified = String.format(Locale.ROOT, "Thu, 01 Jan 2026 00:%02d:%02d GMT",
+                mResourceGeneration.get() / 60 % 60, mResourceGeneration.getAndIncrement() % 60);
+        mResources.put(path, new Resource(body, contentType, "\"" + hash + "\"", lastModified));
+    }
+
+    /**
+     * Generates format files and a <code>formats.json</code> listing them, and serves them.  The
+     * files are named <code>format-000.xml</code>, <code>format-001.xml</code>, and so on.
+     *
+     * @param count   how many formats to generate
+     * @param version the version number to give every format; serving a higher version than
+     *                before makes the downloader offer updates
+     * @return the file names, in order
+     */
+    List<String> putFormats(int count, int version) {
+        ArrayList<String> filenames = new ArrayList<>(count);
+        StringBuilder json = new StringBuilder("{\"formats\": [\n");
+        for (int i = 0; i < count; i++) {
+            String filename = String.format(Locale.ROOT, "format-%03d.xml", i);
+            String name = String.format(Locale.ROOT, "Stand-in format %03d", i);
+            byte[] xml = buildFormatXml(name, version, i).getBytes(StandardCharsets.UTF_8);
+            put(FILES_PATH + filename, xml, "application/xml");
+            filenames.add(filename);
+
+            if (i > 0) json.append(",\n");
+            json.append("{\"filename\": \"").append(filename).append("\", ")
+                    .append("\"url\": \"").append(getUrl(FILES_PATH + filename)).append("\", ")
+                    .append("\"version\": ").append(version).append(", ")
+                    .append("\"sha256\": \"").append(sha256(xml)).append("\", ")
+                    .append("\"size\": ").append(xml.length).append(", ")
+                    .append("\"info\": {\"en\": {\"name\": \"").append(name).append("\", ")
+                    .append("\"regions\": [\"Region ").append(i % 7).append("\"], ")
+                    .append("\"levels\": [\"University\"], ")
+                    .append("\"used-ats\": [\"Tournament ").append(i).append("\"], ")
+                    .append("\"description\": \"Generated for testing\"}}}");
+        }
+        json.append("\n]}\n");
+        put(LIST_PATH, json.toString().getBytes(StandardCharsets.UTF_8), "application/json");
+        return filenames;
+    }
+
+    /**
+     * @param delayMillis how long to wait before responding to each request
+     */
+    void setDelayMillis(long delayMillis) {
+        mDelayMillis = delayMillis;
+    }
+
+    /**
+     * @param bytesPerSecond the rate at which to send each response body, or 0 for no limit
+     */
+    void setBytesPerSecond(long bytesPerSecond) {
+        mBytesPerSecond = bytesPerSecond;
+    }
+
+    /**
+     * Makes the next few requests for a path fail.
+     *
+     * @param path    the path
+     * @param times   how many requests should fail
+     * @param failure how they should fail
+     */
+    synchronized void failNext(String path, int times, Failure failure) {
+        ArrayDeque<Failure> failures = mFailures.get(path);
+        if (failures == null) {
+            failures = new ArrayDeque<>();
+            mFailures.put(path, failures);
+        }
+        for (int i = 0; i < times; i++)
+            failures.add(failure);
+    }
+
+    /**
+     * @return how many requests there have been for the path, including failed ones
+     */
+    synchronized int getRequestCount(String path) {
+        Integer count = mRequestCounts.get(path);
+        return (count == null) ? 0 : count;
+    }
+
+    /**
+     * @return how many "304 Not Modified" responses have been sent
+     */
+    int getNotModifiedCount() {
+        return mNotModifiedCount.get();
+    }
+
+    /**
+     * Stops the server.  Anything trying to connect after this is refused, as if it were offline.
+     */
+    @Override
+    public void close() throws IOException {
+        mServerSocket.close();
+        mExecutor.shutdownNow();
+        try {
+            mExecutor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return a small but complete format file
+     */
+    static String buildFormatXml(String name, int version, int seed) {
+        int speechMinutes = 4 + seed % 5;
+        return "<?xml version='1.0' encoding='UTF-8'?>\n"
+                + "<debate-format schema-version=\"2.2\">\n"
+                + "  <name>" + name + "</name>\n"
+                + "  <version>" + version + "</version>\n"
+                + "  <info>\n"
+                + "    <region>Region " + (seed % 7) + "</region>\n"
+                + "    <level>University</level>\n"
+                + "    <used-at>Tournament " + seed + "</used-at>\n"
+                + "    <description>Generated for testing</description>\n"
+                + "  </info>\n"
+                + "  <prep-time length=\"15:00\"/>\n"
+                + "  <speech-types>\n"
+                + "    <speech-type ref=\"constructive\" length=\"" + speechMinutes + ":00\" first-period=\"normal\">\n"
+                + "      <bell time=\"1:00\" number=\"1\" next-period=\"pois-allowed\"/>\n"
+                + "      <bell time=\"" + (speechMinutes - 1) + ":00\" number=\"1\" next-period=\"warning\"/>\n"
+                + "      <bell time=\"finish\" number=\"2\" next-period=\"overtime\"/>\n"
+                + "    </speech-type>\n"
+                + "  </speech-types>\n"
+                + "  <speeches>\n"
+                + "    <speech type=\"constructive\"><name>1st Affirmative</name></speech>\n"
+                + "    <speech type=\"constructive\"><name>1st Negative</name></speech>\n"
+                + "    <speech type=\"constructive\"><name>2nd Affirmative</name></speech>\n"
+                + "    <speech type=\"constructive\"><name>2nd Negative</name></speech>\n"
+                + "  </speeches>\n"
+                + "</debate-format>\n";
+    }
+
+    //******************************************************************************************
+    // Private methods
+    //******************************************************************************************
+
+    private void acceptConnections() {
+        while (!mServerSocket.isClosed()) {
+            Socket socket;
+            try {
+                socket = mServerSocket.accept();
+            } catch (IOException e) {
+                return;  // closed
+            }
+            mExecutor.execute(() -> {
+                try (Socket s = socket) {
+                    handle(s);
+                } catch (IOException e) {
+                    // the client went away, or the connection was dropped on purpose
+                }
+            });
+        }
+    }
+
+    private void handle(Socket socket) throws IOException {
+        InputStream in = socket.getInputStream();
+        OutputStream out = socket.getOutputStream();
+
+        String requestLine = readLine(in);
+        if (requestLine == null) return;
+        HashMap<String, String> headers = new HashMap<>();
+        String line;
+        while ((line = readLine(in)) != null && !line.isEmpty()) {
+            int colon = line.indexOf(':');
+            if (colon > 0)
+                headers.put(line.substring(0, colon).trim().toLowerCase(Locale.ROOT), line.substring(colon + 1).trim());
+        }
+
+        String[] parts = requestLine.split(" ");
+        String path = (parts.length >= 2) ? parts[1] : "";
+        Failure failure;
+        synchronized (this) {
+            Integer count = mRequestCounts.get(path);
+            mRequestCounts.put(path, (count == null) ? 1 : count + 1);
+            ArrayDeque<Failure> failures = mFailures.get(path);
+            failure = (failures != null) ? failures.poll() : null;
+        }
+
+        sleep(mDelayMillis);
+
+        if (!parts[0].equals("GET")) {
+            writeHead(out, "405 Method Not Allowed", null, 0);
+            return;
+        }
+        if (failure == Failure.SERVER_ERROR) {
+            writeHead(out, "503 Service Unavailable", null, 0);
+            return;
+        }
+
+        Resource resource = mResources.get(path);
+        if (resource == null) {
+            writeHead(out, "404 Not Found", null, 0);
+            return;
+        }
+
+        String ifNoneMatch = headers.get("if-none-match");
+        String ifModifiedSince = headers.get("if-modified-since");
+        boolean notModified = (ifNoneMatch != null) ? ifNoneMatch.equals(resource.etag)
+                : resource.lastModified.equals(ifModifiedSince);
+        if (notModified) {
+            mNotModifiedCount.incrementAndGet();
+            writeHead(out, "304 Not Modified", resource, -1);
+            return;
+        }
+
+        writeHead(out, "200 OK", resource, resource.body.length);
+        int length = (failure == Failure.DROP_CONNECTION) ? resource.body.length / 2 : resource.body.length;
+        writeThrottled(out, resource.body, length);
+        if (failure == Failure.DROP_CONNECTION) {
+            out.flush();
+            socket.setSoLinger(true, 0);  // reset, rather than a clean close
+        }
+    }
+
+    /**
+     * Writes the status line and headers.
+     *
+     * @param contentLength the length of the body, or -1 if there isn't one
+     */
+    private static void writeHead(OutputStream out, String status, Resource resource, int contentLength)
+            throws IOException {
+        StringBuilder head = new StringBuilder("HTTP/1.1 ").append(status).append("\r\n");
+        if (resource != null) {
+            head.append("ETag: ").append(resource.etag).append("\r\n");
+            head.append("Last-Modified: ").append(resource.lastModified).append("\r\n");
+            if (contentLength >= 0) head.append("Content-Type: ").append(resource.contentType).append("\r\n");
+        }
+        if (contentLength >= 0) head.append("Content-Length: ").append(contentLength).append("\r\n");
+        head.append("Connection: close\r\n\r\n");
+        out.write(head.toString().getBytes(StandardCharsets.ISO_8859_1));
+        out.flush();
+    }
+
+    /**
+     * Writes the first <code>length</code> bytes of the body, no faster than the throttle allows.
+     */
+    private void writeThrottled(OutputStream out, byte[] body, int length) throws IOException {
+        long bytesPerSecond = mBytesPerSecond;
+        if (bytesPerSecond <= 0) {
+            out.write(body, 0, length);
+            return;
+        }
+
+        // Send in chunks of about 1/50 s worth, sleeping so that the average rate is right
+        int chunkSize = (int) Math.max(bytesPerSecond / 50, 1);
+        long start = System.nanoTime();
+        for (int offset = 0; offset < length; offset += chunkSize) {
+            int n = Math.min(chunkSize, length - offset);
+            out.write(body, offset, n);
+            out.flush();
+            long dueNanos = (offset + n) * 1000000000L / bytesPerSecond;
+            sleep((dueNanos - (System.nanoTime() - start)) / 1000000);
+        }
+    }
+
+    /**
+     * @return a line without its line ending, or <code>null</code> at the end of the stream
+     */
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) >= 0 && b != '\n')
+            if (b != '\r') line.write(b);
+        if (b < 0 && line.size() == 0) return null;
+        return new String(line.toByteArray(), StandardCharsets.ISO_8859_1);
+    }
+
+    private static void sleep(long millis) throws SocketException {
+        if (millis <= 0) return;
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SocketException("Server stopped");
+        }
+    }
+
+    private static String sha256(byte[] bytes) {
+        return DebatekeeperUtils.toHexString(DebatekeeperUtils.newSha256Digest().digest(bytes));
+    }
+
+}
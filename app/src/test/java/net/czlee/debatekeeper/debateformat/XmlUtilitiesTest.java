@@ -0,0 +1,256 @@
+/*
+ * Copyright (C) 2026 Chuan-Zheng Lee
+ *
+ * This file is part of the Debatekeeper app, which is licensed under the GNU
+ * General Public Licence version 3 (GPLv3).  You can redistribute and/or modify
+ * it under the terms of the GPLv3, and you must not use this file except in
+ * compliance with the GPLv3.
+ *
+ * This app is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE.  See the GNU General Public Licence for more details.
+ *
+ * You should have received a copy of the GNU General Public Licence along with
+ * this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.czlee.debatekeeper.debateformat;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import android.content.Context;
+import android.content.res.Resources;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import net.czlee.debatekeeper.LatencyStats;
+import net.czlee.debatekeeper.R;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+/**
+ * Tests that the lookups in {@link XmlUtilities}, which use the name table and the child index,
+ * find the same elements as looking up the name in resources and going through the children, and
+ * times both.  Also times the DOM path of {@link DebateFormatBuilderFromXmlForSchema2} and
+ * {@link DebateFormatInfoForSchema2} over the built-in formats.
+ *
+ * @author Chuan-Zheng Lee
+ * @since 2026-10-19
+ */
+@RunWith(RobolectricTestRunner.class)
+public class XmlUtilitiesTest {
+
+    private static final String[] FORMAT_FILE_NAMES = {"asian.xml", "australs.xml", "bp.xml", "worldschools.xml"};
+    private static final int LOOKUP_ITERATIONS = 500;
+    private static final int PARSE_ITERATIONS = 100;
+
+    /**
+     * The element names looked up when a format is built or described.
+     */
+    private static final int[] ELEMENT_NAMES = {
+            R.string.xml2elemName_name,
+            R.string.xml2elemName_shortName,
+            R.string.xml2elemName_version,
+            R.string.xml2elemName_info,
+            R.string.xml2elemName_info_region,
+            R.string.xml2elemName_info_level,
+            R.string.xml2elemName_info_usedAt,
+            R.string.xml2elemName_info_desc,
+            R.string.xml2elemName_languages,
+            R.string.xml2elemName_languages_language,
+            R.string.xml2elemName_periodTypes,
+            R.string.xml2elemName_periodType,
+            R.string.xml2elemName_prepTimeSimpleFormat,
+            R.string.xml2elemName_prepTimeControlledFormat,
+            R.string.xml2elemName_speechFormats,
+            R.string.xml2elemName_speechFormat,
+            R.string.xml2elemName_bell,
+            R.string.xml2elemName_speechesList,
+            R.string.xml2elemName_speech,
+    };
+
+    private Context mContext;
+    private Resources mResources;
+
+    @Before
+    public void setUp() {
+        mContext = ApplicationProvider.getApplicationContext();
+        mResources = mContext.getResources();
+    }
+
+    @Test
+    public void lookupsMatchLinearScan() throws Exception {
+        XmlUtilities xu = new XmlUtilities(mResources);
+        for (String filename : FORMAT_FILE_NAMES) {
+            List<Element> elements = getAllElements(parse(filename));
+            int found = 0;
+            for (Element element : elements) {
+                for (int resId : ELEMENT_NAMES) {
+                    List<Element> expected = findChildrenByLinearScan(element, resId);
+                    assertEquals(filename, expected, xu.findAllElements(element, resId));
+                    found += expected.size();
+                }
+            }
+            assertTrue(filename, found > 0);
+            xu.clearChildIndex();
+        }
+    }
+
+    @Test
+    public void nameTableMatchesResources() {
+        XmlUtilities xu = new XmlUtilities(mResources);
+        for (int resId : ELEMENT_NAMES)
+            assertEquals(mResources.getString(resId), xu.getString(resId));
+        assertEquals(mResources.getString(R.string.xml2attrName_speech_format),
+                xu.getString(R.string.xml2attrName_speech_format));
+    }
+
+    /**
+     * Looks up every name in every element of every built-in format, first as {@link XmlUtilities}
+     * does and then as it used to, by looking up the name in resources each time and going through
+     * all the children.  The child index is cleared every iteration, so its cost is included.
+     */
+    @Test
+    public void compareLookupWithLinearScan() throws Exception {
+        XmlUtilities xu = new XmlUtilities(mResources);
+        List<List<Element>> documents = new ArrayList<>();
+        for (String filename : FORMAT_FILE_NAMES)
+            documents.add(getAllElements(parse(filename)));
+
+        LatencyStats indexed = new LatencyStats();
+        LatencyStats linear = new LatencyStats();
+        long indexedElapsed = 0, linearElapsed = 0;
+        int indexedFound = 0, linearFound = 0;
+
+        for (int i = 0; i < LOOKUP_ITERATIONS; i++) {
+            for (List<Element> elements : documents) {
+                long start = System.nanoTime();
+                for (Element element : elements)
+                    for (int resId : ELEMENT_NAMES)
+                        indexedFound += xu.findAllElements(element, resId).size();
+                xu.clearChildIndex();
+                long elapsed = System.nanoTime() - start;
+                indexed.add(elapsed);
+                indexedElapsed += elapsed;
+
+                start = System.nanoTime();
+                for (Element element : elements)
+                    for (int resId : ELEMENT_NAMES)
+                        linearFound += findChildrenByLinearScan(element, resId).size();
+                elapsed = System.nanoTime() - start;
+                linear.add(elapsed);
+                linearElapsed += elapsed;
+            }
+        }
+
+        indexed.report("Lookups per document, name table and child index", indexedElapsed);
+        linear.report("Lookups per document, resources and linear scan", linearElapsed);
+        assertEquals(linearFound, indexedFound);
+    }
+
+    /**
+     * Times building each built-in format, and reading everything the format chooser shows about
+     * it, which are the two places the lookups are used.
+     */
+    @Test
+    public void buildAndDescribeFormats() throws Exception {
+        DebateFormatBuilderFromXmlForSchema2 builder = new DebateFormatBuilderFromXmlForSchema2(mContext);
+        LatencyStats builds = new LatencyStats();
+        LatencyStats infos = new LatencyStats();
+        long buildElapsed = 0, infoElapsed = 0;
+
+        for (int i = 0; i < PARSE_ITERATIONS; i++) {
+            for (String filename : FORMAT_FILE_NAMES) {
+                long start = System.nanoTime();
+                DebateFormat format;
+                try (InputStream in = open(filename)) {
+                    format = builder.buildDebateFromXml(in);
+                }
+                long elapsed = System.nanoTime() - start;
+                builds.add(elapsed);
+                buildElapsed += elapsed;
+                assertFalse(filename, builder.hasErrors());
+                assertTrue(filename, format.numberOfSpeeches() > 0);
+
+                start = System.nanoTime();
+                DebateFormatInfoForSchema2 info;
+                try (InputStream in = open(filename)) {
+                    info = new DebateFormatInfoForSchema2(mContext, in);
+                }
+                List<String[]> descriptions = info.getSpeechFormatDescriptions();
+                List<String[]> speeches = info.getSpeeches(descriptions);
+                String name = info.getName();
+                info.getDescription();
+                info.getRegions();
+                info.getPrepTimeDescription();
+                elapsed = System.nanoTime() - start;
+                infos.add(elapsed);
+                infoElapsed += elapsed;
+                assertFalse(filename, name.isEmpty());
+                assertEquals(filename, format.numberOfSpeeches(), speeches.size());
+            }
+        }
+
+        builds.report("Build format from XML", buildElapsed);
+        infos.report("Read format info from XML", infoElapsed);
+    }
+
+    //******************************************************************************************
+    // Private methods
+    //******************************************************************************************
+
+    /**
+     * Finds children the way {@link XmlUtilities} did before it had a name table and child index.
+     */
+    private List<Element> findChildrenByLinearScan(Element element, int tagNameResId) {
+        String name = mResources.getString(tagNameResId);
+        ArrayList<Element> result = new ArrayList<>();
+        NodeList children = element.getChildNodes();
+        for (int i = 0; i < children.getLength(); i++) {
+            Node child = children.item(i);
+            if (child instanceof Element && name.equals(child.getNodeName()))
+                result.add((Element) child);
+        }
+        return result;
+    }
+
+    private InputStream open(String filename) throws Exception {
+        return mContext.getAssets().open("formats/" + filename);
+    }
+
+    private Document parse(String filename) throws Exception {
+        try (InputStream in = open(filename)) {
+            Document doc = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(in);
+            assertNotNull(doc);
+            return doc;
+        }
+    }
+
+    /**
+     * @return every element in the document, in document order
+     */
+    private static List<Element> getAllElements(Document doc) {
+        ArrayList<Element> result = new ArrayList<>();
+        NodeList all = doc.getElementsByTagName("*");
+        for (int i = 0; i < all.getLength(); i++)
+            result.add((Element) all.item(i));
+        return result;
+    }
+
+}
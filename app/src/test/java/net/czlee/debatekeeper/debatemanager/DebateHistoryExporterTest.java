@@ -0,0 +1,250 @@
+/*
+ * Copyright (C) 2026 Chuan-Zheng Lee
+ *
+ * This file is part of the Debatekeeper app, which is licensed under the GNU
+ * General Public Licence version 3 (GPLv3).  You can redistribute and/or modify
+ * it under the terms of the GPLv3, and you must not use this file except in
+ * compliance with the GPLv3.
+ *
+ * This app is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE.  See the GNU General Public Licence for more details.
+ *
+ * You should have received a copy of the GNU General Public Licence along with
+ * this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.czlee.debatekeeper.debatemanager;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import android.content.Context;
+import android.os.CancellationSignal;
+import android.os.OperationCanceledException;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import net.czlee.debatekeeper.LatencyStats;
+import net.czlee.debatekeeper.debatemanager.DebateHistory.PhaseRecord;
+import net.czlee.debatekeeper.debatemanager.DebateHistoryExporter.Format;
+import net.czlee.debatekeeper.debatemanager.DebateManager.DebatePhaseType;
+
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Tests that {@link DebateHistoryExporter} writes the history as CSV and JSON Lines, in the order
+ * the debates started, and stops when it's cancelled.  Also times exporting a history of 100,000
+ * phases in each format.
+ *
+ * @author Chuan-Zheng Lee
+ * @since 2026-10-19
+ */
+@RunWith(RobolectricTestRunner.class)
+public class DebateHistoryExporterTest {
+
+    private static final int SPEECHES_PER_DEBATE = 9;
+    private static final int LARGE_HISTORY_DEBATES = 10000;  // 100,000 phases, with prep time
+    private static final int EXPORT_RUNS = 5;
+
+    private DebateHistory mHistory;
+    private DebateHistoryExporter mExporter;
+
+    /**
+     * Counts what's written to it, and throws it away.
+     */
+    private static class CountingWriter extends Writer {
+        long chars = 0;
+        int lines = 0;
+
+        @Override
+        public void write(char[] buffer, int offset, int length) {
+            chars += length;
+            for (int i = offset; i < offset + length; i++)
+                if (buffer[i] == '\n') lines++;
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    @Before
+    public void setUp() {
+        Context context = ApplicationProvider.getApplicationContext();
+        DebateHistory.resetInstance();
+        assertTrue(!context.getDatabasePath("history.db").exists() || context.deleteDatabase("history.db"));
+        mHistory = DebateHistory.getInstance(context);
+        mExporter = new DebateHistoryExporter(context);
+    }
+
+    @After
+    public void tearDown() {
+        DebateHistory.resetInstance();
+    }
+
+    @Test
+    public void csvIsWrittenInOrderOfStart() throws Exception {
+        recordTwoDebates();
+        StringWriter writer = new StringWriter();
+        assertEquals(5, mExporter.export(Format.CSV, writer, new CancellationSignal()));
+
+        String expected = "debate,started_at,format,phase_type,speech,phase,length,time,overtime,bells,pois\r\n"
+                + "2,1970-01-01T00:00:00Z,Australs,prepTime,,,900,905,5,0,0\r\n"
+                + "2,1970-01-01T00:00:00Z,Australs,speech,1,\"Leader, Government\",420,430,10,3,1\r\n"
+                + "2,1970-01-01T00:00:00Z,Australs,speech,2,\"The \"\"Whip\"\"\",420,400,0,2,0\r\n"
+                + "1,1970-01-02T00:00:00Z,\"BP, Open\",speech,1,Prime Minister,420,419,0,2,0\r\n"
+                + "1,1970-01-02T00:00:00Z,\"BP, Open\",speech,2,Leader of the Opposition,420,421,1,3,2\r\n";
+        assertEquals(expected, writer.toString());
+    }
+
+    @Test
+    public void jsonLinesAreWrittenInOrderOfStart() throws Exception {
+        recordTwoDebates();
+        StringWriter writer = new StringWriter();
+        assertEquals(5, mExporter.export(Format.JSON_LINES, writer, new CancellationSignal()));
+
+        String[] lines = writer.toString().split("\n");
+        assertEquals(5, lines.length);
+
+        JSONObject prep = new JSONObject(lines[0]);
+        assertEquals(2, prep.getLong("debate"));
+        assertEquals("1970-01-01T00:00:00Z", prep.getString("started_at"));
+        assertEquals("Australs", prep.getString("format"));
+        assertEquals("prepTime", prep.getString("phase_type"));
+        assertFalse(prep.has("speech"));
+        assertFalse(prep.has("phase"));
+        assertEquals(905, prep.getLong("time"));
+        assertEquals(5, prep.getLong("overtime"));
+
+        JSONObject whip = new JSONObject(lines[2]);
+        assertEquals(2, whip.getLong("speech"));
+        assertEquals("The \"Whip\"", whip.getString("phase"));
+        assertEquals(420, whip.getLong("length"));
+        assertEquals(400, whip.getLong("time"));
+        assertEquals(0, whip.getLong("overtime"));
+        assertEquals(2, whip.getLong("bells"));
+        assertEquals(0, whip.getLong("pois"));
+
+        JSONObject last = new JSONObject(lines[4]);
+        assertEquals(1, last.getLong("debate"));
+        assertEquals("BP, Open", last.getString("format"));
+        assertEquals("Leader of the Opposition", last.getString("phase"));
+        assertEquals(2, last.getLong("pois"));
+    }
+
+    @Test
+    public void cancelledExportStops() throws Exception {
+        recordDebates(1000);
+
+        CancellationSignal signal = new CancellationSignal();
+        CountingWriter writer = new CountingWriter() {
+            @Override
+            public void write(char[] buffer, int offset, int length) {
+                super.write(buffer, offset, length);
+                if (lines == 100) signal.cancel();
+            }
+        };
+        try {
+            mExporter.export(Format.CSV, writer, signal);
+            fail("Export wasn't cancelled");
+        } catch (OperationCanceledException e) {
+            // expected
+        }
+        assertTrue(writer.lines < 1000 * (SPEECHES_PER_DEBATE + 1));
+
+        CancellationSignal cancelled = new CancellationSignal();
+        cancelled.cancel();
+        try {
+            mExporter.export(Format.JSON_LINES, new CountingWriter(), cancelled);
+            fail("Export wasn't cancelled");
+        } catch (OperationCanceledException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Exports a history of 10,000 debates of ten phases each, in each format, a few times over,
+     * and times each export.  The output is counted and thrown away, so this times reading the
+     * history and formatting it, not writing the file.
+     */
+    @Test
+    public void exportLargeHistory() throws Exception {
+        recordDebates(LARGE_HISTORY_DEBATES);
+        int rows = LARGE_HISTORY_DEBATES * (SPEECHES_PER_DEBATE + 1);
+
+        for (Format format : Format.values()) {
+            LatencyStats exports = new LatencyStats();
+            long total = 0;
+            long chars = 0;
+            for (int run = 0; run < EXPORT_RUNS; run++) {
+                CountingWriter writer = new CountingWriter();
+                long start = System.nanoTime();
+                int exported = mExporter.export(format, writer, new CancellationSignal());
+                long elapsed = System.nanoTime() - start;
+                exports.add(elapsed);
+                total += elapsed;
+                chars = writer.chars;
+
+                assertEquals(rows, exported);
+                assertEquals(format == Format.CSV ? rows + 1 : rows, writer.lines);
+            }
+            exports.report("Export " + rows + " phases as " + format, total);
+            System.out.printf(Locale.ROOT, "%s: %d characters, %.0f rows/s at the median%n",
+                    format, chars, rows * 1e9 / exports.percentile(50));
+        }
+    }
+
+    //******************************************************************************************
+    // Private methods
+    //******************************************************************************************
+
+    /**
+     * Records two debates, the later one first, with names that need quoting in CSV.
+     */
+    private void recordTwoDebates() throws Exception {
+        mHistory.record(20, "BP, Open", 86400000L, Arrays.asList(
+                new PhaseRecord(DebatePhaseType.SPEECH, 0, "Prime Minister", 420, 419, 2, 0),
+                new PhaseRecord(DebatePhaseType.SPEECH, 1, "Leader of the Opposition", 420, 421, 3, 2)));
+        mHistory.record(10, "Australs", 0, Arrays.asList(
+                new PhaseRecord(DebatePhaseType.PREP_TIME, 0, null, 900, 905, 0, 0),
+                new PhaseRecord(DebatePhaseType.SPEECH, 0, "Leader, Government", 420, 430, 3, 1),
+                new PhaseRecord(DebatePhaseType.SPEECH, 1, "The \"Whip\"", 420, 400, 2, 0)));
+        mHistory.waitForRecords();
+    }
+
+    /**
+     * Records debates with prep time and {@link #SPEECHES_PER_DEBATE} speeches each.
+     */
+    private void recordDebates(int count) throws Exception {
+        for (int debate = 0; debate < count; debate++) {
+            ArrayList<PhaseRecord> phases = new ArrayList<>();
+            phases.add(new PhaseRecord(DebatePhaseType.PREP_TIME, 0, null, 900, 900, 0, 0));
+            for (int speech = 0; speech < SPEECHES_PER_DEBATE; speech++) {
+                long time = 360 + (debate * 37 + speech * 11) % 121;
+                phases.add(new PhaseRecord(DebatePhaseType.SPEECH, speech, "Speaker " + (speech + 1),
+                        420, time, time > 420 ? 3 : 2, speech % 3));
+            }
+            mHistory.record(debate, "Format " + (debate % 4), debate * 3600000L, phases);
+        }
+        mHistory.waitForRecords();
+    }
+
+}
@@ -0,0 +1,227 @@
+/*
+ * Copyright (C) 2026 Chuan-Zheng Lee
+ *
+ * This file is part of the Debatekeeper app, which is licensed under the GNU
+ * General Public Licence version 3 (GPLv3).  You can redistribute and/or modify
+ * it under the terms of the GPLv3, and you must not use this file except in
+ * compliance with the GPLv3.
+ *
+ * This app is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE.  See the GNU General Public Licence for more details.
+ *
+ * You should have received a copy of the GNU General Public Licence along with
+ * this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.czlee.debatekeeper.debatemanager;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import net.czlee.debatekeeper.LatencyStats;
+import net.czlee.debatekeeper.debatemanager.DebateHistory.PhaseRecord;
+import net.czlee.debatekeeper.debatemanager.DebateHistory.SpeechSummary;
+import net.czlee.debatekeeper.debatemanager.DebateManager.DebatePhaseType;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tests the summaries {@link DebateHistory} computes for each speech of a format, and times
+ * computing them over a history of 100,000 phases, with and without the index.
+ *
+ * @author Chuan-Zheng Lee
+ * @since 2026-10-19
+ */
+@RunWith(RobolectricTestRunner.class)
+public class DebateHistoryTest {
+
+    private static final String[] FORMAT_NAMES = {"Australs", "British Parliamentary", "Asians", "World Schools"};
+    private static final int SPEECHES_PER_DEBATE = 9;
+    private static final int LARGE_HISTORY_DEBATES = 10000;  // 100,000 phases, with prep time
+    private static final int SPEECH_LENGTH = 420;
+    private static final int PREP_LENGTH = 900;
+    private static final int QUERY_ITERATIONS = 25;
+
+    private Context mContext;
+    private DebateHistory mHistory;
+
+    @Before
+    public void setUp() {
+        mContext = ApplicationProvider.getApplicationContext();
+        DebateHistory.resetInstance();
+        assertTrue(!mContext.getDatabasePath("history.db").exists() || mContext.deleteDatabase("history.db"));
+        mHistory = DebateHistory.getInstance(mContext);
+    }
+
+    @After
+    public void tearDown() {
+        DebateHistory.resetInstance();
+    }
+
+    @Test
+    public void summariesAreComputedForEachSpeech() throws Exception {
+        mHistory.record(1, "Australs", 1000, Arrays.asList(
+                new PhaseRecord(DebatePhaseType.PREP_TIME, 0, null, PREP_LENGTH, 1000, 0, 0),
+                new PhaseRecord(DebatePhaseType.SPEECH, 0, "1st Affirmative", 420, 400, 1, 0),
+                new PhaseRecord(DebatePhaseType.SPEECH, 1, "1st Negative", 420, 450, 3, 2)));
+        mHistory.record(2, "Australs", 2000, Arrays.asList(
+                new PhaseRecord(DebatePhaseType.SPEECH, 0, "Prime Minister", 420, 440, 2, 1),
+                new PhaseRecord(DebatePhaseType.SPEECH, 1, "1st Negative", 420, 410, 1, 0)));
+        mHistory.record(3, "Asians", 3000, Arrays.asList(
+                new PhaseRecord(DebatePhaseType.SPEECH, 0, "Prime Minister", 420, 500, 2, 1)));
+        mHistory.waitForRecords();
+
+        List<SpeechSummary> summaries = mHistory.getSpeechSummaries("Australs");
+        assertEquals(2, summaries.size());
+
+        SpeechSummary first = summaries.get(0);
+        assertEquals(0, first.speechIndex);
+        assertEquals("Prime Minister", first.name);  // from the most recent debate
+        assertEquals(2, first.count);
+        assertEquals(420.0, first.averageTime, 1e-9);
+        assertEquals(10.0, first.averageOvertime, 1e-9);
+        assertEquals(20, first.maxOvertime);
+        assertEquals(1, first.overtimeCount);
+
+        SpeechSummary second = summaries.get(1);
+        assertEquals(1, second.speechIndex);
+        assertEquals(2, second.count);
+        assertEquals(430.0, second.averageTime, 1e-9);
+        assertEquals(15.0, second.averageOvertime, 1e-9);
+        assertEquals(30, second.maxOvertime);
+        assertEquals(1, second.overtimeCount);
+
+        assertTrue(mHistory.getSpeechSummaries("World Schools").isEmpty());
+    }
+
+    @Test
+    public void recordingTheSameDebateAgainReplacesIt() throws Exception {
+        mHistory.record(1, "Australs", 1000, Arrays.asList(
+                new PhaseRecord(DebatePhaseType.SPEECH, 0, "1st Affirmative", 420, 400, 1, 0),
+                new PhaseRecord(DebatePhaseType.SPEECH, 1, "1st Negative", 420, 450, 3, 2)));
+        mHistory.record(1, "Australs", 1000, Arrays.asList(
+                new PhaseRecord(DebatePhaseType.SPEECH, 0, "1st Affirmative", 420, 460, 2, 0)));
+        mHistory.waitForRecords();
+
+        List<SpeechSummary> summaries = mHistory.getSpeechSummaries("Australs");
+        assertEquals(1, summaries.size());
+        assertEquals(1, summaries.get(0).count);
+        assertEquals(460.0, summaries.get(0).averageTime, 1e-9);
+    }
+
+    /**
+     * Records 10,000 debates of ten phases each, across four formats, timing each debate, then
+     * summarises each format many times over, timing each summary.  For comparison, also times the
+     * same aggregate query with the index turned off.
+     */
+    @Test
+    public void summariseLargeHistory() throws Exception {
+        // What the summaries should be, worked out as the history is built
+        int formats = FORMAT_NAMES.length;
+        long[][] counts = new long[formats][SPEECHES_PER_DEBATE];
+        long[][] timeTotals = new long[formats][SPEECHES_PER_DEBATE];
+        long[][] overtimeTotals = new long[formats][SPEECHES_PER_DEBATE];
+        long[][] maxOvertimes = new long[formats][SPEECHES_PER_DEBATE];
+        long[][] overtimeCounts = new long[formats][SPEECHES_PER_DEBATE];
+
+        LatencyStats records = new LatencyStats();
+        long recordTotal = 0;
+        for (int debate = 0; debate < LARGE_HISTORY_DEBATES; debate++) {
+            int format = debate % formats;
+            ArrayList<PhaseRecord> phases = new ArrayList<>();
+            phases.add(new PhaseRecord(DebatePhaseType.PREP_TIME, 0, null, PREP_LENGTH, PREP_LENGTH, 0, 0));
+            for (int speech = 0; speech < SPEECHES_PER_DEBATE; speech++) {
+                long time = SPEECH_LENGTH - 60 + (debate * 37 + speech * 11) % 121;
+                long overtime = Math.max(0, time - SPEECH_LENGTH);
+                phases.add(new PhaseRecord(DebatePhaseType.SPEECH, speech, "Speaker " + (speech + 1),
+                        SPEECH_LENGTH, time, overtime > 0 ? 3 : 2, speech % 3));
+                counts[format][speech]++;
+                timeTotals[format][speech] += time;
+                overtimeTotals[format][speech] += overtime;
+                maxOvertimes[format][speech] = Math.max(maxOvertimes[format][speech], overtime);
+                if (overtime > 0) overtimeCounts[format][speech]++;
+            }
+
+            long start = System.nanoTime();
+            mHistory.record(debate, FORMAT_NAMES[format], debate * 3600000L, phases);
+            mHistory.waitForRecords();
+            long elapsed = System.nanoTime() - start;
+            records.add(elapsed);
+            recordTotal += elapsed;
+        }
+        records.report("Record a debate of " + (SPEECHES_PER_DEBATE + 1) + " phases", recordTotal);
+
+        LatencyStats summaries = new LatencyStats();
+        long summaryTotal = 0;
+        for (int i = 0; i < QUERY_ITERATIONS; i++) {
+            for (int format = 0; format < formats; format++) {
+                long start = System.nanoTime();
+                List<SpeechSummary> result = mHistory.getSpeechSummaries(FORMAT_NAMES[format]);
+                long elapsed = System.nanoTime() - start;
+                summaries.add(elapsed);
+                summaryTotal += elapsed;
+
+                assertEquals(SPEECHES_PER_DEBATE, result.size());
+                for (int speech = 0; speech < SPEECHES_PER_DEBATE; speech++) {
+                    SpeechSummary summary = result.get(speech);
+                    long count = counts[format][speech];
+                    assertEquals(speech, summary.speechIndex);
+                    assertEquals("Speaker " + (speech + 1), summary.name);
+                    assertEquals(count, summary.count);
+                    assertEquals((double) timeTotals[format][speech] / count, summary.averageTime, 1e-6);
+                    assertEquals((double) overtimeTotals[format][speech] / count, summary.averageOvertime, 1e-6);
+                    assertEquals(maxOvertimes[format][speech], summary.maxOvertime);
+                    assertEquals(overtimeCounts[format][speech], summary.overtimeCount);
+                }
+            }
+        }
+        summaries.report("Summarise a format, " + LARGE_HISTORY_DEBATES * (SPEECHES_PER_DEBATE + 1)
+                + " phases in history", summaryTotal);
+
+        // The same aggregates, but made to read the table instead of the index
+        LatencyStats scans = new LatencyStats();
+        long scanTotal = 0;
+        SQLiteDatabase db = SQLiteDatabase.openDatabase(mContext.getDatabasePath("history.db").getPath(),
+                null, SQLiteDatabase.OPEN_READONLY);
+        try {
+            for (int i = 0; i < QUERY_ITERATIONS; i++) {
+                for (int format = 0; format < formats; format++) {
+                    String[] args = {FORMAT_NAMES[format], DebatePhaseType.SPEECH.toString()};
+                    long start = System.nanoTime();
+                    int rows = 0;
+                    try (Cursor cursor = db.rawQuery("SELECT " + DebateHistory.COLUMN_SPEECH + ", COUNT(*), AVG("
+                            + DebateHistory.COLUMN_TIME + "), AVG(" + DebateHistory.COLUMN_OVERTIME + "), MAX("
+                            + DebateHistory.COLUMN_OVERTIME + "), SUM(" + DebateHistory.COLUMN_OVERTIME + " > 0) FROM "
+                            + DebateHistory.TABLE_PHASES + " NOT INDEXED WHERE " + DebateHistory.COLUMN_FORMAT_NAME
+                            + " = ? AND " + DebateHistory.COLUMN_PHASE_TYPE + " = ? GROUP BY "
+                            + DebateHistory.COLUMN_SPEECH + " ORDER BY " + DebateHistory.COLUMN_SPEECH, args)) {
+                        while (cursor.moveToNext()) rows++;
+                    }
+                    long elapsed = System.nanoTime() - start;
+                    scans.add(elapsed);
+                    scanTotal += elapsed;
+                    assertEquals(SPEECHES_PER_DEBATE, rows);
+                }
+            }
+        } finally {
+            db.close();
+        }
+        scans.report("Same aggregates without the index", scanTotal);
+    }
+
+}
@@ -0,0 +1,219 @@
+/*
+ * Copyright (C) 2026 Chuan-Zheng Lee
+ *
+ * This file is part of the Debatekeeper app, which is licensed under the GNU
+ * General Public Licence version 3 (GPLv3).  You can redistribute and/or modify
+ * it under the terms of the GPLv3, and you must not use this file except in
+ * compliance with the GPLv3.
+ *
+ * This app is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE.  See the GNU General Public Licence for more details.
+ *
+ * You should have received a copy of the GNU General Public Licence along with
+ * this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.czlee.debatekeeper.debatemanager;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import net.czlee.debatekeeper.LatencyStats;
+import net.czlee.debatekeeper.debatemanager.DebateJournal.EventType;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Tests that {@link DebateJournal} reads back what was written to it, and ignores a record that
+ * was only partly written or is corrupt, along with anything after it.  Also times writing each
+ * event, and compares that with syncing after every event.
+ *
+ * @author Chuan-Zheng Lee
+ * @since 2026-10-19
+ */
+@RunWith(RobolectricTestRunner.class)
+public class DebateJournalTest {
+
+    private static final byte[] STATE = "the state of the debate".getBytes(StandardCharsets.UTF_8);
+    private static final int BENCHMARK_EVENTS = 10000;
+    private static final int SYNCED_EVENTS = 200;
+
+    private File mDirectory;
+    private DebateJournal mJournal;
+
+    @Before
+    public void setUp() {
+        mDirectory = new File(ApplicationProvider.getApplicationContext().getFilesDir(), "journal-test");
+        assertTrue(mDirectory.isDirectory() || mDirectory.mkdirs());
+        assertTrue(!getJournalFile().exists() || getJournalFile().delete());
+        mJournal = new DebateJournal(mDirectory);
+    }
+
+    @After
+    public void tearDown() {
+        mJournal.delete();
+    }
+
+    @Test
+    public void nothingIsWrittenBeforeSnapshot() {
+        assertFalse(mJournal.isOpen());
+        mJournal.append(EventType.START, 0);
+        assertNull(mJournal.read());
+    }
+
+    @Test
+    public void eventsAreReadBack() {
+        mJournal.compact(STATE);
+        assertTrue(mJournal.isOpen());
+        mJournal.append(EventType.START, 0);
+        mJournal.append(EventType.BELL, 60);
+        mJournal.append(EventType.POI_START, 0);
+        mJournal.append(EventType.POI_STOP, 15);
+        mJournal.append(EventType.STOP, 75);
+        mJournal.append(EventType.TIME_EDIT, 90);
+
+        DebateJournal.Contents contents = mJournal.read();
+        assertNotNull(contents);
+        assertArrayEquals(STATE, contents.snapshot.state);
+        EventType[] expectedTypes = {EventType.START, EventType.BELL, EventType.POI_START,
+                EventType.POI_STOP, EventType.STOP, EventType.TIME_EDIT};
+        long[] expectedTimes = {0, 60, 0, 15, 75, 90};
+        assertEquals(expectedTypes.length, contents.events.size());
+        for (int i = 0; i < expectedTypes.length; i++) {
+            assertEquals(expectedTypes[i], contents.events.get(i).type);
+            assertEquals(expectedTimes[i], contents.events.get(i).time);
+        }
+    }
+
+    @Test
+    public void compactingDiscardsEvents() {
+        mJournal.compact(STATE);
+        mJournal.append(EventType.START, 0);
+        mJournal.append(EventType.STOP, 30);
+
+        byte[] newState = "the next phase".getBytes(StandardCharsets.UTF_8);
+        mJournal.compact(newState);
+        mJournal.append(EventType.START, 0);
+
+        DebateJournal.Contents contents = mJournal.read();
+        assertNotNull(contents);
+        assertArrayEquals(newState, contents.snapshot.state);
+        assertEquals(1, contents.events.size());
+    }
+
+    @Test
+    public void partlyWrittenEventIsIgnored() throws IOException {
+        mJournal.compact(STATE);
+        mJournal.append(EventType.START, 0);
+        mJournal.append(EventType.BELL, 60);
+        mJournal.append(EventType.STOP, 75);
+
+        try (RandomAccessFile file = new RandomAccessFile(getJournalFile(), "rw")) {
+            file.setLength(file.length() - 3);
+        }
+
+        DebateJournal.Contents contents = mJournal.read();
+        assertNotNull(contents);
+        assertEquals(2, contents.events.size());
+        assertEquals(EventType.BELL, contents.events.get(1).type);
+    }
+
+    @Test
+    public void corruptEventIsIgnoredWithEverythingAfterIt() throws IOException {
+        mJournal.compact(STATE);
+        mJournal.append(EventType.START, 0);
+        long goodLength = getJournalFile().length();
+        mJournal.append(EventType.BELL, 60);
+        mJournal.append(EventType.STOP, 75);
+
+        // Flip a bit in the middle of the second event
+        try (RandomAccessFile file = new RandomAccessFile(getJournalFile(), "rw")) {
+            file.seek(goodLength + 6);
+            int b = file.read();
+            file.seek(goodLength + 6);
+            file.write(b ^ 0x01);
+        }
+
+        DebateJournal.Contents contents = mJournal.read();
+        assertNotNull(contents);
+        assertEquals(1, contents.events.size());
+        assertEquals(EventType.START, contents.events.get(0).type);
+    }
+
+    /**
+     * Times writing each of many events, the way the timer writes them, and then syncing after
+     * every event (as the journal would do if it didn't batch syncs) for comparison.  Also times
+     * reading all the events back, which is what recovering a debate costs.
+     */
+    @Test
+    public void appendCost() throws IOException {
+        mJournal.compact(STATE);
+        long snapshotLength = getJournalFile().length();
+        EventType[] types = EventType.values();
+
+        LatencyStats appends = new LatencyStats();
+        long appendTotal = 0;
+        for (int i = 0; i < BENCHMARK_EVENTS; i++) {
+            long start = System.nanoTime();
+            mJournal.append(types[i % types.length], i);
+            long elapsed = System.nanoTime() - start;
+            appends.add(elapsed);
+            appendTotal += elapsed;
+        }
+        appends.report("Journal append, syncs batched", appendTotal);
+
+        long start = System.nanoTime();
+        DebateJournal.Contents contents = mJournal.read();
+        long readElapsed = System.nanoTime() - start;
+        assertNotNull(contents);
+        assertEquals(BENCHMARK_EVENTS, contents.events.size());
+        System.out.printf("Read %d events back in %.1f ms, journal %d bytes%n",
+                BENCHMARK_EVENTS, readElapsed / 1e6, getJournalFile().length());
+
+        // For comparison, write records of the same size, syncing each one
+        long recordSize = (getJournalFile().length() - snapshotLength) / BENCHMARK_EVENTS;
+        byte[] record = new byte[(int) recordSize];
+        LatencyStats synced = new LatencyStats();
+        long syncedTotal = 0;
+        File comparison = new File(mDirectory, "synced-every-event");
+        try (FileOutputStream out = new FileOutputStream(comparison)) {
+            for (int i = 0; i < SYNCED_EVENTS; i++) {
+                start = System.nanoTime();
+                out.write(record);
+                out.getFD().sync();
+                long elapsed = System.nanoTime() - start;
+                synced.add(elapsed);
+                syncedTotal += elapsed;
+            }
+        } finally {
+            assertTrue(comparison.delete());
+        }
+        synced.report("Append with a sync after every event", syncedTotal);
+    }
+
+    //******************************************************************************************
+    // Private methods
+    //******************************************************************************************
+
+    private File getJournalFile() {
+        return new File(mDirectory, "debate-journal");
+    }
+
+}
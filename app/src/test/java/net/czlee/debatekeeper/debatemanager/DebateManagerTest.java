@@ -0,0 +1,365 @@
+/*
+ * Copyright (C) 2026 Chuan-Zheng Lee
+ *
+ * This file is part of the Debatekeeper app, which is licensed under the GNU
+ * General Public Licence version 3 (GPLv3).  You can redistribute and/or modify
+ * it under the terms of the GPLv3, and you must not use this file except in
+ * compliance with the GPLv3.
+ *
+ * This app is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE.  See the GNU General Public Licence for more details.
+ *
+ * You should have received a copy of the GNU General Public Licence along with
+ * this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.czlee.debatekeeper.debatemanager;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import android.os.Bundle;
+import android.os.Parcel;
+
+import net.czlee.debatekeeper.AlertManager;
+import net.czlee.debatekeeper.DebatingTimerService;
+import net.czlee.debatekeeper.LatencyStats;
+import net.czlee.debatekeeper.debateformat.DebateFormat;
+import net.czlee.debatekeeper.debateformat.DebateFormatBuilderFromXmlForSchema2;
+import net.czlee.debatekeeper.debateformat.PeriodInfo;
+import net.czlee.debatekeeper.debatemanager.DebatePhaseManager.DebateTimerState;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Tests that {@link DebateManager#saveState()} and {@link DebateManager#restoreState(byte[])} give
+ * back exactly the debate that was saved, in each state a debate can be in, and that a state saved
+ * in version 1 of the layout can still be restored.  Also compares the size and speed of the state
+ * with the Bundle of separate keys that was used before it.
+ *
+ * @author Chuan-Zheng Lee
+ * @since 2026-10-19
+ */
+@RunWith(RobolectricTestRunner.class)
+public class DebateManagerTest {
+
+    private static final String FORMAT_FILE_NAME = "asian.xml";
+
+    /**
+     * A debate in the Asian Parliamentary format, saved in version 1 of the layout: the third
+     * speech (phase 3) stopped at 2:30, after the first two speeches and prep time.  This mustn't
+     * change, even when the layout does.
+     */
+    private static final byte[] VERSION_1_STATE = fromHex(""
+            + "01"  // state version
+            + "0013417369616e205061726c69616d656e74617279"  // format name "Asian Parliamentary"
+            + "0009617369616e2e786d6c"  // format file name "asian.xml"
+            + "0000"  // format content hash (not known)
+            + "01"  // prep time enabled
+            + "0006737065656368"  // active phase type "speech"
+            + "00000002"  // active speech index 2
+            + "0000000000000384"  // prep time 900 s
+            + "00000008"  // 8 speeches
+            + "00000000000001a400000000000001b3"  // speech times 420 s, 435 s,
+            + "0000000000000000000000000000000000000000000000000000000000000000"  // ... then none
+            + "00000000000000000000000000000000"
+            + "0123456789abcdef"  // history ID
+            + "000001a0c4506c00"  // started at
+            + "00000003000000020000000300000001"  // bells and POIs in speeches 0 and 1,
+            + "0000000100000000"  // speech 2,
+            + "0000000000000000000000000000000000000000000000000000000000000000"  // ... none in the rest, or prep time
+            + "00000000000000000000000000000000"
+            + "0000000000000096"  // phase time 150 s
+            + "000f53544f505045445f42595f55534552"  // phase state "STOPPED_BY_USER"
+            + "00");  // period info as the format gives it
+
+    private static final int COMPARISON_ITERATIONS = 20000;
+
+    private DebatingTimerService mService;
+    private AlertManager mAlertManager;
+    private DebateFormat mDebateFormat;
+    private final ArrayList<DebateManager> mManagers = new ArrayList<>();
+
+    @Before
+    public void setUp() throws Exception {
+        mService = Robolectric.setupService(DebatingTimerService.class);
+        DebatingTimerService.DebatingTimerServiceBinder binder =
+                (DebatingTimerService.DebatingTimerServiceBinder) mService.onBind(null);
+        mAlertManager = binder.getAlertManager();
+        try (InputStream in = mService.getAssets().open("formats/" + FORMAT_FILE_NAME)) {
+            mDebateFormat = new DebateFormatBuilderFromXmlForSchema2(mService).buildDebateFromXml(in);
+        }
+    }
+
+    @After
+    public void tearDown() {
+        for (DebateManager manager : mManagers)
+            manager.stopTimer();
+    }
+
+    @Test
+    public void notStarted() {
+        DebateManager original = newManager();
+        assertEquals(DebateTimerState.NOT_STARTED, original.getTimerStatus());
+        assertRoundTrip(original);
+    }
+
+    @Test
+    public void prepTime() {
+        DebateManager original = newManager();
+        original.setActivePhaseCurrentTime(300);
+        assertEquals(0, original.getActivePhaseIndex());
+        assertRoundTrip(original);
+    }
+
+    @Test
+    public void prepTimeDisabled() {
+        DebateManager original = newManager();
+        original.setPrepTimeEnabled(false);
+        original.setActivePhaseIndex(1);
+        original.setActivePhaseCurrentTime(200);
+        assertRoundTrip(original);
+    }
+
+    @Test
+    public void midSpeech() {
+        DebateManager original = newManager();
+        original.setActivePhaseCurrentTime(900);
+        original.setActivePhaseIndex(1);
+        original.setActivePhaseCurrentTime(420);
+        original.setActivePhaseIndex(2);
+        original.setActivePhaseCurrentTime(435);
+        original.setActivePhaseIndex(3);
+        original.setActivePhaseCurrentTime(150);
+        assertEquals(DebateTimerState.STOPPED_BY_USER, original.getTimerStatus());
+        assertTrue(original.isPoisActive());
+        assertRoundTrip(original);
+    }
+
+    @Test
+    public void running() {
+        DebateManager original = newManager();
+        original.setActivePhaseIndex(1);
+        original.setActivePhaseCurrentTime(30);
+        original.startTimer();
+        assertEquals(DebateTimerState.RUNNING, original.getTimerStatus());
+        assertRoundTrip(original);
+    }
+
+    /**
+     * The POI timer itself is restored from the journal, not from the saved state, but the count of
+     * POIs is in the saved state.
+     */
+    @Test
+    public void runningWithPoi() {
+        DebateManager original = newManager();
+        original.setActivePhaseIndex(1);
+        original.setActivePhaseCurrentTime(120);
+        original.startTimer();
+        original.startPoiTimer();
+        assertTrue(original.isPoiRunning());
+        assertRoundTrip(original);
+    }
+
+    @Test
+    public void stateForOtherFileIsNotRestored() {
+        DebateManager original = newManager();
+        original.setActivePhaseIndex(2);
+        original.setActivePhaseCurrentTime(100);
+
+        DebateManager other = new DebateManager(mService, mDebateFormat, "other.xml", null, mAlertManager);
+        mManagers.add(other);
+        byte[] before = other.saveState();
+        assertFalse(other.restoreState(original.saveState()));
+        assertArrayEquals(before, other.saveState());
+    }
+
+    @Test
+    public void truncatedStateIsNotRestored() {
+        DebateManager original = newManager();
+        original.setActivePhaseIndex(2);
+        original.setActivePhaseCurrentTime(100);
+        byte[] saved = original.saveState();
+
+        DebateManager restored = newManager();
+        byte[] before = restored.saveState();
+        assertFalse(restored.restoreState(Arrays.copyOf(saved, saved.length - 3)));
+        assertArrayEquals(before, restored.saveState());
+    }
+
+    @Test
+    public void version1StateIsRestored() {
+        DebateManager restored = newManager();
+        assertTrue(restored.restoreState(VERSION_1_STATE));
+
+        assertEquals(3, restored.getActivePhaseIndex());
+        assertEquals(150, restored.getActivePhaseCurrentTime());
+        assertEquals(DebateTimerState.STOPPED_BY_USER, restored.getTimerStatus());
+        assertTrue(restored.isPoisActive());
+        assertEquals(900, restored.getPhaseCurrentTime(0));
+        assertEquals(420, restored.getPhaseCurrentTime(1));
+        assertEquals(435, restored.getPhaseCurrentTime(2));
+        assertEquals(0, restored.getPhaseCurrentTime(4));
+
+        // While version 1 is the current layout, it should be written back exactly as it was
+        assertArrayEquals(VERSION_1_STATE, restored.saveState());
+    }
+
+    /**
+     * Saves and restores the state of a debate many times, in the current layout and in the
+     * legacy layout (a key for each field), and prints how big each is once parcelled and how
+     * long a save and restore takes.  Parcel sizes are as Robolectric's parcel reports them, which
+     * is close to but not exactly what a device would use.
+     */
+    @Test
+    public void compareWithLegacyBundle() {
+        DebateManager original = newManager();
+        original.setActivePhaseCurrentTime(900);
+        original.setActivePhaseIndex(1);
+        original.setActivePhaseCurrentTime(420);
+        original.setActivePhaseIndex(3);
+        original.setActivePhaseCurrentTime(150);
+        DebateManager restored = newManager();
+
+        LatencyStats current = new LatencyStats();
+        LatencyStats legacy = new LatencyStats();
+        int currentSize = 0, legacySize = 0;
+        long currentElapsed = 0, legacyElapsed = 0;
+
+        for (int i = 0; i < COMPARISON_ITERATIONS; i++) {
+            long start = System.nanoTime();
+            Bundle bundle = new Bundle();
+            bundle.putByteArray("dm", original.saveState());
+            Parcel parcel = Parcel.obtain();
+            parcel.writeBundle(bundle);
+            currentSize = parcel.dataSize();
+            parcel.setDataPosition(0);
+            Bundle read = parcel.readBundle(getClass().getClassLoader());
+            assertTrue(restored.restoreState(read.getByteArray("dm")));
+            parcel.recycle();
+            long elapsed = System.nanoTime() - start;
+            current.add(elapsed);
+            currentElapsed += elapsed;
+
+            start = System.nanoTime();
+            bundle = new Bundle();
+            saveLegacyState(original, "dm", bundle);
+            parcel = Parcel.obtain();
+            parcel.writeBundle(bundle);
+            legacySize = parcel.dataSize();
+            parcel.setDataPosition(0);
+            read = parcel.readBundle(getClass().getClassLoader());
+            readLegacyState(original, "dm", read);
+            parcel.recycle();
+            elapsed = System.nanoTime() - start;
+            legacy.add(elapsed);
+            legacyElapsed += elapsed;
+        }
+
+        System.out.printf("Saved state: %d bytes parcelled, legacy Bundle %d bytes%n", currentSize, legacySize);
+        current.report("Save and restore", currentElapsed);
+        legacy.report("Legacy Bundle save and restore", legacyElapsed);
+        assertArrayEquals(original.saveState(), restored.saveState());
+    }
+
+    //******************************************************************************************
+    // Private methods
+    //******************************************************************************************
+
+    private DebateManager newManager() {
+        DebateManager manager = new DebateManager(mService, mDebateFormat, FORMAT_FILE_NAME, null, mAlertManager);
+        mManagers.add(manager);
+        return manager;
+    }
+
+    /**
+     * Saves the state of the original, restores it into a new <code>DebateManager</code>, and
+     * checks that the new one is in exactly the same state.
+     */
+    private void assertRoundTrip(DebateManager original) {
+        byte[] saved = original.saveState();
+        DebateManager restored = newManager();
+        assertTrue(restored.restoreState(saved));
+
+        assertArrayEquals(saved, restored.saveState());
+        assertEquals(original.getNumberOfPhases(), restored.getNumberOfPhases());
+        assertEquals(original.getActivePhaseIndex(), restored.getActivePhaseIndex());
+        assertEquals(original.getActivePhaseCurrentTime(), restored.getActivePhaseCurrentTime());
+        assertEquals(original.getTimerStatus(), restored.getTimerStatus());
+        assertEquals(original.getActivePhaseCurrentPeriodInfo(), restored.getActivePhaseCurrentPeriodInfo());
+        assertEquals(original.isPoisActive(), restored.isPoisActive());
+        for (int i = 0; i < original.getNumberOfPhases(); i++)
+            assertEquals(original.getPhaseCurrentTime(i), restored.getPhaseCurrentTime(i));
+    }
+
+    /**
+     * Saves the state the way it was saved before it was written as a byte array, with the same
+     * keys, but using the public getters.
+     */
+    private static void saveLegacyState(DebateManager manager, String key, Bundle bundle) {
+        int phaseIndex = manager.getActivePhaseIndex();
+        bundle.putString(key + ".cit", (phaseIndex == 0) ? "prepTime" : "speech");
+        bundle.putInt(key + ".csi", Math.max(phaseIndex - 1, 0));
+
+        long[] speechTimes = new long[manager.getNumberOfPhases() - 1];
+        for (int i = 0; i < speechTimes.length; i++)
+            speechTimes[i] = manager.getPhaseCurrentTime(i + 1);
+        bundle.putLongArray(key + ".st", speechTimes);
+        bundle.putLong(key + ".pt", manager.getPhaseCurrentTime(0));
+
+        bundle.putLong(key + ".sm.t", manager.getActivePhaseCurrentTime());
+        bundle.putString(key + ".sm.s", manager.getTimerStatus().name());
+        PeriodInfo periodInfo = manager.getActivePhaseCurrentPeriodInfo();
+        bundle.putString(key + ".sm.cpi.d", periodInfo.getDescription());
+        if (periodInfo.getBackgroundColor() != null)
+            bundle.putInt(key + ".sm.cpi.b", periodInfo.getBackgroundColor());
+        bundle.putBoolean(key + ".sm.cpi.p", periodInfo.isPoisAllowed());
+    }
+
+    /**
+     * Reads everything written by {@link #saveLegacyState(DebateManager, String, Bundle)}, as the
+     * legacy <code>restoreState()</code> did, and checks it against the manager it came from.
+     */
+    private static void readLegacyState(DebateManager expected, String key, Bundle bundle) {
+        String phaseType = bundle.getString(key + ".cit");
+        int speechIndex = bundle.getInt(key + ".csi", 0);
+        long[] speechTimes = bundle.getLongArray(key + ".st");
+        long prepTime = bundle.getLong(key + ".pt", 0);
+        long time = bundle.getLong(key + ".sm.t", 0);
+        String state = bundle.getString(key + ".sm.s");
+        String description = bundle.getString(key + ".sm.cpi.d");
+        Integer backgroundColor = bundle.containsKey(key + ".sm.cpi.b") ? bundle.getInt(key + ".sm.cpi.b") : null;
+        boolean poisAllowed = bundle.getBoolean(key + ".sm.cpi.p", false);
+
+        PeriodInfo periodInfo = expected.getActivePhaseCurrentPeriodInfo();
+        assertEquals("speech", phaseType);
+        assertEquals(expected.getActivePhaseIndex() - 1, speechIndex);
+        assertEquals(expected.getNumberOfPhases() - 1, speechTimes.length);
+        assertEquals(expected.getPhaseCurrentTime(0), prepTime);
+        assertEquals(expected.getActivePhaseCurrentTime(), time);
+        assertEquals(expected.getTimerStatus().name(), state);
+        assertEquals(periodInfo.getDescription(), description);
+        assertEquals(periodInfo.getBackgroundColor(), backgroundColor);
+        assertEquals(periodInfo.isPoisAllowed(), poisAllowed);
+    }
+
+    private static byte[] fromHex(String hex) {
+        byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++)
+            bytes[i] = (byte) Integer.parseInt(hex.substring(2 * i, 2 * i + 2), 16);
+        return bytes;
+    }
+
+}
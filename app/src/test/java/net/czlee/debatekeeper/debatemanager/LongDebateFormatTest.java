@@ -0,0 +1,227 @@
+/*
+ * Copyright (C) 2026 Chuan-Zheng Lee
+ *
+ * This file is part of the Debatekeeper app, which is licensed under the GNU
+ * General Public Licence version 3 (GPLv3).  You can redistribute and/or modify
+ * it under the terms of the GPLv3, and you must not use this file except in
+ * compliance with the GPLv3.
+ *
+ * This app is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE.  See the GNU General Public Licence for more details.
+ *
+ * You should have received a copy of the GNU General Public Licence along with
+ * this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.czlee.debatekeeper.debatemanager;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import net.czlee.debatekeeper.AlertManager;
+import net.czlee.debatekeeper.DebatingTimerService;
+import net.czlee.debatekeeper.LatencyStats;
+import net.czlee.debatekeeper.debateformat.BellInfo;
+import net.czlee.debatekeeper.debateformat.DebateFormat;
+import net.czlee.debatekeeper.debateformat.PrepTimeSimpleFormat;
+import net.czlee.debatekeeper.debateformat.SpeechFormat;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+
+/**
+ * Tests the compiled phase table in {@link DebateFormat} with a synthetic 500-phase format, and
+ * times navigating through a debate in that format, saving its state and restoring it.
+ *
+ * @author Chuan-Zheng Lee
+ * @since 2026-10-19
+ */
+@RunWith(RobolectricTestRunner.class)
+public class LongDebateFormatTest {
+
+    private static final int NUMBER_OF_SPEECHES = 500;
+    private static final int NUMBER_OF_SPEECH_FORMATS = 7;
+    private static final int LOOKUP_ITERATIONS = 200;
+    private static final int SAVE_RESTORE_ITERATIONS = 2000;
+
+    private DebatingTimerService mService;
+    private AlertManager mAlertManager;
+    private final ArrayList<DebateManager> mManagers = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        mService = Robolectric.setupService(DebatingTimerService.class);
+        DebatingTimerService.DebatingTimerServiceBinder binder =
+                (DebatingTimerService.DebatingTimerServiceBinder) mService.onBind(null);
+        mAlertManager = binder.getAlertManager();
+    }
+
+    @After
+    public void tearDown() {
+        for (DebateManager manager : mManagers)
+            manager.stopTimer();
+    }
+
+    @Test
+    public void phaseTableFollowsSpeeches() throws Exception {
+        DebateFormat format = buildLongFormat();
+        assertEquals(NUMBER_OF_SPEECHES, format.numberOfSpeeches());
+        for (int i = 0; i < NUMBER_OF_SPEECHES; i++) {
+            assertEquals(speechName(i), format.getSpeechName(i));
+            assertEquals(formatRef(i), ((SpeechFormat) format.getSpeechFormat(i)).getReference());
+        }
+        assertNull(format.getSpeechFormat(NUMBER_OF_SPEECHES));
+        assertNull(format.getSpeechName(-1));
+
+        // Adding a speech after the table has been compiled should show up straight away
+        format.addSpeech("Extra", formatRef(0));
+        assertEquals(NUMBER_OF_SPEECHES + 1, format.numberOfSpeeches());
+        assertEquals("Extra", format.getSpeechName(NUMBER_OF_SPEECHES));
+        assertSame(format.getSpeechFormat(0), format.getSpeechFormat(NUMBER_OF_SPEECHES));
+    }
+
+    /**
+     * Looks up the format and name of every phase, as the timer screen does when it draws each
+     * page, and times each pass over all phases.
+     */
+    @Test
+    public void lookUpEveryPhase() throws Exception {
+        DebateManager manager = newManager(buildLongFormat());
+        int phases = manager.getNumberOfPhases();
+        assertEquals(NUMBER_OF_SPEECHES + 1, phases);
+
+        LatencyStats stats = new LatencyStats();
+        long total = 0;
+        long length = 0;
+        for (int i = 0; i < LOOKUP_ITERATIONS; i++) {
+            long start = System.nanoTime();
+            for (int phase = 0; phase < phases; phase++) {
+                length += manager.getPhaseFormat(phase).getLength();
+                manager.getPhaseName(phase);
+            }
+            long elapsed = System.nanoTime() - start;
+            stats.add(elapsed);
+            total += elapsed;
+        }
+
+        stats.report("Look up all " + phases + " phases", total);
+        assertTrue(length > 0);
+    }
+
+    /**
+     * Goes through every phase of the debate, stopping at each to set the time, as if someone were
+     * timing it, and times each move to the next phase.  Moving to a phase compacts the journal,
+     * so this includes writing the saved state.
+     */
+    @Test
+    public void navigateThroughDebate() throws Exception {
+        DebateManager manager = newManager(buildLongFormat());
+        LatencyStats stats = new LatencyStats();
+        long total = 0;
+
+        while (!manager.isInLastPhase()) {
+            manager.setActivePhaseCurrentTime(60 + manager.getActivePhaseIndex());
+            long start = System.nanoTime();
+            manager.goToNextPhase();
+            long elapsed = System.nanoTime() - start;
+            stats.add(elapsed);
+            total += elapsed;
+        }
+
+        stats.report("Go to next phase", total);
+        assertEquals(NUMBER_OF_SPEECHES, manager.getActivePhaseIndex());
+        for (int phase = 0; phase < NUMBER_OF_SPEECHES; phase++)
+            assertEquals(60 + phase, manager.getPhaseCurrentTime(phase));
+    }
+
+    /**
+     * Saves the state of a debate part way through the format, and restores it into another
+     * <code>DebateManager</code>, many times, timing each separately.
+     */
+    @Test
+    public void saveAndRestoreState() throws Exception {
+        DebateFormat format = buildLongFormat();
+        DebateManager original = newManager(format);
+        for (int phase = 0; phase < NUMBER_OF_SPEECHES / 2; phase++) {
+            original.setActivePhaseIndex(phase);
+            original.setActivePhaseCurrentTime(30 + phase);
+        }
+        DebateManager restored = newManager(format);
+
+        LatencyStats saves = new LatencyStats();
+        LatencyStats restores = new LatencyStats();
+        long saveTotal = 0, restoreTotal = 0;
+        byte[] saved = null;
+
+        for (int i = 0; i < SAVE_RESTORE_ITERATIONS; i++) {
+            long start = System.nanoTime();
+            saved = original.saveState();
+            long elapsed = System.nanoTime() - start;
+            saves.add(elapsed);
+            saveTotal += elapsed;
+
+            start = System.nanoTime();
+            assertTrue(restored.restoreState(saved));
+            elapsed = System.nanoTime() - start;
+            restores.add(elapsed);
+            restoreTotal += elapsed;
+        }
+
+        System.out.printf("Saved state for %d phases: %d bytes%n", original.getNumberOfPhases(), saved.length);
+        saves.report("Save state", saveTotal);
+        restores.report("Restore state", restoreTotal);
+        assertArrayEquals(saved, restored.saveState());
+        assertEquals(original.getActivePhaseIndex(), restored.getActivePhaseIndex());
+        for (int phase = 0; phase < original.getNumberOfPhases(); phase++)
+            assertEquals(original.getPhaseCurrentTime(phase), restored.getPhaseCurrentTime(phase));
+    }
+
+    //******************************************************************************************
+    // Private methods
+    //******************************************************************************************
+
+    private DebateManager newManager(DebateFormat format) {
+        DebateManager manager = new DebateManager(mService, format, "long.xml", null, mAlertManager);
+        mManagers.add(manager);
+        return manager;
+    }
+
+    /**
+     * @return a format with prep time and {@link #NUMBER_OF_SPEECHES} speeches, which use
+     * {@link #NUMBER_OF_SPEECH_FORMATS} speech formats in turn, like a long moot
+     */
+    private static DebateFormat buildLongFormat() throws DebateFormat.NoSuchFormatException {
+        DebateFormat format = new DebateFormat();
+        format.setName("Long moot");
+        format.setPrepFormat(new PrepTimeSimpleFormat(15 * 60));
+        for (int i = 0; i < NUMBER_OF_SPEECH_FORMATS; i++) {
+            long length = 60 * (i + 2);
+            SpeechFormat speechFormat = new SpeechFormat(formatRef(i), length);
+            speechFormat.addBellInfo(new BellInfo(length - 30, 1));
+            speechFormat.addBellInfo(new BellInfo(length, 2));
+            format.addSpeechFormat(formatRef(i), speechFormat);
+        }
+        for (int i = 0; i < NUMBER_OF_SPEECHES; i++)
+            format.addSpeech(speechName(i), formatRef(i));
+        return format;
+    }
+
+    private static String formatRef(int speech) {
+        return "format" + (speech % NUMBER_OF_SPEECH_FORMATS);
+    }
+
+    private static String speechName(int speech) {
+        return "Speaker " + (speech + 1);
+    }
+
+}